@@ -1,37 +1,51 @@
 package com.ripple.client.subscriptions.ledger;
 
-import java.util.TreeSet;
+import java.util.Arrays;
+
+import com.ripple.utils.collection.LongHashSet;
 
 public class ClearedLedgersSet {
 	public static boolean DEBUG = true;
 	long lastCleared = -1, firstCleared = -1;
 
-	public TreeSet<Long> cleared() {
-		return clearedLedgers;
+	// bounds of clearedLedgers, -1 while it is empty
+	long lowest = -1, highest = -1;
+
+	public long[] cleared() {
+		long[] cleared = clearedLedgers.toArray();
+		Arrays.sort(cleared);
+		return cleared;
 	}
 
 	public int size() {
 		return clearedLedgers.size();
 	}
 
-	TreeSet<Long> clearedLedgers = new TreeSet<Long>();
-	TreeSet<Long> clearedLedgersNeverCleared = new TreeSet<Long>();
+	LongHashSet clearedLedgers = new LongHashSet();
+	LongHashSet clearedLedgersNeverCleared = new LongHashSet();
 
 	public void clear(long ledger_index) {
 		if (DEBUG)
 			clearedLedgersNeverCleared.add(ledger_index);
-		clearedLedgers.add(ledger_index);
+		if (clearedLedgers.add(ledger_index)) {
+			if (lowest == -1 || ledger_index < lowest) {
+				lowest = ledger_index;
+			}
+			if (ledger_index > highest) {
+				highest = ledger_index;
+			}
+		}
 	}
 
 	public void clearIfNoGaps() {
-		if (okToClear()) {
+		if (!clearedLedgers.isEmpty() && okToClear()) {
 			if (DEBUG) {
 				// Set the very first ledger cleared
 				if (firstCleared == -1) {
-					firstCleared = clearedLedgers.first();
+					firstCleared = lowest;
 				}
 				// The very last cleared ledger
-				lastCleared = Math.max(clearedLedgers.last(), lastCleared);
+				lastCleared = Math.max(highest, lastCleared);
 
 				// If our debug set contained the
 				for (long i = firstCleared; i <= lastCleared; i++) {
@@ -40,28 +54,32 @@ public class ClearedLedgersSet {
 				}
 			}
 			clearedLedgers.clear();
+			lowest = highest = -1;
 		}
 	}
 
-	public TreeSet<Long> gaps() {
-		TreeSet<Long> gaps = new TreeSet<Long>();
-		int i = 0;
-		long prev = 0;
-
-		for (Long clearedLedger : clearedLedgers) {
-			if (i++ > 0) {
-				for (long j = prev + 1; j < clearedLedger; j++) {
-					gaps.add(j);
-				}
+	/**
+	 * The ledgers missing between the lowest and highest cleared one, in
+	 * ascending order.
+	 */
+	public long[] gaps() {
+		if (okToClear()) {
+			return new long[0];
+		}
+		long[] gaps = new long[(int) (highest - lowest + 1)
+				- clearedLedgers.size()];
+		int n = 0;
+		for (long j = lowest + 1; j < highest; j++) {
+			if (!clearedLedgers.contains(j)) {
+				gaps[n++] = j;
 			}
-			prev = clearedLedger;
 		}
-
 		return gaps;
 	}
 
 	public boolean okToClear() {
-		return gaps().size() == 0;
+		return clearedLedgers.isEmpty()
+				|| highest - lowest + 1 == clearedLedgers.size();
 	}
 
 	public boolean contains(long ledger_index) {
@@ -55,7 +55,7 @@ public class LedgerSubscriber implements TransactionSubscriptionManager {
 					ledgers.checkHeader(ledger);
 				}
 
-				for (Long stalledOrGapLedger : ledgers.pendingLedgerIndexes()) {
+				for (long stalledOrGapLedger : ledgers.pendingLedgerIndexes()) {
 					PendingLedger stalled = ledgers
 							.getOrAddLedger(stalledOrGapLedger);
 					if (stalled.status == PendingLedger.Status.pending) {
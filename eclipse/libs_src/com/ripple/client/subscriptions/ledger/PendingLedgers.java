@@ -6,18 +6,18 @@ import com.ripple.client.pubsub.Publisher;
 import com.ripple.client.requests.Request;
 import com.ripple.client.responses.Response;
 import com.ripple.core.types.known.tx.result.TransactionResult;
+import com.ripple.utils.collection.LongObjectMap;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 import static com.ripple.client.pubsub.Publisher.Callback;
 
 public class PendingLedgers {
 	Client client;
-	TreeMap<Long, PendingLedger> ledgers = new TreeMap<Long, PendingLedger>();
+	LongObjectMap<PendingLedger> ledgers = new LongObjectMap<PendingLedger>();
 	ClearedLedgersSet clearedLedgers = new ClearedLedgersSet();
 
 	public PendingLedgers(Client clientInstance) {
@@ -172,20 +172,25 @@ public class PendingLedgers {
 	 * randomly as the ledgers clear.
 	 */
 	void trackMissingLedgersInClearedLedgerHistory() {
-		for (Long j : clearedLedgers.gaps()) {
+		for (long j : clearedLedgers.gaps()) {
 			if (!alreadyPending(j)) {
 				constructAndAddLedger(j);
 			}
 		}
 	}
 
-	Set<Long> pendingLedgerIndexes() {
-		return ledgers.keySet();
+	/**
+	 * Indexes of the pending ledgers, lowest first.
+	 */
+	long[] pendingLedgerIndexes() {
+		long[] indexes = ledgers.keys();
+		Arrays.sort(indexes);
+		return indexes;
 	}
 
 	public void logPendingLedgers() {
-		for (PendingLedger pendingLedger : ledgers.values()) {
-			System.out.println(pendingLedger);
+		for (long index : pendingLedgerIndexes()) {
+			System.out.println(ledgers.get(index));
 		}
 	}
 }
@@ -10,6 +10,8 @@ import com.ripple.core.serialized.TypeTranslator;
 import com.ripple.crypto.ecdsa.IKeyPair;
 import com.ripple.crypto.ecdsa.Seed;
 import com.ripple.encodings.common.B16;
+import com.ripple.utils.collection.ByteArrayWrapper;
+import com.ripple.utils.collection.LRUMap;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -28,6 +30,15 @@ public class AccountID extends Hash160 {
 	// this is currently only used for tests, and not recommended to be used
 	// elsewhere.
 	public static Map<String, AccountID> aliases = new HashMap<String, AccountID>();
+
+	// AccountIDs are immutable, so decoded accounts are shared: the same few
+	// thousand addresses are otherwise base58 decoded (or encoded) and
+	// allocated again for every message that mentions them
+	private static final int INTERN_CAPACITY = 16384;
+	private static final LRUMap<String, AccountID> byAddress = new LRUMap<String, AccountID>(
+			1024, INTERN_CAPACITY);
+	private static final LRUMap<ByteArrayWrapper, AccountID> byBytes = new LRUMap<ByteArrayWrapper, AccountID>(
+			1024, INTERN_CAPACITY);
 	//
 	public static AccountID NEUTRAL = fromInteger(1),
 			XRP_ISSUER = fromInteger(0);
@@ -59,13 +70,16 @@ public class AccountID extends Hash160 {
 	}
 
 	static public AccountID fromAddress(String address) {
-		byte[] bytes = getB58IdentiferCodecs().decodeAddress(address);
-		return new AccountID(bytes, address);
+		AccountID accountID = byAddress.get(address);
+		if (accountID == null) {
+			byte[] bytes = getB58IdentiferCodecs().decodeAddress(address);
+			accountID = intern(new AccountID(bytes, address));
+		}
+		return accountID;
 	}
 
 	public static AccountID fromKeyPair(IKeyPair kp) {
-		byte[] bytes = kp.public_key_160_hash();
-		return new AccountID(bytes, encodeAddress(bytes));
+		return fromBytes(kp.public_key_160_hash());
 	}
 
 	public static AccountID fromPassPhrase(String phrase) {
@@ -86,7 +100,29 @@ public class AccountID extends Hash160 {
 	}
 
 	public static AccountID fromBytes(byte[] bytes) {
-		return new AccountID(bytes, encodeAddress(bytes));
+		if (bytes.length != 20) {
+			return new AccountID(bytes, encodeAddress(bytes));
+		}
+		AccountID accountID = byBytes.get(new ByteArrayWrapper(bytes));
+		if (accountID == null) {
+			byte[] copy = bytes.clone();
+			accountID = intern(new AccountID(copy, encodeAddress(copy)));
+		}
+		return accountID;
+	}
+
+	/**
+	 * Returns the shared instance for the account, registering this one if
+	 * there is none yet.
+	 */
+	public static AccountID intern(AccountID accountID) {
+		AccountID existing = byBytes.putIfAbsent(
+				new ByteArrayWrapper(accountID.bytes()), accountID);
+		if (existing != null) {
+			accountID = existing;
+		}
+		byAddress.put(accountID.address, accountID);
+		return accountID;
 	}
 
 	static public AccountID fromAddressBytes(byte[] bytes) {
@@ -5,10 +5,13 @@ import com.ripple.core.coretypes.uint.UInt64;
 import com.ripple.core.serialized.BinaryParser;
 import com.ripple.core.serialized.BytesSink;
 import com.ripple.encodings.common.B16;
+import com.ripple.utils.collection.ByteArrayWrapper;
+import com.ripple.utils.collection.LRUMap;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.MathContext;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
@@ -24,6 +27,14 @@ public class Currency extends Hash160 {
 	public static final Currency XRP = new Currency(
 			BigInteger.ZERO.toByteArray());
 
+	// currencies are shared like accounts, a handful of codes is parsed
+	// over and over from amounts and order books
+	private static final int INTERN_CAPACITY = 4096;
+	private static final LRUMap<String, Currency> byCode = new LRUMap<String, Currency>(
+			64, INTERN_CAPACITY);
+	private static final LRUMap<ByteArrayWrapper, Currency> byBytes = new LRUMap<ByteArrayWrapper, Currency>(
+			64, INTERN_CAPACITY);
+
 	@Override
 	public Object toJSON() {
 		return translate.toJSON(this);
@@ -133,23 +144,49 @@ public class Currency extends Hash160 {
 
 		@Override
 		public Currency newInstance(byte[] b) {
-			return new Currency(b);
+			if (b.length != 20) {
+				return new Currency(b);
+			}
+			// the constants stay out of the pool, which may evict them
+			if (Arrays.equals(b, XRP.hash)) {
+				return XRP;
+			}
+			if (Arrays.equals(b, NEUTRAL.hash)) {
+				return NEUTRAL;
+			}
+			Currency currency = byBytes.get(new ByteArrayWrapper(b));
+			if (currency == null) {
+				currency = new Currency(b.clone());
+				Currency existing = byBytes.putIfAbsent(new ByteArrayWrapper(
+						currency.hash), currency);
+				if (existing != null) {
+					currency = existing;
+				}
+			}
+			return currency;
 		}
 
 		@Override
 		public Currency fromString(String value) {
-			if (value.length() == 40 /* byteWidth() * 2 */) {
-				return newInstance(B16.decode(value));
-			} else if (value.equals("XRP")) {
+			if (value.equals("XRP")) {
 				return XRP;
+			}
+			Currency currency = byCode.get(value);
+			if (currency != null) {
+				return currency;
+			}
+			if (value.length() == 40 /* byteWidth() * 2 */) {
+				currency = newInstance(B16.decode(value));
 			} else {
 				if (!(value.length() == 3)) {
 					// if (!value.matches("[A-Z0-9]{3}")) {
 					throw new RuntimeException(
 							"Currency code must be 3 characters");
 				}
-				return newInstance(encodeCurrency(value));
+				currency = newInstance(encodeCurrency(value));
 			}
+			byCode.put(value, currency);
+			return currency;
 		}
 	}
 
@@ -192,6 +229,9 @@ public class Currency extends Hash160 {
 
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
 		if (obj instanceof Currency) {
 			Currency other = (Currency) obj;
 			byte[] bytes = this.bytes();
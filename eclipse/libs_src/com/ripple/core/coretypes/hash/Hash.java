@@ -2,9 +2,10 @@ package com.ripple.core.coretypes.hash;
 
 import com.ripple.core.serialized.*;
 import com.ripple.encodings.common.B16;
+import com.ripple.utils.collection.ByteSlab;
+import com.ripple.utils.collection.FastBytes;
 
 import java.math.BigInteger;
-import java.util.Arrays;
 
 abstract public class Hash<Subclass extends Hash> implements SerializedType,
 		Comparable<Subclass> {
@@ -23,7 +24,7 @@ abstract public class Hash<Subclass extends Hash> implements SerializedType,
 	@Override
 	public int hashCode() {
 		if (hashCode == -1) {
-			hashCode = new BigInteger(1, hash).hashCode();
+			hashCode = FastBytes.hashCode(hash);
 		}
 		return hashCode;
 	}
@@ -55,8 +56,11 @@ abstract public class Hash<Subclass extends Hash> implements SerializedType,
 
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
 		if (obj instanceof Hash) {
-			return Arrays.equals(hash, ((Hash) obj).hash);
+			return FastBytes.equals(hash, ((Hash) obj).hash);
 		}
 
 		return super.equals(obj);
@@ -64,16 +68,20 @@ abstract public class Hash<Subclass extends Hash> implements SerializedType,
 
 	@Override
 	public int compareTo(Subclass another) {
-		int thisLength = bytes().length;
 		byte[] bytes = another.bytes();
+		return FastBytes.compareTo(hash, 0, hash.length, bytes, 0,
+				hash.length);
+	}
 
-		for (int i = 0; i < thisLength; i++) {
-			int cmp = (hash[i] & 0xFF) - (bytes[i] & 0xFF);
-			if (cmp != 0) {
-				return cmp;
-			}
-		}
-		return 0;
+	/**
+	 * Copies the hash off heap and returns the slab handle of the copy.
+	 */
+	public long writeTo(ByteSlab slab) {
+		return slab.store(hash);
+	}
+
+	public boolean equals(ByteSlab slab, long handle) {
+		return slab.equals(handle, hash);
 	}
 
 	public byte[] slice(int start) {
@@ -5,6 +5,7 @@ import com.ripple.core.coretypes.hash.prefixes.Prefix;
 import com.ripple.core.fields.Field;
 import com.ripple.core.fields.TypedFields;
 import com.ripple.core.serialized.BytesSink;
+import com.ripple.utils.collection.ByteSlab;
 
 import java.math.BigInteger;
 import java.util.TreeMap;
@@ -62,6 +63,10 @@ public class Hash256 extends Hash<Hash256> {
 		super(bytes, 32);
 	}
 
+	public static Hash256 readFrom(ByteSlab slab, long handle) {
+		return new Hash256(slab.read(handle));
+	}
+
 	public static Hash256 signingHash(byte[] blob) {
 		return prefixedHalfSha512(HashPrefix.txSign, blob);
 	}
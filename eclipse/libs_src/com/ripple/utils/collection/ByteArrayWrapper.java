@@ -1,6 +1,4 @@
-package org.ripple.power.collection;
-
-import java.util.Arrays;
+package com.ripple.utils.collection;
 
 import org.spongycastle.util.encoders.Hex;
 
@@ -19,13 +17,12 @@ public class ByteArrayWrapper implements Comparable<ByteArrayWrapper> {
 			return false;
 		}
 		byte[] otherData = ((ByteArrayWrapper) other).getData();
-		return FastBytes.compareTo(data, 0, data.length, otherData,
-				0, otherData.length) == 0;
+		return FastBytes.equals(data, otherData);
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(data);
+		return FastBytes.hashCode(data);
 	}
 
 	@Override
@@ -0,0 +1,285 @@
+package com.ripple.utils.collection;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Off-heap allocator for many small byte strings such as hashes and keys.
+ * Memory is taken from the OS in direct pages and cut into power of two
+ * slots; freed slots go back to a per size free list. An allocation is a
+ * long handle carrying page, offset and length, so keeping millions of
+ * 32 byte hashes costs neither an object nor an array header each, and the
+ * GC never scans them.
+ * <p>
+ * Allocation and free are synchronized. Reads and compares work on
+ * absolute positions and need no lock, but a handle must not be read after
+ * it was freed.
+ */
+public class ByteSlab implements Closeable {
+
+	public static final int MIN_SLOT = 8;
+
+	public static final int DEFAULT_PAGE_SIZE = 1 << 20;
+
+	private static final int LENGTH_BITS = 20;
+
+	private static final int OFFSET_BITS = 20;
+
+	private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+	private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+	private final int pageSize;
+
+	private final long[][] freeLists;
+
+	private final int[] freeCounts;
+
+	private volatile ByteBuffer[] pages = new ByteBuffer[0];
+
+	private int top = -1;
+
+	private int topUsed;
+
+	private long allocated;
+
+	private boolean closed;
+
+	public ByteSlab() {
+		this(DEFAULT_PAGE_SIZE);
+	}
+
+	public ByteSlab(int pageSize) {
+		if (pageSize < 4096 || pageSize > (1 << OFFSET_BITS)
+				|| Integer.bitCount(pageSize) != 1) {
+			throw new IllegalArgumentException("Illegal page size: " + pageSize);
+		}
+		this.pageSize = pageSize;
+		int sizeClasses = Integer.numberOfTrailingZeros(pageSize) + 1;
+		this.freeLists = new long[sizeClasses][];
+		this.freeCounts = new int[sizeClasses];
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getMaxLength() {
+		return (int) Math.min(pageSize, LENGTH_MASK);
+	}
+
+	private static int sizeClass(int length) {
+		int slot = Math.max(MIN_SLOT, length);
+		return 32 - Integer.numberOfLeadingZeros(slot - 1);
+	}
+
+	public synchronized long allocate(int length) {
+		if (closed) {
+			throw new IllegalStateException("slab is closed");
+		}
+		if (length <= 0 || length > getMaxLength()) {
+			throw new IllegalArgumentException("Illegal length: " + length);
+		}
+		int sizeClass = sizeClass(length);
+		int slot = 1 << sizeClass;
+		long location;
+		if (freeCounts[sizeClass] > 0) {
+			location = freeLists[sizeClass][--freeCounts[sizeClass]];
+		} else {
+			if (top < 0 || topUsed + slot > pageSize) {
+				addPage();
+			}
+			location = ((long) top << OFFSET_BITS) | topUsed;
+			topUsed += slot;
+		}
+		allocated += slot;
+		return (location << LENGTH_BITS) | length;
+	}
+
+	private void addPage() {
+		ByteBuffer page = ByteBuffer.allocateDirect(pageSize).order(
+				ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer[] grown = new ByteBuffer[pages.length + 1];
+		System.arraycopy(pages, 0, grown, 0, pages.length);
+		grown[pages.length] = page;
+		pages = grown;
+		top = pages.length - 1;
+		topUsed = 0;
+	}
+
+	public synchronized void free(long handle) {
+		if (closed) {
+			return;
+		}
+		int sizeClass = sizeClass(length(handle));
+		long[] free = freeLists[sizeClass];
+		int count = freeCounts[sizeClass];
+		if (free == null) {
+			free = freeLists[sizeClass] = new long[64];
+		} else if (count == free.length) {
+			free = freeLists[sizeClass] = Arrays.copyOf(free, count << 1);
+		}
+		free[count] = handle >>> LENGTH_BITS;
+		freeCounts[sizeClass] = count + 1;
+		allocated -= 1 << sizeClass;
+	}
+
+	public long store(byte[] src) {
+		return store(src, 0, src.length);
+	}
+
+	public long store(byte[] src, int offset, int length) {
+		long handle = allocate(length);
+		write(handle, src, offset);
+		return handle;
+	}
+
+	public static int length(long handle) {
+		return (int) (handle & LENGTH_MASK);
+	}
+
+	private ByteBuffer page(long handle) {
+		return pages[(int) (handle >>> (LENGTH_BITS + OFFSET_BITS))];
+	}
+
+	private static int position(long handle) {
+		return (int) ((handle >>> LENGTH_BITS) & OFFSET_MASK);
+	}
+
+	/**
+	 * Copies length(handle) bytes from src into the allocation.
+	 */
+	public void write(long handle, byte[] src, int offset) {
+		ByteBuffer page = page(handle);
+		int position = position(handle);
+		int length = length(handle);
+		int i = 0;
+		for (; i + 8 <= length; i += 8) {
+			page.putLong(position + i, FastBytes.getLong(src, offset + i));
+		}
+		for (; i < length; i++) {
+			page.put(position + i, src[offset + i]);
+		}
+	}
+
+	public void read(long handle, byte[] dst, int offset) {
+		ByteBuffer page = page(handle);
+		int position = position(handle);
+		int length = length(handle);
+		int i = 0;
+		for (; i + 8 <= length; i += 8) {
+			long word = page.getLong(position + i);
+			for (int j = 0; j < 8; j++) {
+				dst[offset + i + j] = (byte) (word >>> (j << 3));
+			}
+		}
+		for (; i < length; i++) {
+			dst[offset + i] = page.get(position + i);
+		}
+	}
+
+	public byte[] read(long handle) {
+		byte[] result = new byte[length(handle)];
+		read(handle, result, 0);
+		return result;
+	}
+
+	public boolean equals(long handle, byte[] b) {
+		return equals(handle, b, 0, b.length);
+	}
+
+	public boolean equals(long handle, byte[] b, int offset, int length) {
+		if (length != length(handle)) {
+			return false;
+		}
+		ByteBuffer page = page(handle);
+		int position = position(handle);
+		int i = 0;
+		for (; i + 8 <= length; i += 8) {
+			if (page.getLong(position + i) != FastBytes.getLong(b, offset + i)) {
+				return false;
+			}
+		}
+		for (; i < length; i++) {
+			if (page.get(position + i) != b[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Unsigned lexicographic comparison, consistent with
+	 * {@link FastBytes#compareTo(byte[], int, int, byte[], int, int)}.
+	 */
+	public int compareTo(long handle, byte[] b, int offset, int length) {
+		ByteBuffer page = page(handle);
+		int position = position(handle);
+		int own = length(handle);
+		int min = Math.min(own, length);
+		int i = 0;
+		for (; i + 8 <= min; i += 8) {
+			long lw = page.getLong(position + i);
+			long rw = FastBytes.getLong(b, offset + i);
+			if (lw != rw) {
+				int n = Long.numberOfTrailingZeros(lw ^ rw) & ~7;
+				return (int) (((lw >>> n) & 0xFFL) - ((rw >>> n) & 0xFFL));
+			}
+		}
+		for (; i < min; i++) {
+			int a = page.get(position + i) & 0xff;
+			int c = b[offset + i] & 0xff;
+			if (a != c) {
+				return a - c;
+			}
+		}
+		return own - length;
+	}
+
+	/**
+	 * Same value as {@link FastBytes#hashCode(byte[])} of the stored bytes.
+	 */
+	public int hashCode(long handle) {
+		ByteBuffer page = page(handle);
+		int position = position(handle);
+		int length = length(handle);
+		long h = 0x9e3779b97f4a7c15L;
+		int i = 0;
+		for (; i + 8 <= length; i += 8) {
+			h = (h ^ FastBytes.mix(page.getLong(position + i))) * 0x100000001b3L;
+		}
+		for (; i < length; i++) {
+			h = (h ^ (page.get(position + i) & 0xff)) * 0x100000001b3L;
+		}
+		return FastBytes.finish(h, length);
+	}
+
+	/**
+	 * Bytes handed out in slots, including the rounding to a power of two.
+	 */
+	public synchronized long getAllocatedBytes() {
+		return allocated;
+	}
+
+	public long getReservedBytes() {
+		return (long) pages.length * pageSize;
+	}
+
+	/**
+	 * Drops every page. Outstanding handles become invalid; the direct
+	 * memory is released once the pages are collected.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		pages = new ByteBuffer[0];
+		for (int i = 0; i < freeLists.length; i++) {
+			freeLists[i] = null;
+			freeCounts[i] = 0;
+		}
+		allocated = 0;
+		top = -1;
+	}
+}
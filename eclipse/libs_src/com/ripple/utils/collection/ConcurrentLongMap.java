@@ -0,0 +1,166 @@
+package com.ripple.utils.collection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread safe long to object map. Keys are spread over a fixed number of
+ * {@link LongObjectMap} segments, each guarded by its own lock, so threads
+ * working on different keys rarely contend and no Long is ever boxed. Null
+ * values are not allowed. Bulk views are snapshots taken one segment at a
+ * time and are not atomic across the whole map.
+ */
+public class ConcurrentLongMap<V> {
+
+	private final LongObjectMap<V>[] segments;
+
+	private final int shift;
+
+	public ConcurrentLongMap() {
+		this(16, 16);
+	}
+
+	public ConcurrentLongMap(int expected) {
+		this(expected, 16);
+	}
+
+	@SuppressWarnings("unchecked")
+	public ConcurrentLongMap(int expected, int concurrency) {
+		int count = 1;
+		int bits = 0;
+		while (count < concurrency && count < (1 << 16)) {
+			count <<= 1;
+			bits++;
+		}
+		this.shift = 32 - bits;
+		this.segments = new LongObjectMap[count];
+		int perSegment = Math.max(4, expected / count);
+		for (int i = 0; i < count; i++) {
+			segments[i] = new LongObjectMap<V>(perSegment);
+		}
+	}
+
+	// high bits pick the segment, the low bits index inside it
+	private LongObjectMap<V> segmentFor(long key) {
+		if (shift == 32) {
+			return segments[0];
+		}
+		return segments[PrimitiveHash.mix(key) >>> shift];
+	}
+
+	public V get(long key) {
+		LongObjectMap<V> segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.get(key);
+		}
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	public V put(long key, V value) {
+		LongObjectMap<V> segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.put(key, value);
+		}
+	}
+
+	public V putIfAbsent(long key, V value) {
+		LongObjectMap<V> segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.putIfAbsent(key, value);
+		}
+	}
+
+	public V remove(long key) {
+		LongObjectMap<V> segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.remove(key);
+		}
+	}
+
+	/**
+	 * Removes the key only while it is still mapped to the given value.
+	 */
+	public boolean remove(long key, V value) {
+		LongObjectMap<V> segment = segmentFor(key);
+		synchronized (segment) {
+			V current = segment.get(key);
+			if (current != null && current.equals(value)) {
+				segment.remove(key);
+				return true;
+			}
+			return false;
+		}
+	}
+
+	public boolean replace(long key, V expect, V update) {
+		LongObjectMap<V> segment = segmentFor(key);
+		synchronized (segment) {
+			V current = segment.get(key);
+			if (current != null && current.equals(expect)) {
+				segment.put(key, update);
+				return true;
+			}
+			return false;
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (LongObjectMap<V> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public boolean isEmpty() {
+		for (LongObjectMap<V> segment : segments) {
+			synchronized (segment) {
+				if (!segment.isEmpty()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public void clear() {
+		for (LongObjectMap<V> segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public long[] keys() {
+		long[][] parts = new long[segments.length][];
+		int total = 0;
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				parts[i] = segments[i].keys();
+			}
+			total += parts[i].length;
+		}
+		long[] result = new long[total];
+		int n = 0;
+		for (long[] part : parts) {
+			System.arraycopy(part, 0, result, n, part.length);
+			n += part.length;
+		}
+		return result;
+	}
+
+	public List<V> values() {
+		ArrayList<V> result = new ArrayList<V>(size());
+		for (LongObjectMap<V> segment : segments) {
+			synchronized (segment) {
+				result.addAll(segment.values());
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,289 @@
+package com.ripple.utils.collection;
+
+import java.nio.ByteOrder;
+
+/**
+ * Byte array comparison, equality and hashing, eight bytes at a time when
+ * sun.misc.Unsafe is reachable and byte by byte otherwise. Hash values are
+ * only meant for in-memory tables and must not be persisted.
+ */
+public abstract class FastBytes {
+
+	private static final int WORD = 8;
+
+	public static int compareTo(byte[] b1, int s1, int l1, byte[] b2, int s2,
+			int l2) {
+		return LexicographicalComparerHolder.BEST_COMPARER.compareTo(b1, s1,
+				l1, b2, s2, l2);
+	}
+
+	public static int compareTo(byte[] b1, byte[] b2) {
+		return LexicographicalComparerHolder.BEST_COMPARER.compareTo(b1, 0,
+				b1.length, b2, 0, b2.length);
+	}
+
+	public static boolean equals(byte[] b1, int s1, int l1, byte[] b2, int s2,
+			int l2) {
+		return l1 == l2
+				&& LexicographicalComparerHolder.BEST_COMPARER.equals(b1, s1,
+						b2, s2, l1);
+	}
+
+	public static boolean equals(byte[] b1, byte[] b2) {
+		if (b1 == b2) {
+			return true;
+		}
+		if (b1 == null || b2 == null || b1.length != b2.length) {
+			return false;
+		}
+		return LexicographicalComparerHolder.BEST_COMPARER.equals(b1, 0, b2, 0,
+				b1.length);
+	}
+
+	public static int hashCode(byte[] b, int offset, int length) {
+		return LexicographicalComparerHolder.BEST_COMPARER.hashCode(b, offset,
+				length);
+	}
+
+	public static int hashCode(byte[] b) {
+		return LexicographicalComparerHolder.BEST_COMPARER.hashCode(b, 0,
+				b.length);
+	}
+
+	/**
+	 * Reads eight bytes at the offset as a little endian long.
+	 */
+	public static long getLong(byte[] b, int offset) {
+		return LexicographicalComparerHolder.BEST_COMPARER.getLong(b, offset);
+	}
+
+	public static boolean isUnsafe() {
+		return LexicographicalComparerHolder.BEST_COMPARER != LexicographicalComparerHolder.PureJavaComparer.INSTANCE;
+	}
+
+	private interface Comparer<T> {
+		abstract public int compareTo(T buffer1, int offset1, int length1,
+				T buffer2, int offset2, int length2);
+
+		abstract public boolean equals(T buffer1, int offset1, T buffer2,
+				int offset2, int length);
+
+		abstract public int hashCode(T buffer, int offset, int length);
+
+		abstract public long getLong(T buffer, int offset);
+	}
+
+	private static Comparer<byte[]> lexicographicalComparerJavaImpl() {
+		return LexicographicalComparerHolder.PureJavaComparer.INSTANCE;
+	}
+
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	static int finish(long h, int length) {
+		h = mix(h ^ length);
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static class LexicographicalComparerHolder {
+		static final String UNSAFE_COMPARER_NAME = LexicographicalComparerHolder.class
+				.getName() + "$UnsafeComparer";
+
+		static final Comparer<byte[]> BEST_COMPARER = getBestComparer();
+
+		static Comparer<byte[]> getBestComparer() {
+			try {
+				Class<?> theClass = Class.forName(UNSAFE_COMPARER_NAME);
+
+				@SuppressWarnings("unchecked")
+				Comparer<byte[]> comparer = (Comparer<byte[]>) theClass
+						.getEnumConstants()[0];
+				return comparer;
+			} catch (Throwable t) {
+				return lexicographicalComparerJavaImpl();
+			}
+		}
+
+		private enum PureJavaComparer implements Comparer<byte[]> {
+			INSTANCE;
+
+			@Override
+			public int compareTo(byte[] buffer1, int offset1, int length1,
+					byte[] buffer2, int offset2, int length2) {
+				if (buffer1 == buffer2 && offset1 == offset2
+						&& length1 == length2) {
+					return 0;
+				}
+				int end1 = offset1 + length1;
+				int end2 = offset2 + length2;
+				for (int i = offset1, j = offset2; i < end1 && j < end2; i++, j++) {
+					int a = (buffer1[i] & 0xff);
+					int b = (buffer2[j] & 0xff);
+					if (a != b) {
+						return a - b;
+					}
+				}
+				return length1 - length2;
+			}
+
+			@Override
+			public boolean equals(byte[] buffer1, int offset1, byte[] buffer2,
+					int offset2, int length) {
+				for (int i = 0; i < length; i++) {
+					if (buffer1[offset1 + i] != buffer2[offset2 + i]) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public int hashCode(byte[] buffer, int offset, int length) {
+				long h = 0x9e3779b97f4a7c15L;
+				int i = 0;
+				for (; i + WORD <= length; i += WORD) {
+					h = (h ^ mix(getLong(buffer, offset + i))) * 0x100000001b3L;
+				}
+				for (; i < length; i++) {
+					h = (h ^ (buffer[offset + i] & 0xff)) * 0x100000001b3L;
+				}
+				return finish(h, length);
+			}
+
+			@Override
+			public long getLong(byte[] buffer, int offset) {
+				long word = 0;
+				for (int j = WORD - 1; j >= 0; j--) {
+					word = (word << 8) | (buffer[offset + j] & 0xffL);
+				}
+				return word;
+			}
+		}
+
+		@SuppressWarnings("unused")
+		private enum UnsafeComparer implements Comparer<byte[]> {
+			INSTANCE;
+
+			static final Unsafe theUnsafe;
+
+			static final int BYTE_ARRAY_BASE_OFFSET;
+
+			static {
+				theUnsafe = new SunUnsafe();
+
+				BYTE_ARRAY_BASE_OFFSET = theUnsafe
+						.arrayBaseOffset(byte[].class);
+
+				if (theUnsafe.arrayIndexScale(byte[].class) != 1) {
+					throw new AssertionError();
+				}
+			}
+
+			static final boolean littleEndian = ByteOrder.nativeOrder().equals(
+					ByteOrder.LITTLE_ENDIAN);
+
+			static boolean lessThanUnsigned(long x1, long x2) {
+				return (x1 + Long.MIN_VALUE) < (x2 + Long.MIN_VALUE);
+			}
+
+			// raw memory reads are not bounds checked by the VM
+			static void checkBounds(byte[] buffer, int offset, int length) {
+				if (offset < 0 || length < 0 || offset > buffer.length - length) {
+					throw new ArrayIndexOutOfBoundsException(offset + length);
+				}
+			}
+
+			@Override
+			public int compareTo(byte[] buffer1, int offset1, int length1,
+					byte[] buffer2, int offset2, int length2) {
+				if (buffer1 == buffer2 && offset1 == offset2
+						&& length1 == length2) {
+					return 0;
+				}
+				checkBounds(buffer1, offset1, length1);
+				checkBounds(buffer2, offset2, length2);
+				int minLength = Math.min(length1, length2);
+				int minWords = minLength / WORD;
+				long offset1Adj = offset1 + (long) BYTE_ARRAY_BASE_OFFSET;
+				long offset2Adj = offset2 + (long) BYTE_ARRAY_BASE_OFFSET;
+
+				for (int i = 0; i < minWords * WORD; i += WORD) {
+					long lw = theUnsafe.getLong(buffer1, offset1Adj + i);
+					long rw = theUnsafe.getLong(buffer2, offset2Adj + i);
+					long diff = lw ^ rw;
+
+					if (diff != 0) {
+						if (!littleEndian) {
+							return lessThanUnsigned(lw, rw) ? -1 : 1;
+						}
+						// lowest differing byte is the first one in memory
+						int n = Long.numberOfTrailingZeros(diff) & ~7;
+						return (int) (((lw >>> n) & 0xFFL) - ((rw >>> n) & 0xFFL));
+					}
+				}
+
+				for (int i = minWords * WORD; i < minLength; i++) {
+					int result = (buffer1[offset1 + i] & 0xff)
+							- (buffer2[offset2 + i] & 0xff);
+					if (result != 0) {
+						return result;
+					}
+				}
+				return length1 - length2;
+			}
+
+			@Override
+			public boolean equals(byte[] buffer1, int offset1, byte[] buffer2,
+					int offset2, int length) {
+				checkBounds(buffer1, offset1, length);
+				checkBounds(buffer2, offset2, length);
+				long offset1Adj = offset1 + (long) BYTE_ARRAY_BASE_OFFSET;
+				long offset2Adj = offset2 + (long) BYTE_ARRAY_BASE_OFFSET;
+				int i = 0;
+				for (; i + WORD <= length; i += WORD) {
+					if (theUnsafe.getLong(buffer1, offset1Adj + i) != theUnsafe
+							.getLong(buffer2, offset2Adj + i)) {
+						return false;
+					}
+				}
+				for (; i < length; i++) {
+					if (buffer1[offset1 + i] != buffer2[offset2 + i]) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public int hashCode(byte[] buffer, int offset, int length) {
+				checkBounds(buffer, offset, length);
+				long base = offset + (long) BYTE_ARRAY_BASE_OFFSET;
+				long h = 0x9e3779b97f4a7c15L;
+				int i = 0;
+				for (; i + WORD <= length; i += WORD) {
+					long word = theUnsafe.getLong(buffer, base + i);
+					if (!littleEndian) {
+						word = Long.reverseBytes(word);
+					}
+					h = (h ^ mix(word)) * 0x100000001b3L;
+				}
+				for (; i < length; i++) {
+					h = (h ^ (buffer[offset + i] & 0xff)) * 0x100000001b3L;
+				}
+				return finish(h, length);
+			}
+
+			@Override
+			public long getLong(byte[] buffer, int offset) {
+				checkBounds(buffer, offset, WORD);
+				long word = theUnsafe.getLong(buffer, offset
+						+ (long) BYTE_ARRAY_BASE_OFFSET);
+				return littleEndian ? word : Long.reverseBytes(word);
+			}
+		}
+	}
+}
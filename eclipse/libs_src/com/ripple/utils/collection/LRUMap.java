@@ -0,0 +1,276 @@
+package com.ripple.utils.collection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded cache holding at most maxEntries mappings. Recency is tracked
+ * with the CLOCK approximation of LRU: a hit only sets a flag on the entry,
+ * so reads never take a lock, and when the cache is full the clock hand
+ * sweeps the ring, giving recently used entries a second chance and
+ * evicting the first one that was not touched since the last sweep. It is
+ * still a {@link ConcurrentMap}, as when it extended ConcurrentHashMap; null
+ * keys and values are rejected the same way.
+ */
+public class LRUMap<K, V> extends AbstractMap<K, V> implements
+		ConcurrentMap<K, V> {
+
+	private static final class Node<K, V> {
+
+		final K key;
+
+		volatile V value;
+
+		volatile boolean referenced;
+
+		int slot;
+
+		Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	protected final int maxEntries;
+
+	private final ConcurrentHashMap<K, Node<K, V>> map;
+
+	private final Node<K, V>[] ring;
+
+	private int hand;
+
+	private int used;
+
+	private long evictions;
+
+	@SuppressWarnings("unchecked")
+	public LRUMap(int initialEntries, int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be greater than 0");
+		}
+		this.maxEntries = maxEntries;
+		this.map = new ConcurrentHashMap<K, Node<K, V>>(Math.max(
+				initialEntries, 16), 0.8f, 3);
+		this.ring = new Node[maxEntries];
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	@Override
+	public V get(Object key) {
+		Node<K, V> node = map.get(key);
+		if (node == null) {
+			return null;
+		}
+		node.referenced = true;
+		return node.value;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return map.containsKey(key);
+	}
+
+	@Override
+	public V put(K key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value");
+		}
+		synchronized (ring) {
+			Node<K, V> node = map.get(key);
+			if (node != null) {
+				V old = node.value;
+				node.value = value;
+				node.referenced = true;
+				return old;
+			}
+			node = new Node<K, V>(key, value);
+			node.slot = used < maxEntries ? freeSlot() : evict();
+			ring[node.slot] = node;
+			used++;
+			map.put(key, node);
+			return null;
+		}
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		synchronized (ring) {
+			V old = get(key);
+			if (old != null) {
+				return old;
+			}
+			put(key, value);
+			return null;
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		synchronized (ring) {
+			Node<K, V> node = map.remove(key);
+			if (node == null) {
+				return null;
+			}
+			ring[node.slot] = null;
+			used--;
+			return node.value;
+		}
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		synchronized (ring) {
+			Node<K, V> node = map.get(key);
+			if (node == null || !node.value.equals(value)) {
+				return false;
+			}
+			remove(key);
+			return true;
+		}
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (newValue == null) {
+			throw new NullPointerException("value");
+		}
+		synchronized (ring) {
+			Node<K, V> node = map.get(key);
+			if (node == null || !node.value.equals(oldValue)) {
+				return false;
+			}
+			node.value = newValue;
+			node.referenced = true;
+			return true;
+		}
+	}
+
+	@Override
+	public V replace(K key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value");
+		}
+		synchronized (ring) {
+			Node<K, V> node = map.get(key);
+			if (node == null) {
+				return null;
+			}
+			V old = node.value;
+			node.value = value;
+			node.referenced = true;
+			return old;
+		}
+	}
+
+	/**
+	 * Live view of the mappings. Iterating does not count as a use, entries
+	 * can be removed but not changed through it.
+	 */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				final Iterator<Node<K, V>> it = map.values().iterator();
+				return new Iterator<Map.Entry<K, V>>() {
+
+					private Node<K, V> last;
+
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					@Override
+					public Map.Entry<K, V> next() {
+						last = it.next();
+						return new AbstractMap.SimpleImmutableEntry<K, V>(
+								last.key, last.value);
+					}
+
+					@Override
+					public void remove() {
+						if (last == null) {
+							throw new IllegalStateException();
+						}
+						LRUMap.this.remove(last.key);
+						last = null;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return map.size();
+			}
+		};
+	}
+
+	private int freeSlot() {
+		for (;;) {
+			int slot = hand;
+			hand = (hand + 1) % maxEntries;
+			if (ring[slot] == null) {
+				return slot;
+			}
+		}
+	}
+
+	// sweeps at most two rounds: the first one may only clear flags
+	private int evict() {
+		for (;;) {
+			Node<K, V> node = ring[hand];
+			int slot = hand;
+			hand = (hand + 1) % maxEntries;
+			if (node == null) {
+				return slot;
+			}
+			if (node.referenced) {
+				node.referenced = false;
+				continue;
+			}
+			map.remove(node.key);
+			ring[slot] = null;
+			used--;
+			evictions++;
+			return slot;
+		}
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	public long getEvictions() {
+		synchronized (ring) {
+			return evictions;
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (ring) {
+			map.clear();
+			for (int i = 0; i < ring.length; i++) {
+				ring[i] = null;
+			}
+			used = 0;
+			hand = 0;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package com.ripple.utils.collection;
+
+import java.util.Arrays;
+
+/**
+ * Set of long values with open addressing and linear probing, backed by a
+ * single long array. Value 0 marks a free slot and is tracked on the side.
+ * Not synchronized.
+ */
+public class LongHashSet {
+
+	private final float loadFactor;
+
+	private long[] keys;
+
+	private int mask;
+
+	private int threshold;
+
+	private int size;
+
+	private boolean hasZero;
+
+	public LongHashSet() {
+		this(16);
+	}
+
+	public LongHashSet(int expected) {
+		this(expected, PrimitiveHash.DEFAULT_LOAD_FACTOR);
+	}
+
+	public LongHashSet(int expected, float loadFactor) {
+		this.loadFactor = loadFactor;
+		allocate(PrimitiveHash.capacityFor(expected, loadFactor));
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		mask = capacity - 1;
+		threshold = PrimitiveHash.thresholdFor(capacity, loadFactor);
+	}
+
+	public int size() {
+		return hasZero ? size + 1 : size;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	private int slot(long key) {
+		int i = PrimitiveHash.mix(key) & mask;
+		long k;
+		while ((k = keys[i]) != 0 && k != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	public boolean contains(long key) {
+		if (key == 0) {
+			return hasZero;
+		}
+		return keys[slot(key)] != 0;
+	}
+
+	/**
+	 * Returns true if the value was not already present.
+	 */
+	public boolean add(long key) {
+		if (key == 0) {
+			boolean added = !hasZero;
+			hasZero = true;
+			return added;
+		}
+		int i = slot(key);
+		if (keys[i] != 0) {
+			return false;
+		}
+		keys[i] = key;
+		if (++size > threshold) {
+			rehash(keys.length << 1);
+		}
+		return true;
+	}
+
+	public boolean remove(long key) {
+		if (key == 0) {
+			boolean removed = hasZero;
+			hasZero = false;
+			return removed;
+		}
+		int i = slot(key);
+		if (keys[i] == 0) {
+			return false;
+		}
+		shiftKeys(i);
+		size--;
+		return true;
+	}
+
+	private void shiftKeys(int gap) {
+		int i = gap;
+		for (;;) {
+			i = (i + 1) & mask;
+			long k = keys[i];
+			if (k == 0) {
+				break;
+			}
+			int home = PrimitiveHash.mix(k) & mask;
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = k;
+				gap = i;
+			}
+		}
+		keys[gap] = 0;
+	}
+
+	private void rehash(int capacity) {
+		if (capacity > PrimitiveHash.MAX_CAPACITY) {
+			throw new IllegalStateException("LongHashSet is full");
+		}
+		long[] oldKeys = keys;
+		allocate(capacity);
+		for (long k : oldKeys) {
+			if (k != 0) {
+				keys[slot(k)] = k;
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		size = 0;
+		hasZero = false;
+	}
+
+	public long[] toArray() {
+		long[] result = new long[size()];
+		int n = 0;
+		if (hasZero) {
+			result[n++] = 0;
+		}
+		for (long k : keys) {
+			if (k != 0) {
+				result[n++] = k;
+			}
+		}
+		return result;
+	}
+
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
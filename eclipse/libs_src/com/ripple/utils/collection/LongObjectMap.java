@@ -0,0 +1,247 @@
+package com.ripple.utils.collection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * long to object hash map with open addressing and linear probing, for
+ * tables keyed by ledger index, sequence or id that would otherwise box a
+ * Long for every lookup. Key 0 marks a free slot and is stored on the side;
+ * null values are not allowed. Not synchronized, see
+ * {@link ConcurrentLongMap} for a shared version.
+ */
+public class LongObjectMap<V> {
+
+	public final class Cursor {
+
+		private int index = -2;
+
+		public boolean next() {
+			if (index == -2) {
+				index = -1;
+				if (zeroValue != null) {
+					return true;
+				}
+			}
+			while (++index < keys.length) {
+				if (values[index] != null) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public long key() {
+			return index < 0 ? 0 : keys[index];
+		}
+
+		@SuppressWarnings("unchecked")
+		public V value() {
+			return (V) (index < 0 ? zeroValue : values[index]);
+		}
+	}
+
+	private final float loadFactor;
+
+	private long[] keys;
+
+	private Object[] values;
+
+	private int mask;
+
+	private int threshold;
+
+	private int size;
+
+	private V zeroValue;
+
+	public LongObjectMap() {
+		this(16);
+	}
+
+	public LongObjectMap(int expected) {
+		this(expected, PrimitiveHash.DEFAULT_LOAD_FACTOR);
+	}
+
+	public LongObjectMap(int expected, float loadFactor) {
+		this.loadFactor = loadFactor;
+		allocate(PrimitiveHash.capacityFor(expected, loadFactor));
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		threshold = PrimitiveHash.thresholdFor(capacity, loadFactor);
+	}
+
+	public int size() {
+		return zeroValue != null ? size + 1 : size;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	// a slot is in use when its value is set, which also covers key 0
+	private int slot(long key) {
+		int i = PrimitiveHash.mix(key) & mask;
+		while (values[i] != null && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		if (key == 0) {
+			return zeroValue;
+		}
+		return (V) values[slot(key)];
+	}
+
+	/**
+	 * Returns the previous value, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value");
+		}
+		if (key == 0) {
+			V old = zeroValue;
+			zeroValue = value;
+			return old;
+		}
+		int i = slot(key);
+		V old = (V) values[i];
+		keys[i] = key;
+		values[i] = value;
+		if (old == null && ++size > threshold) {
+			rehash(keys.length << 1);
+		}
+		return old;
+	}
+
+	public V putIfAbsent(long key, V value) {
+		V old = get(key);
+		if (old != null) {
+			return old;
+		}
+		put(key, value);
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		if (key == 0) {
+			V old = zeroValue;
+			zeroValue = null;
+			return old;
+		}
+		int i = slot(key);
+		V old = (V) values[i];
+		if (old != null) {
+			shiftKeys(i);
+			size--;
+		}
+		return old;
+	}
+
+	private void shiftKeys(int gap) {
+		int i = gap;
+		for (;;) {
+			i = (i + 1) & mask;
+			if (values[i] == null) {
+				break;
+			}
+			long k = keys[i];
+			int home = PrimitiveHash.mix(k) & mask;
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = k;
+				values[gap] = values[i];
+				gap = i;
+			}
+		}
+		keys[gap] = 0;
+		values[gap] = null;
+	}
+
+	private void rehash(int capacity) {
+		if (capacity > PrimitiveHash.MAX_CAPACITY) {
+			throw new IllegalStateException("LongObjectMap is full");
+		}
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != null) {
+				int i = slot(oldKeys[j]);
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		size = 0;
+		zeroValue = null;
+	}
+
+	public long[] keys() {
+		long[] result = new long[size()];
+		int n = 0;
+		if (zeroValue != null) {
+			result[n++] = 0;
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] != null) {
+				result[n++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		ArrayList<V> result = new ArrayList<V>(size());
+		if (zeroValue != null) {
+			result.add(zeroValue);
+		}
+		for (Object value : values) {
+			if (value != null) {
+				result.add((V) value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Walks the entries in table order. The map must not be structurally
+	 * modified while a cursor is in use.
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	public String toString() {
+		StringBuilder sbr = new StringBuilder("{");
+		Cursor cursor = cursor();
+		boolean first = true;
+		while (cursor.next()) {
+			if (!first) {
+				sbr.append(", ");
+			}
+			sbr.append(cursor.key()).append('=').append(cursor.value());
+			first = false;
+		}
+		return sbr.append('}').toString();
+	}
+}
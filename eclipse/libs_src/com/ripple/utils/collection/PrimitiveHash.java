@@ -0,0 +1,43 @@
+package com.ripple.utils.collection;
+
+/**
+ * Hashing and sizing shared by the open addressing primitive collections.
+ */
+final class PrimitiveHash {
+
+	static final float DEFAULT_LOAD_FACTOR = 0.6f;
+
+	static final int MAX_CAPACITY = 1 << 30;
+
+	private PrimitiveHash() {
+	}
+
+	// keys such as ledger indexes and sequences are nearly consecutive, so
+	// they are scrambled before masking or they would cluster in the table
+	static int mix(long key) {
+		long h = key * 0x9e3779b97f4a7c15L;
+		h ^= h >>> 32;
+		return (int) (h ^ (h >>> 16));
+	}
+
+	static int capacityFor(int expected, float loadFactor) {
+		if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor)) {
+			throw new IllegalArgumentException("Illegal load factor: "
+					+ loadFactor);
+		}
+		if (expected < 0) {
+			throw new IllegalArgumentException("Illegal initial capacity: "
+					+ expected);
+		}
+		long needed = (long) Math.ceil(expected / (double) loadFactor) + 1;
+		int capacity = 2;
+		while (capacity < needed && capacity < MAX_CAPACITY) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	static int thresholdFor(int capacity, float loadFactor) {
+		return Math.min(capacity - 1, (int) (capacity * loadFactor));
+	}
+}
@@ -0,0 +1,249 @@
+package com.ripple.utils.collection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+/**
+ * sun.misc.Unsafe reached through method handles bound once at class load.
+ * The handles are static final, so the JIT treats them as constants and
+ * inlines the underlying intrinsics; unlike reflective calls nothing is
+ * boxed and no argument array is built per call.
+ */
+public class SunUnsafe implements Unsafe {
+
+	private static final Object THE_UNSAFE;
+
+	private static final MethodHandle GET_LONG, PUT_LONG, GET_INT, GET_BYTE,
+			PUT_BYTE, ALLOCATE_MEMORY, FREE_MEMORY, SET_MEMORY, COPY_MEMORY,
+			ARRAY_BASE_OFFSET, ARRAY_INDEX_SCALE, ALLOCATE_INSTANCE,
+			THROW_EXCEPTION;
+
+	private static final Throwable FAILURE;
+
+	static {
+		Object unsafe = null;
+		MethodHandle getLong = null, putLong = null, getInt = null;
+		MethodHandle getByte = null, putByte = null;
+		MethodHandle allocateMemory = null, freeMemory = null;
+		MethodHandle setMemory = null, copyMemory = null;
+		MethodHandle arrayBaseOffset = null, arrayIndexScale = null;
+		MethodHandle allocateInstance = null, throwException = null;
+		Throwable failure = null;
+		try {
+			unsafe = AccessController
+					.doPrivileged(new PrivilegedAction<Object>() {
+						@Override
+						public Object run() {
+							try {
+								Class<?> unsafeClass = Class
+										.forName("sun.misc.Unsafe");
+								Field field = unsafeClass
+										.getDeclaredField("theUnsafe");
+								field.setAccessible(true);
+								return field.get(null);
+							} catch (Exception e) {
+								throw new RuntimeException(e);
+							}
+						}
+					});
+			Class<?> type = unsafe.getClass();
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			getLong = bind(lookup, type, unsafe, "getLong", long.class,
+					Object.class, long.class);
+			putLong = bind(lookup, type, unsafe, "putLong", void.class,
+					Object.class, long.class, long.class);
+			getInt = bind(lookup, type, unsafe, "getInt", int.class,
+					Object.class, long.class);
+			getByte = bind(lookup, type, unsafe, "getByte", byte.class,
+					Object.class, long.class);
+			putByte = bind(lookup, type, unsafe, "putByte", void.class,
+					Object.class, long.class, byte.class);
+			allocateMemory = bind(lookup, type, unsafe, "allocateMemory",
+					long.class, long.class);
+			freeMemory = bind(lookup, type, unsafe, "freeMemory", void.class,
+					long.class);
+			setMemory = bind(lookup, type, unsafe, "setMemory", void.class,
+					long.class, long.class, byte.class);
+			copyMemory = bind(lookup, type, unsafe, "copyMemory", void.class,
+					Object.class, long.class, Object.class, long.class,
+					long.class);
+			arrayBaseOffset = bind(lookup, type, unsafe, "arrayBaseOffset",
+					int.class, Class.class);
+			arrayIndexScale = bind(lookup, type, unsafe, "arrayIndexScale",
+					int.class, Class.class);
+			allocateInstance = bind(lookup, type, unsafe, "allocateInstance",
+					Object.class, Class.class);
+			throwException = bind(lookup, type, unsafe, "throwException",
+					void.class, Throwable.class);
+		} catch (Throwable t) {
+			unsafe = null;
+			failure = t;
+		}
+		THE_UNSAFE = unsafe;
+		GET_LONG = getLong;
+		PUT_LONG = putLong;
+		GET_INT = getInt;
+		GET_BYTE = getByte;
+		PUT_BYTE = putByte;
+		ALLOCATE_MEMORY = allocateMemory;
+		FREE_MEMORY = freeMemory;
+		SET_MEMORY = setMemory;
+		COPY_MEMORY = copyMemory;
+		ARRAY_BASE_OFFSET = arrayBaseOffset;
+		ARRAY_INDEX_SCALE = arrayIndexScale;
+		ALLOCATE_INSTANCE = allocateInstance;
+		THROW_EXCEPTION = throwException;
+		FAILURE = failure;
+	}
+
+	private static MethodHandle bind(MethodHandles.Lookup lookup,
+			Class<?> type, Object unsafe, String name, Class<?> result,
+			Class<?>... params) throws Exception {
+		return lookup.unreflect(type.getMethod(name, params)).bindTo(unsafe)
+				.asType(MethodType.methodType(result, params));
+	}
+
+	public static boolean isAvailable() {
+		return THE_UNSAFE != null;
+	}
+
+	public SunUnsafe() {
+		if (THE_UNSAFE == null) {
+			throw new RuntimeException("sun.misc.Unsafe is not available",
+					FAILURE);
+		}
+	}
+
+	private static RuntimeException rethrow(Throwable t) {
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new RuntimeException(t);
+	}
+
+	@Override
+	public long getLong(Object base, long offset) {
+		try {
+			return (long) GET_LONG.invokeExact(base, offset);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public void putLong(Object base, long offset, long value) {
+		try {
+			PUT_LONG.invokeExact(base, offset, value);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public int getInt(Object base, long offset) {
+		try {
+			return (int) GET_INT.invokeExact(base, offset);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public byte getByte(Object base, long offset) {
+		try {
+			return (byte) GET_BYTE.invokeExact(base, offset);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public void putByte(Object base, long offset, byte value) {
+		try {
+			PUT_BYTE.invokeExact(base, offset, value);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public long allocateMemory(long bytes) {
+		try {
+			return (long) ALLOCATE_MEMORY.invokeExact(bytes);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public void freeMemory(long address) {
+		try {
+			FREE_MEMORY.invokeExact(address);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public void setMemory(long address, long bytes, byte value) {
+		try {
+			SET_MEMORY.invokeExact(address, bytes, value);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public void copyMemory(Object srcBase, long srcOffset, Object destBase,
+			long destOffset, long bytes) {
+		try {
+			COPY_MEMORY.invokeExact(srcBase, srcOffset, destBase, destOffset,
+					bytes);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public int arrayBaseOffset(Class<?> clazz) {
+		try {
+			return (int) ARRAY_BASE_OFFSET.invokeExact(clazz);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public int arrayIndexScale(Class<?> clazz) {
+		try {
+			return (int) ARRAY_INDEX_SCALE.invokeExact(clazz);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public Object allocateInstance(Class<?> clazz) {
+		try {
+			return (Object) ALLOCATE_INSTANCE.invokeExact(clazz);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	@Override
+	public void throwException(Throwable t) {
+		try {
+			THROW_EXCEPTION.invokeExact(t);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.ripple.utils.collection;
+
+public interface Unsafe {
+
+	public void throwException(Throwable t);
+
+	public int arrayIndexScale(Class<?> clazz);
+
+	public int arrayBaseOffset(Class<?> clazz);
+
+	public Object allocateInstance(Class<?> clazz);
+
+	public long getLong(Object base, long offset);
+
+	public void putLong(Object base, long offset, long value);
+
+	public int getInt(Object base, long offset);
+
+	public byte getByte(Object base, long offset);
+
+	public void putByte(Object base, long offset, byte value);
+
+	public long allocateMemory(long bytes);
+
+	public void freeMemory(long address);
+
+	public void setMemory(long address, long bytes, byte value);
+
+	public void copyMemory(Object srcBase, long srcOffset, Object destBase,
+			long destOffset, long bytes);
+}
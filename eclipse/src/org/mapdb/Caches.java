@@ -15,9 +15,13 @@
  */
 package org.mapdb;
 
+import java.io.IOError;
+import java.io.IOException;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
@@ -825,4 +829,574 @@ public final class Caches {
             return super.compareAndSwap(recid, expectedOldValue, newValue, serializer);
         }
     }
+
+    /**
+     * Cache which keeps records in serialized form in off-heap memory and is bounded by bytes, not by number of items.
+     * Tiny and huge records are charged for their real size, and cached data do not add to GC pressure.
+     * Each hit deserializes record again, so this cache saves store IO, decompression and decryption, but not
+     * deserialization.
+     * <p>
+     * Eviction follows W-TinyLFU: new records enter small LRU window (1% of budget), records leaving window
+     * are admitted into main segmented LRU only if they were used more often than record they would evict.
+     * Usage frequency is estimated by count-min sketch with 4 bit counters, which is periodically halved.
+     * <p>
+     * Records are copied into slots of direct memory pages, slot sizes are powers of two.
+     * Records larger than 1/8 of page get own buffer. Freed slots are reused, pages are kept until cache is cleared,
+     * so reserved memory can exceed budget by fragmentation across slot sizes.
+     * <p>
+     * Updated and deleted records are removed from cache, they are loaded again on next `get()`.
+     * <p>
+     * Records are spread by recid hash over up to 16 segments, each with its own lock, share of budget,
+     * sketch and pages, so lookups of different records rarely wait for each other.
+     */
+    public static class OffHeap extends EngineWrapper {
+
+        public static final int PAGE_SIZE = 1<<20;
+
+        protected static final int MIN_SLOT_SHIFT = 4;
+        protected static final int PAGE_SHIFT = 20;
+        /** records above this size get own buffer, large power of two slots would waste too much */
+        protected static final int MAX_SLOT = PAGE_SIZE>>>3;
+
+        /** most segments cache is split into, each gets at least {@link #MIN_SEGMENT_BYTES} of budget */
+        protected static final int MAX_SEGMENTS = 16;
+        protected static final long MIN_SEGMENT_BYTES = 4L*PAGE_SIZE;
+
+        protected static final byte WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+        protected final ReentrantLock[] locks;
+
+        protected final Fun.RecordCondition condition;
+
+        protected final long maxBytes;
+
+        /** records are spread over segments by recid hash, each segment has its own lock, budget, sketch and slab */
+        protected final Segment[] segments;
+        protected final int segmentMask;
+
+        protected static final class Node{
+            final long recid;
+            final int length;
+            /** slot size class, or -1 if record has its own buffer */
+            final int sizeClass;
+            final ByteBuffer buf;
+            /** index of page in segment which holds slot, or -1 */
+            final int page;
+            final int offset;
+            byte queue;
+            Node prev, next;
+
+            Node(long recid, int length, int sizeClass, ByteBuffer buf, int page, int offset) {
+                this.recid = recid;
+                this.length = length;
+                this.sizeClass = sizeClass;
+                this.buf = buf;
+                this.page = page;
+                this.offset = offset;
+            }
+
+            long slotSize(){
+                return sizeClass<0? length : 1L<<sizeClass;
+            }
+        }
+
+        /** doubly linked LRU list, head is most recent */
+        protected static final class NodeList{
+            Node head, tail;
+            long bytes;
+
+            void addFirst(Node n){
+                n.prev = null;
+                n.next = head;
+                if(head!=null) head.prev = n;
+                head = n;
+                if(tail==null) tail = n;
+                bytes+=n.slotSize();
+            }
+
+            void remove(Node n){
+                if(n.prev!=null) n.prev.next = n.next; else head = n.next;
+                if(n.next!=null) n.next.prev = n.prev; else tail = n.prev;
+                n.prev = n.next = null;
+                bytes-=n.slotSize();
+            }
+
+            void clear(){
+                head = tail = null;
+                bytes = 0;
+            }
+        }
+
+        /** W-TinyLFU cache over part of recids, all state is guarded by segment monitor */
+        protected static final class Segment{
+
+            final long maxBytes;
+            final long windowMax;
+            final long protectedMax;
+
+            final LongHashMap<Node> nodes = new LongHashMap<Node>();
+            final NodeList window = new NodeList();
+            final NodeList probation = new NodeList();
+            final NodeList protect = new NodeList();
+            final FrequencySketch sketch;
+
+            final ArrayList<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+            int pageUsed = PAGE_SIZE;
+            final long[][] freeSlots = new long[PAGE_SHIFT+1][];
+            final int[] freeSlotsSize = new int[PAGE_SHIFT+1];
+            long usedBytes;
+            boolean closed;
+
+            long hits, misses, evictions, rejections;
+
+            Segment(long maxBytes){
+                this.maxBytes = maxBytes;
+                this.windowMax = Math.max(1, maxBytes/100);
+                this.protectedMax = (maxBytes-windowMax)*8/10;
+                //assume average record around 256 bytes to size sketch
+                this.sketch = new FrequencySketch((int) Math.min(1<<22, Math.max(1024, maxBytes>>>8)));
+            }
+
+            /** copies cached record out of slab and records hit, returns null on miss */
+            synchronized byte[] read(long recid){
+                if(closed)
+                    throw new IllegalAccessError("DB has been closed");
+                sketch.increment(recid);
+                Node n = nodes.get(recid);
+                if(n==null){
+                    misses++;
+                    return null;
+                }
+                hits++;
+                onHit(n);
+                byte[] data = new byte[n.length];
+                ByteBuffer b = n.buf.duplicate();
+                b.position(n.offset);
+                b.get(data);
+                return data;
+            }
+
+            void onHit(Node n){
+                if(n.queue==WINDOW){
+                    window.remove(n);
+                    window.addFirst(n);
+                }else if(n.queue==PROBATION){
+                    probation.remove(n);
+                    n.queue = PROTECTED;
+                    protect.addFirst(n);
+                    while(protect.bytes>protectedMax && protect.tail!=n){
+                        Node demoted = protect.tail;
+                        protect.remove(demoted);
+                        demoted.queue = PROBATION;
+                        probation.addFirst(demoted);
+                    }
+                }else{
+                    protect.remove(n);
+                    protect.addFirst(n);
+                }
+            }
+
+            synchronized void store(long recid, byte[] data, int length){
+                if(closed) return;
+                Node old = nodes.remove(recid);
+                if(old!=null) unlink(old);
+                if(length>maxBytes-windowMax){
+                    rejections++;
+                    return;
+                }
+                Node n = allocate(recid, length);
+                ByteBuffer b = n.buf.duplicate();
+                b.position(n.offset);
+                b.put(data, 0, length);
+                nodes.put(recid, n);
+                n.queue = WINDOW;
+                window.addFirst(n);
+                usedBytes+=n.slotSize();
+
+                //move overflow from window into main space, if admitted
+                while(window.bytes>windowMax && window.tail!=null){
+                    Node candidate = window.tail;
+                    window.remove(candidate);
+                    candidate.queue = PROBATION;
+                    probation.addFirst(candidate);
+                    admit(candidate);
+                }
+            }
+
+            /** evicts from main space until it fits, candidate loses if it is used less than victim */
+            void admit(Node candidate){
+                final long mainMax = maxBytes-windowMax;
+                while(probation.bytes+protect.bytes>mainMax){
+                    Node victim = probation.tail;
+                    if(victim==candidate)
+                        victim = protect.tail;
+                    if(victim==null){
+                        evict(candidate, true);
+                        return;
+                    }
+                    if(sketch.frequency(candidate.recid)>sketch.frequency(victim.recid)){
+                        evict(victim, false);
+                    }else{
+                        evict(candidate, true);
+                        return;
+                    }
+                }
+            }
+
+            void evict(Node n, boolean rejected){
+                nodes.remove(n.recid);
+                unlink(n);
+                if(rejected) rejections++; else evictions++;
+            }
+
+            synchronized void invalidate(long recid){
+                if(closed) return;
+                Node n = nodes.remove(recid);
+                if(n!=null) unlink(n);
+            }
+
+            void unlink(Node n){
+                if(n.queue==WINDOW) window.remove(n);
+                else if(n.queue==PROBATION) probation.remove(n);
+                else protect.remove(n);
+                usedBytes-=n.slotSize();
+                if(n.sizeClass>=0){
+                    long[] stack = freeSlots[n.sizeClass];
+                    int size = freeSlotsSize[n.sizeClass];
+                    if(stack==null || stack.length==size){
+                        stack = freeSlots[n.sizeClass] = Arrays.copyOf(stack==null?new long[0]:stack, Math.max(16, size*2));
+                    }
+                    stack[size] = ((long)n.page<<32) | n.offset;
+                    freeSlotsSize[n.sizeClass] = size+1;
+                }
+            }
+
+            Node allocate(long recid, int length){
+                if(length>MAX_SLOT)
+                    return new Node(recid, length, -1, ByteBuffer.allocateDirect(length), -1, 0);
+                int sizeClass = Math.max(MIN_SLOT_SHIFT, 32-Integer.numberOfLeadingZeros(Math.max(1,length)-1));
+                int size = freeSlotsSize[sizeClass];
+                if(size>0){
+                    long slot = freeSlots[sizeClass][size-1];
+                    freeSlotsSize[sizeClass] = size-1;
+                    int page = (int) (slot>>>32);
+                    return new Node(recid, length, sizeClass, pages.get(page), page, (int) slot);
+                }
+                int slotSize = 1<<sizeClass;
+                if(pageUsed+slotSize>PAGE_SIZE){
+                    pages.add(ByteBuffer.allocateDirect(PAGE_SIZE));
+                    pageUsed = 0;
+                }
+                int page = pages.size()-1;
+                Node n = new Node(recid, length, sizeClass, pages.get(page), page, pageUsed);
+                pageUsed+=slotSize;
+                return n;
+            }
+
+            synchronized void clear(boolean closing){
+                if(closed) return;
+                nodes.clear();
+                window.clear();
+                probation.clear();
+                protect.clear();
+                pages.clear();
+                pageUsed = PAGE_SIZE;
+                Arrays.fill(freeSlots, null);
+                Arrays.fill(freeSlotsSize, 0);
+                usedBytes = 0;
+                if(closing) closed = true;
+            }
+        }
+
+        public OffHeap(Engine engine, long maxBytes, Fun.RecordCondition condition) {
+            super(engine);
+            if(maxBytes<=0)
+                throw new IllegalArgumentException();
+            locks = new ReentrantLock[CC.CONCURRENCY];
+            for(int i=0;i<locks.length;i++) {
+                locks[i] = new ReentrantLock(CC.FAIR_LOCKS);
+            }
+            this.maxBytes = maxBytes;
+            int count = (int) Math.min(MAX_SEGMENTS, Math.max(1, maxBytes/MIN_SEGMENT_BYTES));
+            count = Integer.highestOneBit(count);
+            segments = new Segment[count];
+            for(int i=0;i<count;i++){
+                segments[i] = new Segment(maxBytes/count);
+            }
+            segmentMask = count-1;
+            this.condition = condition!=null? condition : Fun.RECORD_ALWAYS_TRUE;
+        }
+
+        protected Segment segmentFor(long recid){
+            return segments[Store.lockPos(recid) & segmentMask];
+        }
+
+        @Override
+        public <A> A get(long recid, Serializer<A> serializer) {
+            final Segment segment = segmentFor(recid);
+            byte[] data = segment.read(recid);
+            if(data!=null)
+                return deserialize(data, serializer);
+
+            final Lock lock = locks[Store.lockPos(recid)];
+            lock.lock();
+            try{
+                A ret = super.get(recid, serializer);
+                if(ret!=null && condition.run(recid, ret, serializer)){
+                    DataIO.DataOutputByteArray out = new DataIO.DataOutputByteArray();
+                    try {
+                        serializer.serialize(out, ret);
+                    } catch (IOException e) {
+                        throw new IOError(e);
+                    }
+                    segment.store(recid, out.buf, out.pos);
+                }
+                return ret;
+            }finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public <A> void update(long recid, A value, Serializer<A> serializer) {
+            final Lock lock = locks[Store.lockPos(recid)];
+            lock.lock();
+            try{
+                segmentFor(recid).invalidate(recid);
+                super.update(recid, value, serializer);
+            }finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public <A> boolean compareAndSwap(long recid, A expectedOldValue, A newValue, Serializer<A> serializer) {
+            final Lock lock = locks[Store.lockPos(recid)];
+            lock.lock();
+            try{
+                segmentFor(recid).invalidate(recid);
+                return super.compareAndSwap(recid, expectedOldValue, newValue, serializer);
+            }finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public <A> void delete(long recid, Serializer<A> serializer) {
+            final Lock lock = locks[Store.lockPos(recid)];
+            lock.lock();
+            try{
+                segmentFor(recid).invalidate(recid);
+                super.delete(recid, serializer);
+            }finally {
+                lock.unlock();
+            }
+        }
+
+        protected static <A> A deserialize(byte[] data, Serializer<A> serializer){
+            try {
+                return serializer.deserialize(new DataIO.DataInputByteArray(data), data.length);
+            } catch (IOException e) {
+                throw new IOError(e);
+            }
+        }
+
+        public long getHitCount(){
+            long ret = 0;
+            for(Segment s:segments){
+                synchronized (s){
+                    ret+=s.hits;
+                }
+            }
+            return ret;
+        }
+
+        public long getMissCount(){
+            long ret = 0;
+            for(Segment s:segments){
+                synchronized (s){
+                    ret+=s.misses;
+                }
+            }
+            return ret;
+        }
+
+        /** @return records removed from main space to make room for more frequently used ones */
+        public long getEvictionCount(){
+            long ret = 0;
+            for(Segment s:segments){
+                synchronized (s){
+                    ret+=s.evictions;
+                }
+            }
+            return ret;
+        }
+
+        /** @return records which were not admitted into cache, or pushed out of window without admission */
+        public long getRejectionCount(){
+            long ret = 0;
+            for(Segment s:segments){
+                synchronized (s){
+                    ret+=s.rejections;
+                }
+            }
+            return ret;
+        }
+
+        public double getHitRate(){
+            long hits = getHitCount();
+            long total = hits+getMissCount();
+            return total==0?0:((double)hits)/total;
+        }
+
+        /** @return bytes of slots taken by cached records */
+        public long getUsedBytes(){
+            long ret = 0;
+            for(Segment s:segments){
+                synchronized (s){
+                    ret+=s.usedBytes;
+                }
+            }
+            return ret;
+        }
+
+        /** @return direct memory held by slab pages */
+        public long getReservedBytes(){
+            long ret = 0;
+            for(Segment s:segments){
+                synchronized (s){
+                    ret+=(long)s.pages.size()*PAGE_SIZE;
+                }
+            }
+            return ret;
+        }
+
+        public long getMaxBytes(){
+            return maxBytes;
+        }
+
+        public int getSize(){
+            int ret = 0;
+            for(Segment s:segments){
+                synchronized (s){
+                    ret+=s.nodes.size();
+                }
+            }
+            return ret;
+        }
+
+        public void resetStats(){
+            for(Segment s:segments){
+                synchronized (s){
+                    s.hits = s.misses = s.evictions = s.rejections = 0;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "OffHeap[size="+getSize()+", usedBytes="+getUsedBytes()+", maxBytes="+maxBytes+
+                    ", hits="+getHitCount()+", misses="+getMissCount()+", evictions="+getEvictionCount()+
+                    ", rejections="+getRejectionCount()+"]";
+        }
+
+        /** @return off-heap cache wrapped somewhere in given engine, or null */
+        public static OffHeap forEngine(Engine e){
+            while(e instanceof EngineWrapper){
+                if(e instanceof OffHeap) return (OffHeap) e;
+                e = ((EngineWrapper) e).getWrappedEngine();
+            }
+            return null;
+        }
+
+        protected void clearAll(boolean closing){
+            for(Segment s:segments){
+                s.clear(closing);
+            }
+        }
+
+        @Override
+        public void close() {
+            clearAll(true);
+            super.close();
+        }
+
+        @Override
+        public void rollback() {
+            clearAll(false);
+            super.rollback();
+        }
+
+        @Override
+        public void clearCache() {
+            clearAll(false);
+            super.clearCache();
+        }
+    }
+
+    /**
+     * Count-min sketch with four 4-bit counters per item, used to estimate access frequency.
+     * Counters saturate at 15 and are halved after number of increments reaches ten times table width,
+     * so old popularity fades.
+     */
+    protected static final class FrequencySketch{
+
+        static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        static final long RESET_MASK = 0x7777777777777777L;
+
+        final long[] table;
+        final int tableMask;
+        final int sampleSize;
+        int size;
+
+        FrequencySketch(int counters){
+            int length = Integer.highestOneBit(Math.max(16, counters)/16)*2;
+            table = new long[length];
+            tableMask = length-1;
+            sampleSize = 10*length*16/4;
+        }
+
+        static int spread(long e){
+            long h = e*0x9e3779b97f4a7c15L;
+            return (int) (h ^ (h>>>32));
+        }
+
+        int indexOf(int hash, int i){
+            long h = (hash+SEEDS[i])*SEEDS[i];
+            h+= h>>>32;
+            return ((int) h) & tableMask;
+        }
+
+        int frequency(long e){
+            int hash = spread(e);
+            int start = (hash & 3)<<2;
+            int freq = Integer.MAX_VALUE;
+            for(int i=0;i<4;i++){
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index]>>>((start+i)<<2)) & 0xF);
+                freq = Math.min(freq, count);
+            }
+            return freq;
+        }
+
+        void increment(long e){
+            int hash = spread(e);
+            int start = (hash & 3)<<2;
+            boolean added = false;
+            for(int i=0;i<4;i++){
+                int index = indexOf(hash, i);
+                int shift = (start+i)<<2;
+                long mask = 0xFL<<shift;
+                if((table[index]&mask)!=mask){
+                    table[index]+= 1L<<shift;
+                    added = true;
+                }
+            }
+            if(added && ++size>=sampleSize){
+                for(int i=0;i<table.length;i++)
+                    table[i] = (table[i]>>>1) & RESET_MASK;
+                size/=2;
+            }
+        }
+    }
 }
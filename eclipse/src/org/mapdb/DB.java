@@ -37,6 +37,12 @@ public class DB implements Closeable {
 
     /** Engine which provides persistence for this DB*/
     protected Engine engine;
+
+    /** commits running outside of DB lock, `close()` waits for them to finish. Guarded by DB lock */
+    protected int commitsInProgress = 0;
+
+    /** set by `close()`, new commits are refused while it waits. Guarded by DB lock */
+    protected boolean closing = false;
     /** already loaded named collections. It is important to keep collections as singletons, because of 'in-memory' locking*/
     protected Map<String, WeakReference<?>> namesInstanciated = new HashMap<String, WeakReference<?>>();
 
@@ -135,6 +141,12 @@ public class DB implements Closeable {
     }
 
 
+    protected static int checkSegmentCount(int segmentCount){
+        if(segmentCount<HTreeMap.MIN_SEGMENTS || segmentCount>HTreeMap.MAX_SEGMENTS || Integer.bitCount(segmentCount)!=1)
+            throw new IllegalArgumentException("segment count must be power of two between 16 and 256");
+        return segmentCount;
+    }
+
     public class HTreeMapMaker{
         protected final String name;
 
@@ -144,6 +156,7 @@ public class DB implements Closeable {
 
 
         protected boolean counter = false;
+        protected int segmentCount = HTreeMap.DEFAULT_SEGMENTS;
         protected Serializer<?> keySerializer = null;
         protected Serializer<?> valueSerializer = null;
         protected long expireMaxSize = 0L;
@@ -167,6 +180,12 @@ public class DB implements Closeable {
             return this;
         }
 
+        /** number of segments, each with its own lock. Power of two from 16 (default) to 256. More segments let more threads write concurrently. */
+        public HTreeMapMaker segmentCount(int segmentCount){
+            this.segmentCount = checkSegmentCount(segmentCount);
+            return this;
+        }
+
 
 
         /** keySerializer used to convert keys into/from binary form. */
@@ -283,6 +302,7 @@ public class DB implements Closeable {
         }
 
         protected boolean counter = false;
+        protected int segmentCount = HTreeMap.DEFAULT_SEGMENTS;
         protected Serializer<?> serializer = null;
         protected long expireMaxSize = 0L;
         protected long expireStoreSize = 0L;
@@ -294,6 +314,12 @@ public class DB implements Closeable {
         protected boolean pumpIgnoreDuplicates = false;
 
 
+        /** number of segments, each with its own lock. Power of two from 16 (default) to 256. */
+        public HTreeSetMaker segmentCount(int segmentCount){
+            this.segmentCount = checkSegmentCount(segmentCount);
+            return this;
+        }
+
         /** by default collection does not have counter, without counter updates are faster, but entire collection needs to be traversed to count items.*/
         public HTreeSetMaker counterEnable(){
             this.counter = true;
@@ -496,14 +522,14 @@ public class DB implements Closeable {
             expireMaxSize = catPut(name+".expireMaxSize",m.expireMaxSize);
             expireStoreSize = catPut(name+".expireStoreSize",m.expireStoreSize);
             //$DELAY$
-            expireHeads = new long[16];
-            expireTails = new long[16];
-            for(int i=0;i<16;i++){
+            expireHeads = new long[m.segmentCount];
+            expireTails = new long[m.segmentCount];
+            for(int i=0;i<m.segmentCount;i++){
                 expireHeads[i] = engine.put(0L,Serializer.LONG);
                 expireTails[i] = engine.put(0L,Serializer.LONG);
             }
             catPut(name+".expireHeads",expireHeads);
-            catPut(name+".expireTails",expireHeads);
+            catPut(name+".expireTails",expireTails);
         }
         //$DELAY$
 
@@ -511,7 +537,7 @@ public class DB implements Closeable {
         HTreeMap<K,V> ret = new HTreeMap<K,V>(engine,
                 catPut(name+".counterRecid",!m.counter ?0L:engine.put(0L, Serializer.LONG)),
                 catPut(name+".hashSalt",new Random().nextInt()),
-                catPut(name+".segmentRecids",HTreeMap.preallocateSegments(engine)),
+                catPut(name+".segmentRecids",HTreeMap.preallocateSegments(engine, m.segmentCount)),
                 catPut(name+".keySerializer",m.keySerializer,getDefaultSerializer()),
                 catPut(name+".valueSerializer",m.valueSerializer,getDefaultSerializer()),
                 expireTimeStart,expire,expireAccess,expireMaxSize, expireStoreSize, expireHeads ,expireTails,
@@ -602,22 +628,22 @@ public class DB implements Closeable {
             expireAccess = catPut(name+".expireAccess",m.expireAccess);
             expireMaxSize = catPut(name+".expireMaxSize",m.expireMaxSize);
             expireStoreSize = catPut(name+".expireStoreSize",m.expireStoreSize);
-            expireHeads = new long[16];
+            expireHeads = new long[m.segmentCount];
             //$DELAY$
-            expireTails = new long[16];
-            for(int i=0;i<16;i++){
+            expireTails = new long[m.segmentCount];
+            for(int i=0;i<m.segmentCount;i++){
                 expireHeads[i] = engine.put(0L,Serializer.LONG);
                 expireTails[i] = engine.put(0L,Serializer.LONG);
             }
             catPut(name+".expireHeads",expireHeads);
-            catPut(name+".expireTails",expireHeads);
+            catPut(name+".expireTails",expireTails);
         }
 
         //$DELAY$
         HTreeMap<K,Object> ret = new HTreeMap<K,Object>(engine,
                 catPut(name+".counterRecid",!m.counter ?0L:engine.put(0L, Serializer.LONG)),
                 catPut(name+".hashSalt",new Random().nextInt()),
-                catPut(name+".segmentRecids",HTreeMap.preallocateSegments(engine)),
+                catPut(name+".segmentRecids",HTreeMap.preallocateSegments(engine, m.segmentCount)),
                 catPut(name+".serializer",m.serializer,getDefaultSerializer()),
                 null,
                 expireTimeStart,expire,expireAccess,expireMaxSize, expireStoreSize, expireHeads ,expireTails,
@@ -663,6 +689,7 @@ public class DB implements Closeable {
         protected Fun.Function1 pumpValueExtractor;
         protected int pumpPresortBatchSize = -1;
         protected boolean pumpIgnoreDuplicates = false;
+        protected int pumpThreads = 1;
 
 
         /** nodeSize maximal size of node, larger node causes overflow and creation of new BTree node. Use large number for small keys, use small number for large keys.*/
@@ -729,6 +756,17 @@ public class DB implements Closeable {
             return this;
         }
 
+        /**
+         * Presort batches and write BTree nodes with given number of threads.
+         * Store must be thread safe, it is best to disable transactions for bulk import.
+         */
+        public BTreeMapMaker pumpParallel(int threads){
+            if(threads<=0)
+                throw new IllegalArgumentException("threads must be positive");
+            this.pumpThreads = threads;
+            return this;
+        }
+
 
         /**
          * If source iteretor contains an duplicate key, exception is thrown.
@@ -781,6 +819,7 @@ public class DB implements Closeable {
         protected Iterator<?> pumpSource;
         protected int pumpPresortBatchSize = -1;
         protected boolean pumpIgnoreDuplicates = false;
+        protected int pumpThreads = 1;
 
         /** nodeSize maximal size of node, larger node causes overflow and creation of new BTree node. Use large number for small keys, use small number for large keys.*/
         public BTreeSetMaker nodeSize(int nodeSize){
@@ -826,6 +865,17 @@ public class DB implements Closeable {
             return this;
         }
 
+        /**
+         * Presort batches and write BTree nodes with given number of threads.
+         * Store must be thread safe, it is best to disable transactions for bulk import.
+         */
+        public BTreeSetMaker pumpParallel(int threads){
+            if(threads<=0)
+                throw new IllegalArgumentException("threads must be positive");
+            this.pumpThreads = threads;
+            return this;
+        }
+
 
         public <K> NavigableSet<K> make(){
             return DB.this.createTreeSet(BTreeSetMaker.this);
@@ -934,7 +984,7 @@ public class DB implements Closeable {
             };
 
             m.pumpSource = Pump.sort(m.pumpSource,m.pumpIgnoreDuplicates, m.pumpPresortBatchSize,
-                    presortComp,getDefaultSerializer());
+                    presortComp,getDefaultSerializer(),m.pumpThreads);
         }
         //$DELAY$
         long counterRecid = !m.counter ?0L:engine.put(0L, Serializer.LONG);
@@ -952,7 +1002,8 @@ public class DB implements Closeable {
                     m.valuesOutsideNodes,
                     counterRecid,
                     m.keySerializer,
-                    (Serializer<V>)m.valueSerializer);
+                    (Serializer<V>)m.valueSerializer,
+                    m.pumpThreads);
         }
         //$DELAY$
         BTreeMap<K,V> ret = new BTreeMap<K,V>(engine,
@@ -1071,7 +1122,7 @@ public class DB implements Closeable {
         m.serializer = catPut(m.name+".keySerializer",m.serializer,new BTreeKeySerializer.BasicKeySerializer(getDefaultSerializer(),m.comparator));
 
         if(m.pumpPresortBatchSize!=-1){
-            m.pumpSource = Pump.sort(m.pumpSource,m.pumpIgnoreDuplicates, m.pumpPresortBatchSize,Collections.reverseOrder(m.comparator),getDefaultSerializer());
+            m.pumpSource = Pump.sort(m.pumpSource,m.pumpIgnoreDuplicates, m.pumpPresortBatchSize,Collections.reverseOrder(m.comparator),getDefaultSerializer(),m.pumpThreads);
         }
 
         long counterRecid = !m.counter ?0L:engine.put(0L, Serializer.LONG);
@@ -1090,7 +1141,8 @@ public class DB implements Closeable {
                     false,
                     counterRecid,
                     m.serializer,
-                    null);
+                    null,
+                    m.pumpThreads);
         }
         //$DELAY$
         NavigableSet<K> ret = new BTreeMap<K,Object>(
@@ -1626,6 +1678,18 @@ public class DB implements Closeable {
      */
     synchronized public void close(){
         if(engine == null) return;
+        //wait for commits running outside of DB lock, so the engine is not closed under them
+        closing = true;
+        boolean interrupted = false;
+        while(commitsInProgress>0){
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
         for(WeakReference r:namesInstanciated.values()){
             Object rr = r.get();
             if(rr !=null && rr instanceof Closeable)
@@ -1674,9 +1738,23 @@ public class DB implements Closeable {
      *
      * @see org.mapdb.Engine#commit()
      */
-    synchronized public void commit() {
-        checkNotClosed();
-        engine.commit();
+    public void commit() {
+        //engine commit runs outside of DB lock, so concurrent commits can meet in a group commit
+        Engine engine;
+        synchronized (this){
+            checkNotClosed();
+            if(closing) throw new IllegalAccessError("DB was already closed");
+            engine = this.engine;
+            commitsInProgress++;
+        }
+        try {
+            engine.commit();
+        }finally {
+            synchronized (this){
+                if(--commitsInProgress==0)
+                    notifyAll();
+            }
+        }
     }
 
     /**
@@ -45,6 +45,8 @@ public class DBMaker{
         String cache_softRef = "softRef";
         String cache_weakRef = "weakRef";
         String cache_lru = "lru";
+        String cache_offHeap = "offHeap";
+        String cacheOffHeapBytes = "cacheOffHeapBytes";
 
         String file = "file";
 
@@ -86,6 +88,10 @@ public class DBMaker{
         String freeSpaceReclaimQ = "freeSpaceReclaimQ";
         String commitFileSyncDisable = "commitFileSyncDisable";
 
+        String groupCommit = "groupCommit";
+        String groupCommitWindow = "groupCommitWindow";
+        String groupCommitMaxBatch = "groupCommitMaxBatch";
+
         String snapshots = "snapshots";
 
         String strictDBGet = "strictDBGet";
@@ -390,6 +396,24 @@ public class DBMaker{
         props.put(Keys.cache,Keys.cache_lru);
         return this;
     }
+
+    /**
+     * Enables off-heap cache bounded by size in bytes. Records are kept serialized in direct memory,
+     * so large caches do not slow down GC. Records are deserialized on each hit.
+     * Uses W-TinyLFU policy, which keeps frequently used records even under scans. `cacheSize` is ignored.
+     * <p>
+     * Hit, miss and eviction statistics are available from {@link Caches.OffHeap#forEngine(Engine)}.
+     *
+     * @param maxBytes maximal size of cached records in bytes
+     * @return this builder
+     */
+    public DBMaker cacheOffHeapEnable(long maxBytes){
+        if(maxBytes<=0)
+            throw new IllegalArgumentException("maxBytes must be positive");
+        props.put(Keys.cache,Keys.cache_offHeap);
+        props.setProperty(Keys.cacheOffHeapBytes,""+maxBytes);
+        return this;
+    }
     /**
      * Enables Memory Mapped Files, much faster storage option. However on 32bit JVM this mode could corrupt
      * your DB thanks to 4GB memory addressing limit.
@@ -658,6 +682,36 @@ public class DBMaker{
         return this;
     }
 
+    /**
+     * Enables group commit in Write-Ahead-Log. Commits from concurrent threads which queue up
+     * behind running sync are written into log together and share single sync.
+     * Single threaded commits are not delayed.
+     *
+     * @return this builder
+     */
+    public DBMaker groupCommitEnable(){
+        props.setProperty(Keys.groupCommit,TRUE);
+        return this;
+    }
+
+    /**
+     * Enables group commit and lets first commit in group wait for others.
+     * It waits up to `windowMicros` or until `maxBatch` commits joined.
+     * Trades commit latency for fewer syncs under many concurrent writers.
+     *
+     * @param windowMicros how long first commit waits for others, in microseconds
+     * @param maxBatch stop waiting once this many commits joined
+     * @return this builder
+     */
+    public DBMaker groupCommitWindow(int windowMicros, int maxBatch){
+        if(windowMicros<0 || maxBatch<=0)
+            throw new IllegalArgumentException();
+        props.setProperty(Keys.groupCommit,TRUE);
+        props.setProperty(Keys.groupCommitWindow,""+windowMicros);
+        props.setProperty(Keys.groupCommitMaxBatch,""+maxBatch);
+        return this;
+    }
+
 
 
     /** constructs DB using current settings */
@@ -745,6 +799,8 @@ public class DBMaker{
             engine = extendCacheSoftRef(engine);
         }else if (Keys.cache_lru.equals(cache)){
             engine = extendCacheLRU(engine);
+        }else if (Keys.cache_offHeap.equals(cache)){
+            engine = extendCacheOffHeap(engine);
         }else{
             throw new IllegalArgumentException("unknown cache type: "+cache);
         }
@@ -854,6 +910,11 @@ public class DBMaker{
         return new Caches.LRU(engine, cacheSize, cacheCondition);
     }
 
+    protected Engine extendCacheOffHeap(Engine engine) {
+        long maxBytes = propsGetLong(Keys.cacheOffHeapBytes, 64L*1024*1024);
+        return new Caches.OffHeap(engine, maxBytes, cacheCondition);
+    }
+
     protected Engine extendCacheWeakRef(Engine engine) {
         return new Caches.WeakSoftRef(engine,true, cacheCondition, threadFactory);
     }
@@ -935,7 +996,7 @@ public class DBMaker{
             Fun.Function1<Volume,String> volumeFactory,
             Fun.Function1<Volume,String> indexVolumeFactory) {
         boolean compressionEnabled = Keys.compression_lzf.equals(props.getProperty(Keys.compression));
-        return new StoreWAL(
+        StoreWAL wal = new StoreWAL(
                 fileName,
                 volumeFactory,
                 indexVolumeFactory,
@@ -945,6 +1006,12 @@ public class DBMaker{
                 propsGetBool(Keys.commitFileSyncDisable),
                 propsGetBool(Keys.checksum),compressionEnabled,propsGetXteaEncKey(),
                 0);
+        if(propsGetBool(Keys.groupCommit)){
+            wal.setGroupCommit(
+                    propsGetInt(Keys.groupCommitWindow,0)*1000L,
+                    propsGetInt(Keys.groupCommitMaxBatch,Integer.MAX_VALUE));
+        }
+        return wal;
     }
 
 
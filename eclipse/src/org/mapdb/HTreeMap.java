@@ -23,6 +23,9 @@ import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -38,8 +41,12 @@ import java.util.logging.Logger;
  * Larger number of records will increase hash collisions and performance
  * will degrade linearly with number of records (separate chaining).
  * <p>
- * Concurrent scalability is achieved by splitting HashMap into 16 segments, each with separate lock.
- * Very similar to {@link java.util.concurrent.ConcurrentHashMap}
+ * Concurrent scalability is achieved by splitting HashMap into segments (16 by default, up to 256),
+ * each with separate lock. Very similar to {@link java.util.concurrent.ConcurrentHashMap}
+ * <p>
+ * Reads are optimistic, in style of {@link java.util.concurrent.locks.StampedLock}: lookup runs without
+ * lock and is validated against segment stamp, read lock is only taken if writer was active.
+ * Access time updates for `expireAccess` are buffered per segment and applied by next writer.
  *
  * @author Jan Kotek
  */
@@ -50,6 +57,13 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
 
     protected static final int BUCKET_OVERFLOW = 4;
 
+    public static final int DEFAULT_SEGMENTS = 16;
+    /** segment and top dir level together must cover all 32 hash bits, so there are at least 16 segments */
+    public static final int MIN_SEGMENTS = 16;
+    public static final int MAX_SEGMENTS = 256;
+
+    protected static final int ACCESS_BUFFER_SIZE = 128;
+
     protected static final int DIV8 = 3;
     protected static final int MOD8 = 0x7;
 
@@ -224,9 +238,21 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     /** list of segments, this is immutable*/
     protected final long[] segmentRecids;
 
-    protected final ReentrantReadWriteLock[] segmentLocks = new ReentrantReadWriteLock[16];
-    {
-        for(int i=0;i< 16;i++)  segmentLocks[i]=new ReentrantReadWriteLock(CC.FAIR_LOCKS);
+    /** segment is top bits of hash */
+    protected final int segmentShift;
+
+    protected final ReentrantReadWriteLock[] segmentLocks;
+
+    /** incremented when write lock is taken and released, odd while segment is modified */
+    protected final AtomicLongArray segmentStamps;
+
+    /** recent reads waiting for expire access bump, null if access is not tracked */
+    protected final AccessBuffer[] accessBuffers;
+
+    protected static final class AccessBuffer{
+        /** pairs of expire node recid and segment stamp under which it was read */
+        final AtomicReferenceArray<long[]> slots = new AtomicReferenceArray<long[]>(ACCESS_BUFFER_SIZE);
+        final AtomicInteger pos = new AtomicInteger();
     }
 
 
@@ -251,11 +277,19 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
         }
 
 
-        if(segmentRecids.length!=16) throw new IllegalArgumentException();
+        final int segments = segmentRecids.length;
+        if(segments<MIN_SEGMENTS || segments>MAX_SEGMENTS || Integer.bitCount(segments)!=1)
+            throw new IllegalArgumentException("segment count must be power of two between 16 and 256");
+        if(expireHeads!=null && (expireHeads.length!=segments || expireTails.length!=segments))
+            throw new IllegalArgumentException();
 
         this.engine = engine;
         this.hashSalt = hashSalt;
-        this.segmentRecids = Arrays.copyOf(segmentRecids,16);
+        this.segmentRecids = Arrays.copyOf(segmentRecids,segments);
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segments);
+        this.segmentLocks = new ReentrantReadWriteLock[segments];
+        for(int i=0;i<segments;i++)  segmentLocks[i]=new ReentrantReadWriteLock(CC.FAIR_LOCKS);
+        this.segmentStamps = new AtomicLongArray(segments);
         this.keySerializer = keySerializer;
         this.valueSerializer = valueSerializer;
 
@@ -272,8 +306,14 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
         this.expireTimeStart = expireTimeStart;
         this.expireAccessFlag = expireAccess !=0L || expireMaxSize!=0 || expireStoreSize!=0;
         this.expireAccess = expireAccess;
-        this.expireHeads = expireHeads==null? null : Arrays.copyOf(expireHeads,16);
-        this.expireTails = expireTails==null? null : Arrays.copyOf(expireTails,16);
+        this.expireHeads = expireHeads==null? null : Arrays.copyOf(expireHeads,segments);
+        this.expireTails = expireTails==null? null : Arrays.copyOf(expireTails,segments);
+        if(expireAccessFlag){
+            accessBuffers = new AccessBuffer[segments];
+            for(int i=0;i<segments;i++) accessBuffers[i] = new AccessBuffer();
+        }else{
+            accessBuffers = null;
+        }
         this.expireMaxSizeFlag = expireMaxSize!=0;
         this.expireMaxSize = expireMaxSize;
         this.expireStoreSize = expireStoreSize;
@@ -298,13 +338,142 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
 
 
     protected static long[] preallocateSegments(Engine engine){
+        return preallocateSegments(engine, DEFAULT_SEGMENTS);
+    }
+
+    protected static long[] preallocateSegments(Engine engine, int segments){
         //prealocate segmentRecids, so we dont have to lock on those latter
-        long[] ret = new long[16];
-        for(int i=0;i<16;i++)
+        long[] ret = new long[segments];
+        for(int i=0;i<segments;i++)
             ret[i] = engine.put(new long[16][], DIR_SERIALIZER);
         return ret;
     }
 
+    public int getSegmentCount(){
+        return segmentRecids.length;
+    }
+
+    protected final int segment(int h){
+        return h>>>segmentShift;
+    }
+
+    /** takes write lock, caller must call {@link #unlockWrite(int)} in finally block which follows */
+    protected void lockWrite(int segment){
+        segmentLocks[segment].writeLock().lock();
+        writeLocked(segment);
+    }
+
+    protected boolean tryLockWrite(int segment){
+        if(!segmentLocks[segment].writeLock().tryLock())
+            return false;
+        writeLocked(segment);
+        return true;
+    }
+
+    private void writeLocked(int segment){
+        if(segmentLocks[segment].getWriteHoldCount()!=1)
+            return; //reentrant
+        long stamp = segmentStamps.getAndIncrement(segment);
+        if(accessBuffers==null)
+            return;
+        boolean ok = false;
+        try{
+            accessDrain(segment, stamp);
+            ok = true;
+        }finally {
+            if(!ok) unlockWrite(segment);
+        }
+    }
+
+    protected void unlockWrite(int segment){
+        if(segmentLocks[segment].getWriteHoldCount()==1)
+            segmentStamps.incrementAndGet(segment);
+        segmentLocks[segment].writeLock().unlock();
+    }
+
+    /**
+     * Records access for expiration. Bumping expire queue needs write lock, so accesses are queued
+     * and applied by next writer of segment. If queue is full, reader applies it, unless segment is busy.
+     * In that case access is dropped, expiration order is only approximate.
+     */
+    protected void accessRecord(int segment, long expireNodeRecid, long stamp){
+        AccessBuffer buf = accessBuffers[segment];
+        int i = buf.pos.getAndIncrement();
+        if(i>=0 && i<ACCESS_BUFFER_SIZE){
+            buf.slots.set(i, new long[]{expireNodeRecid, stamp});
+            return;
+        }
+        if(tryLockWrite(segment)){
+            try{
+                //drain was done by lock, now apply this access if nothing changed since read
+                if(segmentStamps.get(segment)-1==stamp)
+                    expireLinkBump(segment, expireNodeRecid, true);
+            }finally {
+                unlockWrite(segment);
+            }
+        }
+    }
+
+    /**
+     * Applies queued accesses, called once write lock is taken.
+     * Access read under other stamp may refer to already removed entry, so it is discarded.
+     */
+    protected void accessDrain(int segment, long stamp){
+        if(CC.PARANOID && ! (segmentLocks[segment].writeLock().isHeldByCurrentThread()))
+            throw new AssertionError();
+        AccessBuffer buf = accessBuffers[segment];
+        int size = buf.pos.get();
+        if(size==0) return;
+        if(size<0 || size>ACCESS_BUFFER_SIZE) size = ACCESS_BUFFER_SIZE;
+        for(int i=0;i<size;i++){
+            long[] access = buf.slots.getAndSet(i, null);
+            if(access!=null && access[1]==stamp)
+                expireLinkBump(segment, access[0], true);
+        }
+        buf.pos.set(0);
+    }
+
+    /**
+     * Finds node without taking lock. Lookup is valid if segment stamp did not change while it ran.
+     * Engine synchronizes record access, so if lookup saw any record written after stamp was read,
+     * it also sees incremented stamp. Otherwise lookup is repeated under read lock.
+     */
+    protected LinkedNode<K,V> getOptimistic(Object o, int h, int segment, boolean access){
+        long stamp = segmentStamps.get(segment);
+        if((stamp&1)==0){
+            LinkedNode<K,V> ln;
+            boolean valid;
+            try{
+                ln = getInner(o, h, segment);
+                valid = segmentStamps.get(segment)==stamp;
+            }catch(Throwable e){
+                //records changed under lookup and it failed, retry under lock
+                if(segmentStamps.get(segment)==stamp)
+                    throw e;
+                ln = null;
+                valid = false;
+            }
+            if(valid){
+                if(access && ln!=null)
+                    accessRecord(segment, ln.expireLinkNodeRecid, stamp);
+                return ln;
+            }
+        }
+
+        final Lock lock = segmentLocks[segment].readLock();
+        LinkedNode<K,V> ln;
+        lock.lock();
+        try{
+            ln = getInner(o, h, segment);
+            stamp = segmentStamps.get(segment);
+        }finally {
+            lock.unlock();
+        }
+        if(access && ln!=null)
+            accessRecord(segment, ln.expireLinkNodeRecid, stamp);
+        return ln;
+    }
+
 
 
     @Override
@@ -329,7 +498,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
         long counter = 0;
 
         //search tree, until we find first non null
-        for(int i=0;i<16;i++){
+        for(int i=0;i<segmentRecids.length;i++){
             try{
                 segmentLocks[i].readLock().lock();
 
@@ -376,7 +545,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     @Override
     public boolean isEmpty() {
         //search tree, until we find first non null
-        for(int i=0;i<16;i++){
+        for(int i=0;i<segmentRecids.length;i++){
             try{
                 segmentLocks[i].readLock().lock();
 
@@ -400,19 +569,9 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     public V get(final Object o){
         if(o==null) return null;
         final int h = hash(o);
-        final int segment = h >>>28;
-
-        final Lock lock = expireAccessFlag ? segmentLocks[segment].writeLock() : segmentLocks[segment].readLock();
-        lock.lock();
-        LinkedNode<K,V> ln;
-        try{
-            ln = getInner(o, h, segment);
+        final int segment = segment(h);
 
-            if(ln!=null && expireAccessFlag)
-                expireLinkBump(segment,ln.expireLinkNodeRecid,true);
-        }finally {
-            lock.unlock();
-        }
+        LinkedNode<K,V> ln = getOptimistic(o, h, segment, expireAccessFlag);
         if(valueCreator==null){
             if(ln==null)
                 return null;
@@ -439,19 +598,11 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     public V getPeek(final Object key){
         if(key==null) return null;
         final int h = hash(key);
-        final int segment = h >>>28;
-
-        final Lock lock = segmentLocks[segment].readLock();
-        lock.lock();
-
-        try{
-            LinkedNode<K,V> ln = getInner(key, h, segment);
-            if(ln==null) return null;
-            return ln.value;
-        }finally {
-            lock.unlock();
-        }
+        final int segment = segment(h);
 
+        LinkedNode<K,V> ln = getOptimistic(key, h, segment, false);
+        if(ln==null) return null;
+        return ln.value;
     }
 
     protected LinkedNode<K,V> getInner(Object o, int h, int segment) {
@@ -496,14 +647,14 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
             throw new IllegalArgumentException("null value");
 
         final int h = hash(key);
-        final int segment = h >>>28;
-        segmentLocks[segment].writeLock().lock();
+        final int segment = segment(h);
+        lockWrite(segment);
         try{
 
             return putInner(key, value, h, segment);
 
         }finally {
-            segmentLocks[segment].writeLock().unlock();
+            unlockWrite(segment);
         }
     }
 
@@ -625,12 +776,12 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     public V remove(Object key){
 
         final int h = hash(key);
-        final int segment = h >>>28;
-        segmentLocks[segment].writeLock().lock();
+        final int segment = segment(h);
+        lockWrite(segment);
         try{
             return removeInternal(key, segment, h, true);
         }finally {
-            segmentLocks[segment].writeLock().unlock();
+            unlockWrite(segment);
         }
     }
 
@@ -640,7 +791,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
         int level = 3;
         dirRecids[level] = segmentRecids[segment];
 
-        if(CC.PARANOID && ! (segment==h>>>28))
+        if(CC.PARANOID && ! (segment==segment(h)))
             throw new AssertionError();
 
         while(true){
@@ -767,20 +918,21 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
 
     @Override
     public void clear() {
-        for(int i = 0; i<16;i++) try{
-            segmentLocks[i].writeLock().lock();
-
-            final long dirRecid = segmentRecids[i];
-            recursiveDirClear(dirRecid);
+        for(int i = 0; i<segmentRecids.length;i++){
+            lockWrite(i);
+            try{
+                final long dirRecid = segmentRecids[i];
+                recursiveDirClear(dirRecid);
 
-            //set dir to null, as segment recid is immutable
-            engine.update(dirRecid, new long[16][], DIR_SERIALIZER);
+                //set dir to null, as segment recid is immutable
+                engine.update(dirRecid, new long[16][], DIR_SERIALIZER);
 
-            if(expireFlag)
-                while(expireLinkRemoveLast(i)!=null){} //TODO speedup remove all
+                if(expireFlag)
+                    while(expireLinkRemoveLast(i)!=null){} //TODO speedup remove all
 
-        }finally {
-            segmentLocks[i].writeLock().unlock();
+            }finally {
+                unlockWrite(i);
+            }
         }
     }
 
@@ -1031,7 +1183,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
 
         private LinkedNode[] advance(int lastHash){
 
-            int segment = lastHash >>>28;
+            int segment = segment(lastHash);
 
             //two phases, first find old item and increase hash
             try{
@@ -1074,28 +1226,31 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
 
         private LinkedNode[] findNextLinkedNode(int hash) {
             //second phase, start search from increased hash to find next items
-            for(int segment = Math.max(hash >>>28, lastSegment); segment<16;segment++){
-                final Lock lock = expireAccessFlag ? segmentLocks[segment].writeLock() :segmentLocks[segment].readLock() ;
+            for(int segment = Math.max(segment(hash), lastSegment); segment<segmentRecids.length;segment++){
+                final Lock lock = segmentLocks[segment].readLock();
+                LinkedNode ret[];
+                long stamp;
                 lock.lock();
                 try{
                     lastSegment = Math.max(segment,lastSegment);
                     long dirRecid = segmentRecids[segment];
-                    LinkedNode ret[] = findNextLinkedNodeRecur(dirRecid, hash, 3);
+                    ret = findNextLinkedNodeRecur(dirRecid, hash, 3);
+                    stamp = segmentStamps.get(segment);
                     if(CC.PARANOID && ret!=null) for(LinkedNode ln:ret){
-                        if(( hash(ln.key)>>>28!=segment))
+                        if(( segment(hash(ln.key))!=segment))
                             throw new AssertionError();
                     }
-                    //System.out.println(Arrays.asList(ret));
-                    if(ret !=null){
-                        if(expireAccessFlag){
-                            for(LinkedNode ln:ret) expireLinkBump(segment,ln.expireLinkNodeRecid,true);
-                        }
-                        return ret;
-                    }
-                    hash = 0;
                 }finally {
                     lock.unlock();
                 }
+                //System.out.println(Arrays.asList(ret));
+                if(ret !=null){
+                    if(expireAccessFlag){
+                        for(LinkedNode ln:ret) accessRecord(segment,ln.expireLinkNodeRecid,stamp);
+                    }
+                    return ret;
+                }
+                hash = 0;
             }
 
             return null;
@@ -1221,9 +1376,9 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
         if(key==null||value==null) throw new NullPointerException();
 
         final int h = HTreeMap.this.hash(key);
-        final int segment = h >>>28;
+        final int segment = segment(h);
+        lockWrite(segment);
         try{
-            segmentLocks[segment].writeLock().lock();
 
             LinkedNode<K,V> ln = HTreeMap.this.getInner(key,h,segment);
             if (ln==null)
@@ -1232,7 +1387,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
                 return ln.value;
 
         }finally {
-            segmentLocks[segment].writeLock().unlock();
+            unlockWrite(segment);
         }
     }
 
@@ -1240,9 +1395,9 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     public boolean remove(Object key, Object value) {
         if(key==null||value==null) throw new NullPointerException();
         final int h = HTreeMap.this.hash(key);
-        final int segment = h >>>28;
+        final int segment = segment(h);
+        lockWrite(segment);
         try{
-            segmentLocks[segment].writeLock().lock();
 
             LinkedNode otherVal = getInner(key, h, segment);
             if (otherVal!=null && valueSerializer.equals((V)otherVal.value,(V)value)) {
@@ -1252,7 +1407,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
                 return false;
 
         }finally {
-            segmentLocks[segment].writeLock().unlock();
+            unlockWrite(segment);
         }
     }
 
@@ -1260,9 +1415,9 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     public boolean replace(K key, V oldValue, V newValue) {
         if(key==null||oldValue==null||newValue==null) throw new NullPointerException();
         final int h = HTreeMap.this.hash(key);
-        final int segment = h >>>28;
+        final int segment = segment(h);
+        lockWrite(segment);
         try{
-            segmentLocks[segment].writeLock().lock();
 
             LinkedNode<K,V> ln = getInner(key, h,segment);
             if (ln!=null && valueSerializer.equals(ln.value, oldValue)) {
@@ -1272,7 +1427,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
                 return false;
 
         }finally {
-            segmentLocks[segment].writeLock().unlock();
+            unlockWrite(segment);
         }
     }
 
@@ -1280,16 +1435,16 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     public V replace(K key, V value) {
         if(key==null||value==null) throw new NullPointerException();
         final int h = HTreeMap.this.hash(key);
-        final int segment =  h >>>28;
+        final int segment =  segment(h);
+        lockWrite(segment);
         try{
-            segmentLocks[segment].writeLock().lock();
 
             if (getInner(key,h,segment)!=null)
                 return putInner(key, value,h,segment);
             else
                 return null;
         }finally {
-            segmentLocks[segment].writeLock().unlock();
+            unlockWrite(segment);
         }
     }
 
@@ -1498,7 +1653,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     public long getMaxExpireTime(){
         if(!expireFlag) return 0;
         long ret = 0;
-        for(int segment = 0;segment<16;segment++){
+        for(int segment = 0;segment<segmentRecids.length;segment++){
             segmentLocks[segment].readLock().lock();
             try{
                 long head = engine.get(expireHeads[segment],Serializer.LONG);
@@ -1519,7 +1674,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     public long getMinExpireTime(){
         if(!expireFlag) return 0;
         long ret = Long.MAX_VALUE;
-        for(int segment = 0;segment<16;segment++){
+        for(int segment = 0;segment<segmentRecids.length;segment++){
             segmentLocks[segment].readLock().lock();
             try{
                 long tail = engine.get(expireTails[segment],Serializer.LONG);
@@ -1597,7 +1752,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
         if(expireMaxSizeFlag){
             long size = counter.get();
             if(size>expireMaxSize){
-                removePerSegment=1+(size-expireMaxSize)/16;
+                removePerSegment=1+(size-expireMaxSize)/segmentRecids.length;
                 if(LOG.isLoggable(Level.FINE)){
                     LOG.log(Level.FINE, "HTreeMap expirator expireMaxSize, will remove {0,number,integer} entries per segment",
                             removePerSegment);
@@ -1620,7 +1775,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
         }
 
         long counter = 0;
-        for(int seg=0;seg<16;seg++){
+        for(int seg=0;seg<segmentRecids.length;seg++){
             if(shutdown)
                 return;
             counter+=expirePurgeSegment(seg, removePerSegment);
@@ -1632,7 +1787,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     }
 
     protected long expirePurgeSegment(int seg, long removePerSegment) {
-        segmentLocks[seg].writeLock().lock();
+        lockWrite(seg);
         try{
 //            expireCheckSegment(seg);
             long recid = engine.get(expireTails[seg],Serializer.LONG);
@@ -1642,7 +1797,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
                 n = engine.get(recid, ExpireLinkNode.SERIALIZER);
                 if(CC.PARANOID && ! (n!=ExpireLinkNode.EMPTY))
                     throw new AssertionError();
-                if(CC.PARANOID && ! ( n.hash>>>28 == seg))
+                if(CC.PARANOID && ! ( segment(n.hash) == seg))
                     throw new AssertionError();
 
                 final boolean remove = ++counter < removePerSegment ||
@@ -1676,7 +1831,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
             return counter;
 //            expireCheckSegment(seg);
         }finally{
-            segmentLocks[seg].writeLock().unlock();
+            unlockWrite(seg);
         }
     }
 
@@ -1744,7 +1899,7 @@ public class HTreeMap<K,V>   extends AbstractMap<K,V> implements ConcurrentMap<K
     }
 
     protected void notify(K key, V oldValue, V newValue) {
-        if(CC.PARANOID && ! (segmentLocks[hash(key)>>>28].isWriteLockedByCurrentThread()))
+        if(CC.PARANOID && ! (segmentLocks[segment(hash(key))].isWriteLockedByCurrentThread()))
             throw new AssertionError();
         Bind.MapListener<K,V>[] modListeners2  = modListeners;
         for(Bind.MapListener<K,V> listener:modListeners2){
@@ -18,6 +18,9 @@ package org.mapdb;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Data Pump moves data from one source to other.
@@ -64,96 +67,264 @@ public final class Pump {
      */
     public static <E> Iterator<E> sort(Iterator<E> source, boolean mergeDuplicates, final int batchSize,
             Comparator comparator, final Serializer serializer){
-        if(batchSize<=0) throw new IllegalArgumentException();
+        return sort(source, mergeDuplicates, batchSize, comparator, serializer, 1);
+    }
+
+    /**
+     * Sorts large data set by given `Comparator`. Data are sorted with in-memory cache and temporary files.
+     * <p>
+     * Source is read on current thread and cut into batches. Batches are sorted and spilled into temporary files
+     * by `threads` background threads, while next batch is being read. Up to `threads+2` batches are on heap.
+     * Sorted runs are then merged lazily by returned iterator.
+     *
+     * @param source iterator over unsorted data
+     * @param mergeDuplicates should be duplicate keys merged into single one?
+     * @param batchSize how much items can fit into heap memory
+     * @param comparator used to sort data
+     * @param serializer used to store data in temporary files
+     * @param threads number of threads used to sort and spill batches, 1 does all work on current thread
+     * @return iterator over sorted data set
+     */
+    public static <E> Iterator<E> sort(Iterator<E> source, boolean mergeDuplicates, final int batchSize,
+            Comparator comparator, final Serializer serializer, int threads){
+        if(batchSize<=0 || threads<=0) throw new IllegalArgumentException();
         if(comparator==null)
             comparator=Fun.COMPARATOR;
         if(source==null)
             source = Fun.EMPTY_ITERATOR;
 
-        int counter = 0;
-        final Object[] presort = new Object[batchSize];
-        final List<File> presortFiles = new ArrayList<File>();
-        final List<Integer> presortCount2 = new ArrayList<Integer>();
-
+        final Comparator comparator2 = comparator;
+        final List<SortRun> runs = new ArrayList<SortRun>();
+        final Workers workers = new Workers("MapDB Pump sort", threads, 1);
+        boolean ok = false;
         try{
+            int counter = 0;
+            Object[] presort = new Object[batchSize];
             while(source.hasNext()){
                 presort[counter]=source.next();
                 counter++;
 
                 if(counter>=batchSize){
-                    //sort all items
-                    Arrays.sort(presort,comparator);
-
-                    //flush presort into temporary file
-                    File f = File.createTempFile("mapdb","sort");
-                    f.deleteOnExit();
-                    presortFiles.add(f);
-                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
-                    for(Object e:presort){
-                        serializer.serialize(out,e);
-                    }
-                    out.close();
-                    presortCount2.add(counter);
-                    Arrays.fill(presort,0);
+                    //sort and flush batch on background thread, while next batch is read
+                    final Object[] batch = presort;
+                    final SortRun run = new SortRun();
+                    runs.add(run);
+                    workers.submit(new Runnable() {
+                        @Override public void run() {
+                            Arrays.sort(batch,comparator2);
+                            run.write(batch, batch.length, serializer);
+                        }
+                    });
+                    presort = new Object[batchSize];
                     counter = 0;
                 }
             }
-            //now all records from source are fetch
-            if(presortFiles.isEmpty()){
+            workers.finish();
+
+            //sort remaining items on heap
+            Arrays.sort(presort,0,counter,comparator);
+            if(runs.isEmpty()){
                 //no presort files were created, so on-heap sorting is enough
-                Arrays.sort(presort,0,counter,comparator);
+                ok = true;
                 return arrayIterator(presort,0, counter);
             }
 
-            final int[] presortCount = new int[presortFiles.size()];
-            for(int i=0;i<presortCount.length;i++) presortCount[i] = presortCount2.get(i);
             //compose iterators which will iterate over data saved in files
-            Iterator[] iterators = new Iterator[presortFiles.size()+1];
-            final DataInputStream[] ins = new DataInputStream[presortFiles.size()];
-            for(int i=0;i<presortFiles.size();i++){
-                ins[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(presortFiles.get(i))));
-                final int pos = i;
-                iterators[i] = new Iterator(){
-
-                    @Override public boolean hasNext() {
-                        return presortCount[pos]>0;
+            Iterator[] iterators = new Iterator[runs.size()+1];
+            for(int i=0;i<runs.size();i++){
+                iterators[i] = runs.get(i).iterator(serializer);
+            }
+            //and add iterator over data on-heap
+            iterators[iterators.length-1] = arrayIterator(presort,0,counter);
+
+            //and finally sort presorted iterators and return iterators over them
+            Iterator<E> ret = sort(comparator, mergeDuplicates, iterators);
+            ok = true;
+            return ret;
+        }finally{
+            workers.stop();
+            if(!ok){
+                for(SortRun run:runs) run.delete();
+            }
+        }
+    }
+
+    /** sorted batch spilled into temporary file */
+    protected static final class SortRun{
+
+        /** items are written in chunks of roughly this size, so merge holds only one chunk per run on heap */
+        static final int CHUNK_SIZE = 64*1024;
+
+        File file;
+        Volume vol;
+        int count;
+
+        /** chunk is stored as `int size, int count, data` */
+        void write(Object[] items, int size, Serializer serializer){
+            try {
+                file = File.createTempFile("mapdb","sort");
+                file.deleteOnExit();
+                vol = new Volume.FileChannelVol(file, false, CC.VOLUME_SLICE_SHIFT, 0);
+                DataIO.DataOutputByteArray out = new DataIO.DataOutputByteArray();
+                long offset = 0;
+                int inChunk = 0;
+                for(int i=0;i<size;i++){
+                    serializer.serialize(out, items[i]);
+                    inChunk++;
+                    if(out.pos>=CHUNK_SIZE || i==size-1){
+                        vol.ensureAvailable(offset+8+out.pos);
+                        vol.putInt(offset, out.pos);
+                        vol.putInt(offset+4, inChunk);
+                        vol.putData(offset+8, out.buf, 0, out.pos);
+                        offset+=8+out.pos;
+                        out.pos = 0;
+                        inChunk = 0;
                     }
+                }
+                count = size;
+            } catch (IOException e) {
+                throw new IOError(e);
+            }
+        }
 
-                    @Override public Object next() {
-                        try {
-                            Object ret =  serializer.deserialize(ins[pos],-1);
-                            if(--presortCount[pos]==0){
-                                ins[pos].close();
-                                presortFiles.get(pos).delete();
-                            }
-                            return ret;
-                        } catch (IOException e) {
-                            throw new IOError(e);
+        Iterator iterator(final Serializer serializer){
+            return new Iterator(){
+
+                int remaining = count;
+                int inChunk = 0;
+                long offset = 0;
+                DataInput in;
+
+                @Override public boolean hasNext() {
+                    return remaining>0;
+                }
+
+                @Override public Object next() {
+                    if(remaining<=0)
+                        throw new NoSuchElementException();
+                    try {
+                        if(inChunk==0){
+                            int size = vol.getInt(offset);
+                            inChunk = vol.getInt(offset+4);
+                            in = vol.getDataInput(offset+8, size);
+                            offset+=8+size;
                         }
+                        Object ret =  serializer.deserialize(in,-1);
+                        inChunk--;
+                        if(--remaining==0){
+                            delete();
+                        }
+                        return ret;
+                    } catch (IOException e) {
+                        throw new IOError(e);
                     }
+                }
 
-                    @Override public void remove() {
-                        //ignored
-                    }
+                @Override public void remove() {
+                    //ignored
+                }
+            };
+        }
 
-                };
+        void delete(){
+            if(vol!=null){
+                vol.close();
+                vol = null;
             }
+            if(file!=null)
+                file.delete();
+        }
+    }
 
-            //and add iterator over data on-heap
-            Arrays.sort(presort,0,counter,comparator);
-            iterators[iterators.length-1] = arrayIterator(presort,0,counter);
+    /**
+     * Fixed number of threads fed from bounded queue. Caller blocks if queue is full, so producer can not
+     * run too far ahead of workers. With single thread tasks run directly on calling thread.
+     */
+    protected static final class Workers{
 
-            //and finally sort presorted iterators and return iterators over them
-            return sort(comparator, mergeDuplicates, iterators);
+        static final Runnable STOP = new Runnable() {
+            @Override public void run() {
+            }
+        };
 
-        }catch(IOException e){
-            throw new IOError(e);
-        }finally{
-            for(File f:presortFiles) f.delete();
+        final int threads;
+        final BlockingQueue<Runnable> queue;
+        final CountDownLatch done;
+        volatile Throwable failure;
+        boolean stopped;
+
+        Workers(String name, int threads, int queueSize){
+            this.threads = threads;
+            if(threads<=1){
+                queue = null;
+                done = null;
+                return;
+            }
+            queue = new ArrayBlockingQueue<Runnable>(queueSize);
+            done = new CountDownLatch(threads);
+            for(int i=0;i<threads;i++){
+                Fun.ThreadFactory.BASIC.newThread(name+" "+i, new Runnable() {
+                    @Override public void run() {
+                        try{
+                            for(Runnable r = queue.take(); r!=STOP; r = queue.take()){
+                                //after failure just drain queue, so producer is not blocked
+                                if(failure==null) try{
+                                    r.run();
+                                }catch(Throwable e){
+                                    failure = e;
+                                }
+                            }
+                        }catch(InterruptedException e){
+                            failure = e;
+                        }finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+        }
+
+        void submit(Runnable r){
+            if(queue==null){
+                r.run();
+                return;
+            }
+            checkFailure();
+            try {
+                queue.put(r);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
         }
-    }
 
+        /** waits until all submitted tasks are finished and rethrows their failure */
+        void finish(){
+            stop();
+            checkFailure();
+        }
+
+        /** stops threads after queued tasks are finished, can be called repeatedly */
+        void stop(){
+            if(queue==null || stopped)
+                return;
+            stopped = true;
+            try {
+                for(int i=0;i<threads;i++)
+                    queue.put(STOP);
+                done.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
 
+        void checkFailure(){
+            Throwable e = failure;
+            if(e==null) return;
+            if(e instanceof RuntimeException) throw (RuntimeException) e;
+            if(e instanceof Error) throw (Error) e;
+            throw new RuntimeException(e);
+        }
+    }
 
 
     /**
@@ -166,75 +337,116 @@ public final class Pump {
      */
     public static <E> Iterator<E> sort(Comparator comparator, final boolean mergeDuplicates, final Iterator... iterators) {
         final Comparator comparator2 = comparator==null?Fun.COMPARATOR:comparator;
-        return new Iterator<E>(){
-
-            final NavigableSet<Object[]> items = new TreeSet<Object[]>(
-                    new Fun.ArrayComparator(new Comparator[]{comparator2,Fun.COMPARATOR}));
-
-            Object next = this; //is initialized with this so first `next()` will not throw NoSuchElementException
+        return new LoserTree<E>(comparator2, mergeDuplicates, iterators);
+    }
 
-            {
-                for(int i=0;i<iterators.length;i++){
-                    if(iterators[i].hasNext()){
-                        items.add(new  Object[]{iterators[i].next(), i});
-                    }
-                }
-                next();
+    /**
+     * K-way merge of sorted iterators. Each inner node of tournament tree remembers loser of its match,
+     * so next item is found by replaying single path from leaf to root, with log2(k) comparisons.
+     * Equal items are taken from iterator with lower index first.
+     */
+    protected static final class LoserTree<E> implements Iterator<E>{
+
+        final Comparator comparator;
+        final boolean mergeDuplicates;
+        final Iterator[] iterators;
+        final int k;
+        /** current item of each iterator */
+        final Object[] heads;
+        final boolean[] exhausted;
+        /** `tree[0]` is index of winner, other nodes keep index of loser */
+        final int[] tree;
+
+        Object last;
+        boolean started = false;
+
+        LoserTree(Comparator comparator, boolean mergeDuplicates, Iterator[] iterators) {
+            this.comparator = comparator;
+            this.mergeDuplicates = mergeDuplicates;
+            this.iterators = iterators;
+            k = iterators.length;
+            heads = new Object[k];
+            exhausted = new boolean[k];
+            tree = new int[Math.max(1,k)];
+            for(int i=0;i<k;i++){
+                advance(i);
             }
+            if(k>0)
+                tree[0] = build(1);
+        }
 
-
-            @Override public boolean hasNext() {
-                return next!=null;
+        private int build(int node){
+            if(node>=k)
+                return node-k;
+            int a = build(node*2);
+            int b = build(node*2+1);
+            if(beats(a,b)){
+                tree[node] = b;
+                return a;
             }
+            tree[node] = a;
+            return b;
+        }
 
-            @Override public E next() {
-                if(next == null)
-                    throw new NoSuchElementException();
+        private void advance(int i){
+            if(iterators[i].hasNext()){
+                heads[i] = iterators[i].next();
+            }else{
+                heads[i] = null;
+                exhausted[i] = true;
+            }
+        }
 
-                Object oldNext = next;
+        private boolean beats(int a, int b){
+            if(exhausted[b]) return true;
+            if(exhausted[a]) return false;
+            int c = comparator.compare(heads[a],heads[b]);
+            return c<0 || (c==0 && a<b);
+        }
 
-                Object[] lo = items.pollFirst();
-                if(lo == null){
-                    next = null;
-                    return (E) oldNext;
+        /** winner has changed its head, replay matches on path to root */
+        private void replay(int winner){
+            for(int node=(winner+k)>>>1; node>0; node>>>=1){
+                int loser = tree[node];
+                if(beats(loser,winner)){
+                    tree[node] = winner;
+                    winner = loser;
                 }
+            }
+            tree[0] = winner;
+        }
 
-                next = lo[0];
+        @Override public boolean hasNext() {
+            return k>0 && !exhausted[tree[0]];
+        }
 
-                if(oldNext!=this && comparator2.compare(oldNext,next)>0){
-                    throw new IllegalArgumentException("One of the iterators is not sorted");
-                }
+        @Override public E next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
 
-                Iterator iter = iterators[(Integer)lo[1]];
-                if(iter.hasNext()){
-                    items.add(new Object[]{iter.next(),lo[1]});
-                }
-
-                if(mergeDuplicates){
-                    while(true){
-                        Iterator<Object[]> subset = Fun.filter(items,next).iterator();
-                        if(!subset.hasNext())
-                            break;
-                        List toadd = new ArrayList();
-                        while(subset.hasNext()){
-                            Object[] t = subset.next();
-                            items.remove(t);
-                            iter = iterators[(Integer)t[1]];
-                            if(iter.hasNext())
-                                toadd.add(new Object[]{iter.next(),t[1]});
-                        }
-                        items.addAll(toadd);
-                    }
+            int winner = tree[0];
+            Object ret = heads[winner];
+            if(started && comparator.compare(last,ret)>0){
+                throw new IllegalArgumentException("One of the iterators is not sorted");
+            }
+            advance(winner);
+            replay(winner);
+
+            if(mergeDuplicates){
+                while(hasNext() && comparator.compare(heads[tree[0]],ret)==0){
+                    winner = tree[0];
+                    advance(winner);
+                    replay(winner);
                 }
-
-
-                return (E) oldNext;
             }
+            last = ret;
+            started = true;
+            return (E) ret;
+        }
 
-            @Override public void remove() {
-                throw new UnsupportedOperationException();
-            }
-        };
+        @Override public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
 
@@ -326,6 +538,105 @@ public final class Pump {
                                              BTreeKeySerializer keySerializer,
                                              Serializer<V> valueSerializer)
         {
+        return buildTreeMap(source, engine, keyExtractor, valueExtractor, ignoreDuplicates, nodeSize,
+                valuesStoredOutsideNodes, counterRecid, keySerializer, valueSerializer, 1);
+    }
+
+    /**
+     * Build BTreeMap (or TreeSet) from presorted data, same as
+     * {@link Pump#buildTreeMap(Iterator, Engine, Fun.Function1, Fun.Function1, boolean, int, boolean, long, BTreeKeySerializer, Serializer)}.
+     * <p>
+     * Tree is still assembled bottom-up on current thread, but with more `threads` nodes and values are
+     * serialized and written into engine by background threads. Recids are preallocated in order,
+     * so leafs can link to their neighbours before they are written. Engine must be thread safe.
+     *
+     * @param threads number of threads used to write nodes, 1 writes them on current thread
+     */
+    public static  <E,K,V> long buildTreeMap(Iterator<E> source,
+                                             Engine engine,
+                                             Fun.Function1<K, E> keyExtractor,
+                                             Fun.Function1<V, E> valueExtractor,
+                                             boolean ignoreDuplicates,
+                                             int nodeSize,
+                                             boolean valuesStoredOutsideNodes,
+                                             long counterRecid,
+                                             BTreeKeySerializer keySerializer,
+                                             Serializer<V> valueSerializer,
+                                             int threads)
+        {
+        if(threads<=0) throw new IllegalArgumentException();
+        Workers workers = new Workers("MapDB Pump writer", threads, threads*2);
+        try{
+            RecordWriter writer = new RecordWriter(engine, workers);
+            long rootRecid = buildTreeMap(source, engine, writer, keyExtractor, valueExtractor, ignoreDuplicates,
+                    nodeSize, valuesStoredOutsideNodes, counterRecid, keySerializer, valueSerializer);
+            writer.flush();
+            workers.finish();
+            return engine.put(rootRecid,Serializer.LONG); //root recid
+        }finally {
+            workers.stop();
+        }
+    }
+
+    /**
+     * Puts records directly, or under preallocated recids on worker threads.
+     * Records are passed to workers in batches, so queue handoff is not paid for every node.
+     */
+    protected static final class RecordWriter{
+
+        static final int BATCH = 64;
+
+        final Engine engine;
+        final Workers workers;
+        Object[] batch = new Object[BATCH*3];
+        int size = 0;
+
+        RecordWriter(Engine engine, Workers workers) {
+            this.engine = engine;
+            this.workers = workers;
+        }
+
+        <A> long put(A value, Serializer<A> serializer){
+            if(workers.queue==null)
+                return engine.put(value, serializer);
+            long recid = engine.preallocate();
+            batch[size*3] = recid;
+            batch[size*3+1] = value;
+            batch[size*3+2] = serializer;
+            if(++size==BATCH)
+                flush();
+            return recid;
+        }
+
+        void flush(){
+            if(size==0)
+                return;
+            final Object[] b = batch;
+            final int n = size;
+            batch = new Object[BATCH*3];
+            size = 0;
+            workers.submit(new Runnable() {
+                @Override public void run() {
+                    for(int i=0;i<n*3;i+=3){
+                        engine.update((Long) b[i], b[i+1], (Serializer) b[i+2]);
+                    }
+                }
+            });
+        }
+    }
+
+    private static  <E,K,V> long buildTreeMap(Iterator<E> source,
+                                             Engine engine,
+                                             RecordWriter writer,
+                                             Fun.Function1<K, E> keyExtractor,
+                                             Fun.Function1<V, E> valueExtractor,
+                                             boolean ignoreDuplicates,
+                                             int nodeSize,
+                                             boolean valuesStoredOutsideNodes,
+                                             long counterRecid,
+                                             BTreeKeySerializer keySerializer,
+                                             Serializer<V> valueSerializer)
+        {
 
 
         final double NODE_LOAD = 0.75;
@@ -372,7 +683,7 @@ public final class Pump {
                 Object val = valueExtractor!=null?valueExtractor.run(next):BTreeMap.EMPTY;
                 if(val==null) throw new NullPointerException("extractValue returned null value");
                 if(valuesStoredOutsideNodes){
-                    long recid = engine.put((V) val,valueSerializer);
+                    long recid = writer.put((V) val, valueSerializer);
                     val = new BTreeMap.ValRef(recid);
                 }
                 values.add(val);
@@ -401,7 +712,7 @@ public final class Pump {
                     keySerializer.arrayToKeys(keys.toArray()),
                     leftEdge,rightEdge, false,
                     values.toArray() , nextNode);
-            nextNode = engine.put(node,nodeSerializer);
+            nextNode = writer.put((BTreeMap.BNode) node, nodeSerializer);
             K nextKey = keys.get(0);
             keys.clear();
 
@@ -433,7 +744,7 @@ public final class Pump {
                         keySerializer.arrayToKeys(dirKeys.get(i).toArray()),
                         leftEdge2,rightEdge2, false,
                         toLongArray(dirRecids.get(i)));
-                long dirRecid = engine.put(dir,nodeSerializer);
+                long dirRecid = writer.put((BTreeMap.BNode) dir, nodeSerializer);
                 Object dirStart = dirKeys.get(i).get(0);
                 dirKeys.get(i).clear();
                 dirKeys.get(i).add(dirStart);
@@ -476,7 +787,7 @@ public final class Pump {
                     keySerializer.arrayToKeys(keys2.toArray()),
                     leftEdge3,rightEdge3, false,
                     toLongArray(dirRecids.get(i)));
-            long dirRecid = engine.put(dir,nodeSerializer);
+            long dirRecid = writer.put((BTreeMap.BNode) dir, nodeSerializer);
             Object dirStart = keys2.get(0);
             dirKeys.get(i+1).add(dirStart);
             dirRecids.get(i+1).add(dirRecid);
@@ -505,8 +816,7 @@ public final class Pump {
                 keySerializer.arrayToKeys(dirKeys.get(len).toArray()),
                 leftEdge4,rightEdge4, false,
                 toLongArray(dirRecids.get(len)));
-        long rootRecid = engine.put(dir, nodeSerializer);
-        return engine.put(rootRecid,Serializer.LONG); //root recid
+        return writer.put((BTreeMap.BNode) dir, nodeSerializer);
     }
 
     private static long[] toLongArray(List<Long> child) {
@@ -20,7 +20,10 @@ import java.io.DataInput;
 import java.io.IOError;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.zip.CRC32;
@@ -64,6 +67,17 @@ public class StoreWAL extends StoreDirect {
 
     protected final AtomicInteger logChecksum = new AtomicInteger();
 
+    /** guards group commit state below */
+    protected final Object groupLock = new Object();
+    protected boolean groupCommit = false;
+    protected long groupCommitWindowNanos = 0;
+    protected int groupCommitMaxBatch = Integer.MAX_VALUE;
+    /** group which the next leader will commit, callers join it until leader starts writing */
+    protected CommitGroup pendingGroup = new CommitGroup();
+    protected boolean groupLeaderActive = false;
+
+    protected final CommitStats commitStats = new CommitStats();
+
     public StoreWAL(
             String fileName,
             Fun.Function1<Volume,String> volFac,
@@ -468,8 +482,122 @@ public class StoreWAL extends StoreDirect {
         modified.put(ioRecid, TOMBSTONE);
     }
 
+    /**
+     * Enables group commit. Concurrent callers of {@link #commit()} are written into log together
+     * and acknowledged after single sync. First caller becomes leader, it waits up to
+     * `windowNanos` or until `maxBatch` callers joined, then commits on behalf of all of them.
+     * Callers arriving while leader writes form next group. With zero window only commits which
+     * queue up behind running sync are grouped, so single writer sees no extra latency.
+     *
+     * @param windowNanos how long leader waits for other commits, 0 to not wait
+     * @param maxBatch leader stops waiting once this many commits joined
+     */
+    public void setGroupCommit(long windowNanos, int maxBatch){
+        if(windowNanos<0 || maxBatch<=0)
+            throw new IllegalArgumentException();
+        synchronized (groupLock){
+            groupCommit = true;
+            groupCommitWindowNanos = windowNanos;
+            groupCommitMaxBatch = maxBatch;
+        }
+    }
+
+    public boolean isGroupCommit(){
+        synchronized (groupLock){
+            return groupCommit;
+        }
+    }
+
+    /** @return commit latency histogram and counters */
+    public CommitStats getCommitStats(){
+        return commitStats;
+    }
+
+    protected static final class CommitGroup{
+        int size;
+        boolean done;
+        Throwable failure;
+    }
+
     @Override
     public void commit() {
+        final long start = System.nanoTime();
+        CommitGroup group;
+        boolean interrupted = false;
+        synchronized (groupLock){
+            if(!groupCommit){
+                group = null;
+            }else{
+                group = pendingGroup;
+                group.size++;
+                if(group.size>=groupCommitMaxBatch)
+                    groupLock.notifyAll();
+                //wait until other leader commits our group, or until we can lead
+                while(!group.done && groupLeaderActive){
+                    try {
+                        groupLock.wait();
+                    } catch (InterruptedException e) {
+                        //commit can not be abandoned once joined
+                        interrupted = true;
+                    }
+                }
+                if(!group.done){
+                    groupLeaderActive = true;
+                    long deadline = start + groupCommitWindowNanos;
+                    while(group.size<groupCommitMaxBatch){
+                        long remaining = deadline - System.nanoTime();
+                        if(remaining<=0) break;
+                        try {
+                            TimeUnit.NANOSECONDS.timedWait(groupLock, remaining);
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    //close group, latecomers go to next one
+                    pendingGroup = new CommitGroup();
+                }
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+
+        if(group==null){
+            commitLog();
+            commitStats.record(start);
+            return;
+        }
+        if(group.done){
+            commitStats.recordLatency(start);
+            rethrow(group.failure);
+            return;
+        }
+
+        //this thread is leader
+        Throwable failure = null;
+        try{
+            commitLog();
+        }catch(Throwable e){
+            failure = e;
+        }
+        synchronized (groupLock){
+            group.failure = failure;
+            group.done = true;
+            groupLeaderActive = false;
+            groupLock.notifyAll();
+        }
+        commitStats.record(start);
+        rethrow(failure);
+    }
+
+    protected static void rethrow(Throwable e){
+        if(e==null) return;
+        if(e instanceof RuntimeException) throw (RuntimeException) e;
+        if(e instanceof Error) throw (Error) e;
+        throw new IOError(e);
+    }
+
+    /** writes modified records and seals log, one sync for all commits in group */
+    protected void commitLog() {
         lockAllWrite();
         try{
             if(serializerPojo!=null && serializerPojo.hasUnsavedChanges()){
@@ -1076,6 +1204,93 @@ public class StoreWAL extends StoreDirect {
         }
     }
 
+    /**
+     * Commit latency histogram and throughput counters. Latency is measured from call of
+     * {@link StoreWAL#commit()} until it returns, so it includes time spent waiting for group.
+     * Buckets are powers of two in microseconds, bucket `i` holds latencies below `2^i` us.
+     */
+    public static final class CommitStats{
+
+        public static final int BUCKETS = 40;
+
+        protected final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        protected final AtomicLong commits = new AtomicLong();
+        protected final AtomicLong syncs = new AtomicLong();
+        protected final AtomicLong totalNanos = new AtomicLong();
+        protected volatile long startNanos = System.nanoTime();
+
+        protected void record(long start){
+            syncs.incrementAndGet();
+            recordLatency(start);
+        }
+
+        protected void recordLatency(long start){
+            long nanos = System.nanoTime()-start;
+            long micros = Math.max(0, nanos/1000);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            commits.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+        }
+
+        /** @return number of finished commit() calls */
+        public long getCommitCount(){
+            return commits.get();
+        }
+
+        /** @return number of log writes and syncs, lower than commit count when commits were grouped */
+        public long getSyncCount(){
+            return syncs.get();
+        }
+
+        public double getMeanLatencyMicros(){
+            long c = commits.get();
+            return c==0?0:totalNanos.get()/1000D/c;
+        }
+
+        /** @return upper bound in microseconds of bucket which holds given percentile (0-100) */
+        public long getLatencyPercentileMicros(double percentile){
+            long[] h = getHistogram();
+            long total = 0;
+            for(long l:h) total+=l;
+            if(total==0) return 0;
+            long rank = (long) Math.ceil(total*percentile/100D);
+            long seen = 0;
+            for(int i=0;i<h.length;i++){
+                seen+=h[i];
+                if(seen>=rank && h[i]!=0)
+                    return 1L<<i;
+            }
+            return 1L<<(h.length-1);
+        }
+
+        public long[] getHistogram(){
+            long[] ret = new long[BUCKETS];
+            for(int i=0;i<ret.length;i++)
+                ret[i] = buckets.get(i);
+            return ret;
+        }
+
+        /** @return commits per second since creation or last reset */
+        public double getCommitsPerSecond(){
+            long elapsed = System.nanoTime()-startNanos;
+            return elapsed<=0?0:commits.get()*1e9/elapsed;
+        }
 
+        public void reset(){
+            for(int i=0;i<BUCKETS;i++)
+                buckets.set(i,0);
+            commits.set(0);
+            syncs.set(0);
+            totalNanos.set(0);
+            startNanos = System.nanoTime();
+        }
+
+        @Override
+        public String toString() {
+            return "CommitStats[commits="+getCommitCount()+", syncs="+getSyncCount()+
+                    ", mean="+getMeanLatencyMicros()+"us, p99<"+getLatencyPercentileMicros(99)+"us]";
+        }
+    }
 
 }
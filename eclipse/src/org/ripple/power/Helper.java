@@ -30,13 +30,14 @@ import java.util.regex.Pattern;
 import javax.swing.ImageIcon;
 
 import org.ripple.power.blockchain.list.RP;
-import org.ripple.power.collection.ByteArrayWrapper;
-import org.ripple.power.collection.LRUMap;
 import org.ripple.power.utils.ByteUtils;
 import org.spongycastle.crypto.Digest;
 import org.spongycastle.crypto.digests.RIPEMD160Digest;
 import org.spongycastle.util.encoders.Hex;
 
+import com.ripple.utils.collection.ByteArrayWrapper;
+import com.ripple.utils.collection.LRUMap;
+
 
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class Helper {
@@ -9,6 +9,8 @@ import java.io.UTFDataFormatException;
 import org.ripple.power.Closed;
 import org.ripple.power.utils.MathUtils;
 
+import com.ripple.utils.collection.ByteSlab;
+
 public class ArrayByte implements Closed{
 
 	public static final int BIG_ENDIAN = 0;
@@ -371,6 +373,17 @@ public class ArrayByte implements Closed{
 		}
 	}
 
+	/**
+	 * Copies the buffer into the slab and returns the handle of the copy.
+	 */
+	public long writeTo(ByteSlab slab) {
+		return slab.store(data, 0, data.length);
+	}
+
+	public static ArrayByte readFrom(ByteSlab slab, long handle) {
+		return new ArrayByte(slab.read(handle));
+	}
+
 	public int getType() {
 		return type;
 	}
@@ -84,12 +84,12 @@ public class LongArray {
 
 	public void addAll(long[] array, int offset, int length) {
 		long[] items = this.items;
-		int lengthNeeded = length + length;
+		int lengthNeeded = this.length + length;
 		if (lengthNeeded > items.length) {
 			items = relength(Math.max(8, (int) (lengthNeeded * 1.75f)));
 		}
-		System.arraycopy(array, offset, items, length, length);
-		length += length;
+		System.arraycopy(array, offset, items, this.length, length);
+		this.length += length;
 	}
 
 	public long get(int index) {
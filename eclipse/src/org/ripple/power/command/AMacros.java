@@ -1,5 +1,7 @@
 package org.ripple.power.command;
 
+import java.util.List;
+
 import org.json.JSONObject;
 import org.ripple.power.txns.CurrencyUtils;
 
@@ -17,6 +19,8 @@ public abstract class AMacros implements IMacros {
 
 	protected int line;
 
+	private MacroFuture future;
+
 	protected void error(Exception ex) {
 		if (log != null) {
 			log.err("line: %s\nexception: %s\n", line, ex.getMessage());
@@ -64,7 +68,57 @@ public abstract class AMacros implements IMacros {
 		return syncing;
 	}
 
+	/**
+	 * A new instance for one async command, or null if this macros can only
+	 * run blocking.
+	 */
+	protected AMacros newInstance() {
+		return null;
+	}
+
+	/**
+	 * Whether the command may run under async. Commands that submit a
+	 * transaction may not: two of them in flight from one account race for
+	 * the same Sequence.
+	 */
+	protected boolean isReadOnly(int type) {
+		return true;
+	}
+
+	/**
+	 * The command name if message is a command of this macros that may not
+	 * run under async, otherwise null.
+	 */
+	String refusesAsync(String message) {
+		List<String> list = DMacros.commandSplit(message, false);
+		if (list.isEmpty()) {
+			return null;
+		}
+		int type = lookupCommand(list.get(0));
+		return type == -1 || isReadOnly(type) ? null : getCommandName(type);
+	}
+
+	AMacros async(MacroFuture f) {
+		AMacros copy = newInstance();
+		if (copy != null) {
+			copy.future = f;
+		}
+		return copy;
+	}
+
 	protected void setSyncing(int type, boolean sy) {
+		if (future != null) {
+			if (sy != syncing) {
+				syncing = sy;
+				future.put(future.name + ".syncing", syncing);
+				if (syncing) {
+					future.start();
+				} else {
+					future.finish();
+				}
+			}
+			return;
+		}
 		syncing = sy;
 		macros.setVariable(clazz + getCommandName(type) + ".syncing", syncing);
 	}
@@ -105,7 +159,9 @@ public abstract class AMacros implements IMacros {
 	}
 
 	protected void setVar(int type, String key, Object value, boolean useThis) {
-		if (macros != null) {
+		if (future != null) {
+			future.put(useThis ? future.name : future.name + "." + key, value);
+		} else if (macros != null) {
 			if (useThis) {
 				macros.setVariable(clazz + getCommandName(type), value);
 			} else {
@@ -106,18 +106,12 @@ public class DMacros extends Conversion implements Serializable {
 
 	private DMacros innerCommand;
 
-	private List temps;
-
-	private List printTags;
-
-	private List randTags;
-
 	private int scriptSize;
 
 	private int offsetPos;
 
 	// 脚本数据列表
-	private String[] scriptList;
+	private Line[] scriptList;
 
 	// 脚本名
 	private String scriptName;
@@ -157,6 +151,56 @@ public class DMacros extends Conversion implements Serializable {
 		formatCommand("function", res);
 	}
 
+	DMacros(String fileName, Line[] lines) {
+		this.tmpName = fileName;
+		createCache(false);
+		formatCommand("function", lines);
+	}
+
+	/**
+	 * One script line, trimmed and split once. Running a script again, or
+	 * calling a recorded function, reuses the parts instead of parsing the
+	 * text of every line on every pass.
+	 */
+	static final class Line implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final String cmd;
+
+		final List temps;
+
+		final String[] words;
+
+		final List elseIf;
+
+		final List printTags;
+
+		final List randTags;
+
+		Line(String line) {
+			cmd = line.trim();
+			temps = commandSplit(cmd);
+			words = StringUtils.split(cmd, " ");
+			elseIf = words.length > 1 && IF_TAG.equals(words[1]) ? commandSplit(cmd
+					.replaceAll(ELSE_TAG, "").trim()) : null;
+			printTags = getNameTags(cmd, PRINT_TAG + BRACKET_LEFT_TAG,
+					BRACKET_RIGHT_TAG);
+			randTags = cmd.indexOf(RAND_TAG) != -1 ? getNameTags(cmd, RAND_TAG
+					+ BRACKET_LEFT_TAG, BRACKET_RIGHT_TAG) : null;
+		}
+	}
+
+	private static final List ELSE_CONDITION = commandSplit("if 1==1");
+
+	static Line[] compile(String[] res) {
+		Line[] lines = new Line[res.length];
+		for (int i = 0; i < res.length; i++) {
+			lines[i] = new Line(res[i]);
+		}
+		return lines;
+	}
+
 	public static void createCache(boolean free) {
 		if (free) {
 			if (scriptContext == null) {
@@ -204,6 +248,10 @@ public class DMacros extends Conversion implements Serializable {
 	}
 
 	public void formatCommand(String name, String[] res) {
+		formatCommand(name, compile(res));
+	}
+
+	void formatCommand(String name, Line[] res) {
 		if (!"function".equalsIgnoreCase(name)) {
 			if (functions != null) {
 				functions.clear();
@@ -241,12 +289,11 @@ public class DMacros extends Conversion implements Serializable {
 		this.elseif_bool = false;
 	}
 
-	private boolean setupIF(String commandString, String nowPosFlagName,
+	private boolean setupIF(List temps, String nowPosFlagName,
 			ArrayMap setEnvironmentList, ArrayMap conditionEnvironmentList) {
 		boolean result = false;
 		conditionEnvironmentList.put(nowPosFlagName, Boolean.valueOf(false));
 		try {
-			List temps = commandSplit(commandString);
 			int size = temps.size();
 			Object valueA = null;
 			Object valueB = null;
@@ -599,9 +646,9 @@ public class DMacros extends Conversion implements Serializable {
 		return resString.toString();
 	}
 
-	private void setupSET(String cmd) {
-		if (cmd.startsWith(SET_TAG)) {
-			List temps = commandSplit(cmd);
+	private void setupSET(Line line) {
+		if (line.cmd.startsWith(SET_TAG)) {
+			List temps = line.temps;
 			int len = temps.size();
 			String result = null;
 			if (len == 4) {
@@ -648,37 +695,35 @@ public class DMacros extends Conversion implements Serializable {
 	 * 随机数处理
 	 * 
 	 */
-	private void setupRandom(String cmd) {
+	private void setupRandom(Line line) {
+		String cmd = line.cmd;
+		List randTags = line.randTags;
 		// 随机数判定
-		if (cmd.indexOf(RAND_TAG) != -1) {
-			randTags = DMacros.getNameTags(cmd, RAND_TAG + BRACKET_LEFT_TAG,
-					BRACKET_RIGHT_TAG);
-			if (randTags != null) {
-				for (Iterator it = randTags.iterator(); it.hasNext();) {
-					String key = (String) it.next();
-					Object value = setEnvironmentList.get(key);
-					// 已存在变量
-					if (value != null) {
-						cmd = StringUtils
-								.replaceMatch(cmd, (RAND_TAG + BRACKET_LEFT_TAG
-										+ key + BRACKET_RIGHT_TAG).intern(),
-										value.toString());
-						// 设定有随机数生成范围
-					} else if (MathUtils.isNan(key)) {
-						cmd = StringUtils
-								.replaceMatch(
-										cmd,
-										(RAND_TAG + BRACKET_LEFT_TAG + key + BRACKET_RIGHT_TAG)
-												.intern(),
-										String.valueOf(GLOBAL_RAND
-												.nextInt(Integer.parseInt(key))));
-						// 无设定
-					} else {
-						cmd = StringUtils
-								.replaceMatch(cmd, (RAND_TAG + BRACKET_LEFT_TAG
-										+ key + BRACKET_RIGHT_TAG).intern(),
-										String.valueOf(GLOBAL_RAND.nextInt()));
-					}
+		if (randTags != null) {
+			for (Iterator it = randTags.iterator(); it.hasNext();) {
+				String key = (String) it.next();
+				Object value = setEnvironmentList.get(key);
+				// 已存在变量
+				if (value != null) {
+					cmd = StringUtils
+							.replaceMatch(cmd, (RAND_TAG + BRACKET_LEFT_TAG
+									+ key + BRACKET_RIGHT_TAG).intern(),
+									value.toString());
+					// 设定有随机数生成范围
+				} else if (MathUtils.isNan(key)) {
+					cmd = StringUtils
+							.replaceMatch(
+									cmd,
+									(RAND_TAG + BRACKET_LEFT_TAG + key + BRACKET_RIGHT_TAG)
+											.intern(),
+									String.valueOf(GLOBAL_RAND
+											.nextInt(Integer.parseInt(key))));
+					// 无设定
+				} else {
+					cmd = StringUtils
+							.replaceMatch(cmd, (RAND_TAG + BRACKET_LEFT_TAG
+									+ key + BRACKET_RIGHT_TAG).intern(),
+									String.valueOf(GLOBAL_RAND.nextInt()));
 				}
 			}
 		}
@@ -751,7 +796,8 @@ public class DMacros extends Conversion implements Serializable {
 			}
 
 			// 获得全行命令
-			String cmd = scriptList[offsetPos].trim();
+			Line line = scriptList[offsetPos];
+			String cmd = line.cmd;
 
 			// 清空脚本缓存
 			if (cmd.startsWith(RESET_CACHE_TAG)) {
@@ -789,10 +835,10 @@ public class DMacros extends Conversion implements Serializable {
 			}
 
 			// 执行随机数标记
-			setupRandom(cmd);
+			setupRandom(line);
 
 			// 执行获取变量标记
-			setupSET(cmd);
+			setupSET(line);
 
 			// 结束脚本中代码段标记
 			if (cmd.equals(END_TAG) || cmd.endsWith(END_TAG)) {
@@ -802,10 +848,10 @@ public class DMacros extends Conversion implements Serializable {
 
 			// 标注脚本中代码段标记
 			if (cmd.startsWith(BEGIN_TAG)) {
-				temps = commandSplit(cmd);
+				List temps = line.temps;
 				if (temps.size() == 2) {
 					functioning = true;
-					functions.put(temps.get(1), new String[0]);
+					functions.put(temps.get(1), new Line[0]);
 					return executeCommand;
 				}
 			}
@@ -813,10 +859,10 @@ public class DMacros extends Conversion implements Serializable {
 			// 开始记录代码段
 			if (functioning) {
 				int size = functions.size() - 1;
-				String[] function = (String[]) functions.get(size);
+				Line[] function = (Line[]) functions.get(size);
 				int index = function.length;
-				function = (String[]) CollectionUtils.expand(function, 1);
-				function[index] = cmd;
+				function = (Line[]) CollectionUtils.expand(function, 1);
+				function[index] = line;
 				functions.set(size, function);
 				return executeCommand;
 			}
@@ -824,10 +870,10 @@ public class DMacros extends Conversion implements Serializable {
 			// 执行代码段调用标记
 			if (((!esleflag && !ifing) || (esleflag && ifing))
 					&& cmd.startsWith(CALL_TAG) && !isCall) {
-				temps = commandSplit(cmd);
+				List temps = line.temps;
 				if (temps.size() == 2) {
 					String functionName = (String) temps.get(1);
-					String[] funs = (String[]) functions.get(functionName);
+					Line[] funs = (Line[]) functions.get(functionName);
 					if (funs != null) {
 						innerCommand = new DMacros(scriptName + FLAG
 								+ functionName, funs);
@@ -848,25 +894,24 @@ public class DMacros extends Conversion implements Serializable {
 
 			// 条件判断a
 			if (if_bool) {
-				esleover = esleflag = setupIF(cmd, nowPosFlagName,
+				esleover = esleflag = setupIF(line.temps, nowPosFlagName,
 						setEnvironmentList, conditionEnvironmentList);
 				addCommand = false;
 				ifing = true;
 				// 条件判断b
 			} else if (elseif_bool) {
-				String[] value = StringUtils.split(cmd, " ");
+				String[] value = line.words;
 				if (!backIfBool && !esleflag) {
 					// 存在if判断
-					if (value.length > 1 && IF_TAG.equals(value[1])) {
-						esleover = esleflag = setupIF(
-								cmd.replaceAll(ELSE_TAG, "").trim(),
+					if (line.elseIf != null) {
+						esleover = esleflag = setupIF(line.elseIf,
 								nowPosFlagName, setEnvironmentList,
 								conditionEnvironmentList);
 						addCommand = false;
 						// 单纯的else
 					} else if (value.length == 1 && ELSE_TAG.equals(value[0])) {
 						if (!esleover) {
-							esleover = esleflag = setupIF("if 1==1",
+							esleover = esleflag = setupIF(ELSE_CONDITION,
 									nowPosFlagName, setEnvironmentList,
 									conditionEnvironmentList);
 							addCommand = false;
@@ -894,13 +939,13 @@ public class DMacros extends Conversion implements Serializable {
 			if (backIfBool) {
 				// 加载内部脚本
 				if (cmd.startsWith(INCLUDE_TAG)) {
-					if (includeCommand(cmd)) {
+					if (includeCommand(line)) {
 						return null;
 					}
 				}
 			} else if (cmd.startsWith(INCLUDE_TAG) && !ifing && !backIfBool
 					&& !esleflag) {
-				if (includeCommand(cmd)) {
+				if (includeCommand(line)) {
 					return null;
 				}
 			}
@@ -935,8 +980,9 @@ public class DMacros extends Conversion implements Serializable {
 
 			// 替换脚本字符串内容
 			if (executeCommand != null) {
-				printTags = DMacros.getNameTags(executeCommand, PRINT_TAG
-						+ BRACKET_LEFT_TAG, BRACKET_RIGHT_TAG);
+				List printTags = executeCommand == cmd ? line.printTags
+						: DMacros.getNameTags(executeCommand, PRINT_TAG
+								+ BRACKET_LEFT_TAG, BRACKET_RIGHT_TAG);
 				if (printTags != null) {
 					for (Iterator it = printTags.iterator(); it.hasNext();) {
 						String key = (String) it.next();
@@ -981,8 +1027,8 @@ public class DMacros extends Conversion implements Serializable {
 	 * @param cmd
 	 * @return
 	 */
-	private final boolean includeCommand(String cmd) {
-		temps = commandSplit(cmd);
+	private final boolean includeCommand(Line line) {
+		List temps = line.temps;
 		StringBuffer sbr = new StringBuffer();
 		for (int i = 1; i < temps.size(); i++) {
 			sbr.append(temps.get(i));
@@ -1200,21 +1246,6 @@ public class DMacros extends Conversion implements Serializable {
 		if (readBuffer != null) {
 			readBuffer = null;
 		}
-		if (temps != null) {
-			try {
-				temps.clear();
-				temps = null;
-			} catch (Exception e) {
-			}
-		}
-		if (printTags != null) {
-			printTags.clear();
-			printTags = null;
-		}
-		if (randTags != null) {
-			randTags.clear();
-			randTags = null;
-		}
 		if (exp != null) {
 			exp.dispose();
 		}
@@ -81,6 +81,12 @@ public interface Expression {
 	// 转折标记
 	String ELSE_TAG = "else";
 
+	// 异步执行标记
+	String ASYNC_TAG = "async";
+
+	// 等待异步结果标记
+	String AWAIT_TAG = "await";
+
 	// 以下为注视符号
 	String FLAG_L_TAG = "//";
 
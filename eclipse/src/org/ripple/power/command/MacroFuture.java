@@ -0,0 +1,72 @@
+package org.ripple.power.command;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Handle of a macro command started with async. Answers arrive on network
+ * threads and are kept here under the handle name; the script thread copies
+ * them into the macro variables when it awaits the handle, so nothing
+ * writes the variables while the script reads them.
+ */
+final class MacroFuture {
+
+	final String name;
+
+	private final LinkedHashMap<String, Object> values = new LinkedHashMap<String, Object>();
+
+	private int pending;
+
+	MacroFuture(String name) {
+		this.name = name;
+	}
+
+	synchronized void start() {
+		pending++;
+	}
+
+	synchronized void finish() {
+		if (pending > 0) {
+			pending--;
+		}
+		if (pending == 0) {
+			notifyAll();
+		}
+	}
+
+	synchronized boolean isDone() {
+		return pending == 0;
+	}
+
+	synchronized void put(String key, Object value) {
+		values.put(key, value);
+	}
+
+	/**
+	 * Waits until every command of the handle answered or the script is
+	 * stopped.
+	 */
+	synchronized boolean await(ROCScript script) {
+		while (pending > 0) {
+			if (script != null && script.isStopped()) {
+				return false;
+			}
+			try {
+				wait(100);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	synchronized void apply(DMacros macros) {
+		for (Iterator<Map.Entry<String, Object>> it = values.entrySet()
+				.iterator(); it.hasNext();) {
+			Map.Entry<String, Object> e = it.next();
+			macros.setVariable(e.getKey(), e.getValue());
+		}
+		values.clear();
+	}
+}
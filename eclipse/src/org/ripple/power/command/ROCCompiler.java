@@ -0,0 +1,1399 @@
+package org.ripple.power.command;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.ripple.power.collection.Array;
+import org.ripple.power.collection.ArrayMap;
+import org.ripple.power.command.ROCScript.ScriptException;
+import org.ripple.power.utils.StringUtils;
+
+/**
+ * Compiles ROC script text into a tree that {@link Program} walks. The text
+ * is scanned once; variables are numbered into slots, user functions and
+ * roc.* calls are bound when parsed and macro blocks are compiled into
+ * {@link DMacros.Line}s ahead of time, so loops and calls no longer re-read
+ * the source.
+ * <p>
+ * Scoping follows the token interpreter: a variable first assigned inside
+ * an if, for, while or function body is dropped when the block ends, while
+ * assigning to a variable that already has a value keeps it afterwards.
+ */
+final class ROCCompiler {
+
+	// 词法单元
+	private static final int T_EOL = 0;
+	private static final int T_EOP = 1;
+	private static final int T_NUMBER = 2;
+	private static final int T_STRING = 3;
+	private static final int T_BOOLEAN = 4;
+	private static final int T_IDENT = 5;
+	private static final int T_KEYWORD = 6;
+	private static final int T_OP = 7;
+	private static final int T_MACRO = 8;
+
+	// 运算符
+	static final int OP_ADD = 0;
+	static final int OP_SUB = 1;
+	static final int OP_MUL = 2;
+	static final int OP_DIV = 3;
+	static final int OP_MOD = 4;
+	static final int OP_POW = 5;
+	static final int OP_LT = 6;
+	static final int OP_LE = 7;
+	static final int OP_GT = 8;
+	static final int OP_GE = 9;
+	static final int OP_EQ = 10;
+	static final int OP_AND = 11;
+	static final int OP_OR = 12;
+	static final int OP_XOR = 13;
+	static final int OP_XAND = 14;
+	static final int OP_NOT = 15;
+	static final int OP_ASSIGN = 16;
+	static final int OP_COMMA = 17;
+	static final int OP_SEMI = 18;
+	static final int OP_LPAREN = 19;
+	static final int OP_RPAREN = 20;
+
+	private static final String DELIMS = ",+-/*%^();";
+
+	private static final int[] DELIM_OPS = { OP_COMMA, OP_ADD, OP_SUB, OP_DIV,
+			OP_MUL, OP_MOD, OP_POW, OP_LPAREN, OP_RPAREN, OP_SEMI };
+
+	private static final String[] WORD_OPS = { "and", "or", "xor", "xand",
+			"not" };
+
+	private static final int[] WORD_OP_CODES = { OP_AND, OP_OR, OP_XOR,
+			OP_XAND, OP_NOT };
+
+	// 脚本指令
+	private static final int K_PRINT = 0;
+	private static final int K_INPUT = 1;
+	private static final int K_RETURN = 2;
+	private static final int K_THEN = 3;
+	private static final int K_END = 4;
+	private static final int K_BEGIN = 5;
+	private static final int K_ELSE = 6;
+	private static final int K_IF = 7;
+	private static final int K_FOR = 8;
+	private static final int K_WHILE = 9;
+	private static final int K_FUNCTION = 10;
+	private static final int K_WAIT = 11;
+	private static final int K_PRINTLN = 12;
+
+	private static final String[] KEYWORDS = { "print", "input", "return",
+			"then", "end", "begin", "else", "if", "for", "while", "function",
+			"wait", "println" };
+
+	// 执行结果
+	static final int NEXT = 0;
+	static final int RETURN = 1;
+	static final int HALT = 2;
+
+	private static class Token {
+		final int type, code, line;
+		final String text;
+
+		Token(int type, int code, String text, int line) {
+			this.type = type;
+			this.code = code;
+			this.text = text;
+			this.line = line;
+		}
+
+		public String toString() {
+			return text;
+		}
+	}
+
+	private final ROCScript script;
+
+	private final ArrayList<Token> tokens = new ArrayList<Token>();
+
+	private int pos;
+
+	private final ArrayList<String> names = new ArrayList<String>();
+
+	private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+
+	private final HashMap<String, Function> functions = new HashMap<String, Function>();
+
+	private final ArrayList<Call> calls = new ArrayList<Call>();
+
+	private ROCCompiler(ROCScript script) {
+		this.script = script;
+	}
+
+	static Program compile(ROCScript script, char[] text)
+			throws ScriptException {
+		ROCCompiler compiler = new ROCCompiler(script);
+		compiler.scan(text);
+		compiler.declareFunctions();
+		Stmt[] body = compiler.block(-1, -1);
+		Token last = compiler.peek();
+		if (last.type != T_EOP) {
+			throw compiler.error(ROCScript.SYNTAX, last);
+		}
+		for (Call call : compiler.calls) {
+			if (call.args.length > call.function.params.length) {
+				throw script.scriptError(ROCScript.TOOMANYPARAMS, call.line,
+						call.function.name);
+			}
+		}
+		return new Program(script, body, compiler.names
+				.toArray(new String[compiler.names.size()]), compiler.slots);
+	}
+
+	private ScriptException error(int error, Token token) {
+		return script.scriptError(error, token.line, token.text);
+	}
+
+	private void add(int type, int code, String text, int line) {
+		tokens.add(new Token(type, code, text, line));
+	}
+
+	private static boolean isWordEnd(char ch) {
+		return ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n'
+				|| ch == '<' || ch == '>' || ch == '=' || ch == '#'
+				|| DELIMS.indexOf(ch) != -1;
+	}
+
+	private void scan(char[] text) throws ScriptException {
+		int length = text.length;
+		int line = 1;
+		int i = 0;
+		while (i < length) {
+			char ch = text[i];
+			if (ch == ' ' || ch == '\t') {
+				i++;
+				continue;
+			}
+			if (ch == '\r' || ch == '\n') {
+				if (ch == '\r' && i + 1 < length && text[i + 1] == '\n') {
+					i++;
+				}
+				i++;
+				add(T_EOL, 0, " ", line++);
+				continue;
+			}
+			if (ch == '#' || (ch == '/' && i + 1 < length && text[i + 1] == '/')) {
+				while (i < length && text[i] != '\r' && text[i] != '\n') {
+					i++;
+				}
+				continue;
+			}
+			if (ch == '<' || ch == '>' || ch == '=') {
+				boolean eq = i + 1 < length && text[i + 1] == '=';
+				int op;
+				if (ch == '<') {
+					op = eq ? OP_LE : OP_LT;
+				} else if (ch == '>') {
+					op = eq ? OP_GE : OP_GT;
+				} else {
+					op = eq ? OP_EQ : OP_ASSIGN;
+				}
+				add(T_OP, op, new String(text, i, eq ? 2 : 1), line);
+				i += eq ? 2 : 1;
+				continue;
+			}
+			int delim = DELIMS.indexOf(ch);
+			if (delim != -1) {
+				add(T_OP, DELIM_OPS[delim], String.valueOf(ch), line);
+				i++;
+				continue;
+			}
+			if (ch == '"') {
+				int start = ++i;
+				while (i < length && text[i] != '"' && text[i] != '\r'
+						&& text[i] != '\n') {
+					i++;
+				}
+				String str = new String(text, start, i - start);
+				if (i >= length || text[i] != '"') {
+					throw script.scriptError(ROCScript.MISSQUOTE, line, str);
+				}
+				add(T_STRING, 0, str, line);
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < length && !isWordEnd(text[i])) {
+				i++;
+			}
+			String word = new String(text, start, i - start);
+			String lower = word.toLowerCase();
+			if (StringUtils.isNumber(word)) {
+				add(T_NUMBER, 0, word, line);
+			} else if (lower.equals("true") || lower.equals("false")
+					|| lower.equals("yes") || lower.equals("no")
+					|| lower.equals("ok")) {
+				add(T_BOOLEAN, 0, word, line);
+			} else if (lower.equals("{")) {
+				// 宏指令原样保留到 '}'
+				int begin = i;
+				while (i < length && text[i] != '}') {
+					i++;
+				}
+				String macro = new String(text, begin, i - begin);
+				add(T_MACRO, 0, macro, line);
+				for (int j = begin; j < i; j++) {
+					if (text[j] == '\n') {
+						line++;
+					}
+				}
+				i++;
+			} else if (!lower.equals("}")) {
+				int code = indexOf(WORD_OPS, lower);
+				if (code != -1) {
+					add(T_OP, WORD_OP_CODES[code], word, line);
+				} else if ((code = indexOf(KEYWORDS, lower)) != -1) {
+					add(T_KEYWORD, code, word, line);
+				} else {
+					add(T_IDENT, 0, word, line);
+				}
+			}
+		}
+		add(T_EOP, 0, " ", line);
+	}
+
+	private static int indexOf(String[] table, String str) {
+		for (int i = 0; i < table.length; i++) {
+			if (table[i].equals(str)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Functions may be called above their definition, so their names are
+	 * known before any body is parsed.
+	 */
+	private void declareFunctions() throws ScriptException {
+		for (int i = 0; i + 1 < tokens.size(); i++) {
+			Token token = tokens.get(i);
+			if (token.type == T_KEYWORD && token.code == K_FUNCTION) {
+				Token name = tokens.get(i + 1);
+				if (name.type != T_IDENT
+						|| !Character.isLetter(name.text.charAt(0))) {
+					throw error(ROCScript.UNKOWN, name);
+				}
+				String key = name.text.toLowerCase();
+				if (functions.containsKey(key)) {
+					throw error(ROCScript.DUPFUNCTION, name);
+				}
+				functions.put(key, new Function(key));
+			}
+		}
+	}
+
+	private int slot(String name) {
+		Integer slot = slots.get(name);
+		if (slot == null) {
+			slot = names.size();
+			names.add(name);
+			slots.put(name, slot);
+		}
+		return slot;
+	}
+
+	private Token peek() {
+		return tokens.get(pos);
+	}
+
+	private Token next() {
+		Token token = tokens.get(pos);
+		if (token.type != T_EOP) {
+			pos++;
+		}
+		return token;
+	}
+
+	private boolean isOp(Token token, int op) {
+		return token.type == T_OP && token.code == op;
+	}
+
+	private boolean isKeyword(Token token, int keyword) {
+		return token.type == T_KEYWORD && token.code == keyword;
+	}
+
+	private Token expectOp(int op, int error) throws ScriptException {
+		Token token = next();
+		if (!isOp(token, op)) {
+			throw error(error, token);
+		}
+		return token;
+	}
+
+	private void expectKeyword(int keyword, int error) throws ScriptException {
+		Token token = next();
+		if (!isKeyword(token, keyword)) {
+			throw error(error, token);
+		}
+	}
+
+	private void endOfLine() throws ScriptException {
+		Token token = peek();
+		if (token.type != T_EOL && token.type != T_EOP) {
+			throw error(ROCScript.UNEXPITEM, token);
+		}
+	}
+
+	/**
+	 * Parses statements until one of the given keywords starts a line; the
+	 * keyword itself is left for the caller.
+	 */
+	private Stmt[] block(int stop, int stop2) throws ScriptException {
+		ArrayList<Stmt> list = new ArrayList<Stmt>();
+		for (;;) {
+			Token token = peek();
+			if (token.type == T_EOP) {
+				if (stop != -1) {
+					throw error(ROCScript.ENDEXPECTED, token);
+				}
+				break;
+			}
+			if (token.type == T_EOL) {
+				next();
+				continue;
+			}
+			if (token.type == T_KEYWORD
+					&& (token.code == stop || token.code == stop2)) {
+				break;
+			}
+			Stmt stmt = statement();
+			if (stmt != null) {
+				stmt.line = token.line;
+				list.add(stmt);
+			}
+		}
+		return list.toArray(new Stmt[list.size()]);
+	}
+
+	private Stmt statement() throws ScriptException {
+		Token token = next();
+		switch (token.type) {
+		case T_MACRO:
+			return new Macro("script" + token.line,
+					DMacros.compile(StringUtils.split(token.text, "\n")));
+		case T_IDENT:
+			if (functions.containsKey(token.text.toLowerCase())
+					|| ROCFunction.system_functs.contains(token.text
+							.toLowerCase())) {
+				Stmt stmt = new Eval(call(token));
+				endOfLine();
+				return stmt;
+			}
+			if (!Character.isLetter(token.text.charAt(0))) {
+				throw error(ROCScript.UNKOWN, token);
+			}
+			Token next = next();
+			if (isOp(next, OP_LPAREN)) {
+				throw error(ROCScript.UNKFUNCTION, token);
+			}
+			if (!isOp(next, OP_ASSIGN)) {
+				throw error(ROCScript.EQUALEXPECTED, next);
+			}
+			Stmt assign = new Assign(slot(token.text), expression());
+			endOfLine();
+			return assign;
+		case T_KEYWORD:
+			Stmt stmt = command(token);
+			endOfLine();
+			return stmt;
+		default:
+			throw error(ROCScript.UNEXPITEM, token);
+		}
+	}
+
+	private Stmt command(Token token) throws ScriptException {
+		switch (token.code) {
+		case K_PRINT:
+		case K_PRINTLN:
+			ArrayList<Expr> items = new ArrayList<Expr>();
+			StringBuilder separators = new StringBuilder();
+			while (peek().type != T_EOL && peek().type != T_EOP) {
+				items.add(expression());
+				Token sep = peek();
+				if (isOp(sep, OP_COMMA)) {
+					separators.append(' ');
+					next();
+				} else if (isOp(sep, OP_SEMI)) {
+					separators.append('\t');
+					next();
+				} else if (sep.type == T_EOL || sep.type == T_EOP) {
+					separators.append((char) 0);
+				} else {
+					throw error(ROCScript.SYNTAX, sep);
+				}
+			}
+			return new Print(items.toArray(new Expr[items.size()]),
+					separators.toString().toCharArray(),
+					token.code == K_PRINTLN);
+		case K_INPUT:
+			String prompt = null;
+			Token target = next();
+			if (target.type == T_STRING) {
+				prompt = target.text;
+				expectOp(OP_COMMA, ROCScript.SYNTAX);
+				target = next();
+			}
+			if (target.type != T_IDENT
+					|| !Character.isLetter(target.text.charAt(0))) {
+				throw error(ROCScript.UNKOWN, target);
+			}
+			return new Input(prompt, slot(target.text));
+		case K_IF:
+			ArrayList<Expr> conds = new ArrayList<Expr>();
+			ArrayList<Stmt[]> blocks = new ArrayList<Stmt[]>();
+			Stmt[] otherwise = null;
+			conds.add(expression());
+			expectKeyword(K_THEN, ROCScript.THENEXPECTED);
+			blocks.add(block(K_ELSE, K_END));
+			while (isKeyword(next(), K_ELSE)) {
+				if (isKeyword(peek(), K_IF)) {
+					next();
+					conds.add(expression());
+					expectKeyword(K_THEN, ROCScript.THENEXPECTED);
+					blocks.add(block(K_ELSE, K_END));
+				} else {
+					otherwise = block(K_END, -1);
+					next();
+					break;
+				}
+			}
+			return new If(conds.toArray(new Expr[conds.size()]),
+					blocks.toArray(new Stmt[blocks.size()][]), otherwise);
+		case K_FOR:
+			Token var = next();
+			if (var.type != T_IDENT || !Character.isLetter(var.text.charAt(0))) {
+				throw error(ROCScript.UNKOWN, var);
+			}
+			Expr init = null;
+			if (isOp(peek(), OP_ASSIGN)) {
+				next();
+				init = expression();
+			}
+			expectOp(OP_COMMA, ROCScript.SYNTAX);
+			Expr cond = expression();
+			expectOp(OP_COMMA, ROCScript.SYNTAX);
+			Expr step = expression();
+			expectKeyword(K_BEGIN, ROCScript.DOEXPECTED);
+			Stmt[] body = block(K_END, -1);
+			next();
+			return new For(slot(var.text), init, cond, step, body);
+		case K_WHILE:
+			Expr test = expression();
+			expectKeyword(K_BEGIN, ROCScript.DOEXPECTED);
+			Stmt[] loop = block(K_END, -1);
+			next();
+			return new While(test, loop);
+		case K_FUNCTION:
+			Function function = functions.get(next().text.toLowerCase());
+			expectOp(OP_LPAREN, ROCScript.SYNTAX);
+			ArrayList<Integer> params = new ArrayList<Integer>();
+			if (!isOp(peek(), OP_RPAREN)) {
+				for (;;) {
+					Token param = next();
+					if (param.type != T_IDENT
+							|| !Character.isLetter(param.text.charAt(0))) {
+						throw error(ROCScript.UNKOWN, param);
+					}
+					params.add(slot(param.text));
+					if (!isOp(peek(), OP_COMMA)) {
+						break;
+					}
+					next();
+				}
+			}
+			expectOp(OP_RPAREN, ROCScript.SYNTAX);
+			expectKeyword(K_BEGIN, ROCScript.SYNTAX);
+			function.params = new int[params.size()];
+			for (int i = 0; i < function.params.length; i++) {
+				function.params[i] = params.get(i);
+			}
+			function.body = block(K_END, -1);
+			next();
+			return null;
+		case K_RETURN:
+			Token value = peek();
+			return new Return(value.type == T_EOL || value.type == T_EOP ? null
+					: expression());
+		case K_WAIT:
+			Token time = next();
+			long sleep;
+			if (time.type == T_NUMBER) {
+				sleep = (long) Double.parseDouble(time.text);
+			} else {
+				sleep = ROCScript.waitTime(time.text);
+				if (sleep == -1) {
+					throw error(ROCScript.SYNTAX, time);
+				}
+			}
+			return new Wait(sleep <= 0 ? 1 : sleep);
+		default:
+			throw error(ROCScript.SYNTAX, token);
+		}
+	}
+
+	private Expr expression() throws ScriptException {
+		Expr left = relation();
+		Token token = peek();
+		if (token.type == T_OP && token.code >= OP_AND
+				&& token.code <= OP_XAND) {
+			next();
+			// and/or/xor/xand bind loosest and group to the right
+			return binary(token, left, expression());
+		}
+		return left;
+	}
+
+	private Expr relation() throws ScriptException {
+		Expr left = sum();
+		Token token;
+		while ((token = peek()).type == T_OP && token.code >= OP_LT
+				&& token.code <= OP_EQ) {
+			next();
+			left = binary(token, left, sum());
+		}
+		return left;
+	}
+
+	private Expr sum() throws ScriptException {
+		Expr left = product();
+		Token token;
+		while (isOp(token = peek(), OP_ADD) || isOp(token, OP_SUB)) {
+			next();
+			left = binary(token, left, product());
+		}
+		return left;
+	}
+
+	private Expr product() throws ScriptException {
+		Expr left = power();
+		Token token;
+		while (isOp(token = peek(), OP_MUL) || isOp(token, OP_DIV)
+				|| isOp(token, OP_MOD)) {
+			next();
+			left = binary(token, left, power());
+		}
+		return left;
+	}
+
+	private Expr power() throws ScriptException {
+		Expr left = unary();
+		Token token = peek();
+		if (isOp(token, OP_POW)) {
+			next();
+			return binary(token, left, power());
+		}
+		return left;
+	}
+
+	private Expr unary() throws ScriptException {
+		Token token = peek();
+		if (isOp(token, OP_SUB) || isOp(token, OP_NOT)) {
+			next();
+			Expr expr = new Unary(token.code, primary());
+			expr.line = token.line;
+			return expr;
+		}
+		return primary();
+	}
+
+	private Expr binary(Token op, Expr left, Expr right) {
+		Expr expr = new Binary(op.code, left, right);
+		expr.line = op.line;
+		return expr;
+	}
+
+	private Expr primary() throws ScriptException {
+		Token token = next();
+		Expr expr;
+		switch (token.type) {
+		case T_OP:
+			if (token.code != OP_LPAREN) {
+				throw error(ROCScript.INVALIDEXP, token);
+			}
+			expr = expression();
+			expectOp(OP_RPAREN, ROCScript.UNBALPARENS);
+			return expr;
+		case T_NUMBER:
+			try {
+				expr = new Const(Double.parseDouble(token.text));
+			} catch (NumberFormatException exc) {
+				throw error(ROCScript.NOTANUMB, token);
+			}
+			break;
+		case T_STRING:
+			expr = new Const(token.text);
+			break;
+		case T_BOOLEAN:
+			expr = new Const(script.toBoolean(token.text));
+			break;
+		case T_IDENT:
+			String key = token.text.toLowerCase();
+			if (functions.containsKey(key)
+					|| ROCFunction.system_functs.contains(key)) {
+				expr = call(token);
+			} else {
+				expr = new Var(slot(token.text), token.text);
+			}
+			break;
+		default:
+			throw error(ROCScript.INVALIDEXP, token);
+		}
+		expr.line = token.line;
+		return expr;
+	}
+
+	private Expr call(Token name) throws ScriptException {
+		expectOp(OP_LPAREN, ROCScript.UNBALPARENS);
+		String key = name.text.toLowerCase();
+		Expr expr;
+		if (ROCFunction.system_functs.contains(key)) {
+			// roc.* take their arguments as raw text, see execFunct
+			StringBuilder value = new StringBuilder();
+			Token token;
+			while (!isOp(token = next(), OP_RPAREN)) {
+				if (token.type == T_EOL || token.type == T_EOP) {
+					throw error(ROCScript.UNBALPARENS, token);
+				}
+				value.append(token.text);
+			}
+			expr = systemCall(name.text, value.toString());
+		} else {
+			ArrayList<Expr> args = new ArrayList<Expr>();
+			if (!isOp(peek(), OP_RPAREN)) {
+				args.add(expression());
+				while (isOp(peek(), OP_COMMA)) {
+					next();
+					args.add(expression());
+				}
+			}
+			expectOp(OP_RPAREN, ROCScript.UNBALPARENS);
+			Call call = new Call(functions.get(key), args
+					.toArray(new Expr[args.size()]));
+			calls.add(call);
+			expr = call;
+		}
+		expr.line = name.line;
+		return expr;
+	}
+
+	/**
+	 * Splits the raw argument text of a roc.* call the way
+	 * {@link ROCScript#systemFunction} does, deciding once which parts are
+	 * literals and which are variables to substitute.
+	 */
+	private SystemCall systemCall(String key, String value) {
+		String[] parts;
+		boolean[] literal;
+		if (value.indexOf(",") == -1) {
+			parts = new String[] { value };
+			literal = new boolean[] { value.length() == 0
+					|| value.indexOf("\"") != -1 || value.indexOf("/") != -1
+					|| StringUtils.isNumber(value) };
+		} else {
+			parts = StringUtils.split(value, ",");
+			literal = new boolean[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				literal[i] = parts[i].indexOf("\"") != -1
+						|| value.indexOf("/") != -1
+						|| StringUtils.isNumber(parts[i]);
+			}
+		}
+		int[] vars = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			vars[i] = literal[i] ? -1 : isName(parts[i]) ? slot(parts[i]) : -2;
+		}
+		return new SystemCall(key, parts, vars);
+	}
+
+	private static boolean isName(String text) {
+		if (text.length() == 0 || !Character.isLetter(text.charAt(0))) {
+			return false;
+		}
+		for (int i = 1; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (!Character.isLetterOrDigit(ch) && ch != '_') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static final class Function {
+		final String name;
+		int[] params = new int[0];
+		Stmt[] body = new Stmt[0];
+
+		Function(String name) {
+			this.name = name;
+		}
+	}
+
+	static abstract class Expr {
+		int line;
+
+		abstract Object eval(Program p) throws ScriptException;
+	}
+
+	static abstract class Stmt {
+		int line;
+
+		abstract int exec(Program p) throws ScriptException;
+	}
+
+	static final class Const extends Expr {
+		final Object value;
+
+		Const(Object value) {
+			this.value = value;
+		}
+
+		Object eval(Program p) {
+			return value;
+		}
+	}
+
+	static final class Var extends Expr {
+		final int slot;
+		final String name;
+
+		Var(int slot, String name) {
+			this.slot = slot;
+			this.name = name;
+		}
+
+		Object eval(Program p) throws ScriptException {
+			Object o = p.slots[slot];
+			if (o == null) {
+				o = p.script.getVarVal(name);
+			}
+			return p.script.toValue(o);
+		}
+	}
+
+	static final class Call extends Expr {
+		final Function function;
+		final Expr[] args;
+
+		Call(Function function, Expr[] args) {
+			this.function = function;
+			this.args = args;
+		}
+
+		Object eval(Program p) throws ScriptException {
+			Object[] values = new Object[args.length];
+			for (int i = 0; i < args.length; i++) {
+				values[i] = args[i].eval(p);
+			}
+			return p.invoke(function, values);
+		}
+	}
+
+	/**
+	 * A roc.* call. Its argument text was split when parsed; vars holds -1
+	 * for a literal part, the slot of a variable part, or -2 for a dotted
+	 * or otherwise unslotted name that is looked up by name.
+	 */
+	static final class SystemCall extends Expr {
+		final String key;
+		final String[] parts;
+		final int[] vars;
+
+		SystemCall(String key, String[] parts, int[] vars) {
+			this.key = key;
+			this.parts = parts;
+			this.vars = vars;
+		}
+
+		Object eval(Program p) throws ScriptException {
+			if (parts.length == 1) {
+				return p.script.systemCall(key, part(p, 0));
+			}
+			StringBuilder value = new StringBuilder();
+			for (int i = 0; i < parts.length; i++) {
+				if (i > 0) {
+					value.append(',');
+				}
+				value.append(part(p, i));
+			}
+			return p.script.systemCall(key, value.toString());
+		}
+
+		private String part(Program p, int i) throws ScriptException {
+			int slot = vars[i];
+			if (slot == -1) {
+				return parts[i];
+			}
+			Object o = slot >= 0 ? p.slots[slot] : null;
+			if (o == null) {
+				o = p.script.getVarVal(parts[i]);
+			}
+			String value = o.toString();
+			return "unkown".equalsIgnoreCase(value) ? parts[i] : value;
+		}
+	}
+
+	static final class Unary extends Expr {
+		final int op;
+		final Expr operand;
+
+		Unary(int op, Expr operand) {
+			this.op = op;
+			this.operand = operand;
+		}
+
+		Object eval(Program p) throws ScriptException {
+			Object o = operand.eval(p);
+			if (o instanceof Number) {
+				if (op != OP_SUB) {
+					throw p.error(ROCScript.NOTABOOL, line);
+				}
+				return -((Number) o).doubleValue();
+			} else if (o instanceof Boolean) {
+				if (op != OP_NOT) {
+					throw p.error(ROCScript.NOTANUMB, line);
+				}
+				return !(Boolean) o;
+			}
+			throw p.error(ROCScript.INVALIDEXP, line);
+		}
+	}
+
+	static final class Binary extends Expr {
+		final int op;
+		final Expr left, right;
+
+		Binary(int op, Expr left, Expr right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		private double number(Program p, Object o) throws ScriptException {
+			if (!(o instanceof Number)) {
+				throw p.error(ROCScript.NOTANUMB, line);
+			}
+			return ((Number) o).doubleValue();
+		}
+
+		private boolean bool(Program p, Object o) throws ScriptException {
+			if (!(o instanceof Boolean)) {
+				throw p.error(ROCScript.NOTABOOL, line);
+			}
+			return (Boolean) o;
+		}
+
+		Object eval(Program p) throws ScriptException {
+			Object l = left.eval(p);
+			Object r = right.eval(p);
+			if (l == null || r == null) {
+				throw p.error(ROCScript.INVALIDEXP, line);
+			}
+			switch (op) {
+			case OP_ADD:
+			case OP_SUB:
+				if (l instanceof Number) {
+					double a = ((Number) l).doubleValue();
+					double b = number(p, r);
+					return op == OP_ADD ? a + b : a - b;
+				}
+				if (p.script.isBoolean(l)) {
+					return l;
+				}
+				if (r instanceof Number || p.script.isBoolean(r)) {
+					throw p.error(ROCScript.NOTASTR, line);
+				}
+				if (op == OP_SUB) {
+					throw p.error(ROCScript.INVALIDEXP, line);
+				}
+				return l.toString() + r.toString();
+			case OP_MUL:
+				return number(p, l) * number(p, r);
+			case OP_DIV:
+			case OP_MOD:
+				double dividend = number(p, l);
+				double divisor = number(p, r);
+				if (divisor == 0.0) {
+					throw p.error(ROCScript.DIVBYZERO, line);
+				}
+				return op == OP_DIV ? dividend / divisor : dividend % divisor;
+			case OP_POW:
+				double ex = number(p, l);
+				double t = number(p, r);
+				if (t == 0.0) {
+					return 1.0;
+				}
+				double result = ex;
+				for (t = t - 1; t > 0; t--) {
+					result *= ex;
+				}
+				return result;
+			case OP_LT:
+			case OP_LE:
+			case OP_GT:
+			case OP_GE:
+			case OP_EQ:
+				if (l instanceof Number) {
+					double a = ((Number) l).doubleValue();
+					double b = number(p, r);
+					switch (op) {
+					case OP_LT:
+						return a < b;
+					case OP_LE:
+						return a <= b;
+					case OP_GT:
+						return a > b;
+					case OP_GE:
+						return a >= b;
+					default:
+						return a == b;
+					}
+				}
+				int test;
+				if (l instanceof Boolean) {
+					if (op != OP_EQ) {
+						throw p.error(ROCScript.NOTANUMB, line);
+					}
+					return l.equals(r);
+				} else {
+					if (!(r instanceof String)) {
+						throw p.error(ROCScript.NOTASTR, line);
+					}
+					test = l.toString().compareTo((String) r);
+				}
+				switch (op) {
+				case OP_LT:
+					return test < 0;
+				case OP_LE:
+					return test <= 0;
+				case OP_GT:
+					return test > 0;
+				case OP_GE:
+					return test >= 0;
+				default:
+					return test == 0;
+				}
+			case OP_AND:
+				return bool(p, l) & bool(p, r);
+			case OP_OR:
+				return bool(p, l) | bool(p, r);
+			case OP_XOR:
+				return bool(p, l) ^ bool(p, r);
+			case OP_XAND:
+				return bool(p, l) == bool(p, r);
+			default:
+				throw p.error(ROCScript.INVALIDEXP, line);
+			}
+		}
+	}
+
+	static final class Eval extends Stmt {
+		final Expr expr;
+
+		Eval(Expr expr) {
+			this.expr = expr;
+		}
+
+		int exec(Program p) throws ScriptException {
+			expr.eval(p);
+			return NEXT;
+		}
+	}
+
+	static final class Assign extends Stmt {
+		final int slot;
+		final Expr value;
+
+		Assign(int slot, Expr value) {
+			this.slot = slot;
+			this.value = value;
+		}
+
+		int exec(Program p) throws ScriptException {
+			p.set(slot, value.eval(p));
+			return NEXT;
+		}
+	}
+
+	static final class Print extends Stmt {
+		final Expr[] items;
+		final char[] separators;
+		final boolean newline;
+
+		Print(Expr[] items, char[] separators, boolean newline) {
+			this.items = items;
+			this.separators = separators;
+			this.newline = newline;
+		}
+
+		int exec(Program p) throws ScriptException {
+			IScriptLog log = p.script.getScriptLog();
+			for (int i = 0; i < items.length; i++) {
+				Object o = items[i].eval(p);
+				if (newline) {
+					log.info(o);
+				} else {
+					log.line(o);
+				}
+				if (separators[i] != 0) {
+					log.line(String.valueOf(separators[i]));
+				}
+			}
+			if (newline) {
+				log.newline();
+			}
+			return NEXT;
+		}
+	}
+
+	static final class Input extends Stmt {
+		final String prompt;
+		final int slot;
+
+		Input(String prompt, int slot) {
+			this.prompt = prompt;
+			this.slot = slot;
+		}
+
+		int exec(Program p) throws ScriptException {
+			p.script.getScriptLog().line(prompt == null ? "? " : prompt);
+			BufferedReader br = new BufferedReader(new InputStreamReader(
+					System.in));
+			try {
+				p.set(slot, br.readLine());
+			} catch (IOException e) {
+				throw p.error(ROCScript.INPUTIOERROR, line);
+			}
+			return NEXT;
+		}
+	}
+
+	static final class If extends Stmt {
+		final Expr[] conds;
+		final Stmt[][] blocks;
+		final Stmt[] otherwise;
+
+		If(Expr[] conds, Stmt[][] blocks, Stmt[] otherwise) {
+			this.conds = conds;
+			this.blocks = blocks;
+			this.otherwise = otherwise;
+		}
+
+		int exec(Program p) throws ScriptException {
+			int mark = p.enter();
+			try {
+				for (int i = 0; i < conds.length; i++) {
+					Object o = conds[i].eval(p);
+					boolean result;
+					if (o instanceof Boolean) {
+						result = (Boolean) o;
+					} else if (i == 0) {
+						result = o instanceof Number
+								&& ((Number) o).doubleValue() > 0;
+					} else {
+						throw p.error(ROCScript.NOTABOOL, conds[i].line);
+					}
+					if (result) {
+						return p.exec(blocks[i]);
+					}
+				}
+				return otherwise == null ? NEXT : p.exec(otherwise);
+			} finally {
+				p.leave(mark);
+			}
+		}
+	}
+
+	static final class For extends Stmt {
+		final int slot;
+		final Expr init, cond, step;
+		final Stmt[] body;
+
+		For(int slot, Expr init, Expr cond, Expr step, Stmt[] body) {
+			this.slot = slot;
+			this.init = init;
+			this.cond = cond;
+			this.step = step;
+			this.body = body;
+		}
+
+		private void assign(Program p, Expr expr) throws ScriptException {
+			Object o = expr.eval(p);
+			if (!(o instanceof Number)) {
+				throw p.error(ROCScript.EXPERR, expr.line);
+			}
+			p.set(slot, ((Number) o).doubleValue());
+		}
+
+		int exec(Program p) throws ScriptException {
+			if (init != null) {
+				assign(p, init);
+			}
+			int mark = p.enter();
+			try {
+				while (p.test(cond)) {
+					int result = p.exec(body);
+					if (result != NEXT) {
+						return result;
+					}
+					if (p.script.isStopped()) {
+						return HALT;
+					}
+					assign(p, step);
+				}
+				return NEXT;
+			} finally {
+				p.leave(mark);
+			}
+		}
+	}
+
+	static final class While extends Stmt {
+		final Expr cond;
+		final Stmt[] body;
+
+		While(Expr cond, Stmt[] body) {
+			this.cond = cond;
+			this.body = body;
+		}
+
+		int exec(Program p) throws ScriptException {
+			int mark = p.enter();
+			try {
+				while (p.test(cond)) {
+					int result = p.exec(body);
+					if (result != NEXT) {
+						return result;
+					}
+					if (p.script.isStopped()) {
+						return HALT;
+					}
+				}
+				return NEXT;
+			} finally {
+				p.leave(mark);
+			}
+		}
+	}
+
+	static final class Return extends Stmt {
+		final Expr value;
+
+		Return(Expr value) {
+			this.value = value;
+		}
+
+		int exec(Program p) throws ScriptException {
+			p.returned = value == null ? null : value.eval(p);
+			return RETURN;
+		}
+	}
+
+	static final class Wait extends Stmt {
+		final long millis;
+
+		Wait(long millis) {
+			this.millis = millis;
+		}
+
+		int exec(Program p) {
+			try {
+				Thread.sleep(millis);
+			} catch (Exception e) {
+			}
+			return NEXT;
+		}
+	}
+
+	static final class Macro extends Stmt {
+		final String name;
+		final DMacros.Line[] lines;
+
+		Macro(String name, DMacros.Line[] lines) {
+			this.name = name;
+			this.lines = lines;
+		}
+
+		int exec(Program p) throws ScriptException {
+			p.macro(this);
+			return NEXT;
+		}
+	}
+
+	/**
+	 * A compiled script and the variable slots of its current run.
+	 */
+	static final class Program {
+
+		final ROCScript script;
+
+		final Stmt[] body;
+
+		final String[] names;
+
+		final HashMap<String, Integer> index;
+
+		Object[] slots;
+
+		// 块内新建的变量,离开块时清除
+		private int[] created = new int[16];
+
+		private int createdTop;
+
+		private int depth;
+
+		private ArrayMap macroVars;
+
+		Object returned;
+
+		Program(ROCScript script, Stmt[] body, String[] names,
+				HashMap<String, Integer> index) {
+			this.script = script;
+			this.body = body;
+			this.names = names;
+			this.index = index;
+			this.slots = new Object[names.length];
+		}
+
+		Object run() throws ScriptException {
+			slots = new Object[names.length];
+			createdTop = 0;
+			depth = 0;
+			macroVars = null;
+			returned = null;
+			exec(body);
+			Object result = returned;
+			returned = null;
+			return result;
+		}
+
+		ScriptException error(int error, int line) {
+			return script.scriptError(error, line, null);
+		}
+
+		int exec(Stmt[] block) throws ScriptException {
+			for (int i = 0; i < block.length; i++) {
+				if (script.isStopped()) {
+					return HALT;
+				}
+				Stmt stmt = block[i];
+				script.setTextLine(stmt.line);
+				if (script.isDebug()) {
+					script.trace("line " + stmt.line + ": "
+							+ stmt.getClass().getSimpleName().toLowerCase());
+				}
+				int result = stmt.exec(this);
+				if (result != NEXT) {
+					return result;
+				}
+			}
+			return NEXT;
+		}
+
+		boolean test(Expr cond) throws ScriptException {
+			Object o = cond.eval(this);
+			if (!(o instanceof Boolean)) {
+				throw error(ROCScript.NOTABOOL, cond.line);
+			}
+			return (Boolean) o;
+		}
+
+		void set(int slot, Object value) {
+			if (slots[slot] == null && depth > 0) {
+				if (createdTop == created.length) {
+					int[] grown = new int[created.length * 2];
+					System.arraycopy(created, 0, grown, 0, createdTop);
+					created = grown;
+				}
+				created[createdTop++] = slot;
+			}
+			slots[slot] = value;
+		}
+
+		int enter() {
+			depth++;
+			return createdTop;
+		}
+
+		void leave(int mark) {
+			while (createdTop > mark) {
+				slots[created[--createdTop]] = null;
+			}
+			depth--;
+		}
+
+		/**
+		 * Parameters are restored when the call ends so that recursion does
+		 * not overwrite the caller's arguments; other variables the function
+		 * assigns keep their new value as before.
+		 */
+		Object invoke(Function function, Object[] values)
+				throws ScriptException {
+			if (script.isDebug()) {
+				script.trace("call " + function.name);
+			}
+			int[] params = function.params;
+			Object[] saved = new Object[values.length];
+			int mark = enter();
+			try {
+				for (int i = 0; i < values.length; i++) {
+					saved[i] = slots[params[i]];
+					set(params[i], values[i]);
+				}
+				if (exec(function.body) == RETURN) {
+					Object result = returned;
+					returned = null;
+					return result;
+				}
+				return null;
+			} finally {
+				leave(mark);
+				for (int i = saved.length - 1; i >= 0; i--) {
+					if (saved[i] != null) {
+						slots[params[i]] = saved[i];
+					}
+				}
+			}
+		}
+
+		/**
+		 * Value of a variable by name, for dotted lookups and variables that
+		 * only macros have set.
+		 */
+		Object lookup(String name) {
+			Integer slot = index.get(name);
+			if (slot != null && slots[slot] != null) {
+				return slots[slot];
+			}
+			return macroVars == null ? null : macroVars.get(name);
+		}
+
+		void macro(Macro macro) throws ScriptException {
+			if (!script.isCallMacros()) {
+				return;
+			}
+			ArrayMap current = new ArrayMap();
+			for (int i = 0; i < slots.length; i++) {
+				if (slots[i] != null) {
+					current.put(names[i], slots[i]);
+				}
+			}
+			Array<ArrayMap> scopes = new Array<ArrayMap>();
+			scopes.add(current);
+			macroVars = script.macrosCommand(macro.name, macro.lines, scopes);
+			for (int i = 0; i < names.length; i++) {
+				Object value = macroVars.get(names[i]);
+				if (value != null) {
+					slots[i] = value;
+				}
+			}
+		}
+	}
+}
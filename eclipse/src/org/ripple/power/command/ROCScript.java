@@ -6,6 +6,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -24,6 +26,8 @@ public class ROCScript {
 
 	private final IScriptLog scriptLog;
 
+	private ROCCompiler.Program program;
+
 	private static ArrayMap waitTimes = new ArrayMap();
 	static {
 		waitTimes.put("mesc", LSystem.MSEC);
@@ -33,7 +37,22 @@ public class ROCScript {
 		waitTimes.put("day", LSystem.DAY);
 	}
 
+	static long waitTime(String name) {
+		Object time = waitTimes.get(name.toLowerCase());
+		return time == null ? -1 : (Long) time;
+	}
+
 	private void handleError(int error) throws ScriptException {
+		throw scriptError(error);
+	}
+
+	ScriptException scriptError(int error, int line, String item) {
+		this.textLine = line;
+		this.item = item;
+		return scriptError(error);
+	}
+
+	private ScriptException scriptError(int error) {
 		String[] errors = new String[UNKNOWN + 1];
 		errors[SYNTAX] = "Syntax Error";
 		errors[UNBALPARENS] = "(... or ...)";
@@ -51,6 +70,7 @@ public class ROCScript {
 		errors[UNKFUNCTION] = "Unknown function";
 		errors[INVALIDEXP] = "Invalid Expression";
 		errors[UNEXPITEM] = "Unexpeced Item";
+		errors[TOOMANYPARAMS] = "Too many parameters";
 		errors[FILENOTFOUND] = "Can't find file";
 		errors[INPUTIOERROR] = "Input that fails";
 		errors[EXPERR] = "For if, while and for";
@@ -62,7 +82,7 @@ public class ROCScript {
 		if (scriptLog != null) {
 			scriptLog.err(err);
 		}
-		throw new ScriptException(err);
+		return new ScriptException(err);
 	}
 
 	private final static int MAX_TEXT_SIZE = 65535;
@@ -102,33 +122,36 @@ public class ROCScript {
 	private final int PRINTLN = 13;
 
 	// 错误
-	private final int SYNTAX = 0;
-	private final int UNBALPARENS = 1;
-	private final int DIVBYZERO = 2;
-	private final int EQUALEXPECTED = 3;
-	private final int UNKOWN = 4;
-	private final int NOTABOOL = 5;
-	private final int NOTANUMB = 6;
-	private final int NOTASTR = 7;
-	private final int DUPFUNCTION = 8;
-	private final int ENDEXPECTED = 9;
-	private final int THENEXPECTED = 10;
-	private final int MISSQUOTE = 11;
-	private final int DOEXPECTED = 12;
-	private final int UNKFUNCTION = 13;
-	private final int INVALIDEXP = 14;
-	private final int UNEXPITEM = 15;
-	private final int TOOMANYPARAMS = 16;
-
-	private final int FILENOTFOUND = 17;
-	private final int INPUTIOERROR = 18;
-	private final int EXPERR = 19;
-	private final int FILEIOERROR = 20;
+	final static int SYNTAX = 0;
+	final static int UNBALPARENS = 1;
+	final static int DIVBYZERO = 2;
+	final static int EQUALEXPECTED = 3;
+	final static int UNKOWN = 4;
+	final static int NOTABOOL = 5;
+	final static int NOTANUMB = 6;
+	final static int NOTASTR = 7;
+	final static int DUPFUNCTION = 8;
+	final static int ENDEXPECTED = 9;
+	final static int THENEXPECTED = 10;
+	final static int MISSQUOTE = 11;
+	final static int DOEXPECTED = 12;
+	final static int UNKFUNCTION = 13;
+	final static int INVALIDEXP = 14;
+	final static int UNEXPITEM = 15;
+	final static int TOOMANYPARAMS = 16;
+
+	final static int FILENOTFOUND = 17;
+	final static int INPUTIOERROR = 18;
+	final static int EXPERR = 19;
+	final static int FILEIOERROR = 20;
 
 	// 宏
-	private final int MACROS = 21;
+	final static int MACROS = 21;
 	// 未知区域
-	private final int UNKNOWN = 22;
+	final static int UNKNOWN = 22;
+
+	// 同时进行中的异步宏指令上限
+	final static int MAX_ASYNC_MACROS = 32;
 
 	// 宏指令设置
 	private boolean waitMacros = true;
@@ -347,9 +370,19 @@ public class ROCScript {
 		if (size != -1) {
 			contexts = new char[size];
 			System.arraycopy(charlist, 0, contexts, 0, size);
+			program = ROCCompiler.compile(this, contexts);
 		}
 	}
 
+	/**
+	 * 脚本是否已编译(未编译时逐字解释执行)
+	 * 
+	 * @return
+	 */
+	public boolean isCompiled() {
+		return program != null;
+	}
+
 	private void debug(String s) {
 		if (debug) {
 			if (commands != null) {
@@ -406,24 +439,14 @@ public class ROCScript {
 		synchronized (ROCScript.class) {
 			debug("Running script...");
 			debug = d;
-
-			// 初始化寄存器
-			vars = new Array<ArrayMap>();
-			vars.add(new ArrayMap());
-			functs = new ArrayMap();
-
-			commands = new Array<Command>();
-
-			textIdx = 0;
-			textLine = 1;
+			reset();
 
 			Updateable update = new Updateable() {
 
 				@Override
 				public void action(Object o) {
-					// 开始执行命令
 					try {
-						running();
+						execute();
 					} catch (ScriptException e) {
 						e.printStackTrace();
 					}
@@ -443,12 +466,68 @@ public class ROCScript {
 		}
 	}
 
-	private boolean stop = false;
+	/**
+	 * 在当前线程执行脚本,调试时逐条语句输出跟踪信息
+	 * 
+	 * @param d
+	 * @return
+	 * @throws ScriptException
+	 */
+	public Object run(boolean d) throws ScriptException {
+		synchronized (ROCScript.class) {
+			debug("Running script...");
+			debug = d;
+			reset();
+		}
+		return execute();
+	}
+
+	// 初始化寄存器
+	private void reset() {
+		vars = new Array<ArrayMap>();
+		vars.add(new ArrayMap());
+		functs = new ArrayMap();
+
+		commands = new Array<Command>();
+
+		textIdx = 0;
+		textLine = 1;
+	}
+
+	// 开始执行命令,调试与否都走编译后的程序,未编译时才逐字解释
+	private Object execute() throws ScriptException {
+		if (program != null) {
+			return program.run();
+		}
+		return running();
+	}
+
+	private volatile boolean stop = false;
 
 	public void stop() {
 		stop = true;
 	}
 
+	boolean isStopped() {
+		return stop;
+	}
+
+	void setTextLine(int line) {
+		this.textLine = line;
+	}
+
+	boolean isDebug() {
+		return debug;
+	}
+
+	void trace(String s) {
+		debug(s);
+	}
+
+	IScriptLog getScriptLog() {
+		return scriptLog;
+	}
+
 	/**
 	 * 执行脚本命令
 	 * 
@@ -591,44 +670,153 @@ public class ROCScript {
 		if (!initNextMacros) {
 			return;
 		}
+		vars.add(macrosCommand("script" + id,
+				DMacros.compile(StringUtils.split(context, "\n")), vars));
+	}
+
+	ArrayMap macrosCommand(String name, DMacros.Line[] res,
+			Array<ArrayMap> scopes) {
 		DMacros.resetCache();
-		String[] res = StringUtils.split(context, "\n");
 		if (macros_executer == null) {
-			macros_executer = new DMacros("script" + id, res);
+			macros_executer = new DMacros(name, res);
 		} else {
-			macros_executer.formatCommand("script" + id, res);
+			macros_executer.formatCommand(name, res);
 		}
-		for (int i = 0; i < vars.size(); i++) {
-			ArrayMap maps = vars.get(i);
+		for (int i = 0; i < scopes.size(); i++) {
+			ArrayMap maps = scopes.get(i);
 			macros_executer.setVariables(maps);
 		}
 		if (scriptLog != null) {
 			scriptLog.info("Syncing...");
 		}
+		LinkedHashMap<String, MacroFuture> futures = new LinkedHashMap<String, MacroFuture>();
 		for (; macros_executer.next();) {
 			String result = macros_executer.doExecute();
 			if (result == null) {
 				continue;
 			}
-			if (macros_listeners != null) {
-				for (IMacros macros_listener : macros_listeners) {
-					macros_listener.call(scriptLog, textLine, macros_executer,
-							result);
-					if (waitMacros) {
-						for (; macros_listener.isSyncing();) {
-							try {
-								Thread.sleep(1);
-							} catch (InterruptedException e) {
-							}
+			String cmd = result.trim();
+			if (isMacrosTag(cmd, DMacros.AWAIT_TAG)) {
+				String[] names = StringUtils.split(
+						cmd.substring(DMacros.AWAIT_TAG.length()).trim(), " ");
+				if (names.length == 0 || names[0].length() == 0) {
+					awaitMacros(futures, null);
+				} else {
+					for (String handle : names) {
+						if (handle.length() > 0) {
+							awaitMacros(futures, handle);
 						}
 					}
 				}
+				continue;
+			}
+			if (isMacrosTag(cmd, DMacros.ASYNC_TAG)) {
+				asyncMacros(futures,
+						cmd.substring(DMacros.ASYNC_TAG.length()).trim());
+				continue;
+			}
+			if (macros_listeners != null) {
+				for (IMacros macros_listener : macros_listeners) {
+					runMacros(macros_listener, result);
+				}
 			}
 		}
+		awaitMacros(futures, null);
 		if (scriptLog != null) {
 			scriptLog.info("Synchro is completed.");
 		}
-		vars.add(macros_executer.getVariables());
+		return macros_executer.getVariables();
+	}
+
+	private void runMacros(IMacros macros_listener, String message) {
+		macros_listener.call(scriptLog, textLine, macros_executer, message);
+		if (waitMacros) {
+			for (; macros_listener.isSyncing();) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+	}
+
+	private static boolean isMacrosTag(String cmd, String tag) {
+		return cmd.startsWith(tag)
+				&& (cmd.length() == tag.length() || cmd.charAt(tag.length()) == ' ');
+	}
+
+	/**
+	 * async 名称 指令：不等待结果继续执行，结果写入"名称."开头的变量，由await或宏结束时取回
+	 * (仅限不提交交易的指令)
+	 */
+	private void asyncMacros(LinkedHashMap<String, MacroFuture> futures,
+			String context) {
+		int idx = context.indexOf(' ');
+		if (idx == -1) {
+			if (scriptLog != null) {
+				scriptLog.err("line: %s\nexception: %s\n", textLine,
+						"async needs a name and a command");
+			}
+			return;
+		}
+		String handle = context.substring(0, idx);
+		String message = context.substring(idx + 1).trim();
+		// 提交交易的指令不可异步,同一账户并发提交会争用Sequence
+		if (macros_listeners != null) {
+			for (IMacros macros_listener : macros_listeners) {
+				String refused = macros_listener instanceof AMacros ? ((AMacros) macros_listener)
+						.refusesAsync(message) : null;
+				if (refused != null) {
+					if (scriptLog != null) {
+						scriptLog.err("line: %s\nexception: %s\n", textLine,
+								"async is not allowed for " + refused
+										+ ", it submits a transaction");
+					}
+					return;
+				}
+			}
+		}
+		// 同名句柄需先取回旧结果
+		awaitMacros(futures, handle);
+		if (futures.size() >= MAX_ASYNC_MACROS) {
+			awaitMacros(futures, futures.keySet().iterator().next());
+		}
+		MacroFuture future = new MacroFuture(handle);
+		future.start();
+		if (macros_listeners != null) {
+			for (IMacros macros_listener : macros_listeners) {
+				AMacros copy = null;
+				if (macros_listener instanceof AMacros) {
+					copy = ((AMacros) macros_listener).async(future);
+				}
+				if (copy != null) {
+					copy.call(scriptLog, textLine, macros_executer, message);
+				} else {
+					runMacros(macros_listener, message);
+				}
+			}
+		}
+		future.finish();
+		futures.put(handle, future);
+	}
+
+	private void awaitMacros(LinkedHashMap<String, MacroFuture> futures,
+			String handle) {
+		if (handle == null) {
+			for (Iterator<MacroFuture> it = futures.values().iterator(); it
+					.hasNext();) {
+				MacroFuture future = it.next();
+				future.await(this);
+				future.apply(macros_executer);
+			}
+			futures.clear();
+		} else {
+			MacroFuture future = futures.remove(handle);
+			if (future != null) {
+				future.await(this);
+				future.apply(macros_executer);
+			}
+		}
 	}
 
 	private void println() throws ScriptException {
@@ -966,40 +1154,7 @@ public class ROCScript {
 					return null;
 				}
 			}
-
-			if (value.length() > 0 && value.indexOf(",") == -1) {
-				if (value.indexOf("\"") == -1 && value.indexOf("/") == -1
-						&& !isNumber(value)) {
-					String tmp = getVarVal(value).toString();
-					if (!"unkown".equalsIgnoreCase(tmp)) {
-						value = tmp;
-					}
-				}
-			} else if (value.indexOf(",") != -1) {
-				String[] split = StringUtils.split(value, ",");
-				StringBuilder sbr = new StringBuilder();
-				for (String s : split) {
-					if (s.indexOf("\"") == -1 && value.indexOf("/") == -1
-							&& !isNumber(s)) {
-						String tmp = getVarVal(s).toString();
-						if (!"unkown".equalsIgnoreCase(tmp)) {
-							sbr.append(tmp.toString());
-						} else {
-							sbr.append(s);
-						}
-					} else {
-						sbr.append(s);
-					}
-					sbr.append(',');
-				}
-				value = sbr.toString();
-				if (value.endsWith(",")) {
-					value = value.substring(0, value.length() - 1);
-				}
-
-			}
-			Object reuslt = ROCFunction.getValue(key, value);
-			return reuslt == null ? "unkown" : reuslt;
+			return systemFunction(key, value);
 		}
 
 		Function f = (Function) functs.get(item.toLowerCase());
@@ -1042,6 +1197,53 @@ public class ROCScript {
 		return running();
 	}
 
+	/**
+	 * roc.* 函数,参数为原始文本,其中的变量名会被替换为变量值
+	 */
+	Object systemFunction(String key, String value) throws ScriptException {
+		if (value.length() > 0 && value.indexOf(",") == -1) {
+			if (value.indexOf("\"") == -1 && value.indexOf("/") == -1
+					&& !isNumber(value)) {
+				String tmp = getVarVal(value).toString();
+				if (!"unkown".equalsIgnoreCase(tmp)) {
+					value = tmp;
+				}
+			}
+		} else if (value.indexOf(",") != -1) {
+			String[] split = StringUtils.split(value, ",");
+			StringBuilder sbr = new StringBuilder();
+			for (String s : split) {
+				if (s.indexOf("\"") == -1 && value.indexOf("/") == -1
+						&& !isNumber(s)) {
+					String tmp = getVarVal(s).toString();
+					if (!"unkown".equalsIgnoreCase(tmp)) {
+						sbr.append(tmp.toString());
+					} else {
+						sbr.append(s);
+					}
+				} else {
+					sbr.append(s);
+				}
+				sbr.append(',');
+			}
+			value = sbr.toString();
+			if (value.endsWith(",")) {
+				value = value.substring(0, value.length() - 1);
+			}
+
+		}
+		return systemCall(key, value);
+	}
+
+	/**
+	 * Runs a roc.* function on arguments that already had their variables
+	 * substituted.
+	 */
+	Object systemCall(String key, String value) {
+		Object reuslt = ROCFunction.getValue(key, value);
+		return reuslt == null ? "unkown" : reuslt;
+	}
+
 	private boolean endCommand(boolean force) throws ScriptException {
 		debug("End Command");
 
@@ -1660,21 +1862,7 @@ public class ROCScript {
 				handleError(NOTANUMB);
 			}
 		case VARIABLE:
-			Object o = getVarVal(item);
-			if (o instanceof Number) {
-				return (Number) o;
-			} else if (isNumber(o)) {
-				if (DEBUG_E) {
-					debug("atom: " + o.toString());
-				}
-				return Double.parseDouble(o.toString());
-			}
-			if (o instanceof Boolean) {
-				return (boolean) o;
-			} else if (isBoolean(o)) {
-				return toBoolean((String) o);
-			}
-			return o;
+			return toValue(getVarVal(item));
 		case BOOLEAN:
 			return toBoolean(item);
 		case STRING:
@@ -1684,6 +1872,29 @@ public class ROCScript {
 		}
 	}
 
+	/**
+	 * 变量值转为数字或布尔值(如果可以)
+	 * 
+	 * @param o
+	 * @return
+	 */
+	Object toValue(Object o) {
+		if (o instanceof Number) {
+			return (Number) o;
+		} else if (isNumber(o)) {
+			if (DEBUG_E) {
+				debug("atom: " + o.toString());
+			}
+			return Double.parseDouble(o.toString());
+		}
+		if (o instanceof Boolean) {
+			return (boolean) o;
+		} else if (isBoolean(o)) {
+			return toBoolean((String) o);
+		}
+		return o;
+	}
+
 	private boolean isDelim(char c) {
 		if ((" \r,<>+-/*%^=();#".indexOf(c) != -1)) {
 			return true;
@@ -1830,6 +2041,9 @@ public class ROCScript {
 				break;
 			}
 		}
+		if (o == null && program != null) {
+			o = program.lookup(name);
+		}
 		if (o != null) {
 
 			String method = vname.substring(idx + 1, vname.length());
@@ -2065,7 +2279,7 @@ public class ROCScript {
 		return o;
 	}
 
-	private Object getVarVal(String vname) throws ScriptException {
+	Object getVarVal(String vname) throws ScriptException {
 		if (!Character.isLetter(vname.charAt(0))) {
 			handleError(UNKOWN);
 			return 0;
@@ -2078,6 +2292,9 @@ public class ROCScript {
 				o = tm.get(vname);
 			}
 		}
+		if (o == null && program != null) {
+			o = program.lookup(vname);
+		}
 
 		if (o == null) {
 			o = findVar(vname);
@@ -31,6 +31,7 @@ import org.ripple.power.NativeSupport;
 import org.ripple.power.i18n.Language;
 import org.ripple.power.timer.NanoTimer;
 import org.ripple.power.timer.SystemTimer;
+import org.ripple.power.txns.OfferPrice;
 import org.ripple.power.txns.Updateable;
 import org.ripple.power.ui.MainForm;
 import org.ripple.power.ui.graphics.geom.RectBox;
@@ -988,6 +989,8 @@ public final class LSystem {
 					session.save();
 				}
 			}
+			SessionJournal.syncAll();
+			OfferPrice.closeBooks();
 			if (LSystem.applicationMain != null) {
 				SwingUtils.close(LSystem.applicationMain);
 			}
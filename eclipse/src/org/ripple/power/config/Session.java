@@ -1,11 +1,18 @@
 package org.ripple.power.config;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Map.Entry;
@@ -18,24 +25,45 @@ public class Session {
 
 	private static final String STORE_FILENAME_SUFFIX = ".store";
 
+	private static final String JOURNAL_FILENAME_SUFFIX = ".journal";
+
+	private static final String MIGRATED_FILENAME_SUFFIX = ".migrated";
+
+	// settings written before the journal existed
 	private final File _tempFile;
 
-	private final Properties _properties;
+	private final SessionJournal _journal;
 
-	private boolean isPersisted = false;
+	// the journal did not exist yet, the legacy file is imported once
+	private boolean _migrate;
 
-	private String loadData() {
-		return _properties.getProperty(name);
-	}
+	// records changed since the last save
+	private final HashSet<String> _dirty = new HashSet<String>();
 
-	private void svaeData(String result) {
-		_properties.setProperty(name, result);
-		makeProperties(_properties);
+	// set when the whole content was replaced
+	private boolean _reset;
+
+	private boolean isPersisted = false;
+
+	private String loadLegacyData() {
+		if (!_tempFile.exists()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(_tempFile)) {
+			properties.load(in);
+			return properties.getProperty(name);
+		} catch (IOException e) {
+			return null;
+		}
 	}
 
-	private void removeData() {
-		_properties.remove(name);
-		makeProperties(_properties);
+	private void retireLegacyData() {
+		if (_tempFile.exists()
+				&& !_tempFile.renameTo(new File(_tempFile.getPath()
+						+ MIGRATED_FILENAME_SUFFIX))) {
+			_tempFile.delete();
+		}
 	}
 
 	public static Session load(String name) {
@@ -102,8 +130,33 @@ public class Session {
 			this.values[index] = value;
 		}
 
+		public byte[] toBytes() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeBoolean(active);
+			out.writeInt(values.length);
+			for (String value : values) {
+				out.writeBoolean(value != null);
+				if (value != null) {
+					out.writeUTF(value);
+				}
+			}
+			out.flush();
+			return bytes.toByteArray();
+		}
+
+		public void fromBytes(byte[] data) throws IOException {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					data));
+			active = in.readBoolean();
+			values = new String[in.readInt()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = in.readBoolean() ? in.readUTF() : null;
+			}
+		}
+
 		public String encode() {
-			StringBuffer sbr = new StringBuffer(32);
+			StringBuilder sbr = new StringBuilder(32);
 			sbr.append(this.name);
 			sbr.append(flag);
 			sbr.append(this.active ? "1" : "0");
@@ -129,37 +182,23 @@ public class Session {
 		this(name, true);
 	}
 
-	private void makeProperties(Properties _properties) {
-		try {
-			_properties.store(new FileOutputStream(_tempFile), null);
-			isPersisted = true;
-		} catch (Exception e) {
-			isPersisted = false;
-		}
-	}
-
-	private Properties makeProperties() {
-		Properties _properties = new Properties();
-		if (_tempFile.exists()) {
-			try {
-				_properties.load(new FileInputStream(_tempFile));
-				isPersisted = true;
-			} catch (Exception e) {
-				isPersisted = false;
-			}
-		} else {
-			makeProperties(_properties);
-		}
-		return _properties;
-	}
-
 	public Session(String name, boolean gain) {
 		if (name == null) {
 			throw new RuntimeException("session name can not exist !");
 		}
 		this._tempFile = new File(LSystem.getDirectory(), STORE_FILENAME_PREFIX
 				+ name + STORE_FILENAME_SUFFIX);
-		this._properties = makeProperties();
+		SessionJournal journal = null;
+		try {
+			File file = new File(LSystem.getDirectory(), STORE_FILENAME_PREFIX
+					+ name + JOURNAL_FILENAME_SUFFIX);
+			_migrate = !file.exists();
+			journal = SessionJournal.open(file);
+			isPersisted = true;
+		} catch (IOException e) {
+			isPersisted = false;
+		}
+		this._journal = journal;
 		this.name = name;
 		this.records = new HashMap<String, Record>(10);
 		this.recordsList = new ArrayList<Record>(10);
@@ -223,6 +262,7 @@ public class Session {
 				recordsList.add(record);
 			}
 			record.set(index, value);
+			_dirty.add(name);
 		}
 	}
 
@@ -268,6 +308,7 @@ public class Session {
 			}
 			int id = record.size();
 			record.set(id++, value);
+			_dirty.add(name);
 		}
 	}
 
@@ -348,6 +389,7 @@ public class Session {
 	public void delete(String name) {
 		synchronized (recordsList) {
 			records.remove(name);
+			_dirty.add(name);
 			for (int i = 0; i < recordsList.size(); i++) {
 				Record record = recordsList.get(i);
 				if (record.name.equals(name)) {
@@ -381,6 +423,8 @@ public class Session {
 		synchronized (recordsList) {
 			records.clear();
 			recordsList.clear();
+			_dirty.clear();
+			_reset = true;
 			if (n >= parts.length) {
 				return n;
 			}
@@ -401,10 +445,10 @@ public class Session {
 
 	public String encode() {
 		synchronized (recordsList) {
-			StringBuffer sbr = new StringBuffer();
-			sbr.append(recordsList.size()).append(flag).toString();
+			StringBuilder sbr = new StringBuilder();
+			sbr.append(recordsList.size()).append(flag);
 			for (int i = 0; i < recordsList.size(); i++) {
-				sbr.append((recordsList.get(i)).encode()).toString();
+				sbr.append((recordsList.get(i)).encode());
 			}
 			return sbr.toString();
 		}
@@ -422,6 +466,7 @@ public class Session {
 			record.active = true;
 			records.put(name, record);
 			recordsList.add(record);
+			_dirty.add(name);
 		}
 	}
 
@@ -431,6 +476,7 @@ public class Session {
 			if (record != null) {
 				recordsList.remove(record);
 			}
+			_dirty.add(name);
 		}
 	}
 
@@ -453,6 +499,7 @@ public class Session {
 			record.set(0, "1");
 			records.put(name, record);
 			recordsList.add(record);
+			_dirty.add(name);
 		}
 	}
 
@@ -460,10 +507,37 @@ public class Session {
 		return name;
 	}
 
+	/**
+	 * Appends the records changed since the last save to the journal.
+	 */
 	public void save() {
-		String result = encode();
-		if (result != null && !"".equals(result)) {
-			svaeData(result);
+		if (_journal == null) {
+			return;
+		}
+		synchronized (recordsList) {
+			try {
+				if (_reset) {
+					LinkedHashMap<String, byte[]> all = new LinkedHashMap<String, byte[]>();
+					for (Record record : recordsList) {
+						all.put(record.name, record.toBytes());
+					}
+					_journal.replaceAll(all);
+				} else {
+					for (String key : _dirty) {
+						Record record = records.get(key);
+						if (record == null) {
+							_journal.remove(key);
+						} else {
+							_journal.put(key, record.toBytes());
+						}
+					}
+				}
+				_dirty.clear();
+				_reset = false;
+				isPersisted = true;
+			} catch (IOException e) {
+				isPersisted = false;
+			}
 		}
 	}
 
@@ -479,7 +553,38 @@ public class Session {
 	}
 
 	public int load() {
-		return loadEncodeSession(loadData());
+		if (_journal == null) {
+			return loadEncodeSession(loadLegacyData());
+		}
+		if (_migrate) {
+			int n = loadEncodeSession(loadLegacyData());
+			if (n > 0) {
+				save();
+			}
+			// only once, so records cleared later are not imported again
+			if (n <= 0 || isPersisted) {
+				_migrate = false;
+				retireLegacyData();
+			}
+			return n;
+		}
+		synchronized (recordsList) {
+			records.clear();
+			recordsList.clear();
+			_dirty.clear();
+			_reset = false;
+			for (String key : _journal.keys()) {
+				Record record = new Record(key);
+				try {
+					record.fromBytes(_journal.get(key));
+				} catch (IOException e) {
+					continue;
+				}
+				records.put(key, record);
+				recordsList.add(record);
+			}
+			return recordsList.size();
+		}
 	}
 
 	public Object clone() {
@@ -493,6 +598,7 @@ public class Session {
 			record.active = false;
 			records.put(name, record);
 			recordsList.add(record);
+			_dirty.add(name);
 		}
 	}
 
@@ -504,7 +610,11 @@ public class Session {
 			if (recordsList != null) {
 				recordsList.clear();
 			}
-			removeData();
+			_dirty.clear();
+			_reset = false;
+			if (_journal != null) {
+				_journal.clear();
+			}
 		} catch (Exception e) {
 		}
 	}
@@ -0,0 +1,344 @@
+package org.ripple.power.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key/value journal. Every put or remove is appended as one
+ * checksummed entry and applied to an in-memory map that serves all reads.
+ * Appends are not synced one by one; a background task syncs dirty journals
+ * a short moment later, so a burst of writes costs one fsync. When the file
+ * grows well past the size of the live data it is rewritten as a snapshot.
+ * A torn entry at the tail (from a crash during append) is dropped on open.
+ */
+public final class SessionJournal {
+
+	private static final byte OP_PUT = 1;
+
+	private static final byte OP_REMOVE = 2;
+
+	private static final long SYNC_DELAY_MILLIS = 250;
+
+	private static final long COMPACT_MIN_BYTES = 64 * 1024;
+
+	private static final HashMap<String, SessionJournal> journals = new HashMap<String, SessionJournal>();
+
+	private static final ScheduledExecutorService syncer = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "SessionJournalSync");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				syncAll();
+			}
+		});
+	}
+
+	/**
+	 * Returns the journal for the file, shared by everyone in the process
+	 * so appends never interleave.
+	 */
+	public static SessionJournal open(File file) throws IOException {
+		String key = file.getCanonicalPath();
+		synchronized (journals) {
+			SessionJournal journal = journals.get(key);
+			if (journal == null) {
+				journal = new SessionJournal(file);
+				journals.put(key, journal);
+			}
+			return journal;
+		}
+	}
+
+	public static void syncAll() {
+		ArrayList<SessionJournal> list;
+		synchronized (journals) {
+			list = new ArrayList<SessionJournal>(journals.values());
+		}
+		for (SessionJournal journal : list) {
+			try {
+				journal.sync();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private final File file;
+
+	private RandomAccessFile raf;
+
+	private FileChannel channel;
+
+	private final LinkedHashMap<String, byte[]> map = new LinkedHashMap<String, byte[]>();
+
+	private long size;
+
+	private long liveBytes;
+
+	private boolean dirty;
+
+	private boolean syncScheduled;
+
+	private SessionJournal(File file) throws IOException {
+		this.file = file;
+		openChannel();
+		replay();
+	}
+
+	private void openChannel() throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+	}
+
+	private void replay() throws IOException {
+		long length = channel.size();
+		long position = 0;
+		ByteBuffer head = ByteBuffer.allocate(4);
+		while (position + 4 <= length) {
+			head.clear();
+			channel.read(head, position);
+			head.flip();
+			int entryLength = head.getInt();
+			if (entryLength < 9 || position + 4 + entryLength > length) {
+				break;
+			}
+			ByteBuffer body = ByteBuffer.allocate(entryLength);
+			while (body.hasRemaining()) {
+				if (channel.read(body, position + 4 + body.position()) < 0) {
+					break;
+				}
+			}
+			body.flip();
+			CRC32 crc = new CRC32();
+			crc.update(body.array(), 0, entryLength - 4);
+			body.position(entryLength - 4);
+			if ((int) crc.getValue() != body.getInt()) {
+				break;
+			}
+			body.position(0);
+			byte op = body.get();
+			byte[] keyBytes = new byte[body.getInt()];
+			body.get(keyBytes);
+			String key = new String(keyBytes, "UTF-8");
+			if (op == OP_PUT) {
+				byte[] value = new byte[body.getInt()];
+				body.get(value);
+				apply(key, value);
+			} else if (op == OP_REMOVE) {
+				apply(key, null);
+			}
+			position += 4 + entryLength;
+		}
+		if (position < length) {
+			channel.truncate(position);
+		}
+		size = position;
+	}
+
+	private static int weight(String key, byte[] value) {
+		return 32 + key.length() * 2 + (value == null ? 0 : value.length);
+	}
+
+	private void apply(String key, byte[] value) {
+		byte[] old = value == null ? map.remove(key) : map.put(key, value);
+		if (old != null) {
+			liveBytes -= weight(key, old);
+		}
+		if (value != null) {
+			liveBytes += weight(key, value);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public synchronized byte[] get(String key) {
+		byte[] value = map.get(key);
+		return value == null ? null : value.clone();
+	}
+
+	public synchronized boolean contains(String key) {
+		return map.containsKey(key);
+	}
+
+	public synchronized List<String> keys() {
+		return new ArrayList<String>(map.keySet());
+	}
+
+	public synchronized boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	public synchronized long getFileSize() {
+		return size;
+	}
+
+	public synchronized void put(String key, byte[] value) throws IOException {
+		byte[] old = map.get(key);
+		if (old != null && Arrays.equals(old, value)) {
+			return;
+		}
+		append(OP_PUT, key, value);
+		apply(key, value.clone());
+		afterWrite();
+	}
+
+	public synchronized void remove(String key) throws IOException {
+		if (!map.containsKey(key)) {
+			return;
+		}
+		append(OP_REMOVE, key, null);
+		apply(key, null);
+		afterWrite();
+	}
+
+	/**
+	 * Replaces the whole content in one step by writing a new snapshot.
+	 */
+	public synchronized void replaceAll(Map<String, byte[]> values)
+			throws IOException {
+		map.clear();
+		liveBytes = 0;
+		for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+			apply(entry.getKey(), entry.getValue().clone());
+		}
+		compact();
+	}
+
+	public synchronized void clear() throws IOException {
+		map.clear();
+		liveBytes = 0;
+		compact();
+	}
+
+	private static ByteBuffer encode(byte op, String key, byte[] value)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		byte[] keyBytes = key.getBytes("UTF-8");
+		out.writeInt(0);
+		out.writeByte(op);
+		out.writeInt(keyBytes.length);
+		out.write(keyBytes);
+		if (op == OP_PUT) {
+			out.writeInt(value.length);
+			out.write(value);
+		}
+		out.writeInt(0);
+		out.flush();
+		byte[] entry = bytes.toByteArray();
+		ByteBuffer buffer = ByteBuffer.wrap(entry);
+		buffer.putInt(0, entry.length - 4);
+		CRC32 crc = new CRC32();
+		crc.update(entry, 4, entry.length - 8);
+		buffer.putInt(entry.length - 4, (int) crc.getValue());
+		return buffer;
+	}
+
+	private void append(byte op, String key, byte[] value) throws IOException {
+		ByteBuffer buffer = encode(op, key, value);
+		while (buffer.hasRemaining()) {
+			size += channel.write(buffer, size);
+		}
+		dirty = true;
+	}
+
+	private void afterWrite() throws IOException {
+		if (size > COMPACT_MIN_BYTES && size > liveBytes * 4) {
+			compact();
+			return;
+		}
+		if (!syncScheduled) {
+			syncScheduled = true;
+			syncer.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						sync();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}, SYNC_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Forces appended entries to disk.
+	 */
+	public synchronized void sync() throws IOException {
+		syncScheduled = false;
+		if (dirty && channel != null) {
+			channel.force(false);
+			dirty = false;
+		}
+	}
+
+	/**
+	 * Rewrites the journal as one put per live key and swaps it in.
+	 */
+	public synchronized void compact() throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		long position = 0;
+		try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+			out.setLength(0);
+			FileChannel target = out.getChannel();
+			for (Map.Entry<String, byte[]> entry : map.entrySet()) {
+				ByteBuffer buffer = encode(OP_PUT, entry.getKey(),
+						entry.getValue());
+				while (buffer.hasRemaining()) {
+					position += target.write(buffer, position);
+				}
+			}
+			target.force(true);
+		}
+		raf.close();
+		boolean swapped = false;
+		try {
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+			swapped = true;
+		} finally {
+			// the new file if the move went through, the old one if not
+			openChannel();
+			if (!swapped) {
+				temp.delete();
+			}
+		}
+		size = position;
+		dirty = false;
+	}
+}
@@ -17,15 +17,16 @@ public class ThreadPool {
 	}
 
 	public void execute() {
-		if (!_queue.isEmpty()) {
-			Runnable runnable = _queue.dequeue();
+		Runnable runnable = _queue.poll();
+		if (runnable != null) {
 			_threadPool.execute(runnable);
 		}
 	}
 
 	public void executeAll() {
-		while (!_queue.isEmpty()) {
-			execute();
+		Runnable runnable;
+		while ((runnable = _queue.poll()) != null) {
+			_threadPool.execute(runnable);
 		}
 	}
 
@@ -1,14 +1,14 @@
 package org.ripple.power.config;
 
-import java.util.LinkedList;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class WorkQueue {
 	
-	private LinkedList<Runnable> _queue;
+	private final ConcurrentLinkedQueue<Runnable> _queue;
 
 	public WorkQueue() {
-		_queue = new LinkedList<Runnable>();
+		_queue = new ConcurrentLinkedQueue<Runnable>();
 	}
 
 	public void enqueue(Runnable work) {
@@ -16,7 +16,19 @@ public class WorkQueue {
 	}
 
 	public Runnable dequeue() throws NoSuchElementException {
-		return _queue.removeFirst();
+		Runnable work = _queue.poll();
+		if (work == null) {
+			throw new NoSuchElementException();
+		}
+		return work;
+	}
+
+	/**
+	 * @return the next work or null when empty, without the race of
+	 *         isEmpty() followed by dequeue()
+	 */
+	public Runnable poll() {
+		return _queue.poll();
 	}
 
 	public boolean isEmpty() {
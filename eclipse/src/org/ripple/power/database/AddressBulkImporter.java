@@ -0,0 +1,381 @@
+package org.ripple.power.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk loader for address dumps. The input is mapped in newline aligned
+ * chunks which are parsed, checksum verified and decoded in parallel; each
+ * chunk is sorted into a temporary run, and the runs are then merged
+ * straight into {@link AddressIndex} segments without going through the
+ * in-memory table. Lines are either a bare address or five space separated
+ * fields with the address second, as written by the account dump tools.
+ */
+public class AddressBulkImporter {
+
+	public static class Result {
+
+		public long lines;
+
+		public long keys;
+
+		public long invalid;
+
+		public int runs;
+
+		public int segments;
+
+		public long elapsedMillis;
+
+		public String toString() {
+			return String.format(
+					"lines=%d keys=%d invalid=%d runs=%d segments=%d %dms",
+					lines, keys, invalid, runs, segments, elapsedMillis);
+		}
+	}
+
+	private static final int KEY = AddressIndex.KEY_LENGTH;
+
+	private final AddressIndex index;
+
+	private int threads = Math.max(1, Runtime.getRuntime()
+			.availableProcessors());
+
+	private int chunkSize = 16 * 1024 * 1024;
+
+	private File tempDir;
+
+	public AddressBulkImporter(AddressIndex index) {
+		this.index = index;
+		this.tempDir = index.getDirectory();
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int size) {
+		this.chunkSize = Math.max(1024, size);
+	}
+
+	public File getTempDir() {
+		return tempDir;
+	}
+
+	public void setTempDir(File dir) {
+		this.tempDir = dir;
+	}
+
+	public Result load(File input) throws IOException {
+		long start = System.currentTimeMillis();
+		final Result result = new Result();
+		final AtomicLong lines = new AtomicLong();
+		final AtomicLong invalid = new AtomicLong();
+		final AtomicInteger runId = new AtomicInteger();
+		final long stamp = System.nanoTime();
+		List<File> runs = new ArrayList<File>();
+		try (RandomAccessFile raf = new RandomAccessFile(input, "r")) {
+			final FileChannel channel = raf.getChannel();
+			List<long[]> chunks = split(channel);
+			ExecutorService pool = Executors.newFixedThreadPool(
+					Math.min(threads, Math.max(1, chunks.size())),
+					new ThreadFactory() {
+
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "AddressImport-"
+									+ count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			try {
+				List<Future<File>> futures = new ArrayList<Future<File>>();
+				for (final long[] chunk : chunks) {
+					futures.add(pool.submit(new Callable<File>() {
+
+						@Override
+						public File call() throws IOException {
+							MappedByteBuffer buffer = channel.map(
+									FileChannel.MapMode.READ_ONLY, chunk[0],
+									chunk[1] - chunk[0]);
+							byte[][] keys = parse(buffer, lines, invalid);
+							if (keys.length == 0) {
+								return null;
+							}
+							File run = new File(tempDir, "import-" + stamp
+									+ "-" + runId.incrementAndGet() + ".run");
+							writeRun(run, keys);
+							return run;
+						}
+					}));
+				}
+				for (Future<File> future : futures) {
+					File run = get(future);
+					if (run != null) {
+						runs.add(run);
+					}
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+			result.runs = runs.size();
+			mergeRuns(runs, result);
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+		}
+		result.lines = lines.get();
+		result.invalid = invalid.get();
+		result.elapsedMillis = System.currentTimeMillis() - start;
+		return result;
+	}
+
+	private static File get(Future<File> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("import interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Cuts the file into [start, end) ranges of about chunkSize bytes, each
+	 * ending just after a newline.
+	 */
+	private List<long[]> split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		List<long[]> chunks = new ArrayList<long[]>();
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		long start = 0;
+		while (start < size) {
+			long end = Math.min(size, start + chunkSize);
+			while (end < size) {
+				probe.clear();
+				int n = channel.read(probe, end);
+				if (n <= 0) {
+					end = size;
+					break;
+				}
+				int i = 0;
+				for (; i < n && probe.get(i) != '\n'; i++) {
+				}
+				if (i < n) {
+					end += i + 1;
+					break;
+				}
+				end += n;
+			}
+			chunks.add(new long[] { start, Math.min(end, size) });
+			start = end;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Decodes every line of a chunk and returns the sorted, distinct keys.
+	 */
+	static byte[][] parse(ByteBuffer buffer, AtomicLong lines,
+			AtomicLong invalid) {
+		int limit = buffer.limit();
+		ArrayList<byte[]> keys = new ArrayList<byte[]>(limit / 36 + 1);
+		// one digest per worker for the address checksums
+		MessageDigest sha256 = AddressIndex.newSha256();
+		byte[] line = new byte[256];
+		int length = 0;
+		long count = 0, bad = 0;
+		for (int i = 0; i <= limit; i++) {
+			byte b = i < limit ? buffer.get(i) : (byte) '\n';
+			if (b != '\n') {
+				if (length < line.length) {
+					line[length] = b;
+				}
+				length++;
+				continue;
+			}
+			if (length > 0) {
+				count++;
+				String address = length <= line.length ? field(line, length)
+						: null;
+				byte[] key = address == null ? null : AddressIndex.toKey(
+						address, sha256);
+				if (key == null) {
+					bad++;
+				} else {
+					keys.add(key);
+				}
+			}
+			length = 0;
+		}
+		lines.addAndGet(count);
+		invalid.addAndGet(bad);
+		byte[][] array = keys.toArray(new byte[keys.size()][]);
+		Arrays.sort(array, AddressIndex.COMPARATOR);
+		return array;
+	}
+
+	// a bare address, or the second of exactly five space separated tokens
+	private static String field(byte[] line, int length) {
+		while (length > 0 && (line[length - 1] == '\r')) {
+			length--;
+		}
+		int tokens = 0, from = -1, to = -1;
+		int i = 0;
+		while (i < length) {
+			while (i < length && line[i] == ' ') {
+				i++;
+			}
+			if (i >= length) {
+				break;
+			}
+			int s = i;
+			while (i < length && line[i] != ' ') {
+				i++;
+			}
+			tokens++;
+			if (tokens == 1 || tokens == 2) {
+				from = s;
+				to = i;
+			}
+		}
+		if (tokens == 0 || (tokens != 1 && tokens != 5)) {
+			return null;
+		}
+		char[] chars = new char[to - from];
+		for (int j = 0; j < chars.length; j++) {
+			chars[j] = (char) (line[from + j] & 0xff);
+		}
+		return new String(chars);
+	}
+
+	private static void writeRun(File run, byte[][] keys) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(
+				run), 1 << 16)) {
+			byte[] last = null;
+			for (byte[] key : keys) {
+				if (last != null && AddressIndex.COMPARATOR.compare(last, key) == 0) {
+					continue;
+				}
+				out.write(key);
+				last = key;
+			}
+		}
+	}
+
+	private static class RunReader {
+
+		final DataInputStream in;
+
+		final byte[] key = new byte[KEY];
+
+		RunReader(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), 1 << 16));
+		}
+
+		boolean advance() throws IOException {
+			try {
+				in.readFully(key);
+				return true;
+			} catch (EOFException e) {
+				return false;
+			}
+		}
+	}
+
+	private void mergeRuns(List<File> runs, Result result) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(
+				Math.max(1, runs.size()), new Comparator<RunReader>() {
+
+					@Override
+					public int compare(RunReader a, RunReader b) {
+						return AddressIndex.COMPARATOR.compare(a.key, b.key);
+					}
+				});
+		ArrayList<RunReader> readers = new ArrayList<RunReader>();
+		AddressIndex.SegmentWriter writer = null;
+		try {
+			for (File run : runs) {
+				RunReader reader = new RunReader(run);
+				readers.add(reader);
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				if (writer == null) {
+					writer = index.newSegmentWriter();
+				}
+				int before = writer.getCount();
+				writer.add(reader.key);
+				if (writer.getCount() > before) {
+					result.keys++;
+				}
+				if (writer.isFull()) {
+					index.commit(writer);
+					result.segments++;
+					writer = null;
+				}
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+			if (writer != null) {
+				index.commit(writer);
+				result.segments++;
+				writer = null;
+			}
+		} finally {
+			if (writer != null) {
+				writer.abort();
+			}
+			for (RunReader reader : readers) {
+				reader.in.close();
+			}
+		}
+	}
+}
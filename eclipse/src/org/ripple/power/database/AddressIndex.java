@@ -0,0 +1,878 @@
+package org.ripple.power.database;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ripple.config.Config;
+import com.ripple.encodings.base58.B58;
+import com.ripple.encodings.base58.EncodingFormatException;
+
+/**
+ * Binary address set. Addresses are decoded to their 20 byte account hash
+ * followed by a tag for the kind of address, and kept in an in-memory table
+ * until flushed into an immutable sorted segment.
+ * A segment starts with a fence table indexed by the first two key bytes, so
+ * a lookup jumps straight to the few records sharing that prefix and binary
+ * searches them inside a read-only mapping. Segments are merged in the
+ * background once too many accumulate. An optional {@link BlockedBloomFilter}
+ * answers most misses before any segment is touched.
+ */
+public class AddressIndex implements Closeable {
+
+	public static final int HASH_LENGTH = 20;
+
+	// hash, then the address tag
+	public static final int KEY_LENGTH = HASH_LENGTH + 1;
+
+	public static final byte TAG_RIPPLE = 1;
+
+	public static final byte TAG_BITCOIN = 2;
+
+	public static final byte TAG_BITCOIN_SCRIPT = 3;
+
+	private static final int MAGIC = 0x52504149;
+
+	private static final int VERSION = 1;
+
+	private static final int PREFIXES = 1 << 16;
+
+	// magic, version, count, reserved
+	private static final int FENCE_OFFSET = 16;
+
+	private static final int HEADER = FENCE_OFFSET + (PREFIXES + 1) * 4;
+
+	// one mapping per segment
+	private static final int MAX_SEGMENT_KEYS = (Integer.MAX_VALUE - HEADER)
+			/ KEY_LENGTH;
+
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+
+	private static final String FILTER_NAME = "bloom.dat";
+
+	private static final B58 RIPPLE_B58 = new B58(Config.DEFAULT_ALPHABET);
+
+	private static final B58 BITCOIN_B58 = new B58(
+			"123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz");
+
+	// HashUtils.doubleDigest locks one shared digest
+	private static final ThreadLocal<MessageDigest> SHA256 = new ThreadLocal<MessageDigest>() {
+
+		@Override
+		protected MessageDigest initialValue() {
+			return newSha256();
+		}
+	};
+
+	public static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static final Comparator<byte[]> COMPARATOR = new Comparator<byte[]>() {
+
+		@Override
+		public int compare(byte[] a, byte[] b) {
+			for (int i = 0; i < KEY_LENGTH; i++) {
+				int x = a[i] & 0xff, y = b[i] & 0xff;
+				if (x != y) {
+					return x < y ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+	};
+
+	/**
+	 * Decodes a ripple (r...) or bitcoin address to its 20 byte hash and
+	 * address tag, returning null when the text is not a valid checked
+	 * address. The tag keeps a ripple account, a bitcoin P2PKH and a P2SH
+	 * address of the same hash apart.
+	 */
+	public static byte[] toKey(String address) {
+		return toKey(address, SHA256.get());
+	}
+
+	/**
+	 * As {@link #toKey(String)}, checking the checksum with the given
+	 * SHA-256 digest, so parallel callers do not share one.
+	 */
+	public static byte[] toKey(String address, MessageDigest sha256) {
+		if (address == null) {
+			return null;
+		}
+		address = address.trim();
+		if (address.length() < 25 || address.length() > 35) {
+			return null;
+		}
+		boolean ripple = address.charAt(0) == 'r';
+		byte[] buffer;
+		try {
+			buffer = (ripple ? RIPPLE_B58 : BITCOIN_B58).decode(address);
+		} catch (EncodingFormatException e) {
+			return null;
+		}
+		if (buffer.length != HASH_LENGTH + 5) {
+			return null;
+		}
+		byte tag;
+		if (ripple) {
+			if (buffer[0] != 0) {
+				return null;
+			}
+			tag = TAG_RIPPLE;
+		} else if (buffer[0] == 0) {
+			tag = TAG_BITCOIN;
+		} else if (buffer[0] == 5) {
+			tag = TAG_BITCOIN_SCRIPT;
+		} else {
+			return null;
+		}
+		sha256.reset();
+		sha256.update(buffer, 0, HASH_LENGTH + 1);
+		byte[] hash = sha256.digest(sha256.digest());
+		for (int i = 0; i < 4; i++) {
+			if (hash[i] != buffer[HASH_LENGTH + 1 + i]) {
+				return null;
+			}
+		}
+		byte[] key = Arrays.copyOfRange(buffer, 1, KEY_LENGTH + 1);
+		key[HASH_LENGTH] = tag;
+		return key;
+	}
+
+	static int prefix(byte[] key) {
+		return ((key[0] & 0xff) << 8) | (key[1] & 0xff);
+	}
+
+	/**
+	 * Read-only view of one sorted segment file.
+	 */
+	static class Segment {
+
+		final File file;
+
+		final long generation;
+
+		final int count;
+
+		final MappedByteBuffer buffer;
+
+		Segment(File file, long generation) throws IOException {
+			this.file = file;
+			this.generation = generation;
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				long length = raf.length();
+				if (length < HEADER) {
+					throw new IOException("Truncated address segment " + file);
+				}
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+						0, length);
+			}
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				throw new IOException("Not an address segment " + file);
+			}
+			count = buffer.getInt(8);
+			if (HEADER + (long) count * KEY_LENGTH > buffer.capacity()) {
+				throw new IOException("Truncated address segment " + file);
+			}
+		}
+
+		boolean contains(byte[] key) {
+			int p = prefix(key);
+			int lo = buffer.getInt(FENCE_OFFSET + p * 4);
+			int hi = buffer.getInt(FENCE_OFFSET + (p + 1) * 4) - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				int cmp = compareAt(mid, key);
+				if (cmp < 0) {
+					lo = mid + 1;
+				} else if (cmp > 0) {
+					hi = mid - 1;
+				} else {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		// the two prefix bytes are equal inside a fence range
+		private int compareAt(int index, byte[] key) {
+			int base = HEADER + index * KEY_LENGTH;
+			for (int i = 2; i < KEY_LENGTH; i++) {
+				int x = buffer.get(base + i) & 0xff, y = key[i] & 0xff;
+				if (x != y) {
+					return x < y ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+
+		void read(int index, byte[] out) {
+			int base = HEADER + index * KEY_LENGTH;
+			for (int i = 0; i < KEY_LENGTH; i++) {
+				out[i] = buffer.get(base + i);
+			}
+		}
+	}
+
+	/**
+	 * Streams strictly increasing keys into a new segment. Duplicates of the
+	 * previous key are dropped. The segment only becomes visible to the index
+	 * after {@link AddressIndex#commit(SegmentWriter)}.
+	 */
+	public class SegmentWriter implements Closeable {
+
+		private final File temp;
+
+		private final OutputStream out;
+
+		private final int[] fence = new int[PREFIXES + 1];
+
+		private final byte[] last = new byte[KEY_LENGTH];
+
+		private final BlockedBloomFilter target;
+
+		private int count;
+
+		private boolean closed;
+
+		SegmentWriter(BlockedBloomFilter target) throws IOException {
+			this.target = target;
+			temp = new File(directory, nextGeneration() + TEMP_SUFFIX);
+			try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+				raf.setLength(HEADER);
+			}
+			out = new BufferedOutputStream(new FileOutputStream(temp, true),
+					1 << 16);
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public boolean isFull() {
+			return count >= MAX_SEGMENT_KEYS;
+		}
+
+		public void add(byte[] key) throws IOException {
+			if (count > 0) {
+				int cmp = COMPARATOR.compare(last, key);
+				if (cmp == 0) {
+					return;
+				}
+				if (cmp > 0) {
+					throw new IllegalArgumentException("keys out of order");
+				}
+			}
+			if (isFull()) {
+				throw new IOException("address segment is full");
+			}
+			out.write(key, 0, KEY_LENGTH);
+			if (target != null) {
+				target.put(key);
+			}
+			System.arraycopy(key, 0, last, 0, KEY_LENGTH);
+			fence[prefix(key) + 1]++;
+			count++;
+		}
+
+		File finish() throws IOException {
+			close();
+			for (int i = 0; i < PREFIXES; i++) {
+				fence[i + 1] += fence[i];
+			}
+			try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+				byte[] header = new byte[HEADER];
+				ByteBuffer buf = ByteBuffer.wrap(header);
+				buf.putInt(MAGIC);
+				buf.putInt(VERSION);
+				buf.putInt(count);
+				buf.putInt(0);
+				for (int i = 0; i <= PREFIXES; i++) {
+					buf.putInt(fence[i]);
+				}
+				raf.seek(0);
+				raf.write(header);
+				raf.getFD().sync();
+			}
+			String name = temp.getName();
+			File file = new File(directory, name.substring(0, name.length()
+					- TEMP_SUFFIX.length())
+					+ SEGMENT_SUFFIX);
+			if (!temp.renameTo(file)) {
+				throw new IOException("Unable to rename " + temp + " to "
+						+ file);
+			}
+			return file;
+		}
+
+		/**
+		 * Drops the segment without publishing it.
+		 */
+		public void abort() {
+			try {
+				close();
+			} catch (IOException e) {
+			}
+			temp.delete();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				out.close();
+			}
+		}
+	}
+
+	private final File directory;
+
+	private final Object lock = new Object();
+
+	private final Object mergeLock = new Object();
+
+	private final AtomicLong generation = new AtomicLong();
+
+	private volatile Segment[] segments = new Segment[0];
+
+	private volatile BlockedBloomFilter filter;
+
+	private TreeSet<byte[]> memtable = new TreeSet<byte[]>(COMPARATOR);
+
+	private TreeSet<byte[]> flushing;
+
+	private int flushThreshold = 1 << 20;
+
+	private int mergeFactor = 4;
+
+	private boolean merging;
+
+	private boolean closed;
+
+	private final ExecutorService merger;
+
+	public AddressIndex(File directory) throws IOException {
+		this.directory = directory;
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Creating directory " + directory
+					+ " failed.");
+		}
+		ArrayList<Segment> list = new ArrayList<Segment>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.endsWith(TEMP_SUFFIX)) {
+					file.delete();
+					continue;
+				}
+				if (!name.endsWith(SEGMENT_SUFFIX)) {
+					continue;
+				}
+				long gen;
+				try {
+					gen = Long.parseLong(name.substring(0, name.length()
+							- SEGMENT_SUFFIX.length()));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				list.add(new Segment(file, gen));
+				if (gen > generation.get()) {
+					generation.set(gen);
+				}
+			}
+		}
+		Segment[] array = list.toArray(new Segment[list.size()]);
+		Arrays.sort(array, new Comparator<Segment>() {
+
+			@Override
+			public int compare(Segment a, Segment b) {
+				return a.generation < b.generation ? -1
+						: (a.generation == b.generation ? 0 : 1);
+			}
+		});
+		segments = array;
+		merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "AddressIndexMerge");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public int getFlushThreshold() {
+		return flushThreshold;
+	}
+
+	public void setFlushThreshold(int threshold) {
+		this.flushThreshold = Math.max(1, threshold);
+	}
+
+	public int getMergeFactor() {
+		return mergeFactor;
+	}
+
+	public void setMergeFactor(int factor) {
+		this.mergeFactor = Math.max(2, factor);
+	}
+
+	public BlockedBloomFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Opens (or creates) the membership filter sized for the expected number
+	 * of keys. The stored filter is reused only if it was sized the same way
+	 * and covers the current segments, otherwise it is rebuilt from them.
+	 * Bulk writers still open when this is called are not covered.
+	 */
+	public void openFilter(long expected, double fpp) throws IOException {
+		synchronized (mergeLock) {
+			synchronized (lock) {
+				checkOpen();
+				while (flushing != null) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("interrupted while opening filter");
+					}
+				}
+				BlockedBloomFilter old = filter;
+				filter = null;
+				if (old != null) {
+					old.close();
+				}
+				BlockedBloomFilter next = BlockedBloomFilter.open(new File(
+						directory, FILTER_NAME), expected, fpp);
+				long covered = lastGeneration(segments);
+				if (next.getGeneration() != covered) {
+					next.clear();
+					for (Iterator<byte[]> it = segmentKeys(); it.hasNext();) {
+						next.put(it.next());
+					}
+					next.setGeneration(covered);
+					next.force();
+				}
+				filter = next;
+			}
+		}
+	}
+
+	private static long lastGeneration(Segment[] list) {
+		long max = 0;
+		for (Segment segment : list) {
+			max = Math.max(max, segment.generation);
+		}
+		return max;
+	}
+
+	private void markFilter() {
+		BlockedBloomFilter current = filter;
+		if (current != null) {
+			current.setGeneration(lastGeneration(segments));
+			current.force();
+		}
+	}
+
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Number of stored keys, counting a key once per segment it appears in
+	 * until those segments are merged.
+	 */
+	public long size() {
+		long total = 0;
+		for (Segment segment : segments) {
+			total += segment.count;
+		}
+		synchronized (lock) {
+			total += memtable.size();
+			if (flushing != null) {
+				total += flushing.size();
+			}
+		}
+		return total;
+	}
+
+	private long nextGeneration() {
+		return generation.incrementAndGet();
+	}
+
+	public boolean put(String address) throws IOException {
+		byte[] key = toKey(address);
+		return key != null && put(key);
+	}
+
+	/**
+	 * Buffers a key, flushing to a new segment when the table is full.
+	 * Returns false if the key was already buffered.
+	 */
+	public boolean put(byte[] key) throws IOException {
+		if (key.length != KEY_LENGTH) {
+			throw new IllegalArgumentException("key must be " + KEY_LENGTH
+					+ " bytes");
+		}
+		boolean added, full;
+		synchronized (lock) {
+			checkOpen();
+			added = memtable.add(key);
+			full = memtable.size() >= flushThreshold;
+		}
+		if (full) {
+			flush();
+		}
+		return added;
+	}
+
+	public boolean contains(String address) {
+		byte[] key = toKey(address);
+		return key != null && contains(key);
+	}
+
+	public boolean contains(byte[] key) {
+		synchronized (lock) {
+			if (memtable.contains(key)
+					|| (flushing != null && flushing.contains(key))) {
+				return true;
+			}
+		}
+		BlockedBloomFilter bloom = filter;
+		if (bloom != null && !bloom.mightContain(key)) {
+			return false;
+		}
+		Segment[] current = segments;
+		for (int i = current.length - 1; i >= 0; i--) {
+			if (current[i].contains(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes buffered keys to a new segment. Concurrent lookups keep seeing
+	 * the buffered keys until the segment is published.
+	 */
+	public void flush() throws IOException {
+		TreeSet<byte[]> snapshot;
+		synchronized (lock) {
+			while (flushing != null) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while flushing");
+				}
+			}
+			if (memtable.isEmpty()) {
+				return;
+			}
+			snapshot = memtable;
+			flushing = snapshot;
+			memtable = new TreeSet<byte[]>(COMPARATOR);
+		}
+		try {
+			SegmentWriter writer = newSegmentWriter();
+			try {
+				for (byte[] key : snapshot) {
+					writer.add(key);
+				}
+			} catch (IOException e) {
+				writer.abort();
+				throw e;
+			}
+			commit(writer);
+		} catch (IOException e) {
+			synchronized (lock) {
+				memtable.addAll(snapshot);
+			}
+			throw e;
+		} finally {
+			synchronized (lock) {
+				flushing = null;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	public SegmentWriter newSegmentWriter() throws IOException {
+		checkOpen();
+		return new SegmentWriter(filter);
+	}
+
+	/**
+	 * Publishes a finished writer as the newest segment.
+	 */
+	public void commit(SegmentWriter writer) throws IOException {
+		File file = writer.finish();
+		String name = file.getName();
+		Segment segment = new Segment(file, Long.parseLong(name.substring(0,
+				name.length() - SEGMENT_SUFFIX.length())));
+		synchronized (lock) {
+			Segment[] current = segments;
+			Segment[] next = Arrays.copyOf(current, current.length + 1);
+			next[current.length] = segment;
+			segments = next;
+		}
+		markFilter();
+		scheduleMerge();
+	}
+
+	private void scheduleMerge() {
+		synchronized (lock) {
+			if (closed || merging || segments.length < mergeFactor) {
+				return;
+			}
+			merging = true;
+		}
+		merger.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					merge();
+				} catch (IOException e) {
+					e.printStackTrace();
+				} finally {
+					synchronized (lock) {
+						merging = false;
+					}
+				}
+			}
+		});
+	}
+
+	private static class Cursor {
+
+		final Segment segment;
+
+		final byte[] key = new byte[KEY_LENGTH];
+
+		int position;
+
+		Cursor(Segment segment) {
+			this.segment = segment;
+		}
+
+		boolean advance() {
+			if (position >= segment.count) {
+				return false;
+			}
+			segment.read(position++, key);
+			return true;
+		}
+	}
+
+	/**
+	 * Merges the smallest segments into one, dropping duplicate keys.
+	 */
+	void merge() throws IOException {
+		synchronized (mergeLock) {
+			mergeSmallest();
+		}
+	}
+
+	private void mergeSmallest() throws IOException {
+		Segment[] current = segments;
+		if (current.length < 2) {
+			return;
+		}
+		Segment[] bySize = current.clone();
+		Arrays.sort(bySize, new Comparator<Segment>() {
+
+			@Override
+			public int compare(Segment a, Segment b) {
+				return a.count < b.count ? -1 : (a.count == b.count ? 0 : 1);
+			}
+		});
+		ArrayList<Segment> inputs = new ArrayList<Segment>();
+		long total = 0;
+		for (Segment segment : bySize) {
+			if (total + segment.count > MAX_SEGMENT_KEYS && inputs.size() >= 2) {
+				break;
+			}
+			if (total + segment.count > MAX_SEGMENT_KEYS) {
+				return;
+			}
+			inputs.add(segment);
+			total += segment.count;
+		}
+		if (inputs.size() < 2) {
+			return;
+		}
+		PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(inputs.size(),
+				new Comparator<Cursor>() {
+
+					@Override
+					public int compare(Cursor a, Cursor b) {
+						return COMPARATOR.compare(a.key, b.key);
+					}
+				});
+		for (Segment segment : inputs) {
+			Cursor cursor = new Cursor(segment);
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+		// merged keys are already in the filter
+		checkOpen();
+		SegmentWriter writer = new SegmentWriter(null);
+		try {
+			while (!queue.isEmpty()) {
+				Cursor cursor = queue.poll();
+				writer.add(cursor.key);
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+		} catch (IOException e) {
+			writer.abort();
+			throw e;
+		}
+		File file = writer.finish();
+		String name = file.getName();
+		Segment merged = new Segment(file, Long.parseLong(name.substring(0,
+				name.length() - SEGMENT_SUFFIX.length())));
+		synchronized (lock) {
+			ArrayList<Segment> next = new ArrayList<Segment>();
+			for (Segment segment : segments) {
+				if (!inputs.contains(segment)) {
+					next.add(segment);
+				}
+			}
+			next.add(merged);
+			segments = next.toArray(new Segment[next.size()]);
+		}
+		markFilter();
+		// a mapped file may not be removable on some platforms until the
+		// mapping is collected, in which case the next open merges it again
+		for (Segment segment : inputs) {
+			if (!segment.file.delete()) {
+				segment.file.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Flushes and merges every segment into one.
+	 */
+	public void compact() throws IOException {
+		flush();
+		for (;;) {
+			int before = segments.length;
+			merge();
+			if (segments.length >= before) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Iterates all keys of the published segments in storage order, which is
+	 * sorted per segment. Keys still buffered in memory are not included.
+	 */
+	public Iterator<byte[]> segmentKeys() {
+		final Segment[] current = segments;
+		return new Iterator<byte[]>() {
+
+			int segment, position;
+
+			@Override
+			public boolean hasNext() {
+				while (segment < current.length
+						&& position >= current[segment].count) {
+					segment++;
+					position = 0;
+				}
+				return segment < current.length;
+			}
+
+			@Override
+			public byte[] next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				byte[] key = new byte[KEY_LENGTH];
+				current[segment].read(position++, key);
+				return key;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new IOException("address index is closed");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+		}
+		flush();
+		synchronized (lock) {
+			closed = true;
+		}
+		merger.shutdown();
+		// a running merge still reads the segments and marks the filter
+		try {
+			merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while closing");
+		}
+		BlockedBloomFilter current = filter;
+		if (current != null) {
+			current.close();
+		}
+	}
+}
@@ -18,6 +18,10 @@ public class AddressManager {
 	private HashMap<String, AddressDataBase> pCaches = new HashMap<String, AddressDataBase>(
 			10000);
 
+	public final static long DEFAULT_EXPECTED_ADDRESSES = 1L << 25;
+
+	public final static double DEFAULT_FALSE_POSITIVE = 0.01d;
+
 	private final static String default_alphabet = "abcdefghijklmnopqrstuvwxyz123456789";
 
 	private String data_base_dir;
@@ -28,6 +32,10 @@ public class AddressManager {
 
 	private boolean isOnlyLocked = false;
 
+	private final AddressIndex pIndex;
+
+	private final File pMigrated;
+
 	public AddressManager(String baseDir) throws IOException {
 		this(default_alphabet, baseDir);
 	}
@@ -40,8 +48,16 @@ public class AddressManager {
 		File tmp = new File(data_base_dir + "address");
 		this.pBlock = new AddressIndexBlock(tmp);
 		this.pAlphabet = alphabet;
+		this.pIndex = new AddressIndex(new File(data_base_dir + "keys"));
+		this.pMigrated = new File(pIndex.getDirectory(), "legacy.done");
+		this.pIndex.openFilter(DEFAULT_EXPECTED_ADDRESSES,
+				DEFAULT_FALSE_POSITIVE);
 		if (tmp.exists()) {
 			pBlock.open();
+			if (isLegacy()) {
+				// one time upgrade of a database written before the index
+				migrateLegacy();
+			}
 		} else {
 			if (!tmp.exists()) {
 				FileUtils.makedirs(tmp);
@@ -77,6 +93,8 @@ public class AddressManager {
 				pBlock.put(dir, file.getAbsolutePath());
 			}
 			pBlock.save();
+			// nothing to migrate in a new database
+			FileUtils.write(pMigrated, String.valueOf(System.currentTimeMillis()));
 		}
 
 	}
@@ -98,7 +116,43 @@ public class AddressManager {
 		return data_base_dir;
 	}
 
+	public AddressIndex getIndex() {
+		return pIndex;
+	}
+
+	/**
+	 * Resizes the membership filter, rebuilding it from the stored
+	 * addresses when the sizing changes.
+	 */
+	public void setFilter(long expected, double fpp) throws IOException {
+		pIndex.openFilter(expected, fpp);
+	}
+
+	/**
+	 * True until the per-prefix text files have been imported into the
+	 * binary index, lookups missing the index still check those files.
+	 */
+	public boolean isLegacy() {
+		return !pMigrated.exists();
+	}
+
 	public boolean put(String key) {
+		byte[] hash = AddressIndex.toKey(key);
+		if (hash != null) {
+			try {
+				if (isOnlyLocked && pIndex.contains(hash)) {
+					return false;
+				}
+				pIndex.put(hash);
+				return true;
+			} catch (IOException ex) {
+				return false;
+			}
+		}
+		return putLegacy(key);
+	}
+
+	private boolean putLegacy(String key) {
 		String dir = pBlock.find(Character.toLowerCase(key.charAt(1)));
 		if (dir == null) {
 			throw new RuntimeException(
@@ -113,6 +167,15 @@ public class AddressManager {
 	}
 
 	public boolean find(String key) throws IOException {
+		byte[] hash = AddressIndex.toKey(key);
+		if (hash != null) {
+			if (pIndex.contains(hash)) {
+				return true;
+			}
+			if (!isLegacy()) {
+				return false;
+			}
+		}
 		String dir = pBlock.find(Character.toLowerCase(key.charAt(1)));
 		if (dir == null) {
 			throw new RuntimeException(
@@ -127,6 +190,15 @@ public class AddressManager {
 	}
 
 	public boolean findBlock(String key) throws IOException {
+		byte[] hash = AddressIndex.toKey(key);
+		if (hash != null) {
+			if (pIndex.contains(hash)) {
+				return true;
+			}
+			if (!isLegacy()) {
+				return false;
+			}
+		}
 		String dir = pBlock.find(Character.toLowerCase(key.charAt(1)));
 		if (dir == null) {
 			throw new RuntimeException(
@@ -146,6 +218,39 @@ public class AddressManager {
 				data.submit();
 			}
 		}
+		pIndex.flush();
+	}
+
+	/**
+	 * Imports every text index file into the binary index and compacts it.
+	 * The text files are left in place, but are no longer consulted.
+	 */
+	public void migrateLegacy() throws IOException {
+		submit();
+		ArrayList<String> listfile = FileUtils.getAllFiles(data_base_dir);
+		for (String file : listfile) {
+			if (file.endsWith(AddressDataBase.pIndexName)) {
+				BufferedReader bf = new BufferedReader(new FileReader(file));
+				String line;
+				try {
+					while ((line = bf.readLine()) != null) {
+						byte[] hash = AddressIndex.toKey(line);
+						if (hash != null) {
+							pIndex.put(hash);
+						}
+					}
+				} finally {
+					bf.close();
+				}
+			}
+		}
+		pIndex.compact();
+		FileUtils.write(pMigrated, String.valueOf(System.currentTimeMillis()));
+	}
+
+	public void close() throws IOException {
+		submit();
+		pIndex.close();
 	}
 
 	protected static File createTempFile(String tmpFile) {
@@ -0,0 +1,258 @@
+package org.ripple.power.database;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent Bloom filter kept in a memory-mapped file. Every key maps to a
+ * single 64 byte block and all of its probe bits land inside that block, so
+ * a query touches one cache line and at most one page. Reads are lock free;
+ * writers are serialized so concurrent puts cannot drop each other's bits.
+ */
+public class BlockedBloomFilter implements Closeable {
+
+	private static final int MAGIC = 0x52504246;
+
+	private static final int VERSION = 1;
+
+	// magic, version, blocks, probes, count, generation, padding
+	private static final int HEADER = 64;
+
+	private static final int BLOCK_BYTES = 64;
+
+	private static final int BLOCK_BITS = BLOCK_BYTES * 8;
+
+	private static final int MAX_BLOCKS = (Integer.MAX_VALUE - HEADER)
+			/ BLOCK_BYTES;
+
+	private final File file;
+
+	private final int blocks;
+
+	private final int probes;
+
+	private final MappedByteBuffer buffer;
+
+	private long count;
+
+	/**
+	 * Number of 64 byte blocks needed for the expected key count at the
+	 * target false positive rate. Blocking costs some accuracy, so the
+	 * textbook size is padded by a fifth.
+	 */
+	public static int blocksFor(long expected, double fpp) {
+		if (expected <= 0) {
+			expected = 1;
+		}
+		if (fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("fpp must be in (0, 1)");
+		}
+		double bits = -expected * Math.log(fpp) / (Math.log(2) * Math.log(2));
+		bits *= 1.2d;
+		long n = (long) Math.ceil(bits / BLOCK_BITS);
+		return (int) Math.max(1, Math.min(MAX_BLOCKS, n));
+	}
+
+	public static int probesFor(long expected, double fpp) {
+		double bitsPerKey = -Math.log(fpp) / (Math.log(2) * Math.log(2));
+		int k = (int) Math.round(bitsPerKey * Math.log(2));
+		return Math.max(1, Math.min(16, k));
+	}
+
+	/**
+	 * Opens the filter at the given file, creating an empty one when it does
+	 * not exist or was sized for different parameters.
+	 */
+	public static BlockedBloomFilter open(File file, long expected, double fpp)
+			throws IOException {
+		int blocks = blocksFor(expected, fpp);
+		int probes = probesFor(expected, fpp);
+		if (file.exists()) {
+			try {
+				BlockedBloomFilter filter = new BlockedBloomFilter(file);
+				if (filter.blocks == blocks && filter.probes == probes) {
+					return filter;
+				}
+			} catch (IOException e) {
+				// unreadable, recreate below
+			}
+		}
+		return create(file, blocks, probes);
+	}
+
+	public static BlockedBloomFilter create(File file, int blocks, int probes)
+			throws IOException {
+		if (blocks <= 0 || blocks > MAX_BLOCKS) {
+			throw new IllegalArgumentException("blocks out of range: " + blocks);
+		}
+		if (probes <= 0 || probes > 16) {
+			throw new IllegalArgumentException("probes out of range: "
+					+ probes);
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			// zero filled by the file system
+			raf.setLength(0);
+			raf.setLength(HEADER + (long) blocks * BLOCK_BYTES);
+			raf.seek(0);
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(blocks);
+			raf.writeInt(probes);
+			raf.writeLong(0);
+			raf.writeLong(0);
+		}
+		return new BlockedBloomFilter(file);
+	}
+
+	private BlockedBloomFilter(File file) throws IOException {
+		this.file = file;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long length = raf.length();
+			if (length < HEADER) {
+				throw new IOException("Truncated bloom filter " + file);
+			}
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					length);
+		}
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a bloom filter " + file);
+		}
+		blocks = buffer.getInt(8);
+		probes = buffer.getInt(12);
+		count = buffer.getLong(16);
+		if (blocks <= 0
+				|| HEADER + (long) blocks * BLOCK_BYTES > buffer.capacity()) {
+			throw new IOException("Truncated bloom filter " + file);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getBlocks() {
+		return blocks;
+	}
+
+	public int getProbes() {
+		return probes;
+	}
+
+	/**
+	 * Keys added so far, not counting keys whose bits were all already set.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Caller defined marker stored with the filter, used to tell which data
+	 * the filter is known to cover.
+	 */
+	public synchronized long getGeneration() {
+		return buffer.getLong(24);
+	}
+
+	public synchronized void setGeneration(long generation) {
+		buffer.putLong(24, generation);
+	}
+
+	/**
+	 * Estimated false positive rate at the current fill.
+	 */
+	public synchronized double expectedFpp() {
+		double perBlock = count / (double) blocks;
+		double p = 1 - Math.exp(-probes * perBlock / BLOCK_BITS);
+		return Math.pow(p, probes);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static long hash(byte[] key, long seed) {
+		long h = seed;
+		for (int i = 0; i < key.length; i++) {
+			h = (h ^ (key[i] & 0xff)) * 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	private int block(long h1) {
+		return (int) ((h1 >>> 1) % blocks);
+	}
+
+	public boolean mightContain(byte[] key) {
+		long h1 = hash(key, 0xcbf29ce484222325L);
+		long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L);
+		int base = HEADER + block(h1) * BLOCK_BYTES;
+		long step = (h2 >>> 32) | 1;
+		for (int i = 0; i < probes; i++) {
+			int bit = (int) ((h2 + i * step) & (BLOCK_BITS - 1));
+			long word = buffer.getLong(base + ((bit >>> 6) << 3));
+			if ((word & (1L << (bit & 63))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a key, returning true if any of its bits were newly set.
+	 */
+	public synchronized boolean put(byte[] key) {
+		long h1 = hash(key, 0xcbf29ce484222325L);
+		long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L);
+		int base = HEADER + block(h1) * BLOCK_BYTES;
+		long step = (h2 >>> 32) | 1;
+		boolean changed = false;
+		for (int i = 0; i < probes; i++) {
+			int bit = (int) ((h2 + i * step) & (BLOCK_BITS - 1));
+			int offset = base + ((bit >>> 6) << 3);
+			long word = buffer.getLong(offset);
+			long mask = 1L << (bit & 63);
+			if ((word & mask) == 0) {
+				buffer.putLong(offset, word | mask);
+				changed = true;
+			}
+		}
+		if (changed) {
+			count++;
+		}
+		return changed;
+	}
+
+	public synchronized void clear() {
+		int end = HEADER + blocks * BLOCK_BYTES;
+		for (int i = HEADER; i < end; i += 8) {
+			buffer.putLong(i, 0);
+		}
+		count = 0;
+		buffer.putLong(16, 0);
+		buffer.putLong(24, 0);
+	}
+
+	/**
+	 * Writes the count and all dirty pages back to the file.
+	 */
+	public synchronized void force() {
+		buffer.putLong(16, count);
+		buffer.force();
+	}
+
+	@Override
+	public void close() {
+		force();
+	}
+}
@@ -0,0 +1,603 @@
+package org.ripple.power.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.ripple.power.Closed;
+
+/**
+ * Open addressing map from byte[] keys to optional byte[] values. Keys and
+ * values are appended to one contiguous slab outside the Java heap, so the
+ * heap only holds an offset array and a one byte fingerprint per slot. Probing
+ * compares fingerprints first and touches the slab only on a likely match.
+ * The table doubles when three quarters full. When opened on a file the slab
+ * is memory mapped and the table is rebuilt from it on the next open.
+ */
+public class ByteKeyTable implements Iterable<byte[]>, Closed {
+
+	private static final int MAGIC = 0x52504254;
+
+	private static final int VERSION = 1;
+
+	// magic, version, used, count, dead
+	private static final int HEADER = 32;
+
+	private static final int RECORD_HEADER = 8;
+
+	private static final int NO_VALUE = -1;
+
+	private static final String COMPACT_SUFFIX = ".compact";
+
+	// the slab doubles on demand, so only a modest part is reserved up front
+	private static int initialSlab(int expected) {
+		return HEADER + Math.max(16, Math.min(expected, 1 << 16)) * 32;
+	}
+
+	private final File file;
+
+	private RandomAccessFile raf;
+
+	private ByteBuffer slab;
+
+	private int used;
+
+	// slab offset of each slot's record, 0 when empty
+	private int[] slots;
+
+	private byte[] fingerprints;
+
+	private int mask;
+
+	private int size;
+
+	private long deadBytes;
+
+	private boolean closed;
+
+	public ByteKeyTable() {
+		this(16);
+	}
+
+	public ByteKeyTable(int expected) {
+		this.file = null;
+		this.slab = ByteBuffer.allocateDirect(initialSlab(expected));
+		this.used = HEADER;
+		initSlots(expected);
+	}
+
+	/**
+	 * Opens a persisted table, creating the file if it does not exist.
+	 */
+	public ByteKeyTable(File file, int expected) throws IOException {
+		this.file = file;
+		// left over from a compaction that did not finish
+		new File(file.getPath() + COMPACT_SUFFIX).delete();
+		boolean exists = file.exists() && file.length() >= HEADER;
+		this.raf = new RandomAccessFile(file, "rw");
+		if (!exists) {
+			raf.setLength(initialSlab(expected));
+		}
+		map(raf.length());
+		if (!exists) {
+			slab.putInt(0, MAGIC);
+			slab.putInt(4, VERSION);
+			used = HEADER;
+			writeHeader();
+			initSlots(expected);
+			return;
+		}
+		if (slab.getInt(0) != MAGIC || slab.getInt(4) != VERSION) {
+			raf.close();
+			throw new IOException("Not a table file " + file);
+		}
+		used = (int) slab.getLong(8);
+		if (used < HEADER || used > slab.capacity()) {
+			raf.close();
+			throw new IOException("Corrupt table file " + file);
+		}
+		initSlots(Math.max(expected, slab.getInt(16)));
+		deadBytes = 0;
+		for (int offset = HEADER; offset < used; offset = nextRecord(offset)) {
+			int keyLength = slab.getInt(offset);
+			if (keyLength < 0) {
+				deadBytes += recordLength(offset);
+				continue;
+			}
+			byte[] key = readKey(offset);
+			int hash = hash(key);
+			int slot = probe(key, hash);
+			if (slots[slot] != 0) {
+				// replaced before the old record was marked, keep the newer
+				kill(slots[slot]);
+				slots[slot] = offset;
+				continue;
+			}
+			link(slot, hash, offset);
+		}
+	}
+
+	private void map(long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("table file too large");
+		}
+		slab = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+		slab.order(ByteOrder.BIG_ENDIAN);
+	}
+
+	private void initSlots(int expected) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < expected && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		slots = new int[capacity];
+		fingerprints = new byte[capacity];
+		mask = capacity - 1;
+		size = 0;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public boolean isPersistent() {
+		return file != null;
+	}
+
+	private static int hash(byte[] key) {
+		int h = 0x9747b28c ^ key.length;
+		int i = 0;
+		for (; i + 4 <= key.length; i += 4) {
+			int k = (key[i] & 0xff) | (key[i + 1] & 0xff) << 8
+					| (key[i + 2] & 0xff) << 16 | (key[i + 3] & 0xff) << 24;
+			k *= 0xcc9e2d51;
+			k = Integer.rotateLeft(k, 15);
+			k *= 0x1b873593;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		int k = 0;
+		for (int shift = 0; i < key.length; i++, shift += 8) {
+			k |= (key[i] & 0xff) << shift;
+		}
+		k *= 0xcc9e2d51;
+		k = Integer.rotateLeft(k, 15);
+		k *= 0x1b873593;
+		h ^= k;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	// never zero, so zero can mean "empty slot"
+	private static byte fingerprint(int hash) {
+		byte fp = (byte) (hash >>> 24);
+		return fp == 0 ? 1 : fp;
+	}
+
+	/**
+	 * Returns the slot holding the key, or the empty slot where it belongs.
+	 */
+	private int probe(byte[] key, int hash) {
+		byte fp = fingerprint(hash);
+		int slot = hash & mask;
+		for (;;) {
+			int offset = slots[slot];
+			if (offset == 0) {
+				return slot;
+			}
+			if (fingerprints[slot] == fp && keyEquals(offset, key)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean keyEquals(int offset, byte[] key) {
+		if (slab.getInt(offset) != key.length) {
+			return false;
+		}
+		int base = offset + RECORD_HEADER;
+		for (int i = 0; i < key.length; i++) {
+			if (slab.get(base + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void link(int slot, int hash, int offset) {
+		slots[slot] = offset;
+		fingerprints[slot] = fingerprint(hash);
+		size++;
+		if (size > (slots.length * 3) / 4) {
+			rehash(slots.length << 1);
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] oldSlots = slots;
+		slots = new int[capacity];
+		fingerprints = new byte[capacity];
+		mask = capacity - 1;
+		for (int offset : oldSlots) {
+			if (offset != 0) {
+				byte[] key = readKey(offset);
+				int hash = hash(key);
+				int slot = hash & mask;
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = offset;
+				fingerprints[slot] = fingerprint(hash);
+			}
+		}
+	}
+
+	private int recordLength(int offset) {
+		int keyLength = slab.getInt(offset);
+		if (keyLength < 0) {
+			keyLength = ~keyLength;
+		}
+		int valueLength = slab.getInt(offset + 4);
+		return RECORD_HEADER + keyLength + Math.max(0, valueLength);
+	}
+
+	private int nextRecord(int offset) {
+		return offset + recordLength(offset);
+	}
+
+	private byte[] readKey(int offset) {
+		byte[] key = new byte[slab.getInt(offset)];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = slab.get(offset + RECORD_HEADER + i);
+		}
+		return key;
+	}
+
+	private byte[] readValue(int offset) {
+		int valueLength = slab.getInt(offset + 4);
+		if (valueLength == NO_VALUE) {
+			return null;
+		}
+		int base = offset + RECORD_HEADER + slab.getInt(offset);
+		byte[] value = new byte[valueLength];
+		for (int i = 0; i < valueLength; i++) {
+			value[i] = slab.get(base + i);
+		}
+		return value;
+	}
+
+	private void ensure(int bytes) throws IOException {
+		long need = (long) used + bytes;
+		if (need <= slab.capacity()) {
+			return;
+		}
+		if (need > Integer.MAX_VALUE) {
+			throw new IOException("table slab is full");
+		}
+		long capacity = slab.capacity();
+		while (capacity < need) {
+			capacity = Math.min(Integer.MAX_VALUE, capacity * 2);
+		}
+		if (file != null) {
+			raf.setLength(capacity);
+			map(capacity);
+		} else {
+			ByteBuffer next = ByteBuffer.allocateDirect((int) capacity);
+			slab.clear();
+			slab.limit(used);
+			next.put(slab);
+			next.clear();
+			slab = next;
+		}
+	}
+
+	private int append(byte[] key, byte[] value) throws IOException {
+		int length = RECORD_HEADER + key.length
+				+ (value == null ? 0 : value.length);
+		ensure(length);
+		int offset = used;
+		slab.putInt(offset, key.length);
+		slab.putInt(offset + 4, value == null ? NO_VALUE : value.length);
+		int base = offset + RECORD_HEADER;
+		for (int i = 0; i < key.length; i++) {
+			slab.put(base + i, key[i]);
+		}
+		if (value != null) {
+			base += key.length;
+			for (int i = 0; i < value.length; i++) {
+				slab.put(base + i, value[i]);
+			}
+		}
+		used += length;
+		return offset;
+	}
+
+	private void writeHeader() {
+		if (file != null) {
+			slab.putLong(8, used);
+			slab.putInt(16, size);
+			slab.putLong(24, deadBytes);
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("table is closed");
+		}
+	}
+
+	/**
+	 * Adds the key unless it is present. Returns false if it already was.
+	 */
+	public synchronized boolean putIfAbsent(byte[] key, byte[] value)
+			throws IOException {
+		checkOpen();
+		int hash = hash(key);
+		int slot = probe(key, hash);
+		if (slots[slot] != 0) {
+			return false;
+		}
+		int offset = append(key, value);
+		link(slot, hash, offset);
+		writeHeader();
+		return true;
+	}
+
+	/**
+	 * Adds or replaces a key. The replaced record stays in the slab as dead
+	 * space until {@link #compact()}.
+	 */
+	public synchronized boolean put(byte[] key, byte[] value)
+			throws IOException {
+		checkOpen();
+		int hash = hash(key);
+		int slot = probe(key, hash);
+		int old = slots[slot];
+		int offset = append(key, value);
+		if (old == 0) {
+			link(slot, hash, offset);
+		} else {
+			slots[slot] = offset;
+			// the new record is covered by the header before the old one is
+			// marked dead; reopening keeps the newer if both are live
+			writeHeader();
+			kill(old);
+		}
+		writeHeader();
+		return old == 0;
+	}
+
+	private void kill(int offset) {
+		deadBytes += recordLength(offset);
+		slab.putInt(offset, ~slab.getInt(offset));
+	}
+
+	public synchronized boolean contains(byte[] key) {
+		if (closed) {
+			return false;
+		}
+		return slots[probe(key, hash(key))] != 0;
+	}
+
+	/**
+	 * Returns the value stored for the key, or null when the key is absent
+	 * or was added without a value.
+	 */
+	public synchronized byte[] get(byte[] key) {
+		if (closed) {
+			return null;
+		}
+		int offset = slots[probe(key, hash(key))];
+		return offset == 0 ? null : readValue(offset);
+	}
+
+	public synchronized boolean remove(byte[] key) {
+		checkOpen();
+		int slot = probe(key, hash(key));
+		int offset = slots[slot];
+		if (offset == 0) {
+			return false;
+		}
+		kill(offset);
+		slots[slot] = 0;
+		fingerprints[slot] = 0;
+		size--;
+		// backward shift so probe chains stay unbroken
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (slots[next] != 0) {
+			int home = hash(readKey(slots[next])) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				slots[hole] = slots[next];
+				fingerprints[hole] = fingerprints[next];
+				slots[next] = 0;
+				fingerprints[next] = 0;
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		writeHeader();
+		return true;
+	}
+
+	public synchronized int size() {
+		return closed ? 0 : size;
+	}
+
+	public synchronized int capacity() {
+		return slots.length;
+	}
+
+	public synchronized long getSlabBytes() {
+		return used;
+	}
+
+	public synchronized long getDeadBytes() {
+		return deadBytes;
+	}
+
+	/**
+	 * Rewrites the slab without dead records. A persisted table is written
+	 * to a new file that replaces the old one once it is complete.
+	 */
+	public synchronized void compact() throws IOException {
+		checkOpen();
+		if (deadBytes == 0) {
+			return;
+		}
+		if (file != null) {
+			compactFile();
+		} else {
+			int write = HEADER;
+			for (int offset = HEADER; offset < used;) {
+				int length = recordLength(offset);
+				if (slab.getInt(offset) >= 0) {
+					if (write != offset) {
+						for (int i = 0; i < length; i++) {
+							slab.put(write + i, slab.get(offset + i));
+						}
+					}
+					write += length;
+				}
+				offset += length;
+			}
+			used = write;
+		}
+		deadBytes = 0;
+		int count = size;
+		initSlots(count);
+		for (int offset = HEADER; offset < used; offset = nextRecord(offset)) {
+			byte[] key = readKey(offset);
+			int hash = hash(key);
+			link(probe(key, hash), hash, offset);
+		}
+		writeHeader();
+	}
+
+	private void compactFile() throws IOException {
+		File temp = new File(file.getPath() + COMPACT_SUFFIX);
+		int capacity = slab.capacity();
+		int write = HEADER;
+		try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+			out.setLength(capacity);
+			MappedByteBuffer target = out.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, capacity);
+			target.order(ByteOrder.BIG_ENDIAN);
+			ByteBuffer source = slab.duplicate();
+			for (int offset = HEADER; offset < used;) {
+				int length = recordLength(offset);
+				if (slab.getInt(offset) >= 0) {
+					source.limit(offset + length);
+					source.position(offset);
+					target.position(write);
+					target.put(source);
+					write += length;
+				}
+				offset += length;
+			}
+			target.putInt(0, MAGIC);
+			target.putInt(4, VERSION);
+			target.putLong(8, write);
+			target.putInt(16, size);
+			target.putLong(24, 0);
+			target.force();
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// the old file is still mapped and intact
+			temp.delete();
+			throw e;
+		}
+		raf.close();
+		raf = new RandomAccessFile(file, "rw");
+		map(raf.length());
+		used = write;
+	}
+
+	public synchronized void force() {
+		if (file != null && !closed) {
+			writeHeader();
+			((MappedByteBuffer) slab).force();
+		}
+	}
+
+	/**
+	 * Iterates live keys in insertion order. The table must not be modified
+	 * while iterating.
+	 */
+	@Override
+	public Iterator<byte[]> iterator() {
+		return new Iterator<byte[]>() {
+
+			int offset = advance(HEADER);
+
+			private int advance(int from) {
+				synchronized (ByteKeyTable.this) {
+					while (from < used && slab.getInt(from) < 0) {
+						from = nextRecord(from);
+					}
+					return from;
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				synchronized (ByteKeyTable.this) {
+					return !closed && offset < used;
+				}
+			}
+
+			@Override
+			public byte[] next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				synchronized (ByteKeyTable.this) {
+					byte[] key = readKey(offset);
+					offset = advance(nextRecord(offset));
+					return key;
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Not supported.");
+			}
+		};
+	}
+
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		force();
+		closed = true;
+		slots = null;
+		fingerprints = null;
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+			}
+			raf = null;
+		}
+		slab = null;
+	}
+}
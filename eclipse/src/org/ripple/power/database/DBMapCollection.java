@@ -10,15 +10,48 @@ public class DBMapCollection<Key, Value>
         implements Iterable<Entry<Key, Value>>, Iterator<Entry<Key, Value>> {
 
     protected DBMapDatabase database;
+    protected String name;
     protected BTreeMap<Key, Value> treeMap;
     protected Set<Entry<Key, Value>> entrySet;
     protected Iterator<Entry<Key, Value>> iterator;
 
     public DBMapCollection(DBMapDatabase database, BTreeMap<Key, Value> treeMap) {
+        this(database, null, treeMap);
+    }
+
+    public DBMapCollection(DBMapDatabase database, String name,
+            BTreeMap<Key, Value> treeMap) {
         this.database = database;
+        this.name = name;
         this.treeMap = treeMap;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Rebuilds this collection from the given entries through
+     * {@link DBMapDatabase#bulkLoad}, which is much faster than repeated
+     * puts for large imports. The previous contents are dropped.
+     */
+    public void load(Iterator<? extends Entry<Key, Value>> entries) {
+        load(entries, false);
+    }
+
+    public void load(Iterator<? extends Entry<Key, Value>> entries,
+            boolean descending) {
+        if (name == null) {
+            throw new IllegalStateException("collection has no name");
+        }
+        database.bulkLoad(name, entries, descending,
+                DBMapDatabase.DEFAULT_PRESORT_BATCH);
+    }
+
+    public int size() {
+        return treeMap.size();
+    }
+
     public void put(Key key, Value object) {
         treeMap.put(key, object);
     }
@@ -1,18 +1,98 @@
 package org.ripple.power.database;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 
+import org.mapdb.BTreeKeySerializer;
 import org.mapdb.BTreeMap;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
+import org.mapdb.Fun;
+import org.mapdb.Pump;
+import org.mapdb.Serializer;
 import org.ripple.power.config.LSystem;
 
 public class DBMapDatabase {
 
+	/**
+	 * How the store is tuned when it is opened.
+	 * <ul>
+	 * <li>BULK_LOAD: no transaction journal, mapped file, writes queued to a
+	 * background thread. Fastest for filling history or candles, but the
+	 * store is only consistent after {@link #close()}.</li>
+	 * <li>LOW_LATENCY_READ: mapped file and an LRU record cache, writes
+	 * queued so they stay off the reading thread.</li>
+	 * <li>DURABLE: transaction journal with checksums and the store closed on
+	 * JVM shutdown; nothing is queued, but concurrent commits share one
+	 * sync.</li>
+	 * </ul>
+	 */
+	public static enum Profile {
+		DEFAULT, BULK_LOAD, LOW_LATENCY_READ, DURABLE
+	}
+
+	public static final int DEFAULT_CACHE_SIZE = 32768;
+
+	public static final int DEFAULT_PRESORT_BATCH = 100000;
+
+	// Pump.sort keeps up to threads + 2 batches on the heap
+	private static final int MAX_SORT_THREADS = 4;
+
+	@SuppressWarnings("rawtypes")
+	private static final Comparator<Fun.Pair> DESCENDING_KEYS = new Comparator<Fun.Pair>() {
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public int compare(Fun.Pair a, Fun.Pair b) {
+			return -Fun.COMPARATOR.compare(a.a, b.a);
+		}
+	};
+
+	/**
+	 * Writes the entries spilled by a presort: the key through the tree's
+	 * key serializer as a one key node, the value through the collection's
+	 * value serializer. The default serializer would need both to be
+	 * Serializable.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static final class SpillSerializer extends Serializer<Fun.Pair> {
+
+		private final BTreeKeySerializer keySerializer;
+
+		private final Serializer valueSerializer;
+
+		SpillSerializer(BTreeKeySerializer keySerializer,
+				Serializer valueSerializer) {
+			this.keySerializer = keySerializer;
+			this.valueSerializer = valueSerializer;
+		}
+
+		@Override
+		public void serialize(DataOutput out, Fun.Pair pair)
+				throws IOException {
+			keySerializer.serialize(out,
+					keySerializer.arrayToKeys(new Object[] { pair.a }));
+			valueSerializer.serialize(out, pair.b);
+		}
+
+		@Override
+		public Fun.Pair deserialize(DataInput in, int available)
+				throws IOException {
+			Object key = keySerializer.getKey(keySerializer.deserialize(in, 1),
+					0);
+			return new Fun.Pair(key, valueSerializer.deserialize(in, -1));
+		}
+	}
+
 	public static DBMapDatabase create(String name) {
 		return new DBMapDatabase(LSystem.getDirectory() + "/" + name);
 	}
@@ -36,6 +116,10 @@ public class DBMapDatabase {
 	@SuppressWarnings("rawtypes")
 	private HashMap<String, DBMapCollection> collections;
 
+	private Profile _profile = Profile.DEFAULT;
+	private int _cacheSize = DEFAULT_CACHE_SIZE;
+	private boolean _compression;
+
 	public DBMapDatabase(String file) {
 		this(new File(file));
 	}
@@ -49,6 +133,11 @@ public class DBMapDatabase {
 		connect(false);
 	}
 
+	public void connect(Profile profile) {
+		setProfile(profile);
+		connect(false);
+	}
+
 	public void connect(boolean readOnly) {
 		if (_db != null) {
 			return;
@@ -59,16 +148,87 @@ public class DBMapDatabase {
 		} else {
 			dbMaker = DBMaker.newMemoryDB();
 		}
+		dbMaker = tune(dbMaker);
 		if (readOnly) {
 			dbMaker = dbMaker.readOnly();
 		}
 		_db = dbMaker.make();
 	}
 
+	private DBMaker tune(DBMaker dbMaker) {
+		boolean file = _dbFile != null;
+		switch (_profile) {
+		case BULK_LOAD:
+			dbMaker = dbMaker.transactionDisable().asyncWriteEnable();
+			if (file) {
+				dbMaker = dbMaker.mmapFileEnableIfSupported();
+			}
+			break;
+		case LOW_LATENCY_READ:
+			dbMaker = dbMaker.cacheLRUEnable().cacheSize(_cacheSize)
+					.asyncWriteEnable();
+			if (file) {
+				dbMaker = dbMaker.mmapFileEnableIfSupported();
+			}
+			break;
+		case DURABLE:
+			dbMaker = dbMaker.checksumEnable().closeOnJvmShutdown()
+					.groupCommitEnable();
+			break;
+		default:
+			break;
+		}
+		if (_compression) {
+			dbMaker = dbMaker.compressionEnable();
+		}
+		return dbMaker;
+	}
+
+	/**
+	 * Takes effect on the next connect. A store created DURABLE carries
+	 * checksums and has to be reopened DURABLE.
+	 */
+	public void setProfile(Profile profile) {
+		_profile = profile == null ? Profile.DEFAULT : profile;
+	}
+
+	public Profile getProfile() {
+		return _profile;
+	}
+
+	/**
+	 * Number of records kept by the LRU cache of the LOW_LATENCY_READ
+	 * profile.
+	 */
+	public void setCacheSize(int cacheSize) {
+		if (cacheSize <= 0) {
+			throw new IllegalArgumentException("Illegal cache size: "
+					+ cacheSize);
+		}
+		_cacheSize = cacheSize;
+	}
+
+	public int getCacheSize() {
+		return _cacheSize;
+	}
+
+	/**
+	 * LZF record compression; like checksums it must match every time the
+	 * store is opened.
+	 */
+	public void setCompression(boolean compression) {
+		_compression = compression;
+	}
+
+	public boolean isCompression() {
+		return _compression;
+	}
+
 	public void close() {
 		if (_db != null) {
 			_db.close();
 			_db = null;
+			collections.clear();
 		}
 	}
 
@@ -84,11 +244,179 @@ public class DBMapDatabase {
 		}
 		BTreeMap<Key, Value> treeMap = _db.getTreeMap(collectionName);
 		DBMapCollection<Key, Value> collection = new DBMapCollection<Key, Value>(
-				this, treeMap);
+				this, collectionName, treeMap);
+		collections.put(collectionName, collection);
+		return collection;
+	}
+
+	/**
+	 * Opens the named collection, creating it with the given value
+	 * serializer, such as one of {@link RecordSerializers}, if it does not
+	 * exist. The serializer is stored in the catalog, so later opens and
+	 * bulk loads keep using it.
+	 */
+	@SuppressWarnings("unchecked")
+	public <Key, Value> DBMapCollection<Key, Value> getCollection(
+			String collectionName, Serializer<Value> valueSerializer) {
+		if (collections.get(collectionName) != null) {
+			return collections.get(collectionName);
+		}
+		BTreeMap<Key, Value> treeMap = _db.exists(collectionName) ? _db
+				.<Key, Value> getTreeMap(collectionName) : _db
+				.createTreeMap(collectionName)
+				.valueSerializer(valueSerializer).<Key, Value> make();
+		DBMapCollection<Key, Value> collection = new DBMapCollection<Key, Value>(
+				this, collectionName, treeMap);
 		collections.put(collectionName, collection);
 		return collection;
 	}
 
+	/**
+	 * Replaces the named collection with the given entries. The BTree is
+	 * built bottom up by {@link Pump} instead of inserting key by key.
+	 * Entries in descending key order are streamed straight into the tree;
+	 * any other order is first sorted, spilling to temporary files, with at
+	 * most presortBatch entries on the heap. Batches are sorted on up to
+	 * four threads and tree nodes are written on one thread per core. Of
+	 * entries with the same key the last one is kept, as if they were put
+	 * one by one.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public <Key, Value> DBMapCollection<Key, Value> bulkLoad(
+			String collectionName,
+			final Iterator<? extends Entry<Key, Value>> entries,
+			boolean descending, int presortBatch) {
+		Iterator<Fun.Pair<Key, Value>> pairs = new Iterator<Fun.Pair<Key, Value>>() {
+
+			@Override
+			public boolean hasNext() {
+				return entries.hasNext();
+			}
+
+			@Override
+			public Fun.Pair<Key, Value> next() {
+				Entry<Key, Value> entry = entries.next();
+				return new Fun.Pair<Key, Value>(entry.getKey(),
+						entry.getValue());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		Serializer<?> valueSerializer = null;
+		BTreeKeySerializer keySerializer = null;
+		DB.BTreeMapMaker maker = _db.createTreeMap(collectionName);
+		boolean exists = _db.exists(collectionName);
+		if (exists) {
+			// the new tree is made the way the old one was
+			valueSerializer = _db.catGet(collectionName + ".valueSerializer");
+			keySerializer = _db.catGet(collectionName + ".keySerializer");
+			maker.nodeSize(_db.catGet(collectionName + ".maxNodeSize", 32));
+			if (_db.catGet(collectionName + ".valuesOutsideNodes", false)) {
+				maker.valuesOutsideNodesEnable();
+			}
+			if (_db.catGet(collectionName + ".counterRecid", 0L) != 0L) {
+				maker.counterEnable();
+			}
+		}
+		final Comparator comparator = keySerializer != null ? keySerializer
+				.comparator() : Fun.COMPARATOR;
+		if (keySerializer != null) {
+			maker.keySerializer(keySerializer).comparator(comparator);
+		}
+		if (valueSerializer != null) {
+			maker.valueSerializer(valueSerializer);
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (!descending) {
+			int sortThreads = Math.min(threads, MAX_SORT_THREADS);
+			Serializer<Fun.Pair> spill = new SpillSerializer(
+					keySerializer != null ? keySerializer
+							: new BTreeKeySerializer.BasicKeySerializer(
+									_db.getDefaultSerializer(),
+									Fun.COMPARATOR),
+					valueSerializer != null ? valueSerializer : _db
+							.getDefaultSerializer());
+			Comparator<Fun.Pair> descendingKeys = comparator == Fun.COMPARATOR ? DESCENDING_KEYS
+					: new Comparator<Fun.Pair>() {
+
+						@Override
+						public int compare(Fun.Pair a, Fun.Pair b) {
+							return -comparator.compare(a.a, b.a);
+						}
+					};
+			// stable: equal keys stay in the order they came in
+			pairs = Pump.sort(pairs, false,
+					Math.max(1, presortBatch / (sortThreads + 2)),
+					descendingKeys, spill, sortThreads);
+		}
+		pairs = lastPerKey(pairs, comparator);
+		if (exists) {
+			_db.delete(collectionName);
+		}
+		BTreeMap<Key, Value> treeMap = maker.pumpSource(pairs)
+				.pumpIgnoreDuplicates().pumpParallel(threads).make();
+		DBMapCollection<Key, Value> collection = collections
+				.get(collectionName);
+		if (collection != null) {
+			collection.treeMap = treeMap;
+		} else {
+			collection = new DBMapCollection<Key, Value>(this, collectionName,
+					treeMap);
+			collections.put(collectionName, collection);
+		}
+		return collection;
+	}
+
+	/**
+	 * Of consecutive pairs with the same key only the last is returned.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <Key, Value> Iterator<Fun.Pair<Key, Value>> lastPerKey(
+			final Iterator<Fun.Pair<Key, Value>> sorted,
+			final Comparator comparator) {
+		return new Iterator<Fun.Pair<Key, Value>>() {
+
+			Fun.Pair<Key, Value> next = sorted.hasNext() ? sorted.next()
+					: null;
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Fun.Pair<Key, Value> next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				Fun.Pair<Key, Value> last = next;
+				next = null;
+				while (sorted.hasNext()) {
+					Fun.Pair<Key, Value> pair = sorted.next();
+					if (comparator.compare(pair.a, last.a) != 0) {
+						next = pair;
+						break;
+					}
+					last = pair;
+				}
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	public <Key, Value> DBMapCollection<Key, Value> bulkLoad(
+			String collectionName, Iterator<? extends Entry<Key, Value>> entries) {
+		return bulkLoad(collectionName, entries, false, DEFAULT_PRESORT_BATCH);
+	}
+
 	public void commit() {
 		_db.commit();
 	}
@@ -4,6 +4,10 @@ import java.util.Iterator;
 
 import org.ripple.power.Closed;
 
+/**
+ * Chained table with a fixed number of buckets, see {@link ByteKeyTable} for
+ * a resizable table that keeps its entries off the heap.
+ */
 public class HashTable implements Iterable<HashBytes>, Closed {
 
 	private HashBytes[] bytesTable;
@@ -19,10 +23,10 @@ public class HashTable implements Iterable<HashBytes>, Closed {
 	}
 
 	private int calculate(int size) {
-		int i = size / 2;
+		int i = Math.max(2, size / 2);
 		while (true) {
 			boolean isPrime = true;
-			for (int j = 2; j < i; j++) {
+			for (int j = 2; j * j <= i; j++) {
 				if (i % j == 0) {
 					isPrime = false;
 					break;
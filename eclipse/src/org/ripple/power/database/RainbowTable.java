@@ -1,18 +1,29 @@
 package org.ripple.power.database;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.ripple.power.CoinUtils;
+import org.ripple.power.Closed;
 /**
  * 一个简单的“非专用”彩虹表实现，可以实现“增查”功能，但速度显然无法和专用表媲美。
  * 
  * @author cping
  *
  */
-public class RainbowTable {
+public class RainbowTable implements Closed {
 
-	private final HashTable pTable;
+	private final ByteKeyTable pTable;
 
 	public RainbowTable(int size, int minPwLength, int maxPwLength) {
-		this.pTable = new HashTable(size, minPwLength, maxPwLength);
+		this.pTable = new ByteKeyTable(size);
+	}
+
+	/**
+	 * 以文件保存的彩虹表，重启后内容仍然存在。
+	 */
+	public RainbowTable(File file, int size) throws IOException {
+		this.pTable = new ByteKeyTable(file, size);
 	}
 
 	public RainbowTable(int size) {
@@ -23,41 +34,62 @@ public class RainbowTable {
 		this(size, 0, length);
 	}
 
+	private void insert(byte[] key, byte[] value) {
+		try {
+			pTable.putIfAbsent(key, value);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public void addHashString(String key) {
-		pTable.insert(new HashBytes(CoinUtils.fromHex(key)));
+		insert(CoinUtils.fromHex(key), null);
 	}
 
 	public void add(String key) {
-		pTable.insert(new HashBytes(key.getBytes()));
+		insert(key.getBytes(), null);
 	}
 
 	public void add(String key, String value) {
-		pTable.insert(new HashBytes(key.getBytes()),
-				new HashBytes(value.getBytes()));
+		insert(key.getBytes(), value.getBytes());
 	}
 
 	public void add(byte[] key) {
-		pTable.insert(new HashBytes(key));
+		insert(key, null);
 	}
 
 	public void add(byte[] key, byte[] value) {
-		pTable.insert(new HashBytes(key), new HashBytes(value));
+		insert(key, value);
 	}
 
 	public boolean find(String key) {
-		return pTable.contains(new HashBytes(key.getBytes()));
+		return pTable.contains(key.getBytes());
 	}
 
 	public boolean find(byte[] key) {
-		return pTable.contains(new HashBytes(key));
+		return pTable.contains(key);
 	}
 
 	public HashBytes search(String key) {
-		return pTable.search(new HashBytes(key.getBytes()));
+		return search(key.getBytes());
 	}
 
 	public HashBytes search(byte[] key) {
-		return pTable.search(new HashBytes(key));
+		byte[] value = pTable.get(key);
+		return value == null ? null : new HashBytes(value);
+	}
+
+	public int size() {
+		return pTable.size();
+	}
+
+	public void flush() {
+		pTable.force();
+	}
+
+	@Override
+	public void close() {
+		pTable.close();
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,624 @@
+package org.ripple.power.database;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+
+import org.mapdb.DataIO;
+import org.mapdb.Serializer;
+import org.ripple.power.RippleAddress;
+import org.ripple.power.RippleSeedAddress;
+import org.ripple.power.hft.Candle;
+import org.ripple.power.txns.IssuedCurrency;
+import org.ripple.power.txns.RippleItem;
+import org.ripple.power.txns.TransactionTx;
+import org.ripple.power.wallet.WalletItem;
+
+/**
+ * MapDB serializers for the application records, to be passed as value
+ * serializer when a collection is created (see
+ * {@link DBMapDatabase#getCollection(String, Serializer)}).
+ * <p>
+ * Each record is written as a version byte and then its fields in a fixed
+ * order, without class or field names. Integers are zigzag varints, ledger
+ * numbers are stored as deltas against the ledger of the transaction,
+ * upper or lower case hex strings such as hashes are stored as raw bytes,
+ * addresses of issued currencies as their 20 byte payload, and strings
+ * repeated within one record (accounts, currencies) as a back reference.
+ * Fields are read and written directly, so nothing is reflected per record.
+ * <p>
+ * The serializers are stateless and Serializable, as MapDB keeps them in its
+ * catalog. Changing the field order of a record requires a new version
+ * number; the readers must keep decoding the old ones.
+ */
+public final class RecordSerializers {
+
+	private static final int VERSION_1 = 1;
+
+	private static final int STR_NULL = 0, STR_REF = 1, STR_HEX_UPPER = 2,
+			STR_HEX_LOWER = 3, STR_CHARS = 4, STR_TAGS = 5;
+
+	private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+	private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+
+	private RecordSerializers() {
+	}
+
+	public static final Serializer<TransactionTx> TRANSACTION_TX = new TransactionTxSerializer();
+
+	public static final Serializer<RippleItem> RIPPLE_ITEM = new RippleItemSerializer();
+
+	public static final Serializer<WalletItem> WALLET_ITEM = new WalletItemSerializer();
+
+	public static final Serializer<Candle> CANDLE = new CandleSerializer();
+
+	/**
+	 * Strings already written or read in the current record, so repeated
+	 * values cost a single small index.
+	 */
+	static final class StringTable {
+
+		private final HashMap<String, Integer> written = new HashMap<String, Integer>();
+
+		private final ArrayList<String> read = new ArrayList<String>();
+
+		void write(DataOutput out, String s) throws IOException {
+			if (s == null) {
+				DataIO.packInt(out, STR_NULL);
+				return;
+			}
+			Integer ref = written.get(s);
+			if (ref != null) {
+				DataIO.packInt(out, STR_REF + ref * STR_TAGS);
+				return;
+			}
+			written.put(s, written.size());
+			int length = s.length();
+			int hex = hexCase(s);
+			if (hex != 0) {
+				DataIO.packInt(out, (hex > 0 ? STR_HEX_UPPER : STR_HEX_LOWER)
+						+ (length >>> 1) * STR_TAGS);
+				for (int i = 0; i < length; i += 2) {
+					out.write((digit(s.charAt(i)) << 4) | digit(s.charAt(i + 1)));
+				}
+			} else {
+				DataIO.packInt(out, STR_CHARS + length * STR_TAGS);
+				for (int i = 0; i < length; i++) {
+					DataIO.packInt(out, s.charAt(i));
+				}
+			}
+		}
+
+		String read(DataInput in) throws IOException {
+			int header = DataIO.unpackInt(in);
+			int tag = header % STR_TAGS;
+			int value = header / STR_TAGS;
+			if (tag == STR_NULL) {
+				return null;
+			}
+			if (tag == STR_REF) {
+				return read.get(value);
+			}
+			String s;
+			if (tag == STR_CHARS) {
+				char[] chars = new char[value];
+				for (int i = 0; i < value; i++) {
+					chars[i] = (char) DataIO.unpackInt(in);
+				}
+				s = new String(chars);
+			} else if (tag == STR_HEX_UPPER || tag == STR_HEX_LOWER) {
+				char[] digits = tag == STR_HEX_UPPER ? HEX_UPPER : HEX_LOWER;
+				char[] chars = new char[value * 2];
+				for (int i = 0; i < value; i++) {
+					int b = in.readUnsignedByte();
+					chars[i * 2] = digits[b >>> 4];
+					chars[i * 2 + 1] = digits[b & 0xF];
+				}
+				s = new String(chars);
+			} else {
+				throw new IOException("Unknown string tag: " + tag);
+			}
+			read.add(s);
+			return s;
+		}
+
+		/**
+		 * @return 1 for an even length upper case hex string, -1 for lower
+		 *         case, 0 otherwise
+		 */
+		private static int hexCase(String s) {
+			int length = s.length();
+			if (length == 0 || (length & 1) != 0) {
+				return 0;
+			}
+			boolean upper = false, lower = false;
+			for (int i = 0; i < length; i++) {
+				char c = s.charAt(i);
+				if (c >= 'A' && c <= 'F') {
+					upper = true;
+				} else if (c >= 'a' && c <= 'f') {
+					lower = true;
+				} else if (c < '0' || c > '9') {
+					return 0;
+				}
+			}
+			if (upper && lower) {
+				return 0;
+			}
+			return lower ? -1 : 1;
+		}
+
+		private static int digit(char c) {
+			if (c <= '9') {
+				return c - '0';
+			}
+			return (c | 0x20) - 'a' + 10;
+		}
+	}
+
+	static void writeLong(DataOutput out, long value) throws IOException {
+		DataIO.packLong(out, (value << 1) ^ (value >> 63));
+	}
+
+	static long readLong(DataInput in) throws IOException {
+		long value = DataIO.unpackLong(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Whole numbers, which counts and many volumes are, take a varint;
+	 * others the eight IEEE bytes.
+	 */
+	static void writeDouble(DataOutput out, double value) throws IOException {
+		long whole = (long) value;
+		if (whole == value && Math.abs(whole) < (1L << 52)
+				&& !(whole == 0 && 1 / value < 0)) {
+			writeLong(out, whole << 1);
+		} else {
+			writeLong(out, 1);
+			out.writeDouble(value);
+		}
+	}
+
+	static double readDouble(DataInput in) throws IOException {
+		long header = readLong(in);
+		if ((header & 1) == 0) {
+			return header >> 1;
+		}
+		return in.readDouble();
+	}
+
+	/**
+	 * Ledger sequence relative to a base ledger; 0, meaning not set, is kept
+	 * apart from a zero distance.
+	 */
+	static void writeOffset(DataOutput out, long value, long base)
+			throws IOException {
+		writeLong(out, value == 0 ? 0 : ((base - value) << 1) | 1);
+	}
+
+	static long readOffset(DataInput in, long base) throws IOException {
+		long offset = readLong(in);
+		return offset == 0 ? 0 : base - (offset >> 1);
+	}
+
+	static void writeBigDecimal(DataOutput out, BigDecimal value)
+			throws IOException {
+		BigInteger unscaled = value.unscaledValue();
+		int scale = value.scale();
+		if (unscaled.bitLength() < 63) {
+			writeLong(out, (long) scale << 1);
+			writeLong(out, unscaled.longValue());
+		} else {
+			writeLong(out, ((long) scale << 1) | 1);
+			byte[] bytes = unscaled.toByteArray();
+			DataIO.packInt(out, bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static BigDecimal readBigDecimal(DataInput in) throws IOException {
+		long header = readLong(in);
+		int scale = (int) (header >> 1);
+		if ((header & 1) == 0) {
+			return BigDecimal.valueOf(readLong(in), scale);
+		}
+		byte[] bytes = new byte[DataIO.unpackInt(in)];
+		in.readFully(bytes);
+		return new BigDecimal(new BigInteger(bytes), scale);
+	}
+
+	static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+		DataIO.packInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static byte[] readBytes(DataInput in) throws IOException {
+		byte[] bytes = new byte[DataIO.unpackInt(in)];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static final int CUR_AMOUNT = 1, CUR_ISSUER = 2, CUR_CURRENCY = 4;
+
+	static void writeCurrency(DataOutput out, IssuedCurrency value,
+			StringTable strings) throws IOException {
+		if (value == null) {
+			out.write(0);
+			return;
+		}
+		int flags = 0x80;
+		if (value.amount != null) {
+			flags |= CUR_AMOUNT;
+		}
+		if (value.issuer != null) {
+			flags |= CUR_ISSUER;
+		}
+		if (value.currency != null) {
+			flags |= CUR_CURRENCY;
+		}
+		out.write(flags);
+		if (value.amount != null) {
+			writeBigDecimal(out, value.amount);
+		}
+		if (value.issuer != null) {
+			writeBytes(out, value.issuer.getBytes());
+		}
+		if (value.currency != null) {
+			strings.write(out, value.currency);
+		}
+	}
+
+	static IssuedCurrency readCurrency(DataInput in, StringTable strings)
+			throws IOException {
+		int flags = in.readUnsignedByte();
+		if (flags == 0) {
+			return null;
+		}
+		IssuedCurrency value = new IssuedCurrency();
+		if ((flags & CUR_AMOUNT) != 0) {
+			value.amount = readBigDecimal(in);
+		}
+		if ((flags & CUR_ISSUER) != 0) {
+			value.issuer = new RippleAddress(readBytes(in));
+		}
+		if ((flags & CUR_CURRENCY) != 0) {
+			value.currency = strings.read(in);
+		}
+		return value;
+	}
+
+	private static int version(DataInput in) throws IOException {
+		int version = in.readUnsignedByte();
+		if (version != VERSION_1) {
+			throw new IOException("Unknown record version: " + version);
+		}
+		return version;
+	}
+
+	public static final class TransactionTxSerializer extends
+			Serializer<TransactionTx> implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void serialize(DataOutput out, TransactionTx tx)
+				throws IOException {
+			StringTable strings = new StringTable();
+			out.write(VERSION_1);
+			long ledger = tx.ledgerIndex;
+			writeLong(out, ledger);
+			writeLong(out, tx.inLedger - ledger);
+			strings.write(out, tx.account);
+			strings.write(out, tx.meda);
+			strings.write(out, tx.signingPubKey);
+			strings.write(out, tx.txnSignature);
+			strings.write(out, tx.destination);
+			writeCurrency(out, tx.currency, strings);
+			writeCurrency(out, tx.sendMax, strings);
+			strings.write(out, tx.fee);
+			strings.write(out, tx.mode);
+			strings.write(out, tx.trusted);
+			writeCurrency(out, tx.get, strings);
+			writeCurrency(out, tx.pay, strings);
+			writeLong(out, tx.destinationTag);
+			strings.write(out, tx.invoiceID);
+			writeLong(out, tx.flags);
+			writeLong(out, tx.offersSequence);
+			writeLong(out, tx.sequence);
+			strings.write(out, tx.date);
+			writeLong(out, tx.date_number);
+			strings.write(out, tx.hash);
+			out.writeBoolean(tx.isPartialPayment);
+			strings.write(out, tx.flagsName);
+			strings.write(out, tx.clazz);
+			strings.write(out, tx.counterparty);
+
+			int nodes = tx.affectedNodeList == null ? -1 : tx.affectedNodeList
+					.size();
+			writeLong(out, nodes);
+			for (int i = 0; i < nodes; i++) {
+				writeNode(out, tx.affectedNodeList.get(i), ledger, strings);
+			}
+			int memos = tx.memos == null ? -1 : tx.memos.size();
+			writeLong(out, memos);
+			for (int i = 0; i < memos; i++) {
+				TransactionTx.Memo memo = tx.memos.get(i);
+				strings.write(out, memo.memo_type);
+				strings.write(out, memo.memo_data);
+				strings.write(out, memo.memo_format);
+				writeLong(out, memo.memo_date - tx.date_number);
+			}
+		}
+
+		private static void writeNode(DataOutput out,
+				TransactionTx.AffectedNode node, long ledger,
+				StringTable strings) throws IOException {
+			strings.write(out, node.name);
+			strings.write(out, node.ledgerEntryType);
+			strings.write(out, node.previousTxnID);
+			strings.write(out, node.ledgerIndex);
+			strings.write(out, node.regularKey);
+			strings.write(out, node.takerGetsIssuer);
+			strings.write(out, node.takerPaysIssuer);
+			strings.write(out, node.takerPaysCurrency);
+			strings.write(out, node.takerGetsCurrency);
+			strings.write(out, node.exchangeRate);
+			writeOffset(out, node.previousTxnLgrSeq, ledger);
+			writeCurrency(out, node.balance, strings);
+			writeCurrency(out, node.highLimit, strings);
+			writeCurrency(out, node.lowLimit, strings);
+			writeLong(out, node.transferRate);
+			writeCurrency(out, node.takerGets, strings);
+			writeCurrency(out, node.takerPays, strings);
+			writeLong(out, node.flags);
+			out.writeBoolean(node.sell);
+			strings.write(out, node.sellOrBuy);
+			strings.write(out, node.txid);
+			writeLong(out, node.sequence);
+			strings.write(out, node.account);
+			strings.write(out, node.owner);
+			strings.write(out, node.rootIndex);
+			strings.write(out, node.indexPrevious);
+			strings.write(out, node.indexNext);
+			writeLong(out, node.ownerCount);
+		}
+
+		@Override
+		public TransactionTx deserialize(DataInput in, int available)
+				throws IOException {
+			version(in);
+			StringTable strings = new StringTable();
+			TransactionTx tx = new TransactionTx();
+			long ledger = readLong(in);
+			tx.ledgerIndex = ledger;
+			tx.inLedger = ledger + readLong(in);
+			tx.account = strings.read(in);
+			tx.meda = strings.read(in);
+			tx.signingPubKey = strings.read(in);
+			tx.txnSignature = strings.read(in);
+			tx.destination = strings.read(in);
+			tx.currency = readCurrency(in, strings);
+			tx.sendMax = readCurrency(in, strings);
+			tx.fee = strings.read(in);
+			tx.mode = strings.read(in);
+			tx.trusted = strings.read(in);
+			tx.get = readCurrency(in, strings);
+			tx.pay = readCurrency(in, strings);
+			tx.destinationTag = readLong(in);
+			tx.invoiceID = strings.read(in);
+			tx.flags = readLong(in);
+			tx.offersSequence = readLong(in);
+			tx.sequence = readLong(in);
+			tx.date = strings.read(in);
+			tx.date_number = readLong(in);
+			tx.hash = strings.read(in);
+			tx.isPartialPayment = in.readBoolean();
+			tx.flagsName = strings.read(in);
+			tx.clazz = strings.read(in);
+			tx.counterparty = strings.read(in);
+
+			int nodes = (int) readLong(in);
+			if (nodes < 0) {
+				tx.affectedNodeList = null;
+			} else {
+				tx.affectedNodeList = new ArrayList<TransactionTx.AffectedNode>(
+						nodes);
+				for (int i = 0; i < nodes; i++) {
+					tx.affectedNodeList.add(readNode(in, ledger, strings));
+				}
+			}
+			int memos = (int) readLong(in);
+			if (memos < 0) {
+				tx.memos = null;
+			} else {
+				tx.memos = new ArrayList<TransactionTx.Memo>(memos);
+				for (int i = 0; i < memos; i++) {
+					TransactionTx.Memo memo = new TransactionTx.Memo();
+					memo.memo_type = strings.read(in);
+					memo.memo_data = strings.read(in);
+					memo.memo_format = strings.read(in);
+					memo.memo_date = tx.date_number + readLong(in);
+					tx.memos.add(memo);
+				}
+			}
+			return tx;
+		}
+
+		private static TransactionTx.AffectedNode readNode(DataInput in,
+				long ledger, StringTable strings) throws IOException {
+			TransactionTx.AffectedNode node = new TransactionTx.AffectedNode();
+			node.name = strings.read(in);
+			node.ledgerEntryType = strings.read(in);
+			node.previousTxnID = strings.read(in);
+			node.ledgerIndex = strings.read(in);
+			node.regularKey = strings.read(in);
+			node.takerGetsIssuer = strings.read(in);
+			node.takerPaysIssuer = strings.read(in);
+			node.takerPaysCurrency = strings.read(in);
+			node.takerGetsCurrency = strings.read(in);
+			node.exchangeRate = strings.read(in);
+			node.previousTxnLgrSeq = readOffset(in, ledger);
+			node.balance = readCurrency(in, strings);
+			node.highLimit = readCurrency(in, strings);
+			node.lowLimit = readCurrency(in, strings);
+			node.transferRate = readLong(in);
+			node.takerGets = readCurrency(in, strings);
+			node.takerPays = readCurrency(in, strings);
+			node.flags = readLong(in);
+			node.sell = in.readBoolean();
+			node.sellOrBuy = strings.read(in);
+			node.txid = strings.read(in);
+			node.sequence = readLong(in);
+			node.account = strings.read(in);
+			node.owner = strings.read(in);
+			node.rootIndex = strings.read(in);
+			node.indexPrevious = strings.read(in);
+			node.indexNext = strings.read(in);
+			node.ownerCount = readLong(in);
+			return node;
+		}
+	}
+
+	public static final class RippleItemSerializer extends
+			Serializer<RippleItem> implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void serialize(DataOutput out, RippleItem item)
+				throws IOException {
+			StringTable strings = new StringTable();
+			out.write(VERSION_1);
+			strings.write(out, item.startTime);
+			writeDouble(out, item.baseVolume);
+			writeDouble(out, item.counterVolume);
+			writeDouble(out, item.count);
+			writeDouble(out, item.open);
+			writeDouble(out, item.high);
+			writeDouble(out, item.low);
+			writeDouble(out, item.close);
+			writeDouble(out, item.vwap);
+			strings.write(out, item.openTime);
+			strings.write(out, item.closeTime);
+			out.writeBoolean(item.partial);
+		}
+
+		@Override
+		public RippleItem deserialize(DataInput in, int available)
+				throws IOException {
+			version(in);
+			StringTable strings = new StringTable();
+			RippleItem item = new RippleItem();
+			item.startTime = strings.read(in);
+			item.baseVolume = readDouble(in);
+			item.counterVolume = readDouble(in);
+			item.count = readDouble(in);
+			item.open = readDouble(in);
+			item.high = readDouble(in);
+			item.low = readDouble(in);
+			item.close = readDouble(in);
+			item.vwap = readDouble(in);
+			item.openTime = strings.read(in);
+			item.closeTime = strings.read(in);
+			item.partial = in.readBoolean();
+			return item;
+		}
+	}
+
+	public static final class WalletItemSerializer extends
+			Serializer<WalletItem> implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void serialize(DataOutput out, WalletItem item)
+				throws IOException {
+			StringTable strings = new StringTable();
+			out.write(VERSION_1);
+			RippleSeedAddress seed = item.getSeed();
+			out.writeBoolean(seed != null);
+			if (seed != null) {
+				writeBytes(out, seed.getBytes());
+			}
+			strings.write(out, item.getDate());
+			strings.write(out, item.getAmount());
+			strings.write(out, item.getStatus());
+			out.write((item.isTip() ? 1 : 0) | (item.isOnline() ? 2 : 0));
+		}
+
+		@Override
+		public WalletItem deserialize(DataInput in, int available)
+				throws IOException {
+			version(in);
+			StringTable strings = new StringTable();
+			RippleSeedAddress seed = in.readBoolean() ? new RippleSeedAddress(
+					readBytes(in)) : null;
+			String date = strings.read(in);
+			String amount = strings.read(in);
+			String status = strings.read(in);
+			WalletItem item = new WalletItem(date, seed, amount, status);
+			int flags = in.readUnsignedByte();
+			item.setTip((flags & 1) != 0);
+			item.setOnline((flags & 2) != 0);
+			return item;
+		}
+	}
+
+	public static final class CandleSerializer extends Serializer<Candle>
+			implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void serialize(DataOutput out, Candle candle)
+				throws IOException {
+			out.write(VERSION_1);
+			long time = candle.getTime();
+			writeLong(out, time);
+			out.writeDouble(candle.getOpen());
+			out.writeDouble(candle.getClose());
+			out.writeDouble(candle.getHigh());
+			out.writeDouble(candle.getLow());
+			out.writeDouble(candle.getAdjClose());
+			out.writeBoolean(candle.hasVolume());
+			if (candle.hasVolume()) {
+				writeDouble(out, candle.getVolume());
+			}
+			Date date = candle.getDate();
+			out.writeBoolean(date != null);
+			if (date != null) {
+				// usually the candle time, which then takes a byte
+				writeLong(out, date.getTime() - time);
+			}
+		}
+
+		@Override
+		public Candle deserialize(DataInput in, int available)
+				throws IOException {
+			version(in);
+			Candle candle = new Candle();
+			long time = readLong(in);
+			candle.setTime(time);
+			candle.setOpen(in.readDouble());
+			candle.setClose(in.readDouble());
+			candle.setHigh(in.readDouble());
+			candle.setLow(in.readDouble());
+			candle.setAdjClose(in.readDouble());
+			if (in.readBoolean()) {
+				candle.setVolume(readDouble(in));
+			}
+			if (in.readBoolean()) {
+				candle.setDate(new Date(time + readLong(in)));
+			}
+			return candle;
+		}
+	}
+}
@@ -17,6 +17,20 @@ public class RippleToDataBase {
 
 	public static AddressManager go(File userFile, String baseDir)
 			throws IOException {
+		AddressManager manager = new AddressManager(baseDir);
+		manager.submit();
+		AddressBulkImporter importer = new AddressBulkImporter(
+				manager.getIndex());
+		System.out.println(String.format("Import %s", importer.load(userFile)));
+		return manager;
+	}
+
+	/**
+	 * Line by line import through {@link AddressManager#put(String)}, for
+	 * inputs that also carry keys which are not valid addresses.
+	 */
+	public static AddressManager goSequential(File userFile, String baseDir)
+			throws IOException {
 		HashSet<String> caches = new HashSet<String>(10000);
 		AddressManager manager = new AddressManager(baseDir);
 		BufferedReader reader = new BufferedReader(new FileReader(userFile));
@@ -11,8 +11,12 @@ public class BaseTable extends IndexedMapTable<BaseTableEntry> {
 	private final String crypticName;
 
 	public BaseTable(String name) {
+		this(name, UUID.randomUUID().toString());
+	}
+
+	BaseTable(String name, String crypticName) {
 		super(new SecureTable<BaseTableEntry>(name));
-		this.crypticName = UUID.randomUUID().toString();
+		this.crypticName = crypticName;
 	}
 
 	public String getCrypticName() {
@@ -1,25 +1,37 @@
 package org.ripple.power.database.secrecy;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 import org.ripple.power.utils.ByteUtils;
 import org.ripple.power.wallet.Passphrase;
 
+/**
+ * Encrypted store behind {@link org.ripple.power.database.SafeData}. Every
+ * table entry and every attached file is kept as its own record in a
+ * {@link SecureLogStore}, so a commit only writes what changed. Containers
+ * written by the older zip format are converted on first unlock and the old
+ * file is kept next to the new one with a ".legacy" suffix.
+ */
 public final class SecureDataBase {
 
 	private final Passphrase passphrase;
 	private final File dbPath;
+	private SecureLogStore store;
 	private static final String SECURE_INDEX = "SECURE_INDEX";
+	private static final String FILE_PREFIX = "file/";
+	private static final String ENTRY_PREFIX = "entry/";
+	private static final String KIND_FILE = "file";
+	private static final String KIND_INDEXED = "indexed";
+	private static final String KIND_MAP = "map";
+	private static final String COMMIT_COUNT = "commit";
 
 	public SecureDataBase(File file) {
 		this.dbPath = file;
@@ -45,15 +57,24 @@ public final class SecureDataBase {
 	}
 
 	public void clear() {
+		closeStore();
 		File dbFile = this.dbFile();
 		if (dbFile.exists()) {
 			dbFile.delete();
 		}
 		ensureFile();
+		if (!isLocked()) {
+			try {
+				openStore();
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
 	}
 
 	public void lock() {
 		this.passphrase.clear();
+		closeStore();
 	}
 
 	public boolean isLocked() {
@@ -62,11 +83,8 @@ public final class SecureDataBase {
 
 	public void setPassphrase(String passphrase) throws Exception {
 		this.passphrase.setPassphrase(passphrase);
-		if (dbFile().length() == 0) {
-			return;
-		}
 		try {
-			this.getMasterIndex();
+			openStore();
 		} catch (Exception ex) {
 			lock();
 			ex.printStackTrace();
@@ -78,85 +96,211 @@ public final class SecureDataBase {
 		return this.dbPath;
 	}
 
-	private ZipOutputStream outZip() throws FileNotFoundException {
-		return new ZipOutputStream(new BufferedOutputStream(
-				new FileOutputStream(dbFile())));
+	private void openStore() throws Exception {
+		closeStore();
+		File dbFile = dbFile();
+		if (dbFile.length() > 0 && !SecureLogStore.isContainer(dbFile)) {
+			migrateLegacy(dbFile);
+			return;
+		}
+		this.store = SecureLogStore.open(dbFile,
+				this.passphrase.getPassphraseHash());
 	}
 
-	private ZipFile zipDbFile() throws IOException {
-		return new ZipFile(dbFile());
+	private void closeStore() {
+		if (this.store != null) {
+			try {
+				this.store.close();
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+			this.store = null;
+		}
+	}
+
+	private SecureLogStore store() throws Exception {
+		if (this.store == null) {
+			if (isLocked()) {
+				throw new Exception("database is locked");
+			}
+			openStore();
+		}
+		return this.store;
 	}
 
 	public boolean isEmpty() {
+		if (this.store != null) {
+			return !this.store.hasRoot();
+		}
 		return (dbFile().length() < 1L);
 	}
 
+	/**
+	 * Number of bytes held by replaced records, reclaimed by compaction.
+	 */
+	public long getDeadBytes() {
+		return this.store == null ? 0 : this.store.getDeadBytes();
+	}
+
+	public void compact() throws Exception {
+		store().compact();
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public SecureIndex getMasterIndex() throws Exception {
-		try (ZipFile zipFile = zipDbFile();
-				InputStream masterIndexInStream = zipFile
-						.getInputStream(zipFile.getEntry(SECURE_INDEX));) {
-			byte[] encryptedMasterIndex = ByteUtils
-					.readFully(masterIndexInStream);
-			byte[] decryptedMasterIndex = Passphrase.decrypt(this.passphrase,
-					encryptedMasterIndex);
-			return Serialization.<SecureIndex> inflate(decryptedMasterIndex);
-		} catch (IOException | ClassNotFoundException ex) {
-			ex.printStackTrace();
+		SecureLogStore log = store();
+		byte[] meta = log.getMeta();
+		if (meta == null) {
+			return null;
+		}
+		ArrayList<String[]> tables = Serialization.inflate(meta);
+		SecureIndex masterIndex = new SecureIndex();
+		for (String[] table : tables) {
+			String kind = table[0];
+			Table target;
+			if (COMMIT_COUNT.equals(kind)) {
+				masterIndex.setCommitCount(Long.parseLong(table[1]));
+				continue;
+			} else if (KIND_FILE.equals(kind)) {
+				BaseTable fileTable = new BaseTable(table[1], table[2]);
+				masterIndex.putFileTable(fileTable);
+				target = fileTable;
+			} else if (KIND_INDEXED.equals(kind)) {
+				IndexedMapTable indexed = new IndexedMapTable(new SecureTable(
+						table[1]));
+				masterIndex.putIndexedMapTable(indexed);
+				target = indexed;
+			} else {
+				SecureTable mapTable = new SecureTable(table[1]);
+				masterIndex.putMapTable(mapTable);
+				target = mapTable;
+			}
+			for (String key : log.keys(entryPrefix(kind, table[1]))) {
+				TableEntry entry = Serialization.inflate(log.get(key));
+				target.putEntry(entry);
+			}
 		}
-		return null;
+		return masterIndex;
 	}
 
+	private static String entryPrefix(String kind, String table) {
+		return ENTRY_PREFIX + kind + "/" + table + "/";
+	}
+
+	private static void putEntry(SecureLogStore log, HashSet<String> live,
+			String kind, String table, TableEntry entry) throws IOException {
+		String key = entryPrefix(kind, table) + entry.getId();
+		live.add(key);
+		log.put(key, Serialization.deflate(entry));
+	}
+
+	/**
+	 * Stages every entry and attached file, then commits. Entries whose
+	 * serialized form did not change are not written again.
+	 */
+	@SuppressWarnings("rawtypes")
 	public void commitMasterIndex(SecureIndex masterIndex) throws Exception {
-		try (ZipOutputStream zipOut = outZip();) {
-			for (BaseTable fileTable : masterIndex.getFileTables()) {
-				for (BaseTableEntry fileTableEntry : fileTable.getAll()) {
-					if (!fileTableEntry.isSourceAttached()) {
-						continue;
-					}
-					zipOut.putNextEntry(new ZipEntry(fileTableEntry
-							.getFileNameHash()));
-					Path sourceFilePath = fileTableEntry.getSourceFilePath();
-					byte[] fileBytes = ByteUtils.readFully(sourceFilePath);
-					zipOut.write(Passphrase.encrypt(this.passphrase, fileBytes));
-					zipOut.flush();
-					zipOut.closeEntry();
+		SecureLogStore log = store();
+		HashSet<String> live = new HashSet<String>();
+		ArrayList<String[]> tables = new ArrayList<String[]>();
+		for (BaseTable fileTable : masterIndex.getFileTables()) {
+			tables.add(new String[] { KIND_FILE, fileTable.getName(),
+					fileTable.getCrypticName() });
+			for (BaseTableEntry fileTableEntry : fileTable.getAll()) {
+				String fileKey = FILE_PREFIX
+						+ fileTableEntry.getFileNameHash();
+				if (fileTableEntry.isSourceAttached()) {
+					log.put(fileKey, ByteUtils.readFully(fileTableEntry
+							.getSourceFilePath()));
 					fileTableEntry.detachSource();
 				}
+				live.add(fileKey);
+				putEntry(log, live, KIND_FILE, fileTable.getName(),
+						fileTableEntry);
+			}
+		}
+		for (IndexedMapTable indexed : masterIndex.getIndexedMapTables()) {
+			tables.add(new String[] { KIND_INDEXED, indexed.getName() });
+			for (Object entry : indexed.getAll()) {
+				putEntry(log, live, KIND_INDEXED, indexed.getName(),
+						(TableEntry) entry);
+			}
+		}
+		for (SecureTable mapTable : masterIndex.getMapTables()) {
+			tables.add(new String[] { KIND_MAP, mapTable.getName() });
+			for (Object entry : mapTable.getAll()) {
+				putEntry(log, live, KIND_MAP, mapTable.getName(),
+						(TableEntry) entry);
+			}
+		}
+		for (String key : log.keys(null)) {
+			if (!live.contains(key)) {
+				log.remove(key);
 			}
-			masterIndex.incrementCommitCount();
-			byte[] encryptedMasterIndex = Passphrase.encrypt(this.passphrase,
-					Serialization.<SecureIndex> deflate(masterIndex));
-			zipOut.putNextEntry(new ZipEntry(SECURE_INDEX));
-			zipOut.write(encryptedMasterIndex);
-			zipOut.flush();
-			zipOut.closeEntry();
-			zipOut.close();
-		} catch (IOException ex) {
-			ex.printStackTrace();
 		}
+		masterIndex.incrementCommitCount();
+		tables.add(new String[] { COMMIT_COUNT,
+				Long.toString(masterIndex.getCommitCount()) });
+		log.setMeta(Serialization.deflate(tables));
+		log.commit();
 	}
 
 	public byte[] loadFile(BaseTableEntry fileTableEntry) throws Exception {
 		if (fileTableEntry == null) {
 			return null;
 		}
-		byte[] fileBytes = null;
-		ensureFile();
-		try {
-			if (Files.size(dbFile().toPath()) < 1L) {
-				return fileBytes;
+		return store().get(FILE_PREFIX + fileTableEntry.getFileNameHash());
+	}
+
+	/**
+	 * Reads a zip container of the previous format and writes its content
+	 * into a new log container, which replaces it only once it is complete.
+	 */
+	private void migrateLegacy(File dbFile) throws Exception {
+		SecureIndex masterIndex;
+		ArrayList<Object[]> blobs = new ArrayList<Object[]>();
+		try (ZipFile zipFile = new ZipFile(dbFile)) {
+			try (InputStream in = zipFile.getInputStream(zipFile
+					.getEntry(SECURE_INDEX))) {
+				masterIndex = Serialization.<SecureIndex> inflate(Passphrase
+						.decrypt(this.passphrase, ByteUtils.readFully(in)));
+			}
+			for (BaseTable fileTable : masterIndex.getFileTables()) {
+				for (BaseTableEntry entry : fileTable.getAll()) {
+					ZipEntry zipEntry = zipFile.getEntry(entry
+							.getFileNameHash());
+					if (zipEntry == null) {
+						continue;
+					}
+					try (InputStream in = zipFile.getInputStream(zipEntry)) {
+						blobs.add(new Object[] {
+								entry.getFileNameHash(),
+								Passphrase.decrypt(this.passphrase,
+										ByteUtils.readFully(in)) });
+					}
+				}
 			}
-		} catch (IOException ex) {
-			throw ex;
 		}
-		byte[] encryptedFile;
-		try (ZipFile zipFile = zipDbFile();
-				InputStream fileInStream = zipFile.getInputStream(zipFile
-						.getEntry(fileTableEntry.getFileNameHash()));) {
-			encryptedFile = ByteUtils.readFully(fileInStream);
+		File temp = new File(dbFile.getPath() + ".migrate");
+		Files.deleteIfExists(temp.toPath());
+		try {
+			this.store = SecureLogStore.open(temp,
+					this.passphrase.getPassphraseHash());
+			for (Object[] blob : blobs) {
+				this.store.put(FILE_PREFIX + blob[0], (byte[]) blob[1]);
+			}
+			commitMasterIndex(masterIndex);
+		} finally {
+			closeStore();
 		}
-		fileBytes = Passphrase.decrypt(this.passphrase, encryptedFile);
-		return fileBytes;
+		// dbFile holds either the old zip or the complete new container
+		File backup = new File(dbFile.getPath() + ".legacy");
+		Files.copy(dbFile.toPath(), backup.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		Files.move(temp.toPath(), dbFile.toPath(),
+				StandardCopyOption.ATOMIC_MOVE);
+		this.store = SecureLogStore.open(dbFile,
+				this.passphrase.getPassphraseHash());
 	}
 
 }
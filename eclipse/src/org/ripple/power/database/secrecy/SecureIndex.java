@@ -66,6 +66,24 @@ public class SecureIndex implements Serializable {
 		return null;
 	}
 
+	@SuppressWarnings("rawtypes")
+	List<IndexedMapTable> getIndexedMapTables() {
+		return new ArrayList<>(this.indexedMapTables.values());
+	}
+
+	@SuppressWarnings("rawtypes")
+	List<SecureTable> getMapTables() {
+		return new ArrayList<>(this.mapTables.values());
+	}
+
+	public long getCommitCount() {
+		return this.commitCount;
+	}
+
+	void setCommitCount(long count) {
+		this.commitCount = count;
+	}
+
 	public void incrementCommitCount() {
 		synchronized (this) {
 			if (this.commitCount > Long.MAX_VALUE - 10000L) {
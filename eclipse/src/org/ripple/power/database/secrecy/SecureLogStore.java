@@ -0,0 +1,719 @@
+package org.ripple.power.database.secrecy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Append-only encrypted container. Every value is written as its own record,
+ * encrypted with AES under a fresh random IV and authenticated with
+ * HMAC-SHA256, so a commit only appends the records that changed followed by
+ * a new encrypted root listing where the live records are. Replaced records
+ * stay in the file until the background compactor copies the live ones
+ * (still encrypted) into a fresh file.
+ * <p>
+ * The record keys are derived once per unlock from the passphrase hash and
+ * a random per-file salt, instead of running the key derivation for every
+ * value.
+ */
+public class SecureLogStore implements Closeable {
+
+	private static final int MAGIC = 0x5250534c;
+
+	private static final int VERSION = 1;
+
+	private static final int SALT_LENGTH = 16;
+
+	private static final int MAC_LENGTH = 32;
+
+	private static final int IV_LENGTH = 16;
+
+	// magic, version, salt, key check
+	private static final int HEADER = 8 + SALT_LENGTH + MAC_LENGTH;
+
+	private static final byte TYPE_DATA = 1;
+
+	private static final byte TYPE_ROOT = 2;
+
+	private static final byte TYPE_TRAILER = 3;
+
+	private static final int TRAILER_BODY = 12;
+
+	private static final String CIPHER = "AES/CBC/PKCS5Padding";
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private static final ExecutorService COMPACTOR = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "SecureLogCompactor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private static class Ref {
+
+		long offset;
+
+		int length;
+
+		byte[] digest;
+	}
+
+	private final File file;
+
+	private RandomAccessFile raf;
+
+	private FileChannel channel;
+
+	private final SecretKeySpec encKey;
+
+	private final SecretKeySpec macKey;
+
+	private final LinkedHashMap<String, Ref> refs = new LinkedHashMap<String, Ref>();
+
+	private final LinkedHashMap<String, byte[]> pending = new LinkedHashMap<String, byte[]>();
+
+	private byte[] meta;
+
+	private boolean metaChanged;
+
+	private boolean hasRoot;
+
+	private long end;
+
+	private long liveBytes;
+
+	private long deadBytes;
+
+	private long lastRootLength;
+
+	private boolean compacting;
+
+	private double compactRatio = 1.0d;
+
+	private long compactMinBytes = 1L << 20;
+
+	private boolean verifyReads = true;
+
+	private long corruptReads;
+
+	/**
+	 * Opens or creates the container. Throws if the key material does not
+	 * match the one the file was created with.
+	 */
+	public static SecureLogStore open(File file, byte[] passphraseHash)
+			throws IOException, GeneralSecurityException {
+		return new SecureLogStore(file, passphraseHash);
+	}
+
+	/**
+	 * True if the file starts like a container written by this class.
+	 */
+	public static boolean isContainer(File file) throws IOException {
+		if (!file.exists() || file.length() < HEADER) {
+			return false;
+		}
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			return in.readInt() == MAGIC;
+		}
+	}
+
+	private SecureLogStore(File file, byte[] passphraseHash)
+			throws IOException, GeneralSecurityException {
+		this.file = file;
+		openChannel();
+		byte[] salt = new byte[SALT_LENGTH];
+		boolean create = channel.size() < HEADER;
+		if (create) {
+			RANDOM.nextBytes(salt);
+		} else {
+			ByteBuffer head = read(0, HEADER);
+			if (head.getInt() != MAGIC || head.getInt() != VERSION) {
+				close();
+				throw new IOException("Not a secure container " + file);
+			}
+			head.get(salt);
+		}
+		encKey = new SecretKeySpec(derive(passphraseHash, salt, "enc"), 0, 16,
+				"AES");
+		macKey = new SecretKeySpec(derive(passphraseHash, salt, "mac"),
+				"HmacSHA256");
+		byte[] check = mac(new byte[][] { "check".getBytes("UTF-8") });
+		if (create) {
+			ByteBuffer head = ByteBuffer.allocate(HEADER);
+			head.putInt(MAGIC);
+			head.putInt(VERSION);
+			head.put(salt);
+			head.put(check);
+			head.flip();
+			channel.truncate(0);
+			write(0, head);
+			channel.force(true);
+			end = HEADER;
+			return;
+		}
+		ByteBuffer head = read(8 + SALT_LENGTH, MAC_LENGTH);
+		byte[] stored = new byte[MAC_LENGTH];
+		head.get(stored);
+		if (!MessageDigest.isEqual(stored, check)) {
+			close();
+			throw new GeneralSecurityException("wrong passphrase");
+		}
+		recover();
+	}
+
+	private void openChannel() throws IOException {
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+	}
+
+	private static byte[] derive(byte[] secret, byte[] salt, String label)
+			throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+		mac.update(salt);
+		try {
+			mac.update(label.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new GeneralSecurityException(e);
+		}
+		return mac.doFinal();
+	}
+
+	private byte[] mac(byte[][] parts) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(macKey);
+		for (byte[] part : parts) {
+			mac.update(part);
+		}
+		return mac.doFinal();
+	}
+
+	private static byte[] digest(byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(data);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("unexpected end of " + file);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private void write(long position, ByteBuffer buffer) throws IOException {
+		write(channel, position, buffer);
+	}
+
+	private static long write(FileChannel target, long position,
+			ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += target.write(buffer, position);
+		}
+		return position;
+	}
+
+	/**
+	 * Frame: int length, byte type, iv, ciphertext, mac. The mac covers the
+	 * type, iv and ciphertext.
+	 */
+	private ByteBuffer seal(byte type, byte[] plain)
+			throws GeneralSecurityException {
+		byte[] iv = new byte[IV_LENGTH];
+		RANDOM.nextBytes(iv);
+		Cipher cipher = Cipher.getInstance(CIPHER);
+		cipher.init(Cipher.ENCRYPT_MODE, encKey, new IvParameterSpec(iv));
+		byte[] ct = cipher.doFinal(plain);
+		byte[] tag = mac(new byte[][] { new byte[] { type }, iv, ct });
+		ByteBuffer frame = ByteBuffer.allocate(4 + 1 + IV_LENGTH + ct.length
+				+ MAC_LENGTH);
+		frame.putInt(frame.capacity() - 4);
+		frame.put(type);
+		frame.put(iv);
+		frame.put(ct);
+		frame.put(tag);
+		frame.flip();
+		return frame;
+	}
+
+	private byte[] open(ByteBuffer frame, byte type) throws IOException,
+			GeneralSecurityException {
+		int length = frame.getInt();
+		if (length != frame.remaining() || frame.get() != type
+				|| length < 1 + IV_LENGTH + MAC_LENGTH) {
+			throw new IOException("bad record frame");
+		}
+		byte[] iv = new byte[IV_LENGTH];
+		byte[] ct = new byte[length - 1 - IV_LENGTH - MAC_LENGTH];
+		byte[] tag = new byte[MAC_LENGTH];
+		frame.get(iv);
+		frame.get(ct);
+		frame.get(tag);
+		if (!MessageDigest.isEqual(tag,
+				mac(new byte[][] { new byte[] { type }, iv, ct }))) {
+			throw new GeneralSecurityException("record failed authentication");
+		}
+		Cipher cipher = Cipher.getInstance(CIPHER);
+		cipher.init(Cipher.DECRYPT_MODE, encKey, new IvParameterSpec(iv));
+		return cipher.doFinal(ct);
+	}
+
+	/**
+	 * Finds the newest intact root, using the trailer when the last commit
+	 * completed and scanning the frames otherwise. Anything after the last
+	 * intact root is an interrupted commit and is cut off.
+	 */
+	private void recover() throws IOException, GeneralSecurityException {
+		long size = channel.size();
+		long trailerStart = size - (4 + 1 + TRAILER_BODY);
+		if (trailerStart >= HEADER) {
+			ByteBuffer trailer = read(trailerStart, 4 + 1 + TRAILER_BODY);
+			if (trailer.getInt() == 1 + TRAILER_BODY
+					&& trailer.get() == TYPE_TRAILER) {
+				long rootOffset = trailer.getLong();
+				if (trailer.getInt() == MAGIC && rootOffset >= HEADER
+						&& rootOffset < trailerStart) {
+					try {
+						loadRoot(rootOffset);
+						end = size;
+						return;
+					} catch (IOException | GeneralSecurityException e) {
+						// fall back to scanning
+					}
+				}
+			}
+		}
+		long position = HEADER;
+		long lastRoot = -1, lastEnd = HEADER;
+		while (position + 5 <= size) {
+			ByteBuffer head = read(position, 5);
+			int length = head.getInt();
+			byte type = head.get();
+			if (length <= 0 || position + 4 + length > size) {
+				break;
+			}
+			long next = position + 4 + length;
+			if (type == TYPE_ROOT) {
+				try {
+					open(read(position, 4 + length), TYPE_ROOT);
+					lastRoot = position;
+					lastEnd = next;
+				} catch (GeneralSecurityException e) {
+					break;
+				}
+			} else if (type == TYPE_TRAILER && lastEnd == position) {
+				lastEnd = next;
+			}
+			position = next;
+		}
+		if (lastRoot >= 0) {
+			loadRoot(lastRoot);
+		} else {
+			refs.clear();
+			hasRoot = false;
+			liveBytes = 0;
+		}
+		channel.truncate(lastEnd);
+		end = lastEnd;
+		deadBytes = Math.max(0, end - HEADER - liveBytes);
+	}
+
+	private void loadRoot(long offset) throws IOException,
+			GeneralSecurityException {
+		ByteBuffer head = read(offset, 4);
+		int length = head.getInt();
+		byte[] plain = open(read(offset, 4 + length), TYPE_ROOT);
+		DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(plain));
+		int count = in.readInt();
+		refs.clear();
+		liveBytes = 0;
+		for (int i = 0; i < count; i++) {
+			String key = in.readUTF();
+			Ref ref = new Ref();
+			ref.offset = in.readLong();
+			ref.length = in.readInt();
+			ref.digest = new byte[MAC_LENGTH];
+			in.readFully(ref.digest);
+			refs.put(key, ref);
+			liveBytes += ref.length;
+		}
+		int metaLength = in.readInt();
+		if (metaLength >= 0) {
+			meta = new byte[metaLength];
+			in.readFully(meta);
+		} else {
+			meta = null;
+		}
+		lastRootLength = 4 + length + 4 + 1 + TRAILER_BODY;
+		liveBytes += lastRootLength;
+		deadBytes = Math.max(0, channel.size() - HEADER - liveBytes);
+		hasRoot = true;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public synchronized boolean hasRoot() {
+		return hasRoot;
+	}
+
+	public synchronized long getLiveBytes() {
+		return liveBytes;
+	}
+
+	public synchronized long getDeadBytes() {
+		return deadBytes;
+	}
+
+	/**
+	 * Compaction starts once dead bytes exceed this multiple of live bytes.
+	 */
+	public synchronized void setCompactRatio(double ratio, long minBytes) {
+		this.compactRatio = ratio;
+		this.compactMinBytes = minBytes;
+	}
+
+	public synchronized List<String> keys(String prefix) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String key : refs.keySet()) {
+			if (prefix == null || key.startsWith(prefix)) {
+				list.add(key);
+			}
+		}
+		for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+			String key = entry.getKey();
+			if ((prefix == null || key.startsWith(prefix))
+					&& !refs.containsKey(key) && entry.getValue() != null) {
+				list.add(key);
+			}
+		}
+		return list;
+	}
+
+	public synchronized boolean contains(String key) {
+		if (pending.containsKey(key)) {
+			return pending.get(key) != null;
+		}
+		return refs.containsKey(key);
+	}
+
+	/**
+	 * Reads a value, null when it is missing. A value that does not match
+	 * the digest recorded for it fails like a record of another key.
+	 */
+	public synchronized byte[] get(String key) throws IOException,
+			GeneralSecurityException {
+		checkOpen();
+		if (pending.containsKey(key)) {
+			byte[] value = pending.get(key);
+			return value == null ? null : value.clone();
+		}
+		Ref ref = refs.get(key);
+		if (ref == null) {
+			return null;
+		}
+		byte[] plain = open(read(ref.offset, ref.length), TYPE_DATA);
+		DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(plain));
+		if (!key.equals(in.readUTF())) {
+			throw new GeneralSecurityException("record does not belong to "
+					+ key);
+		}
+		byte[] value = new byte[in.readInt()];
+		in.readFully(value);
+		// the root keeps the SHA-256 of every value; a record that is
+		// intact but not the one the root refers to has been tampered with
+		if (verifyReads && !MessageDigest.isEqual(ref.digest, digest(value))) {
+			corruptReads++;
+			throw new GeneralSecurityException("record of " + key
+					+ " does not match its digest");
+		}
+		return value;
+	}
+
+	/**
+	 * Whether get() checks each value against the digest kept in the root,
+	 * on by default.
+	 */
+	public synchronized void setVerifyReads(boolean verify) {
+		this.verifyReads = verify;
+	}
+
+	public synchronized boolean isVerifyReads() {
+		return verifyReads;
+	}
+
+	/**
+	 * Values refused by get() because they did not match their digest.
+	 */
+	public synchronized long getCorruptReads() {
+		return corruptReads;
+	}
+
+	/**
+	 * Stages a value for the next commit. Returns false when the stored value
+	 * is identical, in which case nothing will be written.
+	 */
+	public synchronized boolean put(String key, byte[] value) {
+		Ref ref = refs.get(key);
+		if (ref != null && Arrays.equals(ref.digest, digest(value))
+				&& !pending.containsKey(key)) {
+			return false;
+		}
+		pending.put(key, value.clone());
+		return true;
+	}
+
+	public synchronized void remove(String key) {
+		if (refs.containsKey(key)) {
+			pending.put(key, null);
+		} else {
+			pending.remove(key);
+		}
+	}
+
+	public synchronized byte[] getMeta() {
+		return meta == null ? null : meta.clone();
+	}
+
+	public synchronized void setMeta(byte[] data) {
+		this.meta = data == null ? null : data.clone();
+		this.metaChanged = true;
+	}
+
+	public synchronized boolean isDirty() {
+		return metaChanged || !pending.isEmpty() || !hasRoot;
+	}
+
+	/**
+	 * Appends the staged records and a new root, then syncs the file.
+	 */
+	public synchronized void commit() throws IOException,
+			GeneralSecurityException {
+		checkOpen();
+		if (!isDirty()) {
+			return;
+		}
+		HashMap<String, Ref> written = new HashMap<String, Ref>();
+		long position = end;
+		for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+			byte[] value = entry.getValue();
+			if (value == null) {
+				continue;
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+					value.length + 64);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeUTF(entry.getKey());
+			out.writeInt(value.length);
+			out.write(value);
+			out.flush();
+			ByteBuffer frame = seal(TYPE_DATA, bytes.toByteArray());
+			Ref ref = new Ref();
+			ref.offset = position;
+			ref.length = frame.remaining();
+			ref.digest = digest(value);
+			write(position, frame);
+			position += ref.length;
+			written.put(entry.getKey(), ref);
+		}
+		LinkedHashMap<String, Ref> next = new LinkedHashMap<String, Ref>(refs);
+		long dead = 0, live = 0;
+		for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+			Ref old = entry.getValue() == null ? next.remove(entry.getKey())
+					: next.put(entry.getKey(), written.get(entry.getKey()));
+			if (old != null) {
+				dead += old.length;
+			}
+		}
+		for (Ref ref : next.values()) {
+			live += ref.length;
+		}
+		long rootEnd = writeRoot(channel, position, next);
+		int rootLength = (int) (rootEnd - position);
+		position = rootEnd;
+		channel.force(false);
+		if (hasRoot) {
+			dead += lastRootLength;
+		}
+		refs.clear();
+		refs.putAll(next);
+		pending.clear();
+		metaChanged = false;
+		hasRoot = true;
+		end = position;
+		lastRootLength = rootLength;
+		liveBytes = live + lastRootLength;
+		deadBytes += dead;
+		scheduleCompact();
+	}
+
+	/**
+	 * Writes a root listing the given records plus the trailer pointing at
+	 * it, returning the position after the trailer.
+	 */
+	private long writeRoot(FileChannel target, long position,
+			Map<String, Ref> list) throws IOException, GeneralSecurityException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(list.size());
+		for (Map.Entry<String, Ref> entry : list.entrySet()) {
+			Ref ref = entry.getValue();
+			out.writeUTF(entry.getKey());
+			out.writeLong(ref.offset);
+			out.writeInt(ref.length);
+			out.write(ref.digest);
+		}
+		if (meta == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(meta.length);
+			out.write(meta);
+		}
+		out.flush();
+		long rootOffset = position;
+		position = write(target, position, seal(TYPE_ROOT, bytes.toByteArray()));
+		ByteBuffer trailer = ByteBuffer.allocate(4 + 1 + TRAILER_BODY);
+		trailer.putInt(1 + TRAILER_BODY);
+		trailer.put(TYPE_TRAILER);
+		trailer.putLong(rootOffset);
+		trailer.putInt(MAGIC);
+		trailer.flip();
+		return write(target, position, trailer);
+	}
+
+	private void scheduleCompact() {
+		if (compacting || deadBytes < compactMinBytes
+				|| deadBytes < liveBytes * compactRatio) {
+			return;
+		}
+		compacting = true;
+		COMPACTOR.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				} finally {
+					synchronized (SecureLogStore.this) {
+						compacting = false;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Copies the live records and the current root into a new file and
+	 * swaps it in. Records are copied as they are, without decrypting.
+	 */
+	public synchronized void compact() throws IOException,
+			GeneralSecurityException {
+		if (channel == null || !hasRoot || deadBytes == 0) {
+			return;
+		}
+		if (!pending.isEmpty() || metaChanged) {
+			commit();
+		}
+		File temp = new File(file.getPath() + ".compact");
+		LinkedHashMap<String, Ref> moved = new LinkedHashMap<String, Ref>();
+		long position = 0, rootEnd;
+		try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+			out.setLength(0);
+			FileChannel target = out.getChannel();
+			position = write(target, position, read(0, HEADER));
+			for (Map.Entry<String, Ref> entry : refs.entrySet()) {
+				Ref ref = entry.getValue();
+				Ref copy = new Ref();
+				copy.offset = position;
+				copy.length = ref.length;
+				copy.digest = ref.digest;
+				position = write(target, position, read(ref.offset, ref.length));
+				moved.put(entry.getKey(), copy);
+			}
+			rootEnd = writeRoot(target, position, moved);
+			target.force(true);
+		}
+		// the old file stays open until the new one is in place, so a
+		// failed move leaves the store as it was
+		boolean swapped = false;
+		try {
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+			swapped = true;
+		} finally {
+			closeChannel();
+			openChannel();
+			if (!swapped) {
+				temp.delete();
+			}
+		}
+		refs.clear();
+		refs.putAll(moved);
+		end = rootEnd;
+		lastRootLength = rootEnd - position;
+		liveBytes = rootEnd - HEADER;
+		deadBytes = 0;
+	}
+
+	private void checkOpen() throws IOException {
+		if (channel == null) {
+			throw new IOException("secure container is closed");
+		}
+	}
+
+	private void closeChannel() throws IOException {
+		if (raf != null) {
+			raf.close();
+		}
+		raf = null;
+		channel = null;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		pending.clear();
+		closeChannel();
+	}
+}
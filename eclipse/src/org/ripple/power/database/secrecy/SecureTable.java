@@ -1,33 +1,55 @@
 package org.ripple.power.database.secrecy;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.ripple.utils.collection.ConcurrentLongMap;
+
 public class SecureTable<T extends TableEntry> implements Table<T> {
-	
+
 	private static final long serialVersionUID = 1L;
-	private final Map<Long, T> tableEntryMap;
-	private final String name;
+
+	// keeps the stream form of the old Map<Long, T> field, which is what
+	// containers written before the log format hold
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("tableEntryMap", Map.class),
+			new ObjectStreamField("name", String.class) };
+
+	private static final Comparator<TableEntry> BY_ID = new Comparator<TableEntry>() {
+
+		@Override
+		public int compare(TableEntry a, TableEntry b) {
+			return Long.compare(a.getId(), b.getId());
+		}
+	};
+
+	private transient ConcurrentLongMap<T> tableEntryMap;
+	private String name;
 
 	public SecureTable(String name) {
-		this.tableEntryMap = new ConcurrentHashMap<>();
+		this.tableEntryMap = new ConcurrentLongMap<T>();
 		this.name = name;
 	}
 
 	@Override
 	public T getEntry(Long id) {
-		if (this.tableEntryMap.containsKey(id)) {
-			return this.tableEntryMap.get(id);
+		if (id == null) {
+			return null;
 		}
-		return null;
+		return this.tableEntryMap.get(id);
 	}
 
 	@Override
 	public synchronized void putEntry(T entry) {
 		Long id = entry.getId();
-		if (id == null || id == 0L) { 
+		if (id == null || id == 0L) {
 			id = this.tableEntryMap.size() + 1L;
 			entry.setId(id);
 		}
@@ -36,7 +58,9 @@ public class SecureTable<T extends TableEntry> implements Table<T> {
 
 	@Override
 	public List<T> getAll() {
-		return new ArrayList<>(this.tableEntryMap.values());
+		List<T> list = this.tableEntryMap.values();
+		Collections.sort(list, BY_ID);
+		return list;
 	}
 
 	@Override
@@ -44,5 +68,29 @@ public class SecureTable<T extends TableEntry> implements Table<T> {
 		return this.name;
 	}
 
-	
-}
\ No newline at end of file
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ConcurrentHashMap<Long, T> map = new ConcurrentHashMap<>();
+		for (T entry : tableEntryMap.values()) {
+			map.put(entry.getId(), entry);
+		}
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("tableEntryMap", map);
+		fields.put("name", name);
+		out.writeFields();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		name = (String) fields.get("name", null);
+		tableEntryMap = new ConcurrentLongMap<T>();
+		Map<Long, T> map = (Map<Long, T>) fields.get("tableEntryMap", null);
+		if (map != null) {
+			for (Map.Entry<Long, T> entry : map.entrySet()) {
+				tableEntryMap.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+}
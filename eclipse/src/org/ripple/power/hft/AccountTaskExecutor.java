@@ -0,0 +1,319 @@
+package org.ripple.power.hft;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs work for many accounts on a bounded pool while keeping the work of any
+ * single account strictly serial, so transactions built for one seed keep
+ * their Sequence order. Each account has its own lane with a bounded backlog;
+ * once the backlog is full new work for that account is refused instead of
+ * piling up behind a slow gateway. A {@link Job} keeps its lane until it
+ * reports completion, so a cycle that waits for the network and then submits
+ * still finishes before the next one of the same account starts.
+ */
+public class AccountTaskExecutor {
+
+	public static class LaneStats {
+
+		public final String account;
+
+		public long executed;
+
+		public long rejected;
+
+		public long failures;
+
+		public long timeouts;
+
+		public long totalNanos;
+
+		public long maxNanos;
+
+		public long lastNanos;
+
+		public int pending;
+
+		LaneStats(String account) {
+			this.account = account;
+		}
+
+		public double getAverageMillis() {
+			return executed == 0 ? 0 : (totalNanos / (double) executed) / 1000000d;
+		}
+
+		LaneStats copy() {
+			LaneStats stats = new LaneStats(account);
+			stats.executed = executed;
+			stats.rejected = rejected;
+			stats.failures = failures;
+			stats.timeouts = timeouts;
+			stats.totalNanos = totalNanos;
+			stats.maxNanos = maxNanos;
+			stats.lastNanos = lastNanos;
+			stats.pending = pending;
+			return stats;
+		}
+	}
+
+	/**
+	 * Work that finishes asynchronously, e.g. after a ledger answer. The lane
+	 * of the account stays held until done is run, so the next job for the
+	 * same account cannot start while a request of this one is in flight.
+	 */
+	public static interface Job {
+		public void start(Runnable done);
+	}
+
+	private class Completion implements Runnable {
+
+		final Lane lane;
+
+		final long start;
+
+		final AtomicBoolean finished = new AtomicBoolean();
+
+		volatile ScheduledFuture<?> timeout;
+
+		Completion(Lane lane, long start) {
+			this.lane = lane;
+			this.start = start;
+		}
+
+		@Override
+		public void run() {
+			complete(false, false);
+		}
+
+		void complete(boolean failed, boolean timedOut) {
+			if (!finished.compareAndSet(false, true)) {
+				return;
+			}
+			ScheduledFuture<?> t = timeout;
+			if (t != null) {
+				t.cancel(false);
+			}
+			lane.finish(System.nanoTime() - start, failed, timedOut);
+		}
+	}
+
+	private class Lane implements Runnable {
+
+		final LinkedList<Job> queue = new LinkedList<Job>();
+
+		final LaneStats stats;
+
+		boolean scheduled;
+
+		Lane(String account) {
+			stats = new LaneStats(account);
+		}
+
+		@Override
+		public void run() {
+			Job work;
+			synchronized (lanes) {
+				work = queue.poll();
+				stats.pending = queue.size();
+				if (work == null) {
+					scheduled = false;
+					return;
+				}
+			}
+			final Completion done = new Completion(this, System.nanoTime());
+			if (holdTimeout > 0) {
+				try {
+					done.timeout = timer.schedule(new Runnable() {
+
+						@Override
+						public void run() {
+							done.complete(true, true);
+						}
+					}, holdTimeout, TimeUnit.MILLISECONDS);
+				} catch (RejectedExecutionException ex) {
+					// shut down, the lane is released by done
+				}
+			}
+			try {
+				work.start(done);
+			} catch (Throwable ex) {
+				ex.printStackTrace();
+				done.complete(true, false);
+			}
+		}
+
+		void finish(long elapsed, boolean failed, boolean timedOut) {
+			synchronized (lanes) {
+				stats.executed++;
+				if (failed) {
+					stats.failures++;
+				}
+				if (timedOut) {
+					stats.timeouts++;
+				}
+				stats.lastNanos = elapsed;
+				stats.totalNanos += elapsed;
+				stats.maxNanos = Math.max(stats.maxNanos, elapsed);
+				if (queue.isEmpty() || shutdown) {
+					scheduled = false;
+					return;
+				}
+			}
+			// requeue behind other accounts instead of draining this lane
+			schedule(this);
+		}
+	}
+
+	public final static long DEFAULT_HOLD_TIMEOUT = 60 * 1000;
+
+	private final HashMap<String, Lane> lanes = new HashMap<String, Lane>();
+
+	private final ExecutorService pool;
+
+	private final ScheduledExecutorService timer;
+
+	private final int maxPendingPerAccount;
+
+	// longest a job may hold its lane before it is released as failed
+	private final long holdTimeout;
+
+	private boolean shutdown;
+
+	public AccountTaskExecutor() {
+		this(Math.max(2, Runtime.getRuntime().availableProcessors()), 2);
+	}
+
+	public AccountTaskExecutor(int threads, int maxPendingPerAccount) {
+		this(threads, maxPendingPerAccount, DEFAULT_HOLD_TIMEOUT);
+	}
+
+	public AccountTaskExecutor(int threads, int maxPendingPerAccount,
+			long holdTimeout) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be greater than 0");
+		}
+		this.maxPendingPerAccount = Math.max(1, maxPendingPerAccount);
+		this.holdTimeout = holdTimeout;
+		final AtomicInteger count = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "AccountTask-"
+						+ count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.timer = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "AccountTask-Timeout");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Queues work on the lane of the given account. Returns false when the
+	 * lane backlog is full or the executor has been shut down.
+	 */
+	public boolean submit(String account, final Runnable work) {
+		return submit(account, new Job() {
+
+			@Override
+			public void start(Runnable done) {
+				work.run();
+				done.run();
+			}
+		});
+	}
+
+	/**
+	 * Queues a job that releases the lane itself by running done.
+	 */
+	public boolean submit(String account, Job work) {
+		Lane lane;
+		synchronized (lanes) {
+			if (shutdown) {
+				return false;
+			}
+			lane = lanes.get(account);
+			if (lane == null) {
+				lane = new Lane(account);
+				lanes.put(account, lane);
+			}
+			if (lane.queue.size() >= maxPendingPerAccount) {
+				lane.stats.rejected++;
+				return false;
+			}
+			lane.queue.add(work);
+			lane.stats.pending = lane.queue.size();
+			if (lane.scheduled) {
+				return true;
+			}
+			lane.scheduled = true;
+		}
+		schedule(lane);
+		return true;
+	}
+
+	private void schedule(Lane lane) {
+		try {
+			pool.execute(lane);
+		} catch (RejectedExecutionException ex) {
+			synchronized (lanes) {
+				lane.scheduled = false;
+			}
+		}
+	}
+
+	public boolean isBusy(String account) {
+		synchronized (lanes) {
+			Lane lane = lanes.get(account);
+			return lane != null && lane.scheduled;
+		}
+	}
+
+	public LaneStats getStats(String account) {
+		synchronized (lanes) {
+			Lane lane = lanes.get(account);
+			return lane == null ? null : lane.stats.copy();
+		}
+	}
+
+	public List<LaneStats> getAllStats() {
+		synchronized (lanes) {
+			ArrayList<LaneStats> list = new ArrayList<LaneStats>(lanes.size());
+			for (Lane lane : lanes.values()) {
+				list.add(lane.stats.copy());
+			}
+			return list;
+		}
+	}
+
+	public void shutdown() {
+		synchronized (lanes) {
+			shutdown = true;
+			for (Lane lane : lanes.values()) {
+				lane.queue.clear();
+			}
+		}
+		pool.shutdown();
+		timer.shutdownNow();
+	}
+}
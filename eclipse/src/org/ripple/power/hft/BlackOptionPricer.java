@@ -1,7 +1,7 @@
 package org.ripple.power.hft;
 
 public class BlackOptionPricer {
-	private static double MILLISECONDS_PER_YEAR = 1000 * 60 * 60 * 24 * 365;
+	private static double MILLISECONDS_PER_YEAR = 1000d * 60 * 60 * 24 * 365;
 
 	private static double convertTimeToExpiry(long aTimeToExpiry) {
 		return aTimeToExpiry / MILLISECONDS_PER_YEAR;
@@ -45,6 +45,10 @@ public class Candle {
         return Volume;
     }
 
+    public boolean hasVolume() {
+        return Volume != null;
+    }
+
     public double getAdjClose() {
         return AdjClose;
     }
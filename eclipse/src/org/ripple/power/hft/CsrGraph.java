@@ -0,0 +1,189 @@
+package org.ripple.power.hft;
+
+import java.util.Arrays;
+
+/**
+ * Immutable directed graph in compressed sparse row form. Every edge added
+ * through the {@link Builder} is stored together with a zero-capacity
+ * residual twin so the same structure serves flow and path algorithms.
+ * Instances hold no mutable state and may be shared between threads; all
+ * per-analysis state lives in a {@link GraphWorkspace}.
+ */
+public class CsrGraph {
+
+	final int nodes;
+
+	final int edges;
+
+	// offsets[u] .. offsets[u + 1] are the residual slots leaving u
+	final int[] offsets;
+
+	final int[] targets;
+
+	final long[] capacities;
+
+	final long[] costs;
+
+	// index of the opposite residual slot
+	final int[] reverse;
+
+	// builder edge id for forward slots, -1 for residual twins
+	final int[] origins;
+
+	// builder edge id -> slot
+	final int[] slots;
+
+	private CsrGraph(int nodes, int edges, int[] offsets, int[] targets,
+			long[] capacities, long[] costs, int[] reverse, int[] origins,
+			int[] slots) {
+		this.nodes = nodes;
+		this.edges = edges;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.capacities = capacities;
+		this.costs = costs;
+		this.reverse = reverse;
+		this.origins = origins;
+		this.slots = slots;
+	}
+
+	public int nodeCount() {
+		return nodes;
+	}
+
+	public int edgeCount() {
+		return edges;
+	}
+
+	public int getFrom(int edge) {
+		return targets[reverse[slots[edge]]];
+	}
+
+	public int getTo(int edge) {
+		return targets[slots[edge]];
+	}
+
+	public long getCapacity(int edge) {
+		return capacities[slots[edge]];
+	}
+
+	public long getCost(int edge) {
+		return costs[slots[edge]];
+	}
+
+	public int outDegree(int node) {
+		int count = 0;
+		for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+			if (origins[e] >= 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public static class Builder {
+
+		private int nodes;
+
+		private int size;
+
+		private int[] from;
+
+		private int[] to;
+
+		private long[] cap;
+
+		private long[] cost;
+
+		public Builder(int nodes) {
+			this(nodes, 16);
+		}
+
+		public Builder(int nodes, int expectedEdges) {
+			this.nodes = nodes;
+			int n = Math.max(1, expectedEdges);
+			from = new int[n];
+			to = new int[n];
+			cap = new long[n];
+			cost = new long[n];
+		}
+
+		public int addNode() {
+			return nodes++;
+		}
+
+		public int nodeCount() {
+			return nodes;
+		}
+
+		public int addEdge(int u, int v, long capacity) {
+			return addEdge(u, v, capacity, 0);
+		}
+
+		/**
+		 * Adds a directed edge and returns its id, which stays valid on the
+		 * built graph and in workspace flow results.
+		 */
+		public int addEdge(int u, int v, long capacity, long edgeCost) {
+			if (u < 0 || u >= nodes || v < 0 || v >= nodes) {
+				throw new IllegalArgumentException("node out of range: " + u
+						+ " -> " + v);
+			}
+			if (capacity < 0) {
+				throw new IllegalArgumentException("negative capacity");
+			}
+			if (size == from.length) {
+				int n = size * 2;
+				from = Arrays.copyOf(from, n);
+				to = Arrays.copyOf(to, n);
+				cap = Arrays.copyOf(cap, n);
+				cost = Arrays.copyOf(cost, n);
+			}
+			from[size] = u;
+			to[size] = v;
+			cap[size] = capacity;
+			cost[size] = edgeCost;
+			return size++;
+		}
+
+		public void clear() {
+			size = 0;
+		}
+
+		public CsrGraph build() {
+			int slotCount = size * 2;
+			int[] offsets = new int[nodes + 1];
+			for (int i = 0; i < size; i++) {
+				offsets[from[i] + 1]++;
+				offsets[to[i] + 1]++;
+			}
+			for (int i = 0; i < nodes; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			int[] fill = Arrays.copyOf(offsets, nodes);
+			int[] targets = new int[slotCount];
+			long[] capacities = new long[slotCount];
+			long[] costs = new long[slotCount];
+			int[] reverse = new int[slotCount];
+			int[] origins = new int[slotCount];
+			int[] slots = new int[size];
+			for (int i = 0; i < size; i++) {
+				int a = fill[from[i]]++;
+				int b = fill[to[i]]++;
+				targets[a] = to[i];
+				capacities[a] = cap[i];
+				costs[a] = cost[i];
+				reverse[a] = b;
+				origins[a] = i;
+				targets[b] = from[i];
+				capacities[b] = 0;
+				costs[b] = -cost[i];
+				reverse[b] = a;
+				origins[b] = -1;
+				slots[i] = a;
+			}
+			return new CsrGraph(nodes, size, offsets, targets, capacities,
+					costs, reverse, origins, slots);
+		}
+	}
+}
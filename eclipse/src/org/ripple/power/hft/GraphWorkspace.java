@@ -0,0 +1,504 @@
+package org.ripple.power.hft;
+
+import java.util.Arrays;
+
+/**
+ * Scratch state for running algorithms over a {@link CsrGraph}. A workspace
+ * is confined to one thread and reused across runs; its arrays only grow,
+ * so repeated analyses of graphs of similar size do not allocate. Several
+ * workspaces can analyse the same graph concurrently.
+ */
+public class GraphWorkspace {
+
+	public static final long INF = Long.MAX_VALUE / 4;
+
+	private CsrGraph graph;
+
+	private long[] flow = new long[0];
+
+	private int[] level = new int[0];
+
+	private int[] iter = new int[0];
+
+	private int[] queue = new int[0];
+
+	private int[] path = new int[0];
+
+	private long[] dist = new long[0];
+
+	private long[] potential = new long[0];
+
+	private int[] parent = new int[0];
+
+	private int[] heap = new int[0];
+
+	private int[] heapPos = new int[0];
+
+	private int heapSize;
+
+	private int[] index = new int[0];
+
+	private int[] low = new int[0];
+
+	private int[] component = new int[0];
+
+	private int[] stack = new int[0];
+
+	private boolean[] onStack = new boolean[0];
+
+	private long[] matrix = new long[0];
+
+	private long lastCost;
+
+	private void ensure(CsrGraph g) {
+		graph = g;
+		int n = g.nodes + 1;
+		int m = g.targets.length;
+		if (flow.length < m) {
+			flow = new long[m];
+		}
+		if (level.length < n) {
+			level = new int[n];
+			iter = new int[n];
+			queue = new int[n];
+			path = new int[n];
+			dist = new long[n];
+			potential = new long[n];
+			parent = new int[n];
+			heap = new int[n];
+			heapPos = new int[n];
+			index = new int[n];
+			low = new int[n];
+			component = new int[n];
+			stack = new int[n];
+			onStack = new boolean[n];
+		}
+	}
+
+	private long residual(int e) {
+		return graph.capacities[e] - flow[e];
+	}
+
+	private void push(int e, long amount) {
+		flow[e] += amount;
+		flow[graph.reverse[e]] -= amount;
+	}
+
+	public CsrGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Flow on a builder edge after the last maxFlow or minCostFlow run.
+	 */
+	public long getFlow(int edge) {
+		return flow[graph.slots[edge]];
+	}
+
+	public long getLastCost() {
+		return lastCost;
+	}
+
+	public long maxFlow(CsrGraph g, int s, int t) {
+		return maxFlow(g, s, t, INF);
+	}
+
+	/**
+	 * Dinic's algorithm, with the blocking-flow search done iteratively so
+	 * long trust-line chains do not overflow the stack.
+	 */
+	public long maxFlow(CsrGraph g, int s, int t, long limit) {
+		ensure(g);
+		Arrays.fill(flow, 0, g.targets.length, 0);
+		long total = 0;
+		if (s == t) {
+			return 0;
+		}
+		while (total < limit && levelGraph(s, t)) {
+			System.arraycopy(g.offsets, 0, iter, 0, g.nodes);
+			for (;;) {
+				long pushed = augment(s, t, limit - total);
+				if (pushed == 0) {
+					break;
+				}
+				total += pushed;
+				if (total >= limit) {
+					break;
+				}
+			}
+		}
+		return total;
+	}
+
+	private boolean levelGraph(int s, int t) {
+		final CsrGraph g = graph;
+		Arrays.fill(level, 0, g.nodes, -1);
+		int head = 0, tail = 0;
+		level[s] = 0;
+		queue[tail++] = s;
+		while (head < tail) {
+			int u = queue[head++];
+			for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+				int v = g.targets[e];
+				if (level[v] < 0 && residual(e) > 0) {
+					level[v] = level[u] + 1;
+					queue[tail++] = v;
+				}
+			}
+		}
+		return level[t] >= 0;
+	}
+
+	private long augment(int s, int t, long limit) {
+		final CsrGraph g = graph;
+		int depth = 0;
+		int u = s;
+		for (;;) {
+			if (u == t) {
+				long amount = limit;
+				for (int i = 0; i < depth; i++) {
+					amount = Math.min(amount, residual(path[i]));
+				}
+				for (int i = 0; i < depth; i++) {
+					push(path[i], amount);
+				}
+				return amount;
+			}
+			boolean advanced = false;
+			for (; iter[u] < g.offsets[u + 1]; iter[u]++) {
+				int e = iter[u];
+				int v = g.targets[e];
+				if (level[v] == level[u] + 1 && residual(e) > 0) {
+					path[depth++] = e;
+					u = v;
+					advanced = true;
+					break;
+				}
+			}
+			if (!advanced) {
+				level[u] = -1;
+				if (depth == 0) {
+					return 0;
+				}
+				int e = path[--depth];
+				u = g.targets[g.reverse[e]];
+				iter[u]++;
+			}
+		}
+	}
+
+	/**
+	 * Successive shortest paths with Johnson potentials. Negative edge costs
+	 * are allowed as long as the graph has no negative cycle. The total cost
+	 * is available from {@link #getLastCost()}.
+	 */
+	public long minCostFlow(CsrGraph g, int s, int t, long limit) {
+		ensure(g);
+		Arrays.fill(flow, 0, g.targets.length, 0);
+		lastCost = 0;
+		if (s == t) {
+			return 0;
+		}
+		initPotentials(s);
+		long total = 0;
+		while (total < limit) {
+			reducedDijkstra(s);
+			if (dist[t] >= INF) {
+				break;
+			}
+			for (int v = 0; v < g.nodes; v++) {
+				if (dist[v] < INF) {
+					potential[v] += dist[v];
+				}
+			}
+			long amount = limit - total;
+			for (int v = t; v != s; v = g.targets[g.reverse[parent[v]]]) {
+				amount = Math.min(amount, residual(parent[v]));
+			}
+			for (int v = t; v != s; v = g.targets[g.reverse[parent[v]]]) {
+				push(parent[v], amount);
+				lastCost += amount * g.costs[parent[v]];
+			}
+			total += amount;
+		}
+		return total;
+	}
+
+	// Bellman-Ford with a FIFO queue over the initial residual graph
+	private void initPotentials(int s) {
+		final CsrGraph g = graph;
+		final int n = g.nodes;
+		Arrays.fill(potential, 0, n, INF);
+		Arrays.fill(onStack, 0, n, false);
+		potential[s] = 0;
+		int head = 0, size = 0;
+		queue[0] = s;
+		size = 1;
+		onStack[s] = true;
+		long relaxations = 0;
+		while (size > 0) {
+			int u = queue[head];
+			head = (head + 1) % n;
+			size--;
+			onStack[u] = false;
+			for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+				if (g.capacities[e] <= 0) {
+					continue;
+				}
+				int v = g.targets[e];
+				long nd = potential[u] + g.costs[e];
+				if (nd < potential[v]) {
+					potential[v] = nd;
+					if (++relaxations > (long) n * g.targets.length) {
+						throw new IllegalStateException("negative cost cycle");
+					}
+					if (!onStack[v]) {
+						onStack[v] = true;
+						queue[(head + size) % n] = v;
+						size++;
+					}
+				}
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			if (potential[v] >= INF) {
+				potential[v] = 0;
+			}
+		}
+	}
+
+	private void reducedDijkstra(int s) {
+		final CsrGraph g = graph;
+		Arrays.fill(dist, 0, g.nodes, INF);
+		Arrays.fill(parent, 0, g.nodes, -1);
+		Arrays.fill(heapPos, 0, g.nodes, -1);
+		heapSize = 0;
+		dist[s] = 0;
+		heapPush(s);
+		while (heapSize > 0) {
+			int u = heapPop();
+			for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+				if (residual(e) <= 0) {
+					continue;
+				}
+				int v = g.targets[e];
+				long nd = dist[u] + g.costs[e] + potential[u] - potential[v];
+				if (nd < dist[v]) {
+					dist[v] = nd;
+					parent[v] = e;
+					heapPush(v);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Dijkstra over the forward edges of the graph using edge costs as
+	 * weights, which must not be negative.
+	 */
+	public void shortestPaths(CsrGraph g, int s) {
+		ensure(g);
+		Arrays.fill(dist, 0, g.nodes, INF);
+		Arrays.fill(parent, 0, g.nodes, -1);
+		Arrays.fill(heapPos, 0, g.nodes, -1);
+		heapSize = 0;
+		dist[s] = 0;
+		heapPush(s);
+		while (heapSize > 0) {
+			int u = heapPop();
+			for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+				if (g.origins[e] < 0) {
+					continue;
+				}
+				long w = g.costs[e];
+				if (w < 0) {
+					throw new IllegalArgumentException("negative edge cost");
+				}
+				int v = g.targets[e];
+				long nd = dist[u] + w;
+				if (nd < dist[v]) {
+					dist[v] = nd;
+					parent[v] = e;
+					heapPush(v);
+				}
+			}
+		}
+	}
+
+	public long getDistance(int node) {
+		return dist[node];
+	}
+
+	/**
+	 * Builder edge ids from the last shortestPaths source to the node, or
+	 * null when it is unreachable.
+	 */
+	public int[] getPath(int node) {
+		if (dist[node] >= INF) {
+			return null;
+		}
+		int length = 0;
+		for (int v = node; parent[v] >= 0; v = graph.targets[graph.reverse[parent[v]]]) {
+			length++;
+		}
+		int[] edges = new int[length];
+		for (int v = node; parent[v] >= 0; v = graph.targets[graph.reverse[parent[v]]]) {
+			edges[--length] = graph.origins[parent[v]];
+		}
+		return edges;
+	}
+
+	/**
+	 * Floyd-Warshall over forward edge costs. Distances are read back with
+	 * {@link #getPairDistance(int, int)}.
+	 */
+	public void allPairs(CsrGraph g) {
+		ensure(g);
+		final int n = g.nodes;
+		if (matrix.length < n * n) {
+			matrix = new long[n * n];
+		}
+		Arrays.fill(matrix, 0, n * n, INF);
+		for (int u = 0; u < n; u++) {
+			matrix[u * n + u] = 0;
+			for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+				if (g.origins[e] >= 0) {
+					int idx = u * n + g.targets[e];
+					matrix[idx] = Math.min(matrix[idx], g.costs[e]);
+				}
+			}
+		}
+		for (int k = 0; k < n; k++) {
+			int kn = k * n;
+			for (int i = 0; i < n; i++) {
+				long ik = matrix[i * n + k];
+				if (ik >= INF) {
+					continue;
+				}
+				int in = i * n;
+				for (int j = 0; j < n; j++) {
+					long kj = matrix[kn + j];
+					if (kj < INF && ik + kj < matrix[in + j]) {
+						matrix[in + j] = ik + kj;
+					}
+				}
+			}
+		}
+	}
+
+	public long getPairDistance(int u, int v) {
+		return matrix[u * graph.nodes + v];
+	}
+
+	/**
+	 * Tarjan's strongly connected components over forward edges, run without
+	 * recursion. Returns the number of components.
+	 */
+	public int strongComponents(CsrGraph g) {
+		ensure(g);
+		final int n = g.nodes;
+		Arrays.fill(index, 0, n, -1);
+		Arrays.fill(onStack, 0, n, false);
+		int counter = 0, components = 0, top = 0;
+		for (int root = 0; root < n; root++) {
+			if (index[root] >= 0) {
+				continue;
+			}
+			int depth = 0;
+			path[depth++] = root;
+			index[root] = low[root] = counter++;
+			iter[root] = g.offsets[root];
+			stack[top++] = root;
+			onStack[root] = true;
+			while (depth > 0) {
+				int u = path[depth - 1];
+				if (iter[u] < g.offsets[u + 1]) {
+					int e = iter[u]++;
+					if (g.origins[e] < 0) {
+						continue;
+					}
+					int v = g.targets[e];
+					if (index[v] < 0) {
+						index[v] = low[v] = counter++;
+						iter[v] = g.offsets[v];
+						stack[top++] = v;
+						onStack[v] = true;
+						path[depth++] = v;
+					} else if (onStack[v]) {
+						low[u] = Math.min(low[u], index[v]);
+					}
+					continue;
+				}
+				depth--;
+				if (depth > 0) {
+					int p = path[depth - 1];
+					low[p] = Math.min(low[p], low[u]);
+				}
+				if (low[u] == index[u]) {
+					int w;
+					do {
+						w = stack[--top];
+						onStack[w] = false;
+						component[w] = components;
+					} while (w != u);
+					components++;
+				}
+			}
+		}
+		return components;
+	}
+
+	public int getComponent(int node) {
+		return component[node];
+	}
+
+	private void heapPush(int v) {
+		int i = heapPos[v];
+		if (i < 0) {
+			i = heapSize++;
+			heap[i] = v;
+			heapPos[v] = i;
+		}
+		long key = dist[v];
+		while (i > 0) {
+			int p = (i - 1) >> 1;
+			int pv = heap[p];
+			if (dist[pv] <= key) {
+				break;
+			}
+			heap[i] = pv;
+			heapPos[pv] = i;
+			i = p;
+		}
+		heap[i] = v;
+		heapPos[v] = i;
+	}
+
+	private int heapPop() {
+		int top = heap[0];
+		heapPos[top] = -2;
+		int last = heap[--heapSize];
+		if (heapSize > 0) {
+			long key = dist[last];
+			int i = 0;
+			for (;;) {
+				int c = 2 * i + 1;
+				if (c >= heapSize) {
+					break;
+				}
+				if (c + 1 < heapSize && dist[heap[c + 1]] < dist[heap[c]]) {
+					c++;
+				}
+				if (dist[heap[c]] >= key) {
+					break;
+				}
+				heap[i] = heap[c];
+				heapPos[heap[i]] = i;
+				i = c;
+			}
+			heap[i] = last;
+			heapPos[last] = i;
+		}
+		return top;
+	}
+}
@@ -2,6 +2,11 @@ package org.ripple.power.hft;
 
 import java.util.*;
 
+/**
+ * Matrix based algorithms sharing static state, so only one analysis can run
+ * at a time. New code should build a {@link CsrGraph} and run it through a
+ * per-thread {@link GraphWorkspace} instead.
+ */
 public class Graphs {
 
 	static final int MAX = 1024, INF = 1 << 28;
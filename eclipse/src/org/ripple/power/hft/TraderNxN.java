@@ -197,6 +197,11 @@ public class TraderNxN {
 							OfferPrice.load(source_issuer, source_currency,
 									target_currency, new OfferPrice() {
 
+										{
+											// keep the book live between scans
+											subscribe = true;
+										}
+
 										ArrayList<double[]> buy_list = new ArrayList<double[]>();
 
 										ArrayList<double[]> sell_list = new ArrayList<double[]>();
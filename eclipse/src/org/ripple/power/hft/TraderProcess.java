@@ -7,6 +7,7 @@ import org.json.JSONObject;
 import org.ripple.power.RippleSeedAddress;
 import org.ripple.power.collection.ArrayMap;
 import org.ripple.power.config.LSystem;
+import org.ripple.power.config.Session;
 import org.ripple.power.timer.LTimer;
 import org.ripple.power.timer.LTimerContext;
 import org.ripple.power.txns.AccountFind;
@@ -30,6 +31,22 @@ public class TraderProcess extends TraderBase {
 
 	private ArrayList<Task> _HFT_tasks = new ArrayList<Task>(10);
 
+	private AccountTaskExecutor _executor;
+
+	public TraderProcess() {
+		// trader.parallel_threads: 0 keeps every task on the loop thread,
+		// unset uses one lane thread per processor
+		Session session = LSystem.session("trader");
+		int threads = session.getInt("parallel_threads");
+		if (threads < 0) {
+			threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		}
+		if (threads > 0) {
+			int pending = session.getInt("max_pending");
+			setParallel(threads, pending > 0 ? pending : 2);
+		}
+	}
+
 	public static enum Model {
 		CrazyBuyer, CrazySeller, Spreads, Script
 	}
@@ -53,7 +70,9 @@ public class TraderProcess extends TraderBase {
 
 	}
 
-	private static Trend reset(String name) {
+	// getTrend runs on the lane threads when the process is parallel, so
+	// the cache is only touched under the class lock
+	private static synchronized Trend reset(String name) {
 		for (Store s : _storage) {
 			if (s.name.equals(name)
 					&& (System.currentTimeMillis() - s.date) <= LSystem.MINUTE * 10) {
@@ -66,7 +85,7 @@ public class TraderProcess extends TraderBase {
 		return null;
 	}
 
-	private static void addStorage(Store s) {
+	private static synchronized void addStorage(Store s) {
 		_storage.add(s);
 		if (_storage.size() > 100) {
 			_storage.remove(0);
@@ -185,6 +204,7 @@ public class TraderProcess extends TraderBase {
 		public LTimer task_delay = new LTimer(LSystem.SECOND);
 		public boolean stop;
 		private long startTimeStamp = -1;
+		private long runs, skipped, lastNanos, totalNanos, maxNanos;
 
 		public Task() {
 			startTimeStamp = System.currentTimeMillis();
@@ -196,90 +216,160 @@ public class TraderProcess extends TraderBase {
 
 		public void update(LTimerContext context) {
 			if (task_delay.action(context)) {
+				final long start = System.nanoTime();
+				process(new Runnable() {
 
-				if (seed == null) {
-					return;
-				}
-				if (id <= 0) {
-					return;
-				}
+					@Override
+					public void run() {
+						record(System.nanoTime() - start);
+					}
+				});
+			}
+		}
 
-				if (target_currency.equalsIgnoreCase(source_currency)) {
-					return;
-				}
-				if (model == null) {
-					errors.add(new Error());
-					return;
-				}
-				if (!LSystem.nativeCurrency.equalsIgnoreCase(source_currency)
-						&& !LSystem.nativeCurrency
-								.equalsIgnoreCase(target_currency)
-						&& !target_issuer.equalsIgnoreCase(source_issuer)) {
-					return;
-				}
-				if (source_issuer == null
-						|| "unkown".equalsIgnoreCase(source_issuer)) {
-					return;
-				}
-				if (target_issuer == null
-						|| "unkown".equalsIgnoreCase(target_issuer)) {
-					return;
-				}
-				if (stop) {
-					return;
-				}
+		public void process() {
+			process(null);
+		}
+
+		/**
+		 * Runs one trading cycle. Called from the loop thread, or from an
+		 * account lane of the executor when the process runs in parallel.
+		 * done runs once the book has been answered and the orders of the
+		 * cycle have been handled, or right away when nothing is to be done.
+		 */
+		public void process(final Runnable done) {
+			if (seed == null) {
+				finish(done);
+				return;
+			}
+			if (id <= 0) {
+				finish(done);
+				return;
+			}
 
-				// get limit trader price
-				final float volumeWall = suggestWallVolume(real_max_value,
-						limit_volume);
+			if (target_currency.equalsIgnoreCase(source_currency)) {
+				finish(done);
+				return;
+			}
+			if (model == null) {
+				errors.add(new Error());
+				finish(done);
+				return;
+			}
+			if (!LSystem.nativeCurrency.equalsIgnoreCase(source_currency)
+					&& !LSystem.nativeCurrency
+							.equalsIgnoreCase(target_currency)
+					&& !target_issuer.equalsIgnoreCase(source_issuer)) {
+				finish(done);
+				return;
+			}
+			if (source_issuer == null
+					|| "unkown".equalsIgnoreCase(source_issuer)) {
+				finish(done);
+				return;
+			}
+			if (target_issuer == null
+					|| "unkown".equalsIgnoreCase(target_issuer)) {
+				finish(done);
+				return;
+			}
+			if (stop) {
+				finish(done);
+				return;
+			}
 
-				// get average price
-				String averagePrice = OfferPrice.getMoneyConvert("1",
-						source_currency, target_currency);
+			// get limit trader price
+			final float volumeWall = suggestWallVolume(real_max_value,
+					limit_volume);
 
-				if (averagePrice == null
-						|| "unkown".equalsIgnoreCase(averagePrice)) {
-					averagePrice = "-1";
-				}
+			// get average price
+			String averagePrice = OfferPrice.getMoneyConvert("1",
+					source_currency, target_currency);
 
-				final float otherPrice = Float.valueOf(averagePrice);
+			if (averagePrice == null
+					|| "unkown".equalsIgnoreCase(averagePrice)) {
+				averagePrice = "-1";
+			}
 
-				// load exchange data
-				OfferPrice.load(source_issuer, source_currency,
-						target_currency, new OfferPrice() {
+			final float otherPrice = Float.valueOf(averagePrice);
 
-							@Override
-							public void sell(Offer offer) {
+			// load exchange data
+			OfferPrice.load(source_issuer, source_currency,
+					target_currency, new OfferPrice() {
 
-							}
+						{
+							// keep the book live between cycles
+							subscribe = true;
+						}
 
-							@Override
-							public void error(JSONObject obj) {
-								errors.add(new Error(obj.toString()));
-							}
+						@Override
+						public void sell(Offer offer) {
 
-							@Override
-							public void empty() {
-								errors.add(new Error());
-							}
+						}
 
-							@Override
-							public void complete(ArrayList<OfferFruit> buys,
-									ArrayList<OfferFruit> sells,
-									OfferPrice price) {
-								// load data completed
+						@Override
+						public void error(JSONObject obj) {
+							errors.add(new Error(String.valueOf(obj)));
+							finish(done);
+						}
+
+						@Override
+						public void empty() {
+							errors.add(new Error());
+						}
+
+						@Override
+						public void complete(ArrayList<OfferFruit> buys,
+								ArrayList<OfferFruit> sells,
+								OfferPrice price) {
+							// load data completed
+							try {
 								callCore(volumeWall, otherPrice, Task.this,
 										buys, sells, price);
+							} finally {
+								finish(done);
 							}
+						}
 
-							@Override
-							public void buy(Offer offer) {
+						@Override
+						public void buy(Offer offer) {
 
-							}
-						}, false);
+						}
+					}, false);
+		}
 
+		private static void finish(Runnable done) {
+			if (done != null) {
+				done.run();
 			}
 		}
+
+		synchronized void record(long nanos) {
+			runs++;
+			lastNanos = nanos;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+		public synchronized long getRuns() {
+			return runs;
+		}
+
+		public synchronized long getSkipped() {
+			return skipped;
+		}
+
+		public synchronized double getLastMillis() {
+			return lastNanos / 1000000d;
+		}
+
+		public synchronized double getMaxMillis() {
+			return maxNanos / 1000000d;
+		}
+
+		public synchronized double getAverageMillis() {
+			return runs == 0 ? 0 : (totalNanos / (double) runs) / 1000000d;
+		}
 	}
 
 	private static void callCore(float volumeWall, float otherPrice, Task task,
@@ -478,13 +568,69 @@ public class TraderProcess extends TraderBase {
 		return tasks;
 	}
 
+	/**
+	 * Runs tasks of different seeds concurrently on a pool of the given size.
+	 * Tasks of the same seed stay serialized, and at most
+	 * maxPendingPerAccount cycles may wait per seed before further ticks for
+	 * it are skipped.
+	 */
+	public void setParallel(int threads, int maxPendingPerAccount) {
+		if (_executor != null) {
+			_executor.shutdown();
+		}
+		_executor = new AccountTaskExecutor(threads, maxPendingPerAccount);
+	}
+
+	public void setSequential() {
+		if (_executor != null) {
+			_executor.shutdown();
+			_executor = null;
+		}
+	}
+
+	public AccountTaskExecutor getExecutor() {
+		return _executor;
+	}
+
 	@Override
 	public void runTaskTimer(LTimerContext context) {
 		int size = _HFT_tasks.size();
 		for (int i = 0; i < size; i++) {
 			Task task = _HFT_tasks.get(i);
-			task.update(context);
+			if (_executor == null) {
+				task.update(context);
+			} else if (task.task_delay.action(context)) {
+				dispatch(task);
+			}
+		}
+	}
+
+	private void dispatch(final Task task) {
+		if (task.seed == null) {
+			return;
+		}
+		// the lane is held until the book answer and the orders of the cycle
+		// are through, not just until the request is sent
+		boolean queued = _executor.submit(task.seed.getPublicKey(),
+				new AccountTaskExecutor.Job() {
 
+					@Override
+					public void start(final Runnable done) {
+						final long start = System.nanoTime();
+						task.process(new Runnable() {
+
+							@Override
+							public void run() {
+								task.record(System.nanoTime() - start);
+								done.run();
+							}
+						});
+					}
+				});
+		if (!queued) {
+			synchronized (task) {
+				task.skipped++;
+			}
 		}
 	}
 	
@@ -24,7 +24,7 @@ public class BitArray {
 		if (a.length * 32 < len) {
 			return a;
 		}
-		a = a.slice(0, (int) Math.ceil(len / 32));
+		a = a.slice(0, (int) ((len + 31) / 32));
 		int l = a.length;
 		len = len & 31;
 		if (l > 0 && len > 0) {
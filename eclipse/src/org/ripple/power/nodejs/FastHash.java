@@ -0,0 +1,193 @@
+package org.ripple.power.nodejs;
+
+import org.ripple.power.collection.LongArray;
+
+/**
+ * Block buffer and padding shared by the word based hashes. Input is taken
+ * as sjcl style bit arrays, int words or bytes and packed into a fixed
+ * block, so hashing allocates nothing per block.
+ */
+public abstract class FastHash {
+
+	private final int[] _block;
+
+	private final int _blockSize;
+
+	// words at the end of the last block taken by the length
+	private final int _lengthWords;
+
+	// bits in _block
+	private int _bits;
+
+	private long _length;
+
+	FastHash(int blockSize, int lengthWords) {
+		_blockSize = blockSize;
+		_lengthWords = lengthWords;
+		_block = new int[blockSize / 32];
+	}
+
+	/**
+	 * @return bits of a block
+	 */
+	public final int blockSize() {
+		return _blockSize;
+	}
+
+	/**
+	 * @return words written by {@link #digest(int[])}
+	 */
+	public abstract int digestWords();
+
+	abstract void initState();
+
+	abstract void getState(int[] out);
+
+	abstract void setState(int[] state);
+
+	abstract void compress(int[] block);
+
+	public FastHash reset() {
+		initState();
+		_bits = 0;
+		_length = 0;
+		return this;
+	}
+
+	/**
+	 * Copies the chaining value, only meaningful after whole blocks.
+	 */
+	public void save(int[] state) {
+		getState(state);
+	}
+
+	/**
+	 * Continues from a chaining value saved after length whole bits.
+	 */
+	public void restore(int[] state, long length) {
+		setState(state);
+		_bits = 0;
+		_length = length;
+	}
+
+	public FastHash update(Object d) {
+		if (d instanceof String) {
+			return update(BigNumber.utf8_toBits((String) d));
+		} else if (d instanceof long[]) {
+			long[] a = (long[]) d;
+			return update(a, a.length);
+		} else {
+			LongArray a = (LongArray) d;
+			return update(a.items, a.length);
+		}
+	}
+
+	public FastHash update(LongArray data) {
+		return update(data.items, data.length);
+	}
+
+	private FastHash update(long[] words, int count) {
+		if (count == 0) {
+			return this;
+		}
+		for (int i = 0; i < count - 1; i++) {
+			append((int) words[i], 32);
+		}
+		long last = words[count - 1];
+		int n = (int) BitArray.getPartial(last);
+		append((int) last, n);
+		return this;
+	}
+
+	/**
+	 * @param words
+	 *            big endian words, the last one holding the remaining bits
+	 *            in its top
+	 */
+	public FastHash update(int[] words, int bitLength) {
+		int full = bitLength >>> 5;
+		for (int i = 0; i < full; i++) {
+			append(words[i], 32);
+		}
+		if ((bitLength & 31) != 0) {
+			append(words[full], bitLength & 31);
+		}
+		return this;
+	}
+
+	public FastHash update(byte[] data, int offset, int length) {
+		int end = offset + length;
+		int i = offset;
+		for (; i + 4 <= end; i += 4) {
+			append(data[i] << 24 | (data[i + 1] & 0xff) << 16
+					| (data[i + 2] & 0xff) << 8 | (data[i + 3] & 0xff), 32);
+		}
+		for (; i < end; i++) {
+			append(data[i] << 24, 8);
+		}
+		return this;
+	}
+
+	private void append(int value, int n) {
+		if (n <= 0) {
+			return;
+		}
+		if (n < 32) {
+			value &= (int) (0xFFFFFFFF00000000L >>> n);
+		}
+		int off = _bits & 31;
+		int idx = _bits >>> 5;
+		if (off == 0) {
+			_block[idx] = value;
+		} else {
+			_block[idx] |= value >>> off;
+		}
+		_bits += n;
+		_length += n;
+		if (_bits >= _blockSize) {
+			compress(_block);
+			_bits -= _blockSize;
+			if (_bits > 0) {
+				_block[0] = value << (32 - off);
+			}
+		} else if (off != 0 && off + n > 32) {
+			_block[idx + 1] = value << (32 - off);
+		}
+	}
+
+	/**
+	 * Writes the {@link #digestWords()} words of the hash into out and
+	 * starts over.
+	 */
+	public void digest(int[] out) {
+		long length = _length;
+		append(0x80000000, 1);
+		int words = _block.length;
+		int idx = (_bits + 31) >>> 5;
+		if (idx > words - _lengthWords) {
+			for (; idx < words; idx++) {
+				_block[idx] = 0;
+			}
+			compress(_block);
+			idx = 0;
+		}
+		for (; idx < words - 2; idx++) {
+			_block[idx] = 0;
+		}
+		_block[words - 2] = (int) (length >>> 32);
+		_block[words - 1] = (int) length;
+		compress(_block);
+		getState(out);
+		reset();
+	}
+
+	public LongArray digest() {
+		int[] out = new int[digestWords()];
+		digest(out);
+		long[] words = new long[out.length];
+		for (int i = 0; i < out.length; i++) {
+			words[i] = out[i];
+		}
+		return new LongArray(words);
+	}
+}
@@ -0,0 +1,102 @@
+package org.ripple.power.nodejs;
+
+import org.ripple.power.collection.LongArray;
+
+/**
+ * SHA-256 over sjcl style bit arrays, the counterpart of
+ * {@link FastSHA512} for {@link SHA256}.
+ */
+public final class FastSHA256 extends FastHash {
+
+	private static final int[] K = { 0x428a2f98, 0x71374491, 0xb5c0fbcf,
+			0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+			0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74,
+			0x80deb1fe, 0x9bdc06a7, 0xc19bf174, 0xe49b69c1, 0xefbe4786,
+			0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc,
+			0x76f988da, 0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7,
+			0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967, 0x27b70a85,
+			0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb,
+			0x81c2c92e, 0x92722c85, 0xa2bfe8a1, 0xa81a664b, 0xc24b8b70,
+			0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+			0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3,
+			0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3, 0x748f82ee, 0x78a5636f,
+			0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7,
+			0xc67178f2 };
+
+	private static final int[] IV = { 0x6a09e667, 0xbb67ae85, 0x3c6ef372,
+			0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19 };
+
+	public final static int blockSize = 512;
+
+	private final int[] _h = new int[8];
+
+	private final int[] _w = new int[64];
+
+	public FastSHA256() {
+		super(blockSize, 2);
+		reset();
+	}
+
+	public static LongArray hash(LongArray data) {
+		return new FastSHA256().update(data).digest();
+	}
+
+	@Override
+	public int digestWords() {
+		return 8;
+	}
+
+	@Override
+	void initState() {
+		System.arraycopy(IV, 0, _h, 0, 8);
+	}
+
+	@Override
+	void getState(int[] out) {
+		System.arraycopy(_h, 0, out, 0, 8);
+	}
+
+	@Override
+	void setState(int[] state) {
+		System.arraycopy(state, 0, _h, 0, 8);
+	}
+
+	@Override
+	void compress(int[] b) {
+		int[] w = _w;
+		System.arraycopy(b, 0, w, 0, 16);
+		for (int i = 16; i < 64; i++) {
+			int x = w[i - 15], y = w[i - 2];
+			int s0 = Integer.rotateRight(x, 7) ^ Integer.rotateRight(x, 18)
+					^ (x >>> 3);
+			int s1 = Integer.rotateRight(y, 17) ^ Integer.rotateRight(y, 19)
+					^ (y >>> 10);
+			w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+		}
+		int a = _h[0], bb = _h[1], c = _h[2], d = _h[3], e = _h[4], f = _h[5], g = _h[6], h = _h[7];
+		for (int i = 0; i < 64; i++) {
+			int t1 = h
+					+ (Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer
+							.rotateRight(e, 25)) + ((e & f) ^ (~e & g)) + K[i]
+					+ w[i];
+			int t2 = (Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer
+					.rotateRight(a, 22)) + ((a & bb) ^ (a & c) ^ (bb & c));
+			h = g;
+			g = f;
+			f = e;
+			e = d + t1;
+			d = c;
+			c = bb;
+			bb = a;
+			a = t1 + t2;
+		}
+		_h[0] += a;
+		_h[1] += bb;
+		_h[2] += c;
+		_h[3] += d;
+		_h[4] += e;
+		_h[5] += f;
+		_h[6] += g;
+		_h[7] += h;
+	}
+}
@@ -3,34 +3,67 @@ package org.ripple.power.nodejs;
 import org.ripple.power.collection.LongArray;
 
 public class HMAC {
-	
-	private SHA512[] _baseHash;
 
-	private SHA512 _resultHash;
-	
+	private final FastHash _inner;
+
+	private final FastHash _outer;
+
+	// chaining values after the padded key blocks
+	private final int[] _innerState;
+
+	private final int[] _outerState;
+
+	private final int[] _tmp;
+
 	private boolean _updated = false;
 
+	/**
+	 * HMAC-SHA512, as the sjcl callers of this port use it.
+	 */
 	public HMAC(LongArray key) {
-		int i = 0;
-		int bs = SHA512.blockSize / 32;
-		long[][] exKey = new long[2][bs];
-		this._baseHash = new SHA512[] { new SHA512(), new SHA512() };
+		this(key, new FastSHA512(), new FastSHA512());
+	}
+
+	/**
+	 * HMAC-SHA256, the default PRF of sjcl.misc.hmac and pbkdf2.
+	 */
+	public static HMAC sha256(LongArray key) {
+		return new HMAC(key, new FastSHA256(), new FastSHA256());
+	}
+
+	private HMAC(LongArray key, FastHash inner, FastHash outer) {
+		_inner = inner;
+		_outer = outer;
+		int words = inner.digestWords();
+		_innerState = new int[words];
+		_outerState = new int[words];
+		_tmp = new int[words];
+		int bs = inner.blockSize() / 32;
+		int[][] exKey = new int[2][bs];
 		if (key.length > bs) {
-			key = SHA512.hash(key);
+			key = inner.update(key).digest();
 		}
-		for (i = 0; i < bs; i++) {
-			exKey[0][i] = (key.get(i) ^ 0x36363636);
-			exKey[1][i] = (key.get(i) ^ 0x5C5C5C5C);
+		for (int i = 0; i < bs; i++) {
+			exKey[0][i] = (int) key.get(i) ^ 0x36363636;
+			exKey[1][i] = (int) key.get(i) ^ 0x5C5C5C5C;
 		}
-		this._baseHash[0].update(exKey[0]);
-		this._baseHash[1].update(exKey[1]);
-		this._resultHash = this._baseHash[0];
+		_inner.update(exKey[0], inner.blockSize());
+		_inner.save(_innerState);
+		_outer.update(exKey[1], outer.blockSize());
+		_outer.save(_outerState);
+	}
+
+	/**
+	 * @return words of a mac
+	 */
+	public int macWords() {
+		return _tmp.length;
 	}
-	
+
 	public LongArray mac(Object data) {
 		return encrypt(data);
 	}
-	
+
 	public LongArray encrypt(Object data) {
 		if (!this._updated) {
 			this.update(data);
@@ -41,19 +74,43 @@ public class HMAC {
 		}
 	}
 
+	/**
+	 * Macs bitLength bits of words into the {@link #macWords()} words of
+	 * out, which may be the input array. Allocates nothing.
+	 */
+	public void mac(int[] words, int bitLength, int[] out) {
+		reset();
+		_inner.update(words, bitLength);
+		digest(out);
+	}
+
 	public void reset() {
 		this._updated = false;
-		this._resultHash = this._baseHash[0];
+		_inner.restore(_innerState, _inner.blockSize());
 	}
 
 	public void update(Object d) {
 		this._updated = true;
-		this._resultHash.update(d);
+		_inner.update(d);
+	}
+
+	public void update(int[] words, int bitLength) {
+		this._updated = true;
+		_inner.update(words, bitLength);
+	}
+
+	public void digest(int[] out) {
+		_inner.digest(_tmp);
+		_outer.restore(_outerState, _outer.blockSize());
+		_outer.update(_tmp, 32 * _tmp.length);
+		_outer.digest(out);
+		this.reset();
 	}
 
 	public LongArray digest() {
-		LongArray w = this._resultHash._finalize();
-		LongArray result = this._baseHash[1].update(w)._finalize();
+		_inner.digest(_tmp);
+		_outer.restore(_outerState, _outer.blockSize());
+		LongArray result = _outer.update(_tmp, 32 * _tmp.length).digest();
 		this.reset();
 		return result;
 	}
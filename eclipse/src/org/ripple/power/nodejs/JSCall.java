@@ -29,7 +29,8 @@ public class JSCall {
 
 	private synchronized void initScript() throws Exception {
 		if (_engine == null) {
-			_engine = new RhinoEngine(JSCall.class.getName());
+			_engine = new RhinoEngine(JSCall.class.getName(), null, true);
+			_engine.setHot(true);
 			String src = FileUtils.readAsText(UIRes.getStream(_fileName));
 			_engine.eval(_fileName, src);
 		}
@@ -1,14 +1,47 @@
 package org.ripple.power.nodejs;
 
+import org.ripple.power.collection.LongArray;
+
 //java8 NashornScript not support sjcl, so added RhinoScriptEngine
 public class JSCrypt {
 
 	private final static String file = "sjs.js";
 
-	public static String decrypt(String key, String data) {
+	/**
+	 * Put into the sjs.js scope as javaCrypto. sjcl.misc.pbkdf2 with its
+	 * default PRF and sjcl.hash.sha512.hash call it instead of running on
+	 * boxed JavaScript numbers; bit arrays go in and out as long words.
+	 */
+	public static class FastPath {
+
+		public long[] pbkdf2(long[] password, long[] salt, int count,
+				int length) {
+			return words(PBKDF2.pbkdf2(new LongArray(password), new LongArray(
+					salt), count, length));
+		}
+
+		public long[] sha512(long[] data) {
+			return words(FastSHA512.hash(new LongArray(data)));
+		}
+
+		private static long[] words(LongArray bits) {
+			long[] words = new long[bits.length];
+			System.arraycopy(bits.items, 0, words, 0, bits.length);
+			return words;
+		}
+	}
+
+	private static synchronized JSCall call() throws Exception {
 		JSCall call = JSCall.get(file);
+		if (!(call.key("javaCrypto") instanceof FastPath)) {
+			call.put("javaCrypto", new FastPath());
+		}
+		return call;
+	}
+
+	public static String decrypt(String key, String data) {
 		try {
-			return (String) call.function("decrypt", key, data);
+			return (String) call().function("decrypt", key, data);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -16,9 +49,8 @@ public class JSCrypt {
 	}
 
 	public static String encrypt(String key, String data) {
-		JSCall call = JSCall.get(file);
 		try {
-			return (String) call.function("encrypt", key, data);
+			return (String) call().function("encrypt", key, data);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
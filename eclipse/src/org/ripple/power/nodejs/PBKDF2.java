@@ -1,5 +1,74 @@
 package org.ripple.power.nodejs;
 
+import org.ripple.power.collection.LongArray;
+
+/**
+ * sjcl.misc.pbkdf2. As in sjcl the PRF is HMAC-SHA256 unless one is
+ * given. The iterations run on two fixed word arrays, nothing is allocated
+ * per block.
+ */
 public class PBKDF2 {
 
+	public final static int DEFAULT_COUNT = 1000;
+
+	public static LongArray pbkdf2(Object password, Object salt) {
+		return pbkdf2(password, salt, DEFAULT_COUNT, 0);
+	}
+
+	/**
+	 * @param count
+	 *            iterations, 0 for {@link #DEFAULT_COUNT}
+	 * @param length
+	 *            bits of key wanted, 0 for one hash length
+	 */
+	public static LongArray pbkdf2(Object password, Object salt, int count,
+			int length) {
+		return pbkdf2(HMAC.sha256(toBits(password)), salt, count, length);
+	}
+
+	/**
+	 * @param prf
+	 *            keyed with the password, e.g. new HMAC(password) for
+	 *            PBKDF2-HMAC-SHA512
+	 */
+	public static LongArray pbkdf2(HMAC prf, Object salt, int count,
+			int length) {
+		if (count == 0) {
+			count = DEFAULT_COUNT;
+		}
+		if (length < 0 || count < 0) {
+			throw new IllegalArgumentException("invalid params to pbkdf2");
+		}
+		LongArray s = toBits(salt);
+		int words = prf.macWords();
+		int[] u = new int[words], ui = new int[words], k = new int[1];
+		LongArray out = new LongArray();
+		for (k[0] = 1; 32 * out.length < Math.max(length, 1); k[0]++) {
+			prf.reset();
+			prf.update(s);
+			prf.update(k, 32);
+			prf.digest(ui);
+			System.arraycopy(ui, 0, u, 0, words);
+			for (int i = 1; i < count; i++) {
+				prf.mac(ui, 32 * words, ui);
+				for (int j = 0; j < words; j++) {
+					u[j] ^= ui[j];
+				}
+			}
+			for (int j = 0; j < words; j++) {
+				out.push(u[j]);
+			}
+		}
+		if (length > 0) {
+			out = BitArray.clamp(out, length);
+		}
+		return out;
+	}
+
+	private static LongArray toBits(Object o) {
+		if (o instanceof String) {
+			return BigNumber.utf8_toBits((String) o);
+		}
+		return (LongArray) o;
+	}
 }
@@ -17,6 +17,7 @@ public class RhinoEngine {
 			scope.delete("org");
 			scope.delete("com");
 			scope.delete("edu");
+			scope.delete("net");
 			scope.delete("getClass");
 			scope.delete("JavaAdapter");
 			scope.delete("JavaImporter");
@@ -81,22 +82,45 @@ public class RhinoEngine {
 
 	private Scriptable _scope;
 
+	private boolean _hot;
+
 	public RhinoEngine(String name) {
 		this(name, null);
 	}
 
 	public RhinoEngine(String name, RhinoEngine prototype) {
+		this(name, prototype, false);
+	}
+
+	/**
+	 * @param clean
+	 *            inherit the standard objects without Java access, see
+	 *            {@link CleanScope}
+	 */
+	public RhinoEngine(String name, RhinoEngine prototype, boolean clean) {
 		if (null == name) {
 			_engineName = RhinoUtils.buildUUID();
 		} else {
 			_engineName = name;
 		}
-		this._scope = RhinoUtils.buildStandScope();
+		this._scope = RhinoUtils.buildStandScope(clean);
 		if (null != prototype && this._scope != prototype._scope) {
 			this._scope.setPrototype(prototype._scope);
 		}
 	}
 
+	public boolean isHot() {
+		return _hot;
+	}
+
+	/**
+	 * Scripts of a hot engine are compiled by the optimizer at once, which
+	 * starts slower but makes the functions they define cheaper to call.
+	 */
+	public void setHot(boolean hot) {
+		this._hot = hot;
+	}
+
 	public String getEngineName() {
 		return _engineName;
 	}
@@ -137,7 +161,7 @@ public class RhinoEngine {
 				if (null == name) {
 					name = RhinoUtils.MD5(src);
 				}
-				return cx.evaluateString(_scope, src, name, 1, null);
+				return RhinoUtils.compile(cx, name, src, _hot).exec(cx, _scope);
 			}
 		});
 		return RhinoUtils.unwrapJsObj(jsObj, _scope);
@@ -2,12 +2,15 @@ package org.ripple.power.nodejs;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ImporterTopLevel;
 import org.mozilla.javascript.NativeArray;
 import org.mozilla.javascript.NativeJavaObject;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Undefined;
@@ -16,24 +19,121 @@ import org.ripple.power.nodejs.RhinoEngine.ContextRunner;
 
 public class RhinoUtils {
 
-	private static Scriptable _standardScope = null;
+	/**
+	 * Compiled scripts kept by content hash.
+	 */
+	public static final int MAX_CACHED_SCRIPTS = 64;
 
-	public static synchronized final Scriptable buildStandScope() {
+	/**
+	 * Evaluations of the same source after which it is compiled by the
+	 * optimizer instead of the interpreter.
+	 */
+	public static final int HOT_COUNT = 2;
+
+	public static final int HOT_OPTIMIZATION_LEVEL = 9;
+
+	private static final class CompiledScript {
+
+		Script script;
+
+		int count;
+
+		boolean optimized;
+
+		boolean failed;
+	}
+
+	private static final LinkedHashMap<String, CompiledScript> _scripts = new LinkedHashMap<String, CompiledScript>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, CompiledScript> eldest) {
+			return size() > MAX_CACHED_SCRIPTS;
+		}
+	};
+
+	/**
+	 * A new top level scope with its own standard objects, so scripts may
+	 * extend the built-ins (date.js adds to Date.prototype) without other
+	 * engines seeing it. Without clean it is an ImporterTopLevel, which keeps
+	 * the imports of this engine.
+	 */
+	public static final Scriptable buildStandScope(final boolean clean) {
 		return (Scriptable) runWithCtx(new ContextRunner() {
 			public Object run(Context cx) {
-				if (null == _standardScope) {
-					_standardScope = cx.initStandardObjects();
+				if (!clean) {
+					return new ImporterTopLevel(cx);
 				}
-				Scriptable blankScope = cx.newObject(_standardScope);
-				blankScope.setPrototype(_standardScope);
-				Scriptable scope = new ImporterTopLevel(cx);
-				blankScope.setParentScope(scope);
-				_standardScope.setParentScope(blankScope);
-				return _standardScope;
+				ScriptableObject scope = cx.initStandardObjects();
+				RhinoEngine.CleanScope.clean(scope);
+				return scope;
 			}
 		});
 	}
 
+	public static final Scriptable buildStandScope() {
+		return buildStandScope(false);
+	}
+
+	/**
+	 * Compiles the source or returns the script compiled before for the same
+	 * content. Sources evaluated {@link #HOT_COUNT} times, or hot ones, are
+	 * compiled again by the optimizer; when that fails the interpreted
+	 * script stays in use.
+	 */
+	public static final Script compile(Context cx, String name, String src,
+			boolean hot) {
+		String key = MD5(src);
+		CompiledScript cached;
+		synchronized (_scripts) {
+			cached = _scripts.get(key);
+			if (cached == null) {
+				cached = new CompiledScript();
+				_scripts.put(key, cached);
+			}
+			cached.count++;
+			if (cached.script != null
+					&& (cached.optimized || cached.failed || (!hot && cached.count < HOT_COUNT))) {
+				return cached.script;
+			}
+		}
+		Script script = null;
+		boolean optimized = false;
+		if (hot || cached.count >= HOT_COUNT) {
+			int level = cx.getOptimizationLevel();
+			try {
+				cx.setOptimizationLevel(HOT_OPTIMIZATION_LEVEL);
+				script = cx.compileString(src, name, 1, null);
+				optimized = true;
+			} catch (RuntimeException ex) {
+				// e.g. a method over the class file limits; syntax errors are
+				// reported again by the interpreter below
+			} finally {
+				cx.setOptimizationLevel(level);
+			}
+		}
+		if (script == null) {
+			script = cx.compileString(src, name, 1, null);
+		}
+		synchronized (_scripts) {
+			if (optimized || cached.script == null) {
+				cached.script = script;
+			}
+			cached.optimized |= optimized;
+			cached.failed |= !optimized && (hot || cached.count >= HOT_COUNT);
+		}
+		return script;
+	}
+
+	public static final void clearScripts() {
+		synchronized (_scripts) {
+			_scripts.clear();
+		}
+	}
+
 	public static final Object runWithCtx(ContextRunner runner) {
 		Context cx = null;
 		try {
@@ -14,12 +14,7 @@ public class SHA256 {
 	}
 	
 	public static LongArray hash(LongArray data) {
-		SHA256 sha = new SHA256();
-		if (sha._key == null || sha._key.length == 0) {
-			sha._precompute();
-			sha.reset();
-		}
-		return sha.update(data)._finalize();
+		return FastSHA256.hash(data);
 	}
 
 	int blockSize = 512;
@@ -14,12 +14,7 @@ public class SHA512 {
 	}
 
 	public static LongArray hash(LongArray data) {
-		SHA512 sha = new SHA512();
-		if (sha._key == null || sha._key.length == 0) {
-			sha._precompute();
-			sha.reset();
-		}
-		return sha.update(data)._finalize();
+		return FastSHA512.hash(data);
 	}
 
 	int[] _keyr = new int[] { 0x28ae22, 0xef65cd, 0x4d3b2f, 0x89dbbc, 0x48b538,
@@ -0,0 +1,412 @@
+package org.ripple.power.txns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.ripple.power.hft.CsrGraph;
+import org.ripple.power.hft.GraphWorkspace;
+
+import com.ripple.core.coretypes.AccountID;
+import com.ripple.core.coretypes.Amount;
+import com.ripple.core.coretypes.Currency;
+import com.ripple.core.coretypes.PathSet;
+import com.ripple.core.coretypes.STArray;
+import com.ripple.core.coretypes.STObject;
+import com.ripple.core.types.known.sle.entries.Offer;
+
+/**
+ * Finds payment paths locally from cached trust lines (AccountInfo.lines)
+ * and order book offers, without a path_find round trip.
+ *
+ * Every (account, currency) pair is a node. Trust lines become rippling
+ * edges in both directions, offers become edges between the two issue
+ * nodes of their book. Capacities are converted into destination currency
+ * units with the best available book rate, then min-cost flow over the
+ * graph gives the cheapest set of hops that can deliver the amount, which
+ * is decomposed into a PathSet ready to put into Field.Paths.
+ *
+ * Instances are not thread safe; use one finder per thread.
+ */
+public class LocalPathFinder {
+
+	public static final int MAX_PATHS = 6;
+
+	public static final int MAX_PATH_LENGTH = 8;
+
+	private static final String XRP = "XRP";
+
+	private static final long UNIT = 1000000L;
+
+	private static final long HOP_COST = 1000L;
+
+	private static final double QUALITY_ONE = 1000000000d;
+
+	private static final int TRUST = 0, BOOK = 1, NATIVE = 2;
+
+	private final HashMap<String, Integer> nodeIndex = new HashMap<String, Integer>();
+
+	private final ArrayList<String> nodeAccounts = new ArrayList<String>();
+
+	private final ArrayList<String> nodeCurrencies = new ArrayList<String>();
+
+	private int edgeCount;
+
+	private int[] edgeFrom = new int[64];
+
+	private int[] edgeTo = new int[64];
+
+	private int[] edgeKind = new int[64];
+
+	private double[] edgeAmount = new double[64];
+
+	// gets per pays for books, 1 for rippling
+	private double[] edgeRate = new double[64];
+
+	private long[] edgePenalty = new long[64];
+
+	private final GraphWorkspace workspace = new GraphWorkspace();
+
+	private long maxQualityPenalty = Long.MAX_VALUE;
+
+	private int maxPaths = MAX_PATHS;
+
+	/**
+	 * Upper bound, in parts per million, on how much worse than the best rate
+	 * of its book an offer or a trust line transfer fee may be before the edge
+	 * is ignored.
+	 */
+	public void setMaxQualityPenalty(long ppm) {
+		this.maxQualityPenalty = ppm;
+	}
+
+	public void setMaxPaths(int maxPaths) {
+		this.maxPaths = Math.max(1, Math.min(MAX_PATHS, maxPaths));
+	}
+
+	public void clear() {
+		nodeIndex.clear();
+		nodeAccounts.clear();
+		nodeCurrencies.clear();
+		edgeCount = 0;
+	}
+
+	public void addAccount(AccountInfo info) {
+		if (info == null || info.address == null) {
+			return;
+		}
+		addTrustLines(info.address, info.lines);
+		addTrustLines(info.address, info.zero_lines);
+		if (info.balance != null) {
+			addNativeBalance(info.address, parse(info.balance));
+		}
+	}
+
+	/**
+	 * Adds the trust lines of one account. Each AccountLine is seen from the
+	 * holder's side: holder can push balance + limit_peer to the peer and the
+	 * peer can push limit - balance back.
+	 */
+	public void addTrustLines(String holder, List<AccountLine> lines) {
+		if (lines == null) {
+			return;
+		}
+		for (AccountLine line : lines) {
+			if (line.issuer == null || line.currency == null) {
+				continue;
+			}
+			int h = node(holder, line.currency);
+			int p = node(line.issuer, line.currency);
+			double balance = parse(line.amount);
+			double toPeer = balance + parse(line.limit_peer);
+			double toHolder = parse(line.limit) - balance;
+			if (toPeer > 0) {
+				addEdge(h, p, TRUST, toPeer, 1, transferPenalty(line.quality_out));
+			}
+			if (toHolder > 0) {
+				addEdge(p, h, TRUST, toHolder, 1, transferPenalty(line.quality_in));
+			}
+		}
+	}
+
+	/**
+	 * Lets an account spend its XRP into the shared native node, which is
+	 * where XRP books start and end.
+	 */
+	public void addNativeBalance(String account, double xrp) {
+		if (xrp > 0) {
+			int pool = node(null, XRP);
+			int a = node(account, XRP);
+			addEdge(a, pool, NATIVE, xrp, 1, 0);
+			addEdge(pool, a, NATIVE, Double.MAX_VALUE, 1, 0);
+		}
+	}
+
+	public void addOffers(STArray offers) {
+		if (offers == null) {
+			return;
+		}
+		for (STObject obj : offers) {
+			if (obj instanceof Offer) {
+				addOffer((Offer) obj);
+			}
+		}
+	}
+
+	public void addOffer(Offer offer) {
+		Amount pays = offer.takerPays();
+		Amount gets = offer.takerGets();
+		if (pays == null || gets == null || !pays.isPositive()
+				|| !gets.isPositive()) {
+			return;
+		}
+		int from = issueNode(pays);
+		int to = issueNode(gets);
+		if (from == to) {
+			return;
+		}
+		double rate = gets.doubleValue() / pays.doubleValue();
+		addEdge(from, to, BOOK, gets.doubleValue(), rate, 0);
+	}
+
+	private int issueNode(Amount amount) {
+		if (amount.isNative()) {
+			return node(null, XRP);
+		}
+		return node(amount.issuer().toString(), amount.currencyString());
+	}
+
+	private int node(String account, String currency) {
+		String key = account + "/" + currency;
+		Integer idx = nodeIndex.get(key);
+		if (idx == null) {
+			idx = nodeAccounts.size();
+			nodeIndex.put(key, idx);
+			nodeAccounts.add(account);
+			nodeCurrencies.add(currency);
+		}
+		return idx;
+	}
+
+	private void addEdge(int from, int to, int kind, double amount,
+			double rate, long penalty) {
+		if (edgeCount == edgeFrom.length) {
+			int n = edgeCount * 2;
+			edgeFrom = Arrays.copyOf(edgeFrom, n);
+			edgeTo = Arrays.copyOf(edgeTo, n);
+			edgeKind = Arrays.copyOf(edgeKind, n);
+			edgeAmount = Arrays.copyOf(edgeAmount, n);
+			edgeRate = Arrays.copyOf(edgeRate, n);
+			edgePenalty = Arrays.copyOf(edgePenalty, n);
+		}
+		edgeFrom[edgeCount] = from;
+		edgeTo[edgeCount] = to;
+		edgeKind[edgeCount] = kind;
+		edgeAmount[edgeCount] = amount;
+		edgeRate[edgeCount] = rate;
+		edgePenalty[edgeCount] = penalty;
+		edgeCount++;
+	}
+
+	private static long transferPenalty(long quality) {
+		if (quality <= 0 || quality <= QUALITY_ONE) {
+			return 0;
+		}
+		return (long) ((quality / QUALITY_ONE - 1) * UNIT);
+	}
+
+	private static double parse(String value) {
+		if (value == null) {
+			return 0;
+		}
+		try {
+			return Double.parseDouble(value.replace(",", "").trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Computes how much one unit of every node is worth at the destination,
+	 * following the best book rate backwards from it. Nodes that cannot reach
+	 * the destination get 0.
+	 */
+	private double[] destinationRates(int target) {
+		final int n = nodeAccounts.size();
+		double[] rates = new double[n];
+		rates[target] = 1;
+		for (int round = 0; round < MAX_PATH_LENGTH * 2; round++) {
+			boolean changed = false;
+			for (int e = 0; e < edgeCount; e++) {
+				double r = rates[edgeTo[e]] * edgeRate[e];
+				if (r > rates[edgeFrom[e]] * (1 + 1e-12)) {
+					rates[edgeFrom[e]] = r;
+					changed = true;
+				}
+			}
+			if (!changed) {
+				break;
+			}
+		}
+		return rates;
+	}
+
+	public PathSet find(String source, String sourceCurrency,
+			String destination, Amount amount) {
+		String destinationCurrency = amount.isNative() ? XRP : amount
+				.currencyString();
+		return find(source, sourceCurrency, destination, destinationCurrency,
+				amount.doubleValue());
+	}
+
+	/**
+	 * Returns up to {@link #setMaxPaths(int)} paths able to carry the amount
+	 * from source to destination, cheapest first, or an empty PathSet when the
+	 * cached liquidity cannot reach the destination. The direct path is
+	 * implied by the ledger and never included.
+	 */
+	public PathSet find(String source, String sourceCurrency,
+			String destination, String destinationCurrency, double amount) {
+		PathSet pathSet = new PathSet();
+		Integer s = nodeIndex.get(source + "/" + sourceCurrency);
+		Integer t = nodeIndex.get(destination + "/" + destinationCurrency);
+		if (s == null || t == null || s.intValue() == t.intValue()) {
+			return pathSet;
+		}
+		double[] rates = destinationRates(t);
+		if (rates[s] <= 0) {
+			return pathSet;
+		}
+		CsrGraph.Builder builder = new CsrGraph.Builder(nodeAccounts.size(),
+				edgeCount);
+		int[] edgeIds = new int[edgeCount];
+		for (int e = 0; e < edgeCount; e++) {
+			edgeIds[e] = -1;
+			double fromRate = rates[edgeFrom[e]];
+			double toRate = rates[edgeTo[e]];
+			if (fromRate <= 0 || toRate <= 0) {
+				continue;
+			}
+			long penalty = edgePenalty[e];
+			if (edgeKind[e] == BOOK) {
+				// how much worse this offer is than the best route out of its
+				// source node
+				double loss = fromRate / (edgeRate[e] * toRate);
+				penalty += (long) (Math.log(loss) * UNIT);
+			}
+			if (penalty > maxQualityPenalty) {
+				continue;
+			}
+			double value = edgeAmount[e] * toRate * UNIT;
+			long capacity = value >= GraphWorkspace.INF ? GraphWorkspace.INF
+					: (long) value;
+			if (capacity <= 0) {
+				continue;
+			}
+			edgeIds[e] = builder.addEdge(edgeFrom[e], edgeTo[e], capacity,
+					HOP_COST + Math.max(0, penalty));
+		}
+		CsrGraph graph = builder.build();
+		long wanted = (long) Math.ceil(amount * UNIT);
+		long flow = workspace.minCostFlow(graph, s, t, wanted);
+		if (flow <= 0) {
+			return pathSet;
+		}
+		int[] byGraphEdge = new int[graph.edgeCount()];
+		for (int e = 0; e < edgeCount; e++) {
+			if (edgeIds[e] >= 0) {
+				byGraphEdge[edgeIds[e]] = e;
+			}
+		}
+		decompose(graph, byGraphEdge, s, t, pathSet);
+		return pathSet;
+	}
+
+	private void decompose(CsrGraph graph, int[] byGraphEdge, int s, int t,
+			PathSet pathSet) {
+		final int n = graph.nodeCount();
+		final int m = graph.edgeCount();
+		long[] remaining = new long[m];
+		int[] offsets = new int[n + 1];
+		for (int e = 0; e < m; e++) {
+			remaining[e] = workspace.getFlow(e);
+			offsets[graph.getFrom(e) + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] fill = Arrays.copyOf(offsets, n);
+		int[] out = new int[m];
+		for (int e = 0; e < m; e++) {
+			out[fill[graph.getFrom(e)]++] = e;
+		}
+		int[] walk = new int[n];
+		boolean[] visited = new boolean[n];
+		while (pathSet.size() < maxPaths) {
+			Arrays.fill(visited, false);
+			int depth = 0;
+			int u = s;
+			visited[s] = true;
+			while (u != t) {
+				int next = -1;
+				for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+					int e = out[i];
+					if (remaining[e] > 0 && !visited[graph.getTo(e)]) {
+						next = e;
+						break;
+					}
+				}
+				if (next < 0) {
+					break;
+				}
+				walk[depth++] = next;
+				u = graph.getTo(next);
+				visited[u] = true;
+			}
+			if (u != t || depth == 0) {
+				return;
+			}
+			long amount = Long.MAX_VALUE;
+			for (int i = 0; i < depth; i++) {
+				amount = Math.min(amount, remaining[walk[i]]);
+			}
+			for (int i = 0; i < depth; i++) {
+				remaining[walk[i]] -= amount;
+			}
+			PathSet.Path path = toPath(graph, byGraphEdge, walk, depth, t);
+			if (path != null && !path.isEmpty()) {
+				pathSet.add(path);
+			}
+		}
+	}
+
+	private PathSet.Path toPath(CsrGraph graph, int[] byGraphEdge,
+			int[] walk, int depth, int t) {
+		PathSet.Path path = new PathSet.Path();
+		for (int i = 0; i < depth; i++) {
+			int e = byGraphEdge[walk[i]];
+			int to = edgeTo[e];
+			if (edgeKind[e] == TRUST) {
+				if (to != t) {
+					PathSet.Hop hop = new PathSet.Hop();
+					hop.account = AccountID.fromAddress(nodeAccounts.get(to));
+					path.add(hop);
+				}
+			} else if (edgeKind[e] == BOOK) {
+				PathSet.Hop hop = new PathSet.Hop();
+				String currency = nodeCurrencies.get(to);
+				hop.currency = XRP.equals(currency) ? Currency.XRP : Currency
+						.fromString(currency);
+				if (nodeAccounts.get(to) != null) {
+					hop.issuer = AccountID.fromAddress(nodeAccounts.get(to));
+				}
+				path.add(hop);
+			}
+		}
+		if (path.size() > MAX_PATH_LENGTH) {
+			return null;
+		}
+		return path;
+	}
+}
@@ -1,6 +1,7 @@
 package org.ripple.power.txns;
 
 import com.ripple.client.Client;
+import com.ripple.client.enums.Command;
 import com.ripple.client.requests.Request;
 import com.ripple.client.responses.Response;
 import com.ripple.core.coretypes.AccountID;
@@ -9,6 +10,7 @@ import com.ripple.core.coretypes.Issue;
 import com.ripple.core.coretypes.STArray;
 import com.ripple.core.coretypes.STObject;
 import com.ripple.core.types.known.sle.entries.Offer;
+import com.ripple.core.types.known.tx.result.TransactionResult;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.ripple.power.config.LSystem;
@@ -17,6 +19,9 @@ import org.ripple.power.ui.RPClient;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 public abstract class OfferPrice {
 
@@ -192,6 +197,8 @@ public abstract class OfferPrice {
 
 	public String spread;
 
+	public OrderBookDepth askDepth, bidDepth;
+
 	public abstract void buy(Offer offer);
 
 	public abstract void sell(Offer offer);
@@ -248,6 +255,8 @@ public abstract class OfferPrice {
 	public static class OrderBooks {
 		public static interface BookEvents {
 			public void onUpdate(OrderBooks book);
+
+			public void onError(JSONObject message);
 		}
 
 		private Client client;
@@ -255,16 +264,109 @@ public abstract class OfferPrice {
 		public Issue first, second;
 		public STArray asks, bids;
 		public Amount ask, bid, spread;
+		public OrderBookDepth askDepth, bidDepth;
+		private Client.OnValidatedTransaction listener;
+		private final ArrayList<BookEvents> waiting = new ArrayList<BookEvents>();
+		private boolean subscribed;
+		private long loadedTime;
 
 		public OrderBooks(Client client, Issue first, Issue second,
 				BookEvents callback) {
+			this(client, first, second, OrderBookDepth.DEFAULT_TICK, callback);
+		}
+
+		public OrderBooks(Client client, Issue first, Issue second,
+				double tick, BookEvents callback) {
 			this.client = client;
 			this.first = first;
 			this.second = second;
 			this.callback = callback;
+			this.askDepth = new OrderBookDepth(first, second, tick);
+			this.bidDepth = new OrderBookDepth(second, first, tick);
+		}
+
+		/**
+		 * Keeps askDepth/bidDepth current from the validated transaction
+		 * stream once both books have been fetched. asks/bids and the stats
+		 * are then rebuilt from the depth model, so the books can be read
+		 * again without another book_offers request.
+		 */
+		public void listen() {
+			if (listener != null) {
+				return;
+			}
+			listener = new Client.OnValidatedTransaction() {
+
+				@Override
+				public void called(TransactionResult result) {
+					boolean changed;
+					synchronized (OrderBooks.this) {
+						if (!retrievedBothBooks()) {
+							return;
+						}
+						changed = askDepth.apply(result);
+						changed |= bidDepth.apply(result);
+						if (changed) {
+							asks = askDepth.offers();
+							bids = bidDepth.offers();
+							calculateStats();
+						}
+					}
+					if (changed) {
+						fireUpdate();
+					}
+				}
+			};
+			client.on(Client.OnValidatedTransaction.class, listener);
+		}
+
+		public void unlisten() {
+			if (listener != null) {
+				client.removeListener(Client.OnValidatedTransaction.class,
+						listener);
+				listener = null;
+			}
+			if (subscribed) {
+				subscribed = false;
+				for (int i = 0; i < 2; i++) {
+					Request request = client.newRequest(Command.unsubscribe);
+					JSONObject book = new JSONObject();
+					book.put("taker_gets", (i == 0 ? first : second).toJSON());
+					book.put("taker_pays", (i == 0 ? second : first).toJSON());
+					request.json("books", new JSONArray().put(book));
+					request.request();
+				}
+			}
+		}
+
+		public boolean isListening() {
+			return listener != null;
+		}
+
+		/**
+		 * Stops listening and releases anyone still waiting for the first
+		 * fetch with the given error.
+		 */
+		public void close(JSONObject message) {
+			unlisten();
+			boolean pending;
+			synchronized (this) {
+				pending = !retrievedBothBooks();
+			}
+			if (pending) {
+				fireError(message);
+			}
+		}
+
+		public synchronized long getLoadedTime() {
+			return loadedTime;
 		}
 
 		private void calculateStats() {
+			if (isEmpty()) {
+				ask = bid = spread = null;
+				return;
+			}
 			Offer firstAsk = (Offer) asks.get(0);
 			Offer firstBid = (Offer) bids.get(0);
 			BigDecimal askQuality = firstAsk.askQuality();
@@ -275,13 +377,55 @@ public abstract class OfferPrice {
 			spread = ask.subtract(bid).abs();
 		}
 
-		private void requestUpdate(final OfferPrice price) {
+		/**
+		 * Calls events once, as soon as both books are available.
+		 */
+		void whenLoaded(BookEvents events) {
+			synchronized (this) {
+				if (!retrievedBothBooks()) {
+					waiting.add(events);
+					return;
+				}
+			}
+			events.onUpdate(this);
+		}
+
+		private void fireUpdate() {
+			ArrayList<BookEvents> list;
+			synchronized (this) {
+				list = new ArrayList<BookEvents>(waiting);
+				waiting.clear();
+			}
+			if (callback != null) {
+				callback.onUpdate(this);
+			}
+			for (BookEvents events : list) {
+				events.onUpdate(this);
+			}
+		}
+
+		private void fireError(JSONObject message) {
+			ArrayList<BookEvents> list;
+			synchronized (this) {
+				list = new ArrayList<BookEvents>(waiting);
+				waiting.clear();
+			}
+			if (callback != null) {
+				callback.onError(message);
+			}
+			for (BookEvents events : list) {
+				events.onError(message);
+			}
+		}
+
+		private void requestUpdate(final boolean subscribe) {
+			this.subscribed = subscribe;
 			for (int i = 0; i < 2; i++) {
 				final boolean getAsks = i == 0, getBids = !getAsks;
 				Issue getIssue = getAsks ? first : second, payIssue = getAsks ? second
 						: first;
 				Request request = null;
-				if (price.subscribe) {
+				if (subscribe) {
 					request = client.subscribeBookOffers(getIssue, payIssue);
 				} else {
 					request = client.requestBookOffers(getIssue, payIssue);
@@ -296,20 +440,27 @@ public abstract class OfferPrice {
 											.optJSONArray("offers");
 									STArray offers = STArray.translate
 											.fromJSONArray(offersJSON);
-
-									if (getBids) {
-										bids = offers;
-									} else {
-										asks = offers;
-									}
-									if (retrievedBothBooks()) {
-										if (!isEmpty()) {
+									boolean both;
+									synchronized (OrderBooks.this) {
+										if (getBids) {
+											bids = offers;
+											bidDepth.load(offers);
+										} else {
+											asks = offers;
+											askDepth.load(offers);
+										}
+										both = retrievedBothBooks();
+										if (both) {
+											loadedTime = System
+													.currentTimeMillis();
 											calculateStats();
 										}
-										callback.onUpdate(OrderBooks.this);
+									}
+									if (both) {
+										fireUpdate();
 									}
 								} else {
-									price.error(response.message);
+									fireError(response.message);
 								}
 							}
 						});
@@ -317,87 +468,265 @@ public abstract class OfferPrice {
 
 					@Override
 					public void called(Response response) {
-						price.error(response.message);
+						fireError(response.message);
 
 					}
 				});
 				request.request();
 			}
+			client.schedule((int) BOOK_FETCH_TIMEOUT, new Runnable() {
+				@Override
+				public void run() {
+					if (!retrievedBothBooks()) {
+						fireError(bookError("timeout"));
+					}
+				}
+			});
 		}
 
-		public boolean retrievedBothBooks() {
+		public synchronized boolean retrievedBothBooks() {
 			return asks != null && bids != null;
 		}
 
-		public boolean isEmpty() {
+		public synchronized boolean isEmpty() {
 			return !retrievedBothBooks() || asks.isEmpty() || bids.isEmpty();
 		}
 	}
 
+	// subscribed books shared by every load with subscribe set, so polling
+	// callers read the depth model instead of refetching both books
+	private final static HashMap<String, OrderBooks> _books = new HashMap<String, OrderBooks>();
+
+	// a live book is refetched after this long, in case the stream dropped
+	// transactions while the connection was down
+	public static long BOOK_RESYNC_TIME = LSystem.MINUTE * 5;
+
+	// callers waiting on a fetch get an error after this long
+	public static long BOOK_FETCH_TIMEOUT = LSystem.SECOND * 30;
+
+	// one per client that had live books, closes them when it disconnects
+	private final static HashMap<Client, Client.OnDisconnected> _disconnects = new HashMap<Client, Client.OnDisconnected>();
+
+	private static JSONObject bookError(String error) {
+		JSONObject message = new JSONObject();
+		message.put("error", error);
+		return message;
+	}
+
+	/**
+	 * Drops every live book, on shutdown.
+	 */
+	public static void closeBooks() {
+		synchronized (_books) {
+			for (Map.Entry<Client, Client.OnDisconnected> entry : _disconnects
+					.entrySet()) {
+				entry.getKey().removeListener(Client.OnDisconnected.class,
+						entry.getValue());
+			}
+			_disconnects.clear();
+		}
+		closeBooks(null);
+	}
+
+	/**
+	 * Drops the live books of client, or of every client if null. The
+	 * stream stops with the connection, so they are fetched again on the
+	 * next load.
+	 */
+	public static void closeBooks(Client client) {
+		ArrayList<OrderBooks> closed = new ArrayList<OrderBooks>();
+		synchronized (_books) {
+			Iterator<OrderBooks> it = _books.values().iterator();
+			while (it.hasNext()) {
+				OrderBooks books = it.next();
+				if (client == null || books.client == client) {
+					closed.add(books);
+					it.remove();
+				}
+			}
+		}
+		JSONObject message = bookError("closed");
+		for (OrderBooks books : closed) {
+			books.close(message);
+		}
+	}
+
 	private static void load(Client client, final Issue first,
 			final Issue second, final OfferPrice price, final boolean html) {
 		if (price == null) {
 			return;
 		}
-		new OrderBooks(client, first, second, new OrderBooks.BookEvents() {
-			@Override
-			public void onUpdate(OrderBooks book) {
-				ArrayList<OfferFruit> buys = new ArrayList<OfferFruit>(100);
-				ArrayList<OfferFruit> sells = new ArrayList<OfferFruit>(100);
-				if (!book.isEmpty()) {
-					price.highBuy = book.bid.toText();
-					price.highSell = book.ask.toText();
-					price.spread = book.spread.toText();
-					// sell
-					for (STObject offer : book.asks) {
-						Offer o = (Offer) offer;
-						price.sell(o);
-						BigDecimal payForOne = o.askQuality();
-						Amount paysOne = o.paysOne();
-						Amount getsOne = o.getsOne();
-						OfferFruit fruit = new OfferFruit();
-						fruit.offer = o;
-						if (html) {
-							fruit.message = o.takerGets().toText()
-									+ "<br><font size=5 color=red>Sell</font><br>"
-									+ (o.takerPays().toText())
-									+ "<br><font size=5 color=green>Exchange rate</font><br>"
-									+ getsOne.toText() + "=="
-									+ paysOne.multiply(payForOne).toText()
-									+ "<br>"
-									+ getsOne.divide(payForOne).toText() + "=="
-									+ paysOne.toText();
+		BookView view = new BookView(price, html);
+		if (!price.subscribe) {
+			new OrderBooks(client, first, second, view).requestUpdate(false);
+			return;
+		}
+		OrderBooks books;
+		boolean fetch = false;
+		String key = first + ":" + second;
+		synchronized (_books) {
+			books = _books.get(key);
+			if (books != null
+					&& (books.client != client || (books.retrievedBothBooks() && System
+							.currentTimeMillis() - books.getLoadedTime() > BOOK_RESYNC_TIME))) {
+				books.unlisten();
+				books = null;
+			}
+			if (books == null) {
+				books = new OrderBooks(client, first, second, null);
+				books.listen();
+				_books.put(key, books);
+				fetch = true;
+				if (!_disconnects.containsKey(client)) {
+					Client.OnDisconnected listener = new Client.OnDisconnected() {
+						@Override
+						public void called(Client client) {
+							closeBooks(client);
 						}
-						sells.add(fruit);
+					};
+					client.on(Client.OnDisconnected.class, listener);
+					_disconnects.put(client, listener);
+				}
+			}
+		}
+		if (fetch) {
+			books.whenLoaded(new DropOnError(key, books, view));
+			books.requestUpdate(true);
+		} else {
+			books.whenLoaded(view);
+		}
+	}
+
+	private static class DropOnError implements OrderBooks.BookEvents {
+
+		private final String key;
+
+		private final OrderBooks books;
+
+		private final BookView view;
+
+		DropOnError(String key, OrderBooks books, BookView view) {
+			this.key = key;
+			this.books = books;
+			this.view = view;
+		}
+
+		@Override
+		public void onUpdate(OrderBooks book) {
+			view.onUpdate(book);
+		}
+
+		@Override
+		public void onError(JSONObject message) {
+			synchronized (_books) {
+				if (_books.get(key) == books) {
+					_books.remove(key);
+				}
+			}
+			books.unlisten();
+			view.onError(message);
+		}
+	}
+
+	private static class BookView implements OrderBooks.BookEvents {
+
+		private final OfferPrice price;
+
+		private final boolean html;
+
+		private boolean done;
+
+		BookView(OfferPrice price, boolean html) {
+			this.price = price;
+			this.html = html;
+		}
+
+		@Override
+		public void onError(JSONObject message) {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				done = true;
+			}
+			price.error(message);
+		}
+
+		@Override
+		public void onUpdate(OrderBooks book) {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				done = true;
+			}
+			// asks/bids are replaced, never changed in place, so one read
+			// under the lock gives a consistent view of the book
+			STArray asks, bids;
+			Amount ask, bid, spread;
+			synchronized (book) {
+				asks = book.asks;
+				bids = book.bids;
+				ask = book.ask;
+				bid = book.bid;
+				spread = book.spread;
+			}
+			ArrayList<OfferFruit> buys = new ArrayList<OfferFruit>(100);
+			ArrayList<OfferFruit> sells = new ArrayList<OfferFruit>(100);
+			price.askDepth = book.askDepth;
+			price.bidDepth = book.bidDepth;
+			if (ask != null) {
+				price.highBuy = bid.toText();
+				price.highSell = ask.toText();
+				price.spread = spread.toText();
+				// sell
+				for (STObject offer : asks) {
+					Offer o = (Offer) offer;
+					price.sell(o);
+					BigDecimal payForOne = o.askQuality();
+					Amount paysOne = o.paysOne();
+					Amount getsOne = o.getsOne();
+					OfferFruit fruit = new OfferFruit();
+					fruit.offer = o;
+					if (html) {
+						fruit.message = o.takerGets().toText()
+								+ "<br><font size=5 color=red>Sell</font><br>"
+								+ (o.takerPays().toText())
+								+ "<br><font size=5 color=green>Exchange rate</font><br>"
+								+ getsOne.toText() + "=="
+								+ paysOne.multiply(payForOne).toText()
+								+ "<br>" + getsOne.divide(payForOne).toText()
+								+ "==" + paysOne.toText();
 					}
-					// buy
-					for (STObject offer : book.bids) {
-						Offer o = (Offer) offer;
-						price.buy(o);
-						BigDecimal payForOne = o.askQuality();
-						Amount paysOne = o.paysOne();
-						Amount getsOne = o.getsOne();
-						OfferFruit fruit = new OfferFruit();
-						fruit.offer = o;
-						if (html) {
-							fruit.message = o.takerGets().toText()
-									+ "<br><font size=5 color=green>Buy</font><br>"
-									+ (o.takerPays().toText())
-									+ "<br><font size=5 color=red>Exchange rate</font><br>"
-									+ paysOne.multiply(payForOne).toText()
-									+ "==" + getsOne.toText() + "<br>"
-									+ paysOne.toText() + "=="
-									+ getsOne.divide(payForOne).toText();
-						}
-						buys.add(fruit);
+					sells.add(fruit);
+				}
+				// buy
+				for (STObject offer : bids) {
+					Offer o = (Offer) offer;
+					price.buy(o);
+					BigDecimal payForOne = o.askQuality();
+					Amount paysOne = o.paysOne();
+					Amount getsOne = o.getsOne();
+					OfferFruit fruit = new OfferFruit();
+					fruit.offer = o;
+					if (html) {
+						fruit.message = o.takerGets().toText()
+								+ "<br><font size=5 color=green>Buy</font><br>"
+								+ (o.takerPays().toText())
+								+ "<br><font size=5 color=red>Exchange rate</font><br>"
+								+ paysOne.multiply(payForOne).toText() + "=="
+								+ getsOne.toText() + "<br>"
+								+ paysOne.toText() + "=="
+								+ getsOne.divide(payForOne).toText();
 					}
-				} else {
-					// empty
-					price.empty();
+					buys.add(fruit);
 				}
-				price.complete(buys, sells, price);
+			} else {
+				// empty
+				price.empty();
 			}
-		}).requestUpdate(price);
+			price.complete(buys, sells, price);
+		}
 	}
 
 }
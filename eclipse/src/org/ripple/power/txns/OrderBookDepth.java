@@ -0,0 +1,302 @@
+package org.ripple.power.txns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.ripple.core.coretypes.Amount;
+import com.ripple.core.coretypes.Issue;
+import com.ripple.core.coretypes.STArray;
+import com.ripple.core.coretypes.STObject;
+import com.ripple.core.coretypes.hash.Hash256;
+import com.ripple.core.serialized.enums.LedgerEntryType;
+import com.ripple.core.types.known.sle.entries.Offer;
+import com.ripple.core.types.known.tx.result.AffectedNode;
+import com.ripple.core.types.known.tx.result.TransactionResult;
+
+/**
+ * Aggregated depth for one side of a book (offers whose TakerGets is
+ * {@code gets} and TakerPays is {@code pays}). Offers are grouped into
+ * quality buckets of a fixed tick, best (cheapest) quality first. The book is
+ * seeded once from book_offers and then kept current by applying the offer
+ * nodes of each validated transaction, so callers can read depth, VWAP and
+ * top levels without refetching.
+ */
+public class OrderBookDepth {
+
+	public static class Level {
+
+		// pays per one gets, at the bucket floor
+		public double quality;
+
+		// TakerGets available at this level
+		public double volume;
+
+		// TakerPays needed to take the whole level
+		public double total;
+
+		public int count;
+
+		public double averageQuality() {
+			return volume > 0 ? total / volume : quality;
+		}
+
+		private Level copy() {
+			Level level = new Level();
+			level.quality = quality;
+			level.volume = volume;
+			level.total = total;
+			level.count = count;
+			return level;
+		}
+
+		public String toString() {
+			return quality + " x " + volume + " (" + count + ")";
+		}
+	}
+
+	private static class Entry {
+		long bucket;
+		double gets;
+		double pays;
+		double quality;
+		Offer offer;
+	}
+
+	private static final Comparator<Entry> BEST_FIRST = new Comparator<Entry>() {
+
+		@Override
+		public int compare(Entry a, Entry b) {
+			return Double.compare(a.quality, b.quality);
+		}
+	};
+
+	public static final double DEFAULT_TICK = 0.00000001d;
+
+	private final Issue gets, pays;
+
+	private final double tick;
+
+	private final HashMap<Hash256, Entry> offers = new HashMap<Hash256, Entry>();
+
+	private final TreeMap<Long, Level> levels = new TreeMap<Long, Level>();
+
+	private long lastLedger;
+
+	public OrderBookDepth(Issue gets, Issue pays, double tick) {
+		if (tick <= 0) {
+			throw new IllegalArgumentException("tick must be greater than 0");
+		}
+		this.gets = gets;
+		this.pays = pays;
+		this.tick = tick;
+	}
+
+	public Issue getGets() {
+		return gets;
+	}
+
+	public Issue getPays() {
+		return pays;
+	}
+
+	public double getTick() {
+		return tick;
+	}
+
+	public synchronized long getLastLedger() {
+		return lastLedger;
+	}
+
+	/**
+	 * Replaces the book with a book_offers snapshot.
+	 */
+	public synchronized void load(STArray snapshot) {
+		offers.clear();
+		levels.clear();
+		if (snapshot == null) {
+			return;
+		}
+		for (STObject obj : snapshot) {
+			if (obj instanceof Offer) {
+				Offer offer = (Offer) obj;
+				Hash256 index = offer.get(Hash256.index);
+				if (index != null) {
+					put(index, offer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies the Offer nodes created, modified or deleted by a transaction.
+	 * Returns true if this side of the book changed.
+	 */
+	public synchronized boolean apply(TransactionResult result) {
+		if (result == null || result.meta == null) {
+			return false;
+		}
+		boolean changed = false;
+		for (AffectedNode node : result.meta.affectedNodes()) {
+			if (node.ledgerEntryType() != LedgerEntryType.Offer) {
+				continue;
+			}
+			Hash256 index = node.ledgerIndex();
+			if (node.isDeletedNode()) {
+				changed |= remove(index);
+				continue;
+			}
+			STObject finals = node.nodeAsFinal();
+			if (!(finals instanceof Offer)) {
+				continue;
+			}
+			Offer offer = (Offer) finals;
+			if (!belongs(offer)) {
+				continue;
+			}
+			remove(index);
+			put(index, offer);
+			changed = true;
+		}
+		if (changed && result.ledgerIndex != null) {
+			lastLedger = result.ledgerIndex.longValue();
+		}
+		return changed;
+	}
+
+	private boolean belongs(Offer offer) {
+		Amount g = offer.takerGets();
+		Amount p = offer.takerPays();
+		return g != null && p != null && sameIssue(g, gets)
+				&& sameIssue(p, pays);
+	}
+
+	private static boolean sameIssue(Amount amount, Issue issue) {
+		boolean nativeIssue = issue.currency().isNative();
+		if (amount.isNative() || nativeIssue) {
+			return amount.isNative() && nativeIssue;
+		}
+		return amount.currency().equals(issue.currency())
+				&& amount.issuer().equals(issue.issuer());
+	}
+
+	private void put(Hash256 index, Offer offer) {
+		double g = offer.takerGets().doubleValue();
+		double p = offer.takerPays().doubleValue();
+		if (g <= 0 || p <= 0) {
+			return;
+		}
+		Entry entry = new Entry();
+		entry.gets = g;
+		entry.pays = p;
+		entry.quality = p / g;
+		entry.offer = offer;
+		entry.bucket = (long) Math.floor(entry.quality / tick);
+		offers.put(index, entry);
+		Level level = levels.get(entry.bucket);
+		if (level == null) {
+			level = new Level();
+			level.quality = entry.bucket * tick;
+			levels.put(entry.bucket, level);
+		}
+		level.volume += g;
+		level.total += p;
+		level.count++;
+	}
+
+	private boolean remove(Hash256 index) {
+		Entry entry = offers.remove(index);
+		if (entry == null) {
+			return false;
+		}
+		Level level = levels.get(entry.bucket);
+		if (level != null) {
+			level.count--;
+			if (level.count <= 0) {
+				levels.remove(entry.bucket);
+			} else {
+				level.volume -= entry.gets;
+				level.total -= entry.pays;
+			}
+		}
+		return true;
+	}
+
+	public synchronized boolean isEmpty() {
+		return levels.isEmpty();
+	}
+
+	public synchronized int size() {
+		return offers.size();
+	}
+
+	/**
+	 * Best average quality (pays per gets) in the book, or NaN when empty.
+	 */
+	public synchronized double bestQuality() {
+		if (levels.isEmpty()) {
+			return Double.NaN;
+		}
+		return levels.firstEntry().getValue().averageQuality();
+	}
+
+	/**
+	 * TakerGets volume available at or better than the given quality.
+	 */
+	public synchronized double cumulativeDepth(double maxQuality) {
+		double sum = 0;
+		long limit = (long) Math.floor(maxQuality / tick);
+		for (Level level : levels.headMap(limit, true).values()) {
+			sum += level.volume;
+		}
+		return sum;
+	}
+
+	/**
+	 * Volume weighted average quality for taking {@code size} of TakerGets,
+	 * or NaN when the book is not deep enough.
+	 */
+	public synchronized double vwap(double size) {
+		if (size <= 0) {
+			return bestQuality();
+		}
+		double filled = 0, cost = 0;
+		for (Level level : levels.values()) {
+			double take = Math.min(level.volume, size - filled);
+			cost += take * level.averageQuality();
+			filled += take;
+			if (filled >= size) {
+				return cost / filled;
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * The offers currently in the book, best quality first, in the same
+	 * shape book_offers returns them.
+	 */
+	public synchronized STArray offers() {
+		ArrayList<Entry> list = new ArrayList<Entry>(offers.values());
+		Collections.sort(list, BEST_FIRST);
+		STArray array = new STArray();
+		for (Entry entry : list) {
+			array.add(entry.offer);
+		}
+		return array;
+	}
+
+	public synchronized List<Level> top(int n) {
+		ArrayList<Level> list = new ArrayList<Level>(Math.max(0, n));
+		Iterator<Map.Entry<Long, Level>> it = levels.entrySet().iterator();
+		while (it.hasNext() && list.size() < n) {
+			list.add(it.next().getValue().copy());
+		}
+		return list;
+	}
+}
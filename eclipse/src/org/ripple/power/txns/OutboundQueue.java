@@ -0,0 +1,554 @@
+package org.ripple.power.txns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.ripple.power.CoinUtils;
+import org.ripple.power.config.LSystem;
+import org.ripple.power.config.SessionJournal;
+import org.ripple.power.ui.RPClient;
+
+import com.ripple.client.enums.Command;
+import com.ripple.client.requests.Request;
+import com.ripple.client.responses.Response;
+
+/**
+ * Durable queue of signed transactions on their way to the server. Before a
+ * blob is sent it is written to a {@link SessionJournal} with its account,
+ * sequence and LastLedgerSequence, so after a crash it is known which
+ * transactions may have gone out.
+ * <p>
+ * One dispatcher thread takes everything that queued up since its last
+ * round, writes it with a single fsync and sends it at once, keeping up to
+ * {@link #MAX_IN_FLIGHT} requests outstanding.
+ * <p>
+ * An entry is removed once it has a final answer: applied (tes, tec),
+ * rejected (tem, tef), or its LastLedgerSequence has passed. Retryable
+ * answers (ter, tel, busy server) and lost responses are sent again after
+ * {@link #RETRY_DELAY_MILLIS}, up to {@link #MAX_ATTEMPTS} times. Entries
+ * found in the journal on start are sent again; resubmitting a signed blob
+ * is harmless, since a sequence is applied only once.
+ * <p>
+ * tefPAST_SEQ and tefALREADY may mean an earlier copy was applied, and an
+ * entry that was sent may have made it into a ledger before it expired. In
+ * those cases the transaction is looked up by hash before the entry is
+ * removed, and the caller gets the validated result if there is one.
+ * <p>
+ * While there is no connection nothing is sent: entries are written to the
+ * journal once and wait there until the client is back.
+ * <p>
+ * The caller's {@link Rollback} hears about an entry once, when it is
+ * removed: the final server response, or an error if it expired or ran out
+ * of attempts.
+ */
+public final class OutboundQueue {
+
+	public static final int MAX_IN_FLIGHT = 64;
+
+	public static final int MAX_ATTEMPTS = 10;
+
+	public static final long RETRY_DELAY_MILLIS = 5000;
+
+	public static final long RESPONSE_TIMEOUT_MILLIS = 30000;
+
+	private static final String FILE_NAME = "outbound.journal";
+
+	private static final int VERSION = 1;
+
+	private static final int DONE = 0, DROP = 1, RETRY = 2;
+
+	public static enum State {
+		QUEUED, SENT, RETRY
+	}
+
+	/**
+	 * A signed transaction and its delivery state.
+	 */
+	public static final class Entry {
+
+		private final String hash;
+
+		private final String account;
+
+		private final long sequence;
+
+		private final long lastLedgerSequence;
+
+		private final byte[] blob;
+
+		private final long created;
+
+		private volatile State state = State.QUEUED;
+
+		private volatile int attempts;
+
+		private volatile String result;
+
+		private volatile long sentAt;
+
+		private volatile long retryAt;
+
+		private volatile Rollback back;
+
+		private volatile boolean stored;
+
+		// result to report if a lookup by hash finds nothing
+		private volatile String verdict;
+
+		private volatile Response answer;
+
+		private volatile int lookups;
+
+		Entry(String hash, String account, long sequence,
+				long lastLedgerSequence, byte[] blob, long created) {
+			this.hash = hash;
+			this.account = account;
+			this.sequence = sequence;
+			this.lastLedgerSequence = lastLedgerSequence;
+			this.blob = blob;
+			this.created = created;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public String getAccount() {
+			return account;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return 0 if the transaction has no LastLedgerSequence
+		 */
+		public long getLastLedgerSequence() {
+			return lastLedgerSequence;
+		}
+
+		public String getBlob() {
+			return CoinUtils.toHex(blob);
+		}
+
+		public long getCreated() {
+			return created;
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+
+		/**
+		 * @return engine result or error of the last response, null before
+		 *         the first one
+		 */
+		public String getResult() {
+			return result;
+		}
+
+		boolean isExpired(long ledger) {
+			return lastLedgerSequence != 0 && ledger > lastLedgerSequence;
+		}
+
+		byte[] encode() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+					blob.length + 96);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(VERSION);
+			out.writeUTF(account == null ? "" : account);
+			out.writeLong(sequence);
+			out.writeLong(lastLedgerSequence);
+			out.writeLong(created);
+			out.writeByte(state.ordinal());
+			out.writeInt(attempts);
+			out.writeUTF(result == null ? "" : result);
+			out.writeInt(blob.length);
+			out.write(blob);
+			out.flush();
+			return bytes.toByteArray();
+		}
+
+		static Entry decode(String hash, byte[] value) throws IOException {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					value));
+			int version = in.readByte();
+			if (version != VERSION) {
+				throw new IOException("Unknown entry version: " + version);
+			}
+			String account = in.readUTF();
+			long sequence = in.readLong();
+			long lastLedgerSequence = in.readLong();
+			long created = in.readLong();
+			State state = State.values()[in.readByte()];
+			int attempts = in.readInt();
+			String result = in.readUTF();
+			byte[] blob = new byte[in.readInt()];
+			in.readFully(blob);
+			Entry entry = new Entry(hash, account.length() == 0 ? null
+					: account, sequence, lastLedgerSequence, blob, created);
+			entry.state = state;
+			entry.attempts = attempts;
+			entry.result = result.length() == 0 ? null : result;
+			entry.stored = true;
+			return entry;
+		}
+	}
+
+	private static OutboundQueue instance;
+
+	public synchronized static OutboundQueue get() throws IOException {
+		if (instance == null) {
+			instance = new OutboundQueue(SessionJournal.open(new File(
+					LSystem.getDirectory(), FILE_NAME)));
+		}
+		return instance;
+	}
+
+	private final SessionJournal journal;
+
+	private final LinkedBlockingQueue<Entry> ready = new LinkedBlockingQueue<Entry>();
+
+	private final ConcurrentHashMap<String, Entry> sent = new ConcurrentHashMap<String, Entry>();
+
+	private final ConcurrentLinkedQueue<Entry> waiting = new ConcurrentLinkedQueue<Entry>();
+
+	private final Semaphore permits = new Semaphore(MAX_IN_FLIGHT);
+
+	OutboundQueue(SessionJournal journal) {
+		this.journal = journal;
+		for (String hash : journal.keys()) {
+			try {
+				ready.add(Entry.decode(hash, journal.get(hash)));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		Thread dispatcher = new Thread("OutboundQueue") {
+			public void run() {
+				dispatch();
+			}
+		};
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Queues a signed transaction. It is sent after it has been written to
+	 * disk; back gets the final answer once retries are over.
+	 */
+	public Entry submit(String hash, String account, long sequence,
+			long lastLedgerSequence, byte[] blob, Rollback back) {
+		Entry entry = new Entry(hash, account, sequence, lastLedgerSequence,
+				blob.clone(), System.currentTimeMillis());
+		entry.back = back;
+		ready.add(entry);
+		return entry;
+	}
+
+	/**
+	 * Transactions without a final answer, in the state last written.
+	 */
+	public List<Entry> pending() {
+		ArrayList<Entry> list = new ArrayList<Entry>();
+		for (String hash : journal.keys()) {
+			byte[] value = journal.get(hash);
+			if (value != null) {
+				try {
+					list.add(Entry.decode(hash, value));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return list;
+	}
+
+	public boolean isEmpty() {
+		return journal.isEmpty() && ready.isEmpty();
+	}
+
+	private void dispatch() {
+		ArrayList<Entry> batch = new ArrayList<Entry>();
+		for (;;) {
+			try {
+				Entry first = ready.poll(1, TimeUnit.SECONDS);
+				if (first != null) {
+					batch.add(first);
+					ready.drainTo(batch);
+					send(batch);
+					batch.clear();
+				}
+				tick();
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static RPClient connected() {
+		RPClient client = RPClient.ripple();
+		return client == null || client.getClinet() == null ? null : client;
+	}
+
+	private static long currentLedger() {
+		RPClient client = connected();
+		return client == null ? 0 : client.getClinet().serverInfo.ledger_index;
+	}
+
+	private void send(List<Entry> batch) throws IOException,
+			InterruptedException {
+		RPClient client = connected();
+		long ledger = currentLedger();
+		long now = System.currentTimeMillis();
+		for (Iterator<Entry> it = batch.iterator(); it.hasNext();) {
+			Entry entry = it.next();
+			if (entry.isExpired(ledger)) {
+				it.remove();
+				expired(entry);
+			} else if (client == null) {
+				it.remove();
+				if (!entry.stored) {
+					store(entry);
+				}
+				entry.retryAt = now + RETRY_DELAY_MILLIS;
+				waiting.add(entry);
+			} else {
+				entry.state = State.SENT;
+				entry.attempts++;
+				store(entry);
+			}
+		}
+		// one fsync covers the whole batch
+		journal.sync();
+		for (final Entry entry : batch) {
+			while (!permits.tryAcquire(1, TimeUnit.SECONDS)) {
+				tick();
+			}
+			entry.sentAt = System.currentTimeMillis();
+			sent.put(entry.hash, entry);
+			Request req = client.newRequest(Command.submit);
+			req.json("tx_blob", CoinUtils.toHex(entry.blob));
+			req.once(Request.OnSuccess.class, new Request.OnSuccess() {
+				@Override
+				public void called(Response response) {
+					answered(entry, response);
+				}
+			});
+			req.once(Request.OnError.class, new Request.OnError() {
+				@Override
+				public void called(Response response) {
+					answered(entry, response);
+				}
+			});
+			req.request();
+		}
+	}
+
+	/**
+	 * Times out lost responses and queues entries whose retry delay is over.
+	 */
+	private void tick() {
+		long now = System.currentTimeMillis();
+		for (Entry entry : sent.values()) {
+			if (now - entry.sentAt > RESPONSE_TIMEOUT_MILLIS
+					&& sent.remove(entry.hash, entry)) {
+				permits.release();
+				retry(entry, now);
+			}
+		}
+		if (connected() == null) {
+			// parked until the client is back
+			return;
+		}
+		long ledger = currentLedger();
+		for (Iterator<Entry> it = waiting.iterator(); it.hasNext();) {
+			Entry entry = it.next();
+			if (entry.retryAt > now) {
+				continue;
+			}
+			it.remove();
+			if (entry.verdict != null) {
+				lookup(entry);
+			} else if (entry.isExpired(ledger)) {
+				expired(entry);
+			} else {
+				ready.add(entry);
+			}
+		}
+	}
+
+	private void answered(Entry entry, Response response) {
+		if (!sent.remove(entry.hash, entry)) {
+			// already timed out and queued again
+			return;
+		}
+		permits.release();
+		String result = response.result == null ? null : response.result
+				.optString("engine_result", null);
+		if (result == null) {
+			result = response.error;
+		}
+		entry.result = result;
+		int outcome = outcome(result);
+		if (outcome == RETRY) {
+			retry(entry, System.currentTimeMillis());
+		} else if ("tefPAST_SEQ".equals(result) || "tefALREADY".equals(result)) {
+			// the sequence is used, maybe by an earlier copy of this entry
+			entry.answer = response;
+			check(entry, result);
+		} else {
+			finish(entry, result, response);
+		}
+	}
+
+	private void expired(Entry entry) {
+		if (entry.attempts > 0) {
+			check(entry, "expired");
+		} else {
+			finish(entry, "expired", null);
+		}
+	}
+
+	/**
+	 * Looks the entry up by hash before reporting verdict, since it may have
+	 * been applied after all.
+	 */
+	private void check(Entry entry, String verdict) {
+		entry.verdict = verdict;
+		entry.lookups = 0;
+		lookup(entry);
+	}
+
+	private void lookup(final Entry entry) {
+		RPClient client = connected();
+		if (client == null) {
+			entry.retryAt = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+			waiting.add(entry);
+			return;
+		}
+		entry.lookups++;
+		Request req = client.newRequest(Command.tx);
+		req.json("transaction", entry.hash);
+		req.once(Request.OnSuccess.class, new Request.OnSuccess() {
+			@Override
+			public void called(Response response) {
+				found(entry, response);
+			}
+		});
+		req.once(Request.OnError.class, new Request.OnError() {
+			@Override
+			public void called(Response response) {
+				found(entry, response);
+			}
+		});
+		req.request();
+	}
+
+	private void found(Entry entry, Response response) {
+		JSONObject result = response.result;
+		JSONObject meta = result == null ? null : result.optJSONObject("meta");
+		if (response.succeeded && meta != null
+				&& result.optBoolean("validated", false)) {
+			entry.result = meta.optString("TransactionResult", entry.verdict);
+			finish(entry, entry.result, response);
+		} else if ("txnNotFound".equals(response.error)
+				|| entry.lookups >= MAX_ATTEMPTS) {
+			finish(entry, entry.verdict, entry.answer);
+		} else {
+			// in a ledger that is not validated yet, or no answer
+			entry.retryAt = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+			waiting.add(entry);
+		}
+	}
+
+	static int outcome(String result) {
+		if (result == null) {
+			return RETRY;
+		}
+		if (result.startsWith("tes") || result.startsWith("tec")) {
+			return DONE;
+		}
+		if (result.startsWith("ter") || result.startsWith("tel")
+				|| "tooBusy".equals(result) || "noNetwork".equals(result)
+				|| "noCurrent".equals(result) || "noClosed".equals(result)
+				|| "slowDown".equals(result)) {
+			return RETRY;
+		}
+		return DROP;
+	}
+
+	private void retry(Entry entry, long now) {
+		if (entry.attempts >= MAX_ATTEMPTS) {
+			finish(entry, entry.result == null ? "noResponse"
+					: entry.result, null);
+			return;
+		}
+		delay(entry, now);
+	}
+
+	private void delay(Entry entry, long now) {
+		entry.state = State.RETRY;
+		entry.retryAt = now + RETRY_DELAY_MILLIS;
+		try {
+			store(entry);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		waiting.add(entry);
+	}
+
+	private void store(Entry entry) throws IOException {
+		journal.put(entry.hash, entry.encode());
+		entry.stored = true;
+	}
+
+	/**
+	 * Removes the entry and reports it to the caller. response is the final
+	 * answer of the server, or null when the queue gave up on its own.
+	 */
+	private void finish(Entry entry, String result, Response response) {
+		try {
+			journal.remove(entry.hash);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		Rollback back = entry.back;
+		entry.back = null;
+		if (back == null) {
+			return;
+		}
+		if (response != null) {
+			if (response.succeeded) {
+				back.success(response.message);
+			} else {
+				back.error(response.message);
+			}
+		} else {
+			JSONObject message = new JSONObject();
+			message.put("status", "error");
+			message.put("error", result);
+			back.error(message);
+		}
+	}
+}
@@ -81,6 +81,16 @@ public class RippleMacros extends AMacros {
 						"convert_price" });
 	}
 
+	@Override
+	protected AMacros newInstance() {
+		return new RippleMacros();
+	}
+
+	@Override
+	protected boolean isReadOnly(int type) {
+		return type != SEND && type != OFFER_CREATE && type != OFFER_CANCEL;
+	}
+
 	@Override
 	public void call(final IScriptLog log, final int scriptLine,
 			final DMacros macros, final String message) {
@@ -304,13 +314,13 @@ public class RippleMacros extends AMacros {
 				break;
 			case 2:
 				if (type == TRANSACTION_TX) {
-					setSyncing(type, true);
 					String parameter = list.get(1);
 					if (!AccountFind.is256hash(parameter)) {
 						error(new Exception(String.format("%s Not 256 Hash",
 								parameter)));
 						break;
 					}
+					setSyncing(type, true);
 					obj.put("transaction", parameter);
 					RippleCommand.get(Command.tx, obj, new Rollback() {
 
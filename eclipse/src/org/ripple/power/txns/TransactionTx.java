@@ -136,6 +136,9 @@ public class TransactionTx {
 		public String memo_format;
 		public long memo_date;
 
+		public Memo() {
+		}
+
 		public Memo(JSONObject obj, long date) {
 			if (obj.has("Memo")) {
 				JSONObject memo = obj.getJSONObject("Memo");
@@ -3,14 +3,11 @@ package org.ripple.power.txns;
 import org.json.JSONObject;
 import org.ripple.power.CoinUtils;
 import org.ripple.power.RippleObject;
+import org.ripple.power.RippleSchemas.BinaryFormatField;
 import org.ripple.power.RippleSeedAddress;
 import org.ripple.power.RippleSerializer;
 import org.ripple.power.RippleSigner;
-import org.ripple.power.ui.RPClient;
 
-import com.ripple.client.enums.Command;
-import com.ripple.client.requests.Request;
-import com.ripple.client.responses.Response;
 import com.ripple.core.coretypes.Amount;
 import com.ripple.core.coretypes.VariableLength;
 import com.ripple.core.coretypes.hash.HalfSha512;
@@ -25,6 +22,11 @@ import com.ripple.crypto.ecdsa.Seed;
 
 public class TransactionUtils {
 
+	/**
+	 * Signs txn and hands it to {@link OutboundQueue}. It is queued even
+	 * while the client is disconnected and sent once it is back; back hears
+	 * about it only when it is final.
+	 */
 	public final static void submitBlob(final RippleSeedAddress seed,
 			final Transaction txn, final String fee, final long sequence,
 			final Rollback back) throws Exception {
@@ -42,29 +44,11 @@ public class TransactionUtils {
 		BytesList blob = new BytesList();
 		HalfSha512 id = HalfSha512.prefixed256(HashPrefix.transactionID);
 		txn.toBytesSink(new MultiSink(blob, id));
-		String tx_blob = blob.bytesHex();
-		RPClient client = RPClient.ripple();
-		if (client != null) {
-			Request req = client.newRequest(Command.submit);
-			req.json("tx_blob", tx_blob);
-			req.once(Request.OnSuccess.class, new Request.OnSuccess() {
-				@Override
-				public void called(Response response) {
-					if (back != null) {
-						back.success(response.message);
-					}
-				}
-			});
-			req.once(Request.OnError.class, new Request.OnError() {
-				@Override
-				public void called(Response response) {
-					if (back != null) {
-						back.error(response.message);
-					}
-				}
-			});
-			req.request();
-		}
+		UInt32 lastLedger = txn.lastLedgerSequence();
+		OutboundQueue.get().submit(id.finish().toHex(),
+				txn.account() == null ? null : txn.account().address,
+				sequence, lastLedger == null ? 0 : lastLedger.longValue(),
+				blob.bytes(), back);
 	}
 
 	public final static long getSequence(JSONObject res) {
@@ -80,28 +64,16 @@ public class TransactionUtils {
 
 		byte[] signedTXBytes = new RippleSerializer().writeBinaryObject(rbo)
 				.array();
-		RPClient client = RPClient.ripple();
-		if (client != null) {
-			Request req = client.newRequest(Command.submit);
-			req.json("tx_blob", CoinUtils.toHex(signedTXBytes));
-			req.once(Request.OnSuccess.class, new Request.OnSuccess() {
-				@Override
-				public void called(Response response) {
-					if (back != null) {
-						back.success(response.message);
-					}
-				}
-			});
-			req.once(Request.OnError.class, new Request.OnError() {
-				@Override
-				public void called(Response response) {
-					if (back != null) {
-						back.error(response.message);
-					}
-				}
-			});
-			req.request();
-		}
+		Object account = rbo.getField(BinaryFormatField.Account);
+		OutboundQueue.get().submit(CoinUtils.toHex(rbo.getTransactionHash()),
+				account == null ? null : account.toString(),
+				number(rbo.getField(BinaryFormatField.Sequence)),
+				number(rbo.getField(BinaryFormatField.LastLedgerSequence)),
+				signedTXBytes, back);
+	}
+
+	private static long number(Object value) {
+		return value instanceof Number ? ((Number) value).longValue() : 0;
 	}
 
 }
@@ -494,6 +494,7 @@ public class EditorDialog extends JDialog {
 							.getText(), false);
 				} catch (ScriptException ex) {
 					print(ex.getMessage());
+					return;
 				}
 				_script.setMacrosListener(new RippleMacros());
 				_script.call(false);
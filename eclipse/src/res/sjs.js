@@ -1245,6 +1245,41 @@ sjcl.misc.pbkdf2 = function (password, salt, count, length, Prff) {
   return out;
 };
 
+/* When Java puts javaCrypto into this scope (see
+ * org.ripple.power.nodejs.JSCrypt), PBKDF2 with the default PRF and
+ * SHA-512 run on its word based implementation. */
+(function () {
+  var pbkdf2 = sjcl.misc.pbkdf2, sha512 = sjcl.hash.sha512.hash;
+
+  function toBitArray(words) {
+    var out = [], i;
+    for (i = 0; i < words.length; i++) {
+      out.push(Number(words[i]));
+    }
+    return out;
+  }
+
+  sjcl.misc.pbkdf2 = function (password, salt, count, length, Prff) {
+    if (typeof javaCrypto === "undefined" || (Prff && Prff !== sjcl.misc.hmac)) {
+      return pbkdf2(password, salt, count, length, Prff);
+    }
+    if (typeof password === "string") {
+      password = sjcl.codec.utf8String.toBits(password);
+    }
+    return toBitArray(javaCrypto.pbkdf2(password, salt, count || 0, length || 0));
+  };
+
+  sjcl.hash.sha512.hash = function (data) {
+    if (typeof javaCrypto === "undefined") {
+      return sha512(data);
+    }
+    if (typeof data === "string") {
+      data = sjcl.codec.utf8String.toBits(data);
+    }
+    return toBitArray(javaCrypto.sha512(data));
+  };
+})();
+
 sjcl.prng = function(defaultParanoia) {
   
   /* private */
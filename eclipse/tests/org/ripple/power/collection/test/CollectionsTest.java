@@ -0,0 +1,154 @@
+package org.ripple.power.collection.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import com.ripple.client.subscriptions.ledger.ClearedLedgersSet;
+import com.ripple.utils.collection.ConcurrentLongMap;
+import com.ripple.utils.collection.LRUMap;
+import com.ripple.utils.collection.LongHashSet;
+import com.ripple.utils.collection.LongObjectMap;
+
+public class CollectionsTest {
+
+	private static void check(boolean value, String message) {
+		if (!value) {
+			throw new RuntimeException("failed: " + message);
+		}
+	}
+
+	// ledger indexes and sequences: runs of close values, plus 0 and
+	// negatives which the tables keep out of band or must not confuse
+	private static long nextKey(Random random) {
+		switch (random.nextInt(4)) {
+		case 0:
+			return random.nextInt(64) - 8;
+		case 1:
+			return 9000000L + random.nextInt(4096);
+		default:
+			return random.nextLong() >> random.nextInt(60);
+		}
+	}
+
+	static void primitiveMaps() {
+		Random random = new Random(37);
+		LongObjectMap<String> objects = new LongObjectMap<String>(4);
+		LongHashSet longSet = new LongHashSet(4);
+		ConcurrentLongMap<String> concurrent = new ConcurrentLongMap<String>(4);
+		HashMap<Long, String> expected = new HashMap<Long, String>();
+		for (int i = 0; i < 200000; i++) {
+			long key = nextKey(random);
+			if (random.nextInt(3) == 0) {
+				String old = expected.remove(key);
+				check(eq(old, objects.remove(key)), "LongObjectMap remove");
+				check(eq(old, concurrent.remove(key)),
+						"ConcurrentLongMap remove");
+				check(longSet.remove(key) == (old != null),
+						"LongHashSet remove");
+			} else {
+				String value = Long.toString(i);
+				String old = expected.put(key, value);
+				check(eq(old, objects.put(key, value)), "LongObjectMap put");
+				check(eq(old, concurrent.put(key, value)),
+						"ConcurrentLongMap put");
+				check(longSet.add(key) == (old == null), "LongHashSet add");
+			}
+		}
+		check(objects.size() == expected.size(), "LongObjectMap size");
+		check(concurrent.size() == expected.size(), "ConcurrentLongMap size");
+		check(longSet.size() == expected.size(), "LongHashSet size");
+		for (Map.Entry<Long, String> e : expected.entrySet()) {
+			long key = e.getKey();
+			check(e.getValue().equals(objects.get(key)), "LongObjectMap get");
+			check(e.getValue().equals(concurrent.get(key)),
+					"ConcurrentLongMap get");
+			check(longSet.contains(key), "LongHashSet contains");
+		}
+		long[] keys = objects.keys();
+		Arrays.sort(keys);
+		long[] concurrentKeys = concurrent.keys();
+		Arrays.sort(concurrentKeys);
+		check(Arrays.equals(keys, concurrentKeys), "keys");
+		HashSet<Long> keySet = new HashSet<Long>();
+		for (long key : longSet.toArray()) {
+			keySet.add(key);
+		}
+		check(keySet.equals(expected.keySet()), "LongHashSet toArray");
+		check(!objects.containsKey(Long.MAX_VALUE), "missing key");
+	}
+
+	private static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	static void lruMap() {
+		LRUMap<Integer, String> lru = new LRUMap<Integer, String>(0, 100);
+		Map<Integer, String> asMap = lru;
+		for (int i = 0; i < 100; i++) {
+			asMap.put(i, "v" + i);
+		}
+		check(lru.size() == 100 && lru.getEvictions() == 0, "fills up");
+		// touch the first half, the untouched half goes first
+		for (int i = 0; i < 50; i++) {
+			check(("v" + i).equals(asMap.get(i)), "hit");
+		}
+		for (int i = 100; i < 150; i++) {
+			asMap.put(i, "v" + i);
+		}
+		check(lru.size() == 100, "bounded");
+		check(lru.getEvictions() == 50, "evictions");
+		for (int i = 0; i < 50; i++) {
+			check(asMap.containsKey(i), "recently used kept");
+		}
+		for (int i = 50; i < 100; i++) {
+			check(!asMap.containsKey(i), "unused evicted");
+		}
+		check(asMap.entrySet().size() == 100
+				&& asMap.keySet().contains(149), "entry view");
+		check(lru.putIfAbsent(149, "x").equals("v149"), "putIfAbsent");
+		check(lru.replace(149, "v149", "y") && "y".equals(asMap.get(149)),
+				"replace");
+		check(lru.remove(149, "y") && !asMap.containsKey(149),
+				"remove value");
+		asMap.keySet().remove(148);
+		check(lru.size() == 98, "remove through view");
+		for (int i = 0; i < 1000; i++) {
+			asMap.put(1000 + i, "w");
+		}
+		check(lru.size() == 100, "bounded after churn");
+		asMap.clear();
+		check(asMap.isEmpty(), "clear");
+	}
+
+	static void clearedLedgers() {
+		ClearedLedgersSet.DEBUG = true;
+		ClearedLedgersSet set = new ClearedLedgersSet();
+		set.clear(100);
+		set.clear(103);
+		set.clear(101);
+		check(Arrays.equals(set.gaps(), new long[] { 102 }), "gap");
+		check(!set.okToClear(), "not clearable with a gap");
+		set.clearIfNoGaps();
+		check(set.size() == 3, "kept while gapped");
+		set.clear(102);
+		check(set.gaps().length == 0 && set.okToClear(), "gap filled");
+		check(set.contains(101) && !set.contains(104), "contains");
+		set.clearIfNoGaps();
+		check(set.size() == 0, "cleared");
+		set.clear(104);
+		set.clear(107);
+		check(Arrays.equals(set.gaps(), new long[] { 105, 106 }), "gaps");
+		check(Arrays.equals(set.cleared(), new long[] { 104, 107 }),
+				"cleared order");
+	}
+
+	public static void main(String[] args) {
+		primitiveMaps();
+		lruMap();
+		clearedLedgers();
+		System.out.println("CollectionsTest OK");
+	}
+}
@@ -0,0 +1,269 @@
+package org.ripple.power.command.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ripple.power.command.AMacros;
+import org.ripple.power.command.DMacros;
+import org.ripple.power.command.IScriptLog;
+import org.ripple.power.command.ROCScript;
+
+public class ROCScriptTest {
+
+	private static void check(boolean value, String message) {
+		if (!value) {
+			throw new RuntimeException("failed: " + message);
+		}
+	}
+
+	// keeps what the script prints apart from the debug trace
+	private static class Log implements IScriptLog {
+
+		final StringBuilder out = new StringBuilder();
+
+		final StringBuilder trace = new StringBuilder();
+
+		private boolean tracing;
+
+		@Override
+		public void show(boolean flag) {
+		}
+
+		@Override
+		public void err(Object mes) {
+			trace.append(mes);
+			tracing = true;
+		}
+
+		@Override
+		public void info(Object mes) {
+			out.append(mes);
+			tracing = false;
+		}
+
+		@Override
+		public void line(Object mes) {
+			if (!tracing) {
+				out.append(mes);
+			}
+		}
+
+		@Override
+		public void newline() {
+			(tracing ? trace : out).append('\n');
+			tracing = false;
+		}
+
+		@Override
+		public void err(String mes, Object... o) {
+			err((Object) mes);
+		}
+
+		@Override
+		public void info(String mes, Object... o) {
+			info((Object) mes);
+		}
+	}
+
+	// book answers after the given millis on its own thread, like a network
+	// request; send stands in for a command that submits a transaction
+	private static class Book extends AMacros {
+
+		static final List<String> events = new ArrayList<String>();
+
+		static int inFlight, maxInFlight;
+
+		Book() {
+			super("book.", new String[] { "price", "send", "mark" });
+		}
+
+		static synchronized void event(String event, int change) {
+			events.add(event);
+			inFlight += change;
+			maxInFlight = Math.max(maxInFlight, inFlight);
+		}
+
+		@Override
+		protected AMacros newInstance() {
+			return new Book();
+		}
+
+		@Override
+		protected boolean isReadOnly(int type) {
+			return type != 1;
+		}
+
+		@Override
+		public void call(IScriptLog log, int line, DMacros macros,
+				String message) {
+			setConfig(log, macros, line);
+			final List<String> list = DMacros.commandSplit(message, false);
+			final int type = lookupCommand(list.get(0));
+			if (type != 0) {
+				event(list.get(0), 0);
+				return;
+			}
+			final String id = list.get(1);
+			final long millis = Long.parseLong(list.get(2));
+			event("start " + id, 1);
+			setSyncing(type, true);
+			new Thread() {
+				public void run() {
+					try {
+						Thread.sleep(millis);
+					} catch (InterruptedException e) {
+					}
+					event("end " + id, -1);
+					setVar(type, "id", id);
+					setSyncing(type, false);
+				}
+			}.start();
+		}
+	}
+
+	private static String runMacros(String script) throws Exception {
+		synchronized (Book.class) {
+			Book.events.clear();
+			Book.inFlight = Book.maxInFlight = 0;
+		}
+		Log log = new Log();
+		ROCScript roc = new ROCScript(log, script.replace("\n", "\r\n"),
+				false);
+		roc.addMacrosListener(new Book());
+		roc.run(false);
+		return log.out.toString();
+	}
+
+	// the same script with and without debug, which both run the compiled
+	// program; checks debug only added a trace and returns the traced run
+	private static Log run(String name, String script) throws Exception {
+		script = script.replace("\n", "\r\n");
+		Log plain = new Log();
+		ROCScript roc = new ROCScript(plain, script, false);
+		check(roc.isCompiled(), name + " compiled");
+		roc.run(false);
+		Log traced = new Log();
+		roc = new ROCScript(traced, script, false);
+		traced.trace.setLength(0);
+		roc.run(true);
+		check(plain.out.toString().equals(traced.out.toString()), name
+				+ " debug output: " + traced.out + " vs " + plain.out);
+		check(traced.trace.indexOf("line ") != -1, name + " traced");
+		return traced;
+	}
+
+	static void loops() throws Exception {
+		Log log = run("loops", "s = 0\n"
+				+ "for i = 0, i < 5, i + 1 begin\n"
+				+ " s = s + i\n"
+				+ "end\n"
+				+ "println s\n"
+				+ "x = -3\n"
+				+ "while x < 0 begin\n"
+				+ " print x\n"
+				+ " x = x + 1\n"
+				+ "end\n");
+		String out = log.out.toString();
+		check(out.equals("10.0\n-3.0-2.0-1.0"), "loops: " + out);
+	}
+
+	static void functions() throws Exception {
+		Log log = run("functions", "function add(x , y) begin\n"
+				+ " return x + y\n"
+				+ "end\n"
+				+ "function hello() begin\n"
+				+ " return \"Hello\"\n"
+				+ "end\n"
+				+ "println hello()\n"
+				+ "println add(2 , 3) + add(4 , 5)\n");
+		String out = log.out.toString();
+		check(out.equals("Hello\n14.0\n"), "functions: " + out);
+	}
+
+	static void recursion() throws Exception {
+		Log log = run("recursion", "function fib(n) begin\n"
+				+ " if n < 2 then\n"
+				+ "  return n\n"
+				+ " end\n"
+				+ " return fib(n - 1) + fib(n - 2)\n"
+				+ "end\n"
+				+ "println fib(10)\n");
+		String out = log.out.toString();
+		check(out.equals("55.0\n"), "recursion: " + out);
+		check(log.trace.indexOf("call fib") != -1, "calls traced");
+	}
+
+	static void macros() throws Exception {
+		Log log = run("macros", "x = 3\n"
+				+ "{\n"
+				+ " set y = 4\n"
+				+ " if 1==1\n"
+				+ "  set z = 7\n"
+				+ " else\n"
+				+ "  set z = 8\n"
+				+ " endif\n"
+				+ " print y\n"
+				+ " print z\n"
+				+ "}\n"
+				+ "println x\n"
+				+ "println y\n");
+		String out = log.out.toString();
+		check(out.endsWith("3.0\n4.0\n"), "macros: " + out);
+	}
+
+	// async commands overlap, await waits for its handle only and the
+	// results are read under the handle name
+	static void async() throws Exception {
+		String out = runMacros("{\n"
+				+ " async a price 1 300\n"
+				+ " async b price 2 10\n"
+				+ " await a\n"
+				+ " mark\n"
+				+ "}\n"
+				+ "println a.id\n"
+				+ "println b.id\n");
+		check(Book.events.indexOf("start 2") < Book.events.indexOf("end 1"),
+				"overlap " + Book.events);
+		check(Book.events.indexOf("end 2") < Book.events.indexOf("end 1"),
+				"order " + Book.events);
+		check(Book.events.indexOf("end 1") < Book.events.indexOf("mark"),
+				"await " + Book.events);
+		check(out.endsWith("1.0\n2.0\n"), "async results: " + out);
+	}
+
+	// at most 32 handles are outstanding; the oldest is awaited first
+	static void asyncCap() throws Exception {
+		StringBuilder script = new StringBuilder("{\n");
+		for (int i = 0; i < 40; i++) {
+			script.append(" async h").append(i).append(" price ").append(i)
+					.append(" 100\n");
+		}
+		script.append(" mark\n}\n");
+		runMacros(script.toString());
+		check(Book.maxInFlight == 32, "cap " + Book.maxInFlight);
+		check(Book.events.indexOf("end 0") < Book.events.indexOf("start 32"),
+				"oldest first " + Book.events);
+		check(Book.events.indexOf("end 0") != -1, "all done");
+	}
+
+	// commands that submit transactions do not run under async
+	static void asyncSend() throws Exception {
+		runMacros("{\n"
+				+ " async s send 1\n"
+				+ " send 2\n"
+				+ "}\n");
+		check(Book.events.size() == 1 && Book.events.get(0).equals("send"),
+				"send " + Book.events);
+	}
+
+	public static void main(String[] args) throws Exception {
+		loops();
+		functions();
+		recursion();
+		macros();
+		async();
+		asyncCap();
+		asyncSend();
+		System.out.println("ROCScriptTest OK");
+	}
+}
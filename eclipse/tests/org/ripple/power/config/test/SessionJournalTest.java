@@ -0,0 +1,74 @@
+package org.ripple.power.config.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.ripple.power.config.LSystem;
+import org.ripple.power.config.Session;
+
+public class SessionJournalTest {
+
+	private static void check(boolean value, String message) {
+		if (!value) {
+			throw new RuntimeException("failed: " + message);
+		}
+	}
+
+	private static void writeLegacy(File file, String name, String encoded)
+			throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(name, encoded);
+		try (OutputStream out = new FileOutputStream(file)) {
+			properties.store(out, null);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String name = "journal_test_" + System.nanoTime();
+		File dir = new File(LSystem.getDirectory());
+		dir.mkdirs();
+		File legacy = new File(dir, "ripple_config_" + name + ".store");
+		File migrated = new File(legacy.getPath() + ".migrated");
+		File journal = new File(dir, "ripple_config_" + name + ".journal");
+		try {
+			// two records in the old "&" encoding
+			writeLegacy(legacy, name, "2&alpha&0&1&one&beta&1&1&two&");
+
+			Session session = new Session(name);
+			check("one".equals(session.get("alpha")), "migrated alpha");
+			check("two".equals(session.get("beta")), "migrated beta");
+			check(session.isActive("beta"), "migrated active flag");
+			check(!legacy.exists() && migrated.exists(), "legacy retired");
+			check(journal.exists(), "journal written");
+
+			session.set("gamma", "three");
+			session.clear("alpha");
+			session.clear("beta");
+			session.save();
+
+			Session reloaded = new Session(name);
+			check(reloaded.get("alpha") == null
+					&& reloaded.get("beta") == null, "cleared stays cleared");
+			check("three".equals(reloaded.get("gamma")), "journal kept gamma");
+
+			reloaded.clear("gamma");
+			reloaded.save();
+			// an old store file showing up again must not be imported
+			// once a journal exists, even an empty one
+			writeLegacy(legacy, name, "1&alpha&0&1&one&");
+			Session empty = new Session(name);
+			check(empty.getSize() == 0, "no re-import into empty journal");
+			check(empty.get("alpha") == null, "deleted setting stays deleted");
+		} finally {
+			legacy.delete();
+			migrated.delete();
+			if (!journal.delete()) {
+				journal.deleteOnExit();
+			}
+		}
+		System.out.println("SessionJournalTest OK");
+	}
+}
@@ -0,0 +1,88 @@
+package org.ripple.power.database.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.ripple.power.database.AddressIndex;
+
+import com.ripple.config.Config;
+import com.ripple.encodings.base58.B58;
+
+public class AddressIndexTest {
+
+	private static final B58 RIPPLE = new B58(Config.DEFAULT_ALPHABET);
+
+	private static final B58 BITCOIN = new B58(
+			"123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz");
+
+	private static void check(boolean value, String message) {
+		if (!value) {
+			throw new RuntimeException("failed: " + message);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		byte[] hash = new byte[AddressIndex.HASH_LENGTH];
+		new Random(31).nextBytes(hash);
+		String ripple = RIPPLE.encodeToStringChecked(hash, 0);
+		String p2pkh = BITCOIN.encodeToStringChecked(hash, 0);
+		String p2sh = BITCOIN.encodeToStringChecked(hash, 5);
+
+		byte[] rippleKey = AddressIndex.toKey(ripple);
+		byte[] p2pkhKey = AddressIndex.toKey(p2pkh);
+		byte[] p2shKey = AddressIndex.toKey(p2sh);
+		check(rippleKey != null && p2pkhKey != null && p2shKey != null,
+				"decode");
+		check(rippleKey.length == AddressIndex.KEY_LENGTH, "key length");
+		check(Arrays.equals(Arrays.copyOf(rippleKey, AddressIndex.HASH_LENGTH),
+				hash), "hash first");
+		check(rippleKey[AddressIndex.HASH_LENGTH] == AddressIndex.TAG_RIPPLE,
+				"ripple tag");
+		check(p2pkhKey[AddressIndex.HASH_LENGTH] == AddressIndex.TAG_BITCOIN,
+				"p2pkh tag");
+		check(p2shKey[AddressIndex.HASH_LENGTH] == AddressIndex.TAG_BITCOIN_SCRIPT,
+				"p2sh tag");
+		check(AddressIndex.COMPARATOR.compare(rippleKey, p2pkhKey) != 0
+				&& AddressIndex.COMPARATOR.compare(p2pkhKey, p2shKey) != 0,
+				"kinds differ");
+		check(AddressIndex.toKey(ripple.substring(0, ripple.length() - 1)
+				+ (ripple.endsWith("r") ? "p" : "r")) == null, "checksum");
+
+		File dir = new File(System.getProperty("java.io.tmpdir"),
+				"address-index-test-" + System.nanoTime());
+		AddressIndex index = new AddressIndex(dir);
+		try {
+			check(index.put(ripple), "put");
+			check(index.contains(ripple), "buffered hit");
+			check(!index.contains(p2pkh) && !index.contains(p2sh),
+					"buffered kinds apart");
+			index.flush();
+			check(index.getSegmentCount() == 1, "flushed");
+			check(index.contains(ripple), "segment hit");
+			check(!index.contains(p2pkh) && !index.contains(p2sh),
+					"segment kinds apart");
+			index.put(p2sh);
+			index.compact();
+			check(index.contains(p2sh) && !index.contains(p2pkh), "merged");
+		} finally {
+			index.close();
+		}
+		index = new AddressIndex(dir);
+		try {
+			check(index.contains(ripple) && index.contains(p2sh)
+					&& !index.contains(p2pkh), "reopened");
+		} finally {
+			index.close();
+			File[] files = dir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			dir.delete();
+		}
+		System.out.println("AddressIndexTest OK");
+	}
+}
@@ -0,0 +1,130 @@
+package org.ripple.power.database.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.mapdb.BTreeKeySerializer;
+import org.mapdb.Fun;
+import org.mapdb.Serializer;
+import org.ripple.power.database.DBMapCollection;
+import org.ripple.power.database.DBMapDatabase;
+import org.ripple.power.database.RecordSerializers;
+import org.ripple.power.hft.Candle;
+
+public class DBMapBulkLoadTest {
+
+	private static final long START = 1400000000000L;
+
+	private static void check(boolean value, String message) {
+		if (!value) {
+			throw new RuntimeException("failed: " + message);
+		}
+	}
+
+	private static Candle candle(long time) {
+		Candle candle = new Candle();
+		candle.setTime(time);
+		candle.setOpen(time % 1000);
+		candle.setClose(time % 977);
+		candle.setHigh(1000);
+		candle.setLow(0);
+		return candle;
+	}
+
+	public static void main(String[] args) throws IOException {
+		// more entries than one presort batch, so batches spill to disk
+		int count = DBMapDatabase.DEFAULT_PRESORT_BATCH * 2 + 17;
+		List<Long> times = new ArrayList<Long>(count);
+		for (int i = 0; i < count; i++) {
+			times.add(START + i * 60000L);
+		}
+		Collections.shuffle(times, new java.util.Random(45));
+		List<Entry<Long, Candle>> entries = new ArrayList<Entry<Long, Candle>>(
+				count);
+		for (Long time : times) {
+			entries.add(new AbstractMap.SimpleImmutableEntry<Long, Candle>(
+					time, candle(time)));
+		}
+		// keys put again later in the input, twice; the last one must win
+		// over the earlier runs and over the first repeat in its own batch
+		for (int i = 0; i < count; i += 1001) {
+			for (int open = -1; open >= -2; open--) {
+				Candle candle = candle(times.get(i));
+				candle.setOpen(open);
+				entries.add(new AbstractMap.SimpleImmutableEntry<Long, Candle>(
+						times.get(i), candle));
+			}
+		}
+		HashSet<Long> repeated = new HashSet<Long>();
+		for (int i = 0; i < count; i += 1001) {
+			repeated.add(times.get(i));
+		}
+
+		File file = File.createTempFile("bulkload", ".db");
+		file.delete();
+		DBMapDatabase database = new DBMapDatabase(file);
+		try {
+			database.connect();
+			DBMapCollection<Long, Candle> candles = database.getCollection(
+					"candles", new RecordSerializers.CandleSerializer());
+			candles.load(entries.iterator());
+			check(candles.size() == count, "size " + candles.size());
+
+			Iterator<Entry<Long, Candle>> it = candles.iterator();
+			long expected = START;
+			while (it.hasNext()) {
+				Entry<Long, Candle> entry = it.next();
+				check(entry.getKey() == expected, "order at " + expected);
+				Candle candle = entry.getValue();
+				check(candle.getTime() == expected
+						&& candle.getOpen() == (repeated.contains(expected) ? -2
+								: expected % 1000)
+						&& candle.getClose() == expected % 977, "value at "
+						+ expected);
+				expected += 60000L;
+			}
+			check(expected == START + count * 60000L, "iterated all");
+
+			// a tree made with its own key serializer and comparator keeps
+			// them when it is loaded again
+			database.getDB().createTreeMap("reversed")
+					.keySerializer(new BTreeKeySerializer.BasicKeySerializer(
+							Serializer.LONG, Fun.REVERSE_COMPARATOR))
+					.comparator(Fun.REVERSE_COMPARATOR)
+					.valueSerializer(new RecordSerializers.CandleSerializer())
+					.make();
+			DBMapCollection<Long, Candle> reversed = database.bulkLoad(
+					"reversed", entries.iterator(), false, 1000);
+			check(reversed.size() == count, "reversed size " + reversed.size());
+			BTreeKeySerializer keySerializer = database.getDB().catGet(
+					"reversed.keySerializer");
+			check(keySerializer.comparator() == Fun.REVERSE_COMPARATOR,
+					"comparator kept");
+			it = reversed.iterator();
+			while (it.hasNext()) {
+				Entry<Long, Candle> entry = it.next();
+				expected -= 60000L;
+				check(entry.getKey() == expected, "reversed order at "
+						+ expected);
+				check(entry.getValue().getOpen() == (repeated
+						.contains(expected) ? -2 : expected % 1000),
+						"reversed value at " + expected);
+			}
+			check(expected == START, "reversed all");
+			database.commit();
+		} finally {
+			database.close();
+			file.delete();
+			new File(file.getPath() + ".p").delete();
+			new File(file.getPath() + ".t").delete();
+		}
+		System.out.println("DBMapBulkLoadTest OK");
+	}
+}
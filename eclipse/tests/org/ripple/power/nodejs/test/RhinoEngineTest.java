@@ -0,0 +1,62 @@
+package org.ripple.power.nodejs.test;
+
+import org.ripple.power.nodejs.RhinoEngine;
+import org.ripple.power.ui.UIRes;
+import org.ripple.power.utils.FileUtils;
+
+public class RhinoEngineTest {
+
+	private static void check(boolean value, String message) {
+		if (!value) {
+			throw new RuntimeException("failed: " + message);
+		}
+	}
+
+	private static String eval(RhinoEngine engine, String src) {
+		return String.valueOf(engine.eval(src));
+	}
+
+	// date.js extends Date and Date.prototype; every engine has its own
+	// built-ins, so that stays inside the engines that loaded it
+	static void builtins() throws Exception {
+		String date = FileUtils.readAsText(UIRes.getStream("scripts/date.js"));
+		RhinoEngine a = new RhinoEngine("a");
+		RhinoEngine b = new RhinoEngine("b", null, true);
+		RhinoEngine c = new RhinoEngine("c");
+		a.eval("date.js", date);
+		b.eval("date.js", date);
+		check("function".equals(eval(a, "typeof new Date().clone")), "a date.js");
+		check("function".equals(eval(b, "typeof Date.today")), "b date.js");
+		check("undefined".equals(eval(c, "typeof new Date().clone")),
+				"c untouched");
+		eval(a, "Date.prototype.foo = function() { return 1; }");
+		eval(a, "String.prototype.toJSON = function() { return 'a'; }");
+		eval(a, "Array.prototype.sum = function() { return 2; }");
+		check("1".equals(eval(a, "new Date().foo()").replace(".0", "")),
+				"a prototype");
+		check("2".equals(eval(a, "[1].sum()").replace(".0", "")), "a array");
+		check("undefined".equals(eval(b, "typeof new Date().foo")),
+				"b prototype");
+		check("undefined".equals(eval(b, "typeof String.prototype.toJSON")),
+				"b string");
+		check("undefined".equals(eval(c, "typeof [].sum")), "c array");
+	}
+
+	static void scopes() {
+		RhinoEngine a = new RhinoEngine("a");
+		RhinoEngine b = new RhinoEngine("b");
+		eval(a, "importPackage(java.util); x = 5");
+		check("0".equals(eval(a, "new ArrayList().size()").replace(".0", "")),
+				"import");
+		check("undefined".equals(eval(b, "typeof ArrayList")), "b imports");
+		check("undefined".equals(eval(b, "typeof x")), "b variables");
+		check("undefined".equals(eval(new RhinoEngine("c", null, true),
+				"typeof java")), "clean");
+	}
+
+	public static void main(String[] args) throws Exception {
+		builtins();
+		scopes();
+		System.out.println("RhinoEngineTest OK");
+	}
+}
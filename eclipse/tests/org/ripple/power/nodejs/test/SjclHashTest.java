@@ -0,0 +1,162 @@
+package org.ripple.power.nodejs.test;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.ripple.power.CoinUtils;
+
+import org.ripple.power.collection.LongArray;
+import org.ripple.power.nodejs.BigNumber;
+import org.ripple.power.nodejs.BitArray;
+import org.ripple.power.nodejs.FastSHA256;
+import org.ripple.power.nodejs.FastSHA512;
+import org.ripple.power.nodejs.HMAC;
+import org.ripple.power.nodejs.JSCall;
+import org.ripple.power.nodejs.JSCrypt;
+import org.ripple.power.nodejs.PBKDF2;
+import org.ripple.power.nodejs.SHA256;
+import org.ripple.power.nodejs.SHA512;
+
+public class SjclHashTest {
+
+	private static void check(boolean value, String message) {
+		if (!value) {
+			throw new RuntimeException("failed: " + message);
+		}
+	}
+
+	private static void check(String expected, LongArray bits, String message) {
+		String actual = BigNumber.hex_fromBits(bits);
+		check(expected.equals(actual), message + ": " + actual);
+	}
+
+	private static LongArray utf8(String text) {
+		return BigNumber.utf8_toBits(text);
+	}
+
+	private static LongArray toBits(byte[] bytes, int bits) {
+		LongArray data = new LongArray();
+		for (int i = 0; i < bytes.length; i += 4) {
+			int word = 0;
+			for (int j = i; j < i + 4; j++) {
+				word = word << 8 | (j < bytes.length ? bytes[j] & 0xff : 0);
+			}
+			data.push(word);
+		}
+		return BitArray.clamp(data, bits);
+	}
+
+	private static LongArray repeat(int b, int count) {
+		byte[] bytes = new byte[count];
+		Arrays.fill(bytes, (byte) b);
+		return toBits(bytes, count * 8);
+	}
+
+	// FIPS 180-2 appendix B and C
+	static void sha() {
+		check("ddaf35a193617abacc417349ae20413112e6fa4e89a97ea20a9eeee64b55d39a2192992a274fc1a836ba3c23a3feebbd454d4423643ce80e2a9ac94fa54ca49f",
+				FastSHA512.hash(utf8("abc")), "sha512 abc");
+		check("cf83e1357eefb8bdf1542850d66d8007d620e4050b5715dc83f4a921d36ce9ce47d0d13c5d85f2b0ff8318d2877eec2f63b931bd47417a81a538327af927da3e",
+				FastSHA512.hash(new LongArray()), "sha512 empty");
+		check("8e959b75dae313da8cf4f72814fc143f8f7779c6eb9f7fa17299aeadb6889018501d289e4900f7e4331b99dec4b5433ac7d329eeb6dd26545e96e55b874be909",
+				FastSHA512.hash(utf8("abcdefghbcdefghicdefghijdefghijkefghijklfghijklmghijklmnhijklmnoijklmnopjklmnopqklmnopqrlmnopqrsmnopqrstnopqrstu")),
+				"sha512 two blocks");
+		check("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+				FastSHA256.hash(utf8("abc")), "sha256 abc");
+		check("248d6a61d20638b8e5c026930c3e6039a33ce45964ff2167f6ecedd419db06c1",
+				FastSHA256.hash(utf8("abcdbcdecdefdefgefghfghighijhijkijkljklmklmnlmnomnopnopq")),
+				"sha256 two blocks");
+	}
+
+	// SHA-512 against the boxed port on every length up to three blocks,
+	// including ones that are not whole bytes; SHA-256 against the JDK,
+	// since the boxed SHA256 port never produced correct digests
+	static void matchesPort() throws Exception {
+		Random random = new Random(50);
+		MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+		for (int bits = 0; bits <= 3 * 1024; bits += 1 + random.nextInt(13)) {
+			byte[] bytes = new byte[(bits + 7) / 8];
+			random.nextBytes(bytes);
+			LongArray data = toBits(bytes, bits);
+			String expected = BigNumber.hex_fromBits(new SHA512().update(
+					data)._finalize());
+			check(expected, FastSHA512.hash(data), "sha512 of " + bits
+					+ " bits");
+			if (bits % 8 == 0) {
+				expected = CoinUtils.toHex(sha256.digest(bytes)).toLowerCase();
+				check(expected, SHA256.hash(data), "sha256 of " + bits
+						+ " bits");
+			}
+		}
+	}
+
+	// RFC 4231 test cases 1, 2 and 6
+	static void hmac() {
+		check("87aa7cdea5ef619d4ff0b4241a1d6cb02379f4e2ce4ec2787ad0b30545e17cdedaa833b7d6b8a702038b274eaea3f4e4be9d914eeb61f1702e696c203a126854",
+				new HMAC(repeat(0x0b, 20)).mac("Hi There"), "hmac-sha512 1");
+		check("164b7a7bfcf819e2e395fbe73b56e0a387bd64222e831fd610270cd7ea2505549758bf75c05a994a6d034f65f8f0e6fdcaeab1a34d4a6b4b636e070a38bce737",
+				new HMAC(utf8("Jefe")).mac("what do ya want for nothing?"),
+				"hmac-sha512 2");
+		check("80b24263c7c1a3ebb71493c1dd7be8b49b46d1f41b4aeec1121b013783f8f3526b56d037e05f2598bd0fd2215d6a1e5295e64f73f63f0aec8b915a985d786598",
+				new HMAC(repeat(0xaa, 131))
+						.mac("Test Using Larger Than Block-Size Key - Hash Key First"),
+				"hmac-sha512 6");
+		check("b0344c61d8db38535ca8afceaf0bf12b881dc200c9833da726e9376c2e32cff7",
+				HMAC.sha256(repeat(0x0b, 20)).mac("Hi There"), "hmac-sha256 1");
+		check("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",
+				HMAC.sha256(utf8("Jefe")).mac("what do ya want for nothing?"),
+				"hmac-sha256 2");
+		check("60e431591ee0b67f0d8a26aacbf5b77f8e0bc6213728c5140546040f0ee37f54",
+				HMAC.sha256(repeat(0xaa, 131)).mac(
+						"Test Using Larger Than Block-Size Key - Hash Key First"),
+				"hmac-sha256 6");
+	}
+
+	// RFC 7914 section 11, and the RFC 6070 inputs with SHA-256 and
+	// SHA-512
+	static void pbkdf2() {
+		LongArray salt = utf8("salt");
+		check("55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783",
+				PBKDF2.pbkdf2("passwd", salt, 1, 512), "pbkdf2 rfc 7914");
+		check("120fb6cffcf8b32c43e7225256c4f837a86548c92ccc35480805987cb70be17b",
+				PBKDF2.pbkdf2("password", salt, 1, 256), "pbkdf2 1");
+		check("ae4d0c95af6b46d32d0adff928f06dd02a303f8ef3c251dfd6e2d85a95474c43",
+				PBKDF2.pbkdf2("password", salt, 2, 0), "pbkdf2 2");
+		check("c5e478d59288c841aa530db6845c4c8d962893a001ce4e11a4963873aa98134a",
+				PBKDF2.pbkdf2("password", salt, 4096, 256), "pbkdf2 4096");
+		check("348c89dbcbd32b2f32d814b8116e84cf2b17347ebc1800181c4e2a1fb8dd53e1c635518c7dac47e9",
+				PBKDF2.pbkdf2("passwordPASSWORDpassword",
+						utf8("saltSALTsaltSALTsaltSALTsaltSALTsalt"), 4096, 320),
+				"pbkdf2 two blocks");
+		check("867f70cf1ade02cff3752599a3a53dc4af34c7a669815ae5d513554e1c8cf252c02d470a285a0501bad999bfe943c08f050235d7d68b1da55e63f73b60a57fce",
+				PBKDF2.pbkdf2(new HMAC(utf8("password")), salt, 1, 512),
+				"pbkdf2-sha512 1");
+		check("d197b1b33db0143e018b12f3d1d1479e6cdebdcc97c5c0f87f6902e072f457b5143f30602641b3d55cd335988cb36b84376060ecd532e039b742a239434af2d5",
+				PBKDF2.pbkdf2(new HMAC(utf8("password")), salt, 4096, 512),
+				"pbkdf2-sha512 4096");
+	}
+
+	// sjs.js runs pbkdf2 and sha512 through JSCrypt.FastPath once it is
+	// there; both ways must give the same bits
+	static void script() throws Exception {
+		String expr = "sjcl.codec.hex.fromBits(sjcl.misc.pbkdf2('password', sjcl.codec.utf8String.toBits('salt'), 2, 200))"
+				+ " + sjcl.codec.hex.fromBits(sjcl.hash.sha512.hash('abc'))";
+		JSCall call = JSCall.get("sjs.js");
+		call.remove("javaCrypto");
+		String script = String.valueOf(call.eval(expr));
+		check(script.startsWith("ae4d0c95af6b46d32d0adff928f06dd02a303f8ef3c251dfd6"),
+				"script pbkdf2: " + script);
+		call.put("javaCrypto", new JSCrypt.FastPath());
+		check(script.equals(String.valueOf(call.eval(expr))), "fast path");
+	}
+
+	public static void main(String[] args) throws Exception {
+		sha();
+		matchesPort();
+		hmac();
+		pbkdf2();
+		script();
+		System.out.println("SjclHashTest OK");
+	}
+}